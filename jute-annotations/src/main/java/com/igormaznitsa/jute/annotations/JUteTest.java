@@ -79,4 +79,18 @@ public @interface JUteTest {
    * non-positive value then ignored.
    */
   long timeout() default 0L;
+
+  /**
+   * Isolation level of the test. 'METHOD' means that every test method is
+   * started in its own JVM, 'CLASS' means that test methods of the same class
+   * which have the same JVM configuration are started one by one in a single
+   * JVM, 'IN_PROCESS' means that the test is started in a long-living worker
+   * JVM with new class loader for test and project classes, 'AUTO' means
+   * 'CLASS' if share analysis has found the class share-safe and 'METHOD'
+   * otherwise. If empty then the value from the plugin configuration is used.
+   *
+   * @return isolation level name, can be empty
+   * @since 1.1.2
+   */
+  String isolation() default "";
 }
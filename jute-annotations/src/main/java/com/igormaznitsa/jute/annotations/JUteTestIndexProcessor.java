@@ -0,0 +1,275 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URLEncoder;
+import java.util.*;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor writing index of compiled test classes into
+ * META-INF/jute/test-index, so that the JUte plugin can find test methods
+ * without reading of class files. The index lists all compiled classes, for
+ * every class it contains its flags, JUnit and JUte annotations and all
+ * instance methods without arguments with their annotations. The index is
+ * written only if there is at least one test annotation in compiled classes.
+ * <p>
+ * Class files are written by javac after annotation processing, so that if
+ * the processor is started by javac then modification time of the index is
+ * updated after every written class file (through the compiler task listener
+ * API called by reflection). The plugin scans class files which are newer than
+ * the index, because they have been written by another compilation.
+ * <p>
+ * The processor is registered as a service, so that it is started by javac
+ * automatically if the annotation jar is in the class path.
+ *
+ * @since 1.1.2
+ */
+public final class JUteTestIndexProcessor extends AbstractProcessor {
+
+  /**
+   * Path to the index in class output folder.
+   */
+  public static final String INDEX_PATH = "META-INF/jute/test-index";
+  /**
+   * The first line of the index.
+   */
+  public static final String HEADER = "JUTE-TEST-INDEX 1";
+
+  private static final Set<String> RECORDED_ANNOTATIONS = new HashSet<String>(Arrays.asList("org.junit.Test", "org.junit.Ignore", JUteTest.class.getName()));
+
+  // flags in class file format
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_STATIC = 0x0008;
+  private static final int ACC_NATIVE = 0x0100;
+  private static final int ACC_INTERFACE = 0x0200;
+  private static final int ACC_ABSTRACT = 0x0400;
+  private static final int ACC_ANNOTATION = 0x2000;
+  private static final int ACC_ENUM = 0x4000;
+
+  private final StringBuilder index = new StringBuilder();
+  private boolean hasTests;
+  private volatile File indexFile;
+
+  @Override
+  public synchronized void init(final ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    addClassWriteListener();
+  }
+
+  /**
+   * Register javac task listener updating modification time of the written
+   * index after every generated class file. The compiler API is called
+   * through reflection because it is not available for all compilers.
+   */
+  private void addClassWriteListener() {
+    try {
+      final ClassLoader compilerLoader = this.processingEnv.getClass().getClassLoader();
+      final Class<?> taskClass = Class.forName("com.sun.source.util.JavacTask", false, compilerLoader);
+      final Class<?> listenerClass = Class.forName("com.sun.source.util.TaskListener", false, compilerLoader);
+      final Object task = taskClass.getMethod("instance", ProcessingEnvironment.class).invoke(null, this.processingEnv);
+      final Object listener = Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class<?>[]{listenerClass}, new InvocationHandler() {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+          if (method.getDeclaringClass() == Object.class) {
+            if ("equals".equals(method.getName())) {
+              return proxy == args[0];
+            }
+            else if ("hashCode".equals(method.getName())) {
+              return System.identityHashCode(proxy);
+            }
+            return "JUte test index listener";
+          }
+          if ("finished".equals(method.getName()) && "GENERATE".equals(String.valueOf(args[0].getClass().getMethod("getKind").invoke(args[0])))) {
+            final File file = indexFile;
+            if (file != null) {
+              file.setLastModified(System.currentTimeMillis());
+            }
+          }
+          return null;
+        }
+      });
+      taskClass.getMethod("addTaskListener", listenerClass).invoke(task, listener);
+    }
+    catch (Exception ex) {
+      // not javac, class files will be scanned by the plugin
+    }
+  }
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    // all compiled classes must be listed in the index
+    return Collections.singleton("*");
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+    for (final TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+      addType(type);
+    }
+
+    if (roundEnv.processingOver() && this.hasTests) {
+      writeIndex();
+    }
+    return false;
+  }
+
+  private void addType(final TypeElement type) {
+    int flags = toFlags(type.getModifiers());
+    switch (type.getKind()) {
+      case INTERFACE:
+        flags |= ACC_INTERFACE | ACC_ABSTRACT;
+        break;
+      case ANNOTATION_TYPE:
+        flags |= ACC_INTERFACE | ACC_ABSTRACT | ACC_ANNOTATION;
+        break;
+      case ENUM:
+        flags |= ACC_ENUM;
+        break;
+      default:
+        break;
+    }
+    this.index.append("T ").append(this.processingEnv.getElementUtils().getBinaryName(type)).append(' ').append(flags).append('\n');
+    addAnnotations(type);
+
+    for (final ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+      if (method.getParameters().isEmpty() && method.getReturnType().getKind() == TypeKind.VOID) {
+        this.index.append("M ").append(method.getSimpleName()).append(' ').append(toFlags(method.getModifiers())).append('\n');
+        addAnnotations(method);
+      }
+    }
+
+    for (final TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+      addType(nested);
+    }
+  }
+
+  private void addAnnotations(final Element element) {
+    for (final AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      final String name = ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+      if (!RECORDED_ANNOTATIONS.contains(name)) {
+        continue;
+      }
+      this.hasTests = true;
+      this.index.append("A L").append(name.replace('.', '/')).append(';');
+      if (name.equals(JUteTest.class.getName())) {
+        for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : annotation.getElementValues().entrySet()) {
+          final String value = toText(e.getValue().getValue());
+          if (value != null) {
+            this.index.append(' ').append(e.getKey().getSimpleName()).append('=').append(value);
+          }
+        }
+      }
+      this.index.append('\n');
+    }
+  }
+
+  private static String toText(final Object value) {
+    if (value instanceof String) {
+      try {
+        return 'S' + URLEncoder.encode((String) value, "UTF-8");
+      }
+      catch (UnsupportedEncodingException ex) {
+        throw new Error("Can't find UTF-8", ex);
+      }
+    }
+    else if (value instanceof Integer) {
+      return "I" + value;
+    }
+    else if (value instanceof Long) {
+      return "J" + value;
+    }
+    else if (value instanceof Boolean) {
+      return "Z" + value;
+    }
+    else if (value instanceof List) {
+      final StringBuilder result = new StringBuilder("[");
+      boolean first = true;
+      for (final Object item : (List<?>) value) {
+        final String text = toText(((AnnotationValue) item).getValue());
+        if (text != null) {
+          if (!first) {
+            result.append(',');
+          }
+          result.append(text);
+          first = false;
+        }
+      }
+      return result.toString();
+    }
+    return null;
+  }
+
+  private static int toFlags(final Set<Modifier> modifiers) {
+    int result = 0;
+    if (modifiers.contains(Modifier.PUBLIC)) {
+      result |= ACC_PUBLIC;
+    }
+    if (modifiers.contains(Modifier.STATIC)) {
+      result |= ACC_STATIC;
+    }
+    if (modifiers.contains(Modifier.NATIVE)) {
+      result |= ACC_NATIVE;
+    }
+    if (modifiers.contains(Modifier.ABSTRACT)) {
+      result |= ACC_ABSTRACT;
+    }
+    return result;
+  }
+
+  private void writeIndex() {
+    try {
+      final FileObject file = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_PATH);
+      final Writer writer = new OutputStreamWriter(file.openOutputStream(), "UTF-8");
+      try {
+        writer.write(HEADER);
+        writer.write('\n');
+        writer.write(this.index.toString());
+      }
+      finally {
+        writer.close();
+      }
+      if ("file".equals(file.toUri().getScheme())) {
+        this.indexFile = new File(file.toUri());
+      }
+    }
+    catch (IOException ex) {
+      this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Can't write JUte test index : " + ex.getMessage());
+    }
+  }
+}
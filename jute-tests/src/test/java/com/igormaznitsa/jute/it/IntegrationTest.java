@@ -15,6 +15,7 @@
  */
 package com.igormaznitsa.jute.it;
 
+import java.io.File;
 import java.util.*;
 import org.apache.maven.it.Verifier;
 import org.junit.Test;
@@ -325,4 +326,368 @@ public class IntegrationTest extends AbstractJUteITTest {
     assertPattern("test1\\.+OK", juteSection);
     assertPattern("test2\\.+OK", juteSection);
   }
+
+  @Test
+  public void testWarmJvmPool() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("warmJvmPool", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Warm JVM pool: 1 JVM\\(s\\) per configuration", juteSection);
+    assertPattern("test1\\.+OK", juteSection);
+    assertPattern("test2\\.+OK", juteSection);
+    assertPattern("test3\\.+OK", juteSection);
+    assertPattern("test4\\.+OK", juteSection);
+    assertPattern("test5\\.+TIMEOUT", juteSection);
+    assertPattern("Tests run: 5, Errors: 1, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testClassIsolation() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("classIsolation", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Default isolation: CLASS", juteSection);
+    assertPattern("junitA_first\\.+OK", juteSection);
+    assertPattern("junitB_second\\.+OK", juteSection);
+    assertPattern("junitC_failed\\.+ERROR", juteSection);
+    assertPattern("JUNITFAILEDTEST", juteSection);
+    assertPattern("juteA_first\\.+OK", juteSection);
+    assertPattern("juteB_second\\.+OK", juteSection);
+    assertPattern("JUTESECONDTEST", juteSection);
+    assertPattern("juteC_isolated\\.+OK", juteSection);
+    assertNoPattern("##JUTE##", juteSection);
+    assertPattern("Tests run: 6, Errors: 1, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testClassIsolationFailures() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("classIsolationFailures", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("exitA_first\\.+OK", juteSection);
+    assertPattern("exitB_exit\\.+ERROR", juteSection);
+    assertPattern("exitC_third\\.+ERROR", juteSection);
+    assertPattern("juteExitA_first\\.+OK", juteSection);
+    assertPattern("juteExitB_exit\\.+ERROR", juteSection);
+    assertPattern("juteExitC_third\\.+ERROR", juteSection);
+    assertPattern("afterA_first\\.+OK", juteSection);
+    assertPattern("afterB_second\\.+OK", juteSection);
+    assertPattern("@AfterClass\\.+ERROR", juteSection);
+    assertPattern("AFTERCLASSFAILURE", juteSection);
+    assertNoPattern("##JUTE##", juteSection);
+    assertPattern("Tests run: 8, Errors: 5, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testForkCount() throws Exception {
+    final Verifier verifier = verify("forkCount", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Fork count: 2", juteSection);
+    assertPattern("Scheduling: LPT", juteSection);
+    for (final String c : new String[]{"A", "B", "C"}) {
+      int classIndex = -1;
+      for (int i = 0; i < juteSection.size(); i++) {
+        if (juteSection.get(i).endsWith("some.Class" + c + "Test")) {
+          classIndex = i;
+          break;
+        }
+      }
+      assertTrue("Class " + c + " must be in log", classIndex >= 0);
+      // log of a class must not be mixed with logs of other classes
+      assertTrue(juteSection.get(classIndex + 2).matches(".*test" + c + "1\\.+OK.*"));
+      assertTrue(juteSection.get(classIndex + 3).matches(".*test" + c + "[23]\\.+OK.*"));
+      assertTrue(juteSection.get(classIndex + 4).matches(".*test" + c + "[23]\\.+OK.*"));
+    }
+    assertPattern("Tests run: 9, Errors: 0, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testClassDataSharing() throws Exception {
+    final Verifier verifier = verify("classDataSharing", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Class data sharing (archive|is not supported)", juteSection);
+    assertPattern("test1\\.+OK", juteSection);
+    assertPattern("test2\\.+OK", juteSection);
+    assertPattern("test3\\.+OK", juteSection);
+    assertNoPattern("\\[ERROR\\]", juteSection);
+    assertPattern("Tests run: 3, Errors: 0, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testClassPathFile() throws Exception {
+    final Verifier verifier = verify("classPathFile", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Class path mode: (ARGFILE|MANIFEST_JAR)", juteSection);
+    assertPattern("testProperty\\.+OK", juteSection);
+    assertPattern("testClassPath\\.+OK", juteSection);
+    assertPattern("testExtraOption\\.+OK", juteSection);
+    assertPattern("Tests run: 3, Errors: 0, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testTestIndex() throws Exception {
+    final Verifier verifier = verify("testIndex", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Test classes are taken from test index", juteSection);
+    assertNoPattern("class file\\(s\\) changed after the index will be scanned", juteSection);
+    assertPattern("testProperty\\.+OK", juteSection);
+    assertPattern("testIn\\.+OK", juteSection);
+    assertPattern("testAnonymous\\.+OK", juteSection);
+    assertPattern("testNested\\.+OK", juteSection);
+    assertPattern("testIgnored\\.+SKIPPED", juteSection);
+    assertPattern("Tests run: 5, Errors: 0, Skipped: 1", juteSection);
+  }
+
+  @Test
+  public void testPipelinedDiscovery() throws Exception {
+    final Verifier verifier = verify("pipelinedDiscovery", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Tests are started during scan of test classes", juteSection);
+    int previousClassIndex = -1;
+    for (final String c : new String[]{"A", "B", "C"}) {
+      int classIndex = -1;
+      for (int i = 0; i < juteSection.size(); i++) {
+        if (juteSection.get(i).endsWith("some.Class" + c + "Test")) {
+          classIndex = i;
+          break;
+        }
+      }
+      assertTrue("Class " + c + " must be in log after previous class", classIndex > previousClassIndex);
+      previousClassIndex = classIndex;
+    }
+    assertPattern("Detected 9 potential test method\\(s\\)", juteSection);
+    assertPattern("Tests run: 9, Errors: 0, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testInProcessIsolation() throws Exception {
+    final Verifier verifier = verify("inProcess", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Default isolation: IN_PROCESS", juteSection);
+    for (int i = 1; i <= 7; i++) {
+      assertPattern("test" + i + "\\.+OK", juteSection);
+    }
+    assertPattern("Output before exit", juteSection);
+    assertPattern("Tests run: 7, Errors: 0, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testAdaptiveBatching() throws Exception {
+    // history is kept out of target because the verifier cleans the project, the first run fills it
+    final File history = new File(getTestFolder("adaptiveBatching"), "jute-history.bin");
+    if (history.isFile()) {
+      assertTrue(history.delete());
+    }
+    final List<String> firstSection = extractJuteSection(verify("adaptiveBatching", false));
+    assertPattern("Tests faster than 10000 ms are executed in batches", firstSection);
+    assertPattern("Executed in the same JVM: false", firstSection);
+    assertPattern("Tests run: 5, Errors: 0, Skipped: 0", firstSection);
+
+    final List<String> juteSection = extractJuteSection(verify("adaptiveBatching", false));
+    assertPattern("Executed in the same JVM: true", juteSection);
+    assertPattern("Batch of 3 test\\(s\\) of some\\.SharedStateTest has not passed", juteSection);
+    for (int i = 1; i <= 3; i++) {
+      assertPattern("test" + i + "\\.+OK", juteSection);
+    }
+    assertPattern("Tests run: 5, Errors: 0, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testShareAnalysis() throws Exception {
+    final Verifier verifier = verify("shareAnalysis", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Default isolation: AUTO", juteSection);
+    assertPattern("Calls in JVM: \\[test1\\]", juteSection);
+    assertPattern("Share analysis: 1 of 2 test class\\(es\\) require isolation", juteSection);
+    assertPattern("Tests run: 4, Errors: 0, Skipped: 0", juteSection);
+
+    final List<String> report = verifier.loadLines("target/jute-share-analysis.txt", "UTF-8");
+    assertPattern("some\\.SafeTest SHARE-SAFE", report);
+    assertPattern("some\\.UnsafeTest ISOLATION-REQUIRED", report);
+    assertPattern("test1: writes static field some\\.UnsafeTest\\.counter", report);
+  }
+
+  @Test
+  public void testMemoryBudget() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("memoryBudget", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Memory budget: 700 MB", juteSection);
+    for (final String c : new String[]{"A", "B", "C"}) {
+      for (int i = 1; i <= 3; i++) {
+        assertPattern("test" + c + i + "\\.+OK", juteSection);
+      }
+    }
+    assertPattern("testHuge\\.+ERROR", juteSection);
+    assertPattern("Estimated memory of test JVM \\(2112 MB\\) exceeds memory budget \\(700 MB\\)", juteSection);
+    assertPattern("Tests run: 10, Errors: 1, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testAutoForkCount() throws Exception {
+    final Verifier verifier = verify("autoForkCount", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Fork count: AUTO \\(1\\.\\.2\\), started with [12]", juteSection);
+    for (final String c : new String[]{"A", "B", "C"}) {
+      for (int i = 1; i <= 3; i++) {
+        assertPattern("test" + c + i + "\\.+OK", juteSection);
+      }
+    }
+    assertPattern("Tests run: 9, Errors: 0, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testConsoleCapture() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("consoleCapture", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Console capture: FILE", juteSection);
+    assertPattern("test1\\.+OK", juteSection);
+    assertPattern("test2\\.+OK", juteSection);
+    assertPattern("test3\\.+OK", juteSection);
+    assertNoPattern("Printed by passed test", juteSection);
+    assertPattern("test4\\.+ERROR", juteSection);
+    assertPattern("Printed by failed test", juteSection);
+    assertPattern("Error of failed test", juteSection);
+    assertPattern("test5\\.+TIMEOUT", juteSection);
+    assertPattern("Printed before timeout", juteSection);
+    assertPattern("Tests run: 5, Errors: 2, Skipped: 0", juteSection);
+
+    assertPattern("Printed by passed test", verifier.loadLines("target/jute-console/some.DefaultTest_test3.out", "UTF-8"));
+  }
+
+  @Test
+  public void testConsoleLimit() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("consoleLimit", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Console limit: 1024 byte\\(s\\)", juteSection);
+    // results of tests executed in the same JVM are found even if their output is skipped
+    assertPattern("test1\\.+OK", juteSection);
+    assertPattern("test2\\.+OK", juteSection);
+    assertPattern("test3\\.+OK", juteSection);
+    assertPattern("testQuiet\\.+OK", juteSection);
+    assertPattern("testChatty\\.+ERROR", juteSection);
+    assertPattern("First line of chatty test", juteSection);
+    assertPattern("\\.\\.\\.skipped \\d+ byte\\(s\\), full output: .*some\\.ChattyTest#testChatty\\.out\\.\\.\\.", juteSection);
+    assertPattern("Last line of chatty test", juteSection);
+    assertNoPattern("Noise line 25000$", juteSection);
+    assertPattern("Tests run: 5, Errors: 1, Skipped: 0", juteSection);
+
+    final List<String> spill = verifier.loadLines("target/jute-logs/some.ChattyTest#testChatty.out", "UTF-8");
+    assertPattern("Noise line 25000", spill);
+  }
+
+  @Test
+  public void testStreaming() throws Exception {
+    final Verifier verifier = verify("streaming", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Streaming: results, console", juteSection);
+    assertPatternOrder(juteSection, "\\[some\\.SlowTest#testSlow\\] Working step 1", "\\[some\\.SlowTest#testSlow\\] Working step 3", "\\[some\\.SlowTest#testSlow\\] OK \\(", "testSlow\\.+OK");
+    assertPattern("\\[WARNING\\] \\[some\\.FastTest#testFast\\] Fast test warning", juteSection);
+    assertPatternOrder(juteSection, "\\[some\\.FastTest#testFast\\] OK \\(", "testFast\\.+OK");
+    assertNoPattern("##JUTE##", juteSection);
+    assertPattern("Tests run: 2, Errors: 0, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testResultChannel() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("resultChannel", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Result channel: 127\\.0\\.0\\.1:\\d+", juteSection);
+    assertPattern("testPassed\\.+OK \\(\\d{2}:\\d{2}:\\d{2}\\.\\d{3}; startup \\d{2}:\\d{2}:\\d{2}\\.\\d{3}, body 00:00:00\\.[3-9]\\d{2}\\)", juteSection);
+    assertPattern("testAssumption\\.+OK \\(.*assumption failed\\)", juteSection);
+    assertPattern("testFailed\\.+ERROR \\(.*\\) - java\\.lang\\.AssertionError: Wrong value expected:<1> but was:<2>", juteSection);
+    assertPattern("testJUtePassed\\.+OK \\(.*body 00:00:00\\.[3-9]\\d{2}\\)", juteSection);
+    assertPattern("testJUteError\\.+ERROR \\(.*\\) - java\\.lang\\.IllegalStateException: Broken state", juteSection);
+    assertPattern("Tests run: 5, Errors: 2, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testShutdownGrace() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("shutdownGrace", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Results are taken before JVM exit, shutdown grace 300 ms", juteSection);
+    assertPattern("testPassed\\.+OK", juteSection);
+    assertPattern("testFailed\\.+ERROR .* - java\\.lang\\.AssertionError: Expected failure", juteSection);
+    assertPattern("Failed test body", juteSection);
+    assertNoPattern("TIMEOUT", juteSection);
+    assertNoPattern("##JUTE##", juteSection);
+    assertPattern("2 test JVM\\(s\\) killed after shutdown grace", juteSection);
+    assertPattern("Tests run: 2, Errors: 1, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testHangDetection() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("hangDetection", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Heartbeat every 200 ms, JVM idle for 1000 ms is killed as hung", juteSection);
+    assertPattern("testHanging\\.+HUNG", juteSection);
+    assertPattern("Hanging test body", juteSection);
+    assertPattern("testWorking\\.+OK", juteSection);
+    assertNoPattern("TIMEOUT", juteSection);
+    assertPattern("Tests run: 2, Errors: 1, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testThreadDumpOnTimeout() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("threadDump", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("Thread dump of JVM stopped by timeout is written into", juteSection);
+    assertPattern("testPassed\\.+OK", juteSection);
+    assertPattern("testStuck\\.+TIMEOUT", juteSection);
+    assertPatternOrder(juteSection, "Thread dump", "some\\.StuckTest#testStuck\\.threaddump\\.txt", "\"main\" WAITING", "at some\\.StuckTest\\.testStuck\\(StuckTest\\.java:12\\)", "Stuck test body", "Full thread dump");
+    assertTrue(new File(verifier.getBasedir(), "target/jute-logs/some.StuckTest#testStuck.threaddump.txt").isFile());
+    assertPattern("Tests run: 2, Errors: 1, Skipped: 0", juteSection);
+  }
+
+  @Test
+  public void testProcessTree() throws Exception {
+    final Verifier verifier = verifyWithExpectedError("processTree", false);
+
+    final List<String> juteSection = extractJuteSection(verifier);
+
+    assertPattern("testLeavesChild\\.+OK", juteSection);
+    assertPattern("testStuckWithChild\\.+TIMEOUT", juteSection);
+    if (System.getProperty("java.specification.version").startsWith("1.")) {
+      // descendants of processes can be found only since Java 9
+      assertNoPattern("orphan process", juteSection);
+    }
+    else {
+      assertPattern("1 orphan process\\(es\\) left by test JVMs killed", juteSection);
+    }
+    assertPattern("Tests run: 2, Errors: 1, Skipped: 0", juteSection);
+  }
 }
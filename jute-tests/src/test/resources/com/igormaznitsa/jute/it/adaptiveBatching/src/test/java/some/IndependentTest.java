@@ -0,0 +1,21 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.igormaznitsa.jute.annotations.*;
+
+public class IndependentTest {
+
+  private static boolean executed;
+
+  @Test
+  public void test1() throws Exception {
+    executed = true;
+  }
+
+  @Test
+  @JUteTest(printConsole = true)
+  public void test2() throws Exception {
+    System.out.println("Executed in the same JVM: " + executed);
+  }
+}
@@ -0,0 +1,24 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class SharedStateTest {
+
+  private static int counter;
+
+  @Test
+  public void test1() throws Exception {
+    assertEquals(1, ++counter);
+  }
+
+  @Test
+  public void test2() throws Exception {
+    assertEquals(1, ++counter);
+  }
+
+  @Test
+  public void test3() throws Exception {
+    assertEquals(1, ++counter);
+  }
+}
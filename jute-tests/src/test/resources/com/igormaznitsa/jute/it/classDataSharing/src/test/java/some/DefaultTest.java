@@ -0,0 +1,22 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DefaultTest {
+
+  @Test
+  public void test1() {
+    assertEquals(4, 2 + 2);
+  }
+
+  @Test
+  public void test2() {
+    assertEquals(6, 3 + 3);
+  }
+
+  @Test
+  public void test3() {
+    assertEquals(8, 4 + 4);
+  }
+}
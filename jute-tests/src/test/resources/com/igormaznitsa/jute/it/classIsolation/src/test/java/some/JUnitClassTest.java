@@ -0,0 +1,34 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class JUnitClassTest {
+
+  private static int beforeClassCounter;
+  private static boolean firstExecuted;
+
+  @BeforeClass
+  public static void beforeClass(){
+    beforeClassCounter++;
+  }
+
+  @Test
+  public void junitA_first() {
+    assertEquals(1, beforeClassCounter);
+    firstExecuted = true;
+  }
+
+  @Test
+  public void junitB_second() {
+    assertEquals(1, beforeClassCounter);
+    assertTrue(firstExecuted);
+  }
+
+  @Test
+  public void junitC_failed() {
+    System.out.println("JUNITFAILEDTEST");
+    fail("FAIL_TEXT");
+  }
+
+}
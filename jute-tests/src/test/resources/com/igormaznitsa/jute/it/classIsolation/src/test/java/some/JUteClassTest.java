@@ -0,0 +1,36 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.igormaznitsa.jute.annotations.*;
+
+public class JUteClassTest {
+
+  private static int beforeClassCounter;
+  private static boolean firstExecuted;
+
+  @BeforeClass
+  public static void beforeClass(){
+    beforeClassCounter++;
+  }
+
+  @JUteTest
+  public void juteA_first() {
+    assertEquals(1, beforeClassCounter);
+    firstExecuted = true;
+  }
+
+  @JUteTest(printConsole = true)
+  public void juteB_second() {
+    System.out.println("JUTESECONDTEST");
+    assertEquals(1, beforeClassCounter);
+    assertTrue(firstExecuted);
+  }
+
+  @JUteTest(isolation = "METHOD")
+  public void juteC_isolated() {
+    assertEquals(1, beforeClassCounter);
+    assertFalse(firstExecuted);
+  }
+
+}
@@ -0,0 +1,20 @@
+package some;
+
+import org.junit.*;
+
+public class JUnitAfterClassTest {
+
+  @AfterClass
+  public static void afterClass() {
+    throw new RuntimeException("AFTERCLASSFAILURE");
+  }
+
+  @Test
+  public void afterA_first() {
+  }
+
+  @Test
+  public void afterB_second() {
+  }
+
+}
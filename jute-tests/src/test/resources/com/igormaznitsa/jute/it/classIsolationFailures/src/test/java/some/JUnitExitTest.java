@@ -0,0 +1,20 @@
+package some;
+
+import org.junit.*;
+
+public class JUnitExitTest {
+
+  @Test
+  public void exitA_first() {
+  }
+
+  @Test
+  public void exitB_exit() {
+    System.exit(3);
+  }
+
+  @Test
+  public void exitC_third() {
+  }
+
+}
@@ -0,0 +1,20 @@
+package some;
+
+import com.igormaznitsa.jute.annotations.*;
+
+public class JUteExitTest {
+
+  @JUteTest
+  public void juteExitA_first() {
+  }
+
+  @JUteTest
+  public void juteExitB_exit() {
+    System.exit(3);
+  }
+
+  @JUteTest
+  public void juteExitC_third() {
+  }
+
+}
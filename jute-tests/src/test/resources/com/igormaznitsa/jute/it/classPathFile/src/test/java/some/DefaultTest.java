@@ -0,0 +1,24 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.igormaznitsa.jute.annotations.*;
+
+public class DefaultTest {
+
+  @Test
+  public void testProperty() {
+    assertEquals("some value", System.getProperty("some.property"));
+  }
+
+  @Test
+  public void testClassPath() throws Exception {
+    assertNotNull(Class.forName("some.Default"));
+  }
+
+  @JUteTest(jvmOpts = {"-Dtest.option=extra"})
+  public void testExtraOption() {
+    assertEquals("extra", System.getProperty("test.option"));
+    assertEquals("some value", System.getProperty("some.property"));
+  }
+}
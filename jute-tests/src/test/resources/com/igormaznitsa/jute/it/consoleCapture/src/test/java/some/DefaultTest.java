@@ -0,0 +1,49 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.igormaznitsa.jute.annotations.*;
+
+public class DefaultTest {
+  @Test
+  public void test1() throws Exception {
+    final StringBuilder bldr = new StringBuilder();
+    while(true){
+      final int val = System.in.read();
+      if(val<0 || val == '$') break;
+      bldr.append((char)val);
+    }
+    assertEquals("TerminalString", bldr.toString());
+  }
+
+  @Test
+  @JUteTest(in="LocalStr$")
+  public void test2() throws Exception {
+    final StringBuilder bldr = new StringBuilder();
+    while(true){
+      final int val = System.in.read();
+      if(val<0 || val == '$') break;
+      bldr.append((char)val);
+    }
+    assertEquals("LocalStr", bldr.toString());
+  }
+
+  @Test
+  public void test3() throws Exception {
+    System.out.println("Printed by passed test");
+  }
+
+  @Test
+  public void test4() throws Exception {
+    System.out.println("Printed by failed test");
+    System.err.println("Error of failed test");
+    fail("Expected failure");
+  }
+
+  @Test
+  @JUteTest(timeout=2000)
+  public void test5() throws Exception {
+    System.out.println("Printed before timeout");
+    Thread.sleep(60000L);
+  }
+}
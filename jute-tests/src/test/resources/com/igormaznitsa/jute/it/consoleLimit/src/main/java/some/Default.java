@@ -0,0 +1,5 @@
+package some;
+
+public class Default {
+
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.igormaznitsa.jute.annotations.*;
+
+@JUteTest(isolation = "CLASS")
+public class ChattyBatchTest {
+  @Test
+  public void test1() throws Exception {
+    for (int i = 0; i < 50000; i++) {
+      System.out.println("Noise line " + i);
+    }
+  }
+
+  @Test
+  public void test2() throws Exception {
+    for (int i = 0; i < 50000; i++) {
+      System.out.println("Noise line " + i);
+    }
+  }
+
+  @Test
+  public void test3() throws Exception {
+    for (int i = 0; i < 50000; i++) {
+      System.out.println("Noise line " + i);
+    }
+  }
+}
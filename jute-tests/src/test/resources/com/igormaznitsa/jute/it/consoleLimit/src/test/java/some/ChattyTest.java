@@ -0,0 +1,21 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ChattyTest {
+  @Test
+  public void testChatty() throws Exception {
+    System.out.println("First line of chatty test");
+    for (int i = 0; i < 50000; i++) {
+      System.out.println("Noise line " + i);
+    }
+    System.out.println("Last line of chatty test");
+    fail("Expected failure");
+  }
+
+  @Test
+  public void testQuiet() throws Exception {
+    System.out.println("Quiet test");
+  }
+}
@@ -0,0 +1,21 @@
+package some;
+
+import com.igormaznitsa.jute.annotations.*;
+
+public class ClassATest {
+
+  @JUteTest
+  public void testA1() throws Exception {
+    Thread.sleep(500L);
+  }
+
+  @JUteTest(order = 1)
+  public void testA2() throws Exception {
+    Thread.sleep(500L);
+  }
+
+  @JUteTest(order = 1)
+  public void testA3() throws Exception {
+    Thread.sleep(500L);
+  }
+}
@@ -0,0 +1,21 @@
+package some;
+
+import com.igormaznitsa.jute.annotations.*;
+
+public class ClassBTest {
+
+  @JUteTest
+  public void testB1() throws Exception {
+    Thread.sleep(500L);
+  }
+
+  @JUteTest(order = 1)
+  public void testB2() throws Exception {
+    Thread.sleep(500L);
+  }
+
+  @JUteTest(order = 1)
+  public void testB3() throws Exception {
+    Thread.sleep(500L);
+  }
+}
@@ -0,0 +1,25 @@
+package some;
+
+import org.junit.*;
+
+public class HangingTest {
+
+  @Test
+  public void testHanging() throws Exception {
+    System.out.println("Hanging test body");
+    final Object lock = new Object();
+    synchronized (lock) {
+      lock.wait();
+    }
+  }
+
+  @Test
+  public void testWorking() throws Exception {
+    long value = 0L;
+    final long end = System.currentTimeMillis() + 1500L;
+    while (System.currentTimeMillis() < end) {
+      value += System.nanoTime() % 7L;
+    }
+    System.out.println("Working test body " + (value >= 0L));
+  }
+}
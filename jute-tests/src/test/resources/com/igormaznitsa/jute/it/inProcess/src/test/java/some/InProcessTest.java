@@ -0,0 +1,69 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.igormaznitsa.jute.annotations.*;
+
+public class InProcessTest {
+
+  private static int counter;
+
+  @Test
+  public void test1() throws Exception {
+    assertEquals(1, ++counter);
+    System.setProperty("some.property", "changed");
+  }
+
+  @Test
+  public void test2() throws Exception {
+    assertEquals(1, ++counter);
+    assertNull(System.getProperty("some.property"));
+  }
+
+  @Test
+  public void test3() throws Exception {
+    final StringBuilder bldr = new StringBuilder();
+    while (true) {
+      final int val = System.in.read();
+      if (val < 0 || val == '$') {
+        break;
+      }
+      bldr.append((char) val);
+    }
+    assertEquals("TerminalString", bldr.toString());
+    System.out.println("Output of test3");
+  }
+
+  @JUteTest(printConsole = true)
+  public void test4() throws Exception {
+    System.out.println("Output before exit");
+    System.exit(0);
+  }
+
+  @Test
+  public void test5() throws Exception {
+    final Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(60000L);
+        }
+        catch (InterruptedException ex) {
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    assertEquals(1, ++counter);
+  }
+
+  @Test
+  public void test6() throws Exception {
+    assertEquals(1, ++counter);
+  }
+
+  @JUteTest(isolation = "METHOD")
+  public void test7() throws Exception {
+    assertEquals(1, ++counter);
+  }
+}
@@ -0,0 +1,21 @@
+package some;
+
+import com.igormaznitsa.jute.annotations.*;
+
+public class ClassCTest {
+
+  @JUteTest
+  public void testC1() throws Exception {
+    Thread.sleep(500L);
+  }
+
+  @JUteTest(order = 1)
+  public void testC2() throws Exception {
+    Thread.sleep(500L);
+  }
+
+  @JUteTest(order = 1)
+  public void testC3() throws Exception {
+    Thread.sleep(500L);
+  }
+}
@@ -0,0 +1,10 @@
+package some;
+
+import com.igormaznitsa.jute.annotations.*;
+
+public class ClassDTest {
+
+  @JUteTest(jvmOpts = {"-Xmx2g"})
+  public void testHuge() throws Exception {
+  }
+}
@@ -0,0 +1,27 @@
+package some;
+
+import org.junit.*;
+
+public class ChildProcessTest {
+
+  private static void startChild() throws Exception {
+    new ProcessBuilder("sleep", "20").start();
+  }
+
+  @Test
+  public void testLeavesChild() throws Exception {
+    startChild();
+    Thread.sleep(2000L);
+    System.out.println("Child is left");
+  }
+
+  @Test
+  public void testStuckWithChild() throws Exception {
+    startChild();
+    System.out.println("Stuck with child");
+    final Object lock = new Object();
+    synchronized (lock) {
+      lock.wait();
+    }
+  }
+}
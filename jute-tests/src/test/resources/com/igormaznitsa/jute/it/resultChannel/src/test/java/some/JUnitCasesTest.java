@@ -0,0 +1,26 @@
+package some;
+
+import org.junit.*;
+
+public class JUnitCasesTest {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    Thread.sleep(200L);
+  }
+
+  @Test
+  public void testPassed() throws Exception {
+    Thread.sleep(300L);
+  }
+
+  @Test
+  public void testFailed() {
+    Assert.assertEquals("Wrong value", 1, 2);
+  }
+
+  @Test
+  public void testAssumption() {
+    Assume.assumeTrue(false);
+  }
+}
@@ -0,0 +1,22 @@
+package some;
+
+import com.igormaznitsa.jute.annotations.*;
+import org.junit.*;
+
+public class JUteCasesTest {
+
+  @Before
+  public void before() throws Exception {
+    Thread.sleep(100L);
+  }
+
+  @JUteTest
+  public void testJUtePassed() throws Exception {
+    Thread.sleep(300L);
+  }
+
+  @JUteTest
+  public void testJUteError() {
+    throw new IllegalStateException("Broken state");
+  }
+}
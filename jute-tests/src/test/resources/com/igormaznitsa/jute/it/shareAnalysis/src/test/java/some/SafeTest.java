@@ -0,0 +1,22 @@
+package some;
+
+import java.util.*;
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.igormaznitsa.jute.annotations.*;
+
+public class SafeTest {
+
+  private static final List<String> CALLS = new ArrayList<String>();
+
+  @Test
+  public void test1() throws Exception {
+    CALLS.add("test1");
+  }
+
+  @Test
+  @JUteTest(printConsole = true)
+  public void test2() throws Exception {
+    System.out.println("Calls in JVM: " + CALLS);
+  }
+}
@@ -0,0 +1,33 @@
+package some;
+
+import org.junit.*;
+
+public class SlowShutdownTest {
+
+  private static void addSlowShutdownHook() {
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(5000L);
+        }
+        catch (InterruptedException ex) {
+          // ignore
+        }
+      }
+    });
+  }
+
+  @Test
+  public void testPassed() {
+    addSlowShutdownHook();
+    System.out.println("Passed test body");
+  }
+
+  @Test
+  public void testFailed() {
+    addSlowShutdownHook();
+    System.out.println("Failed test body");
+    Assert.fail("Expected failure");
+  }
+}
@@ -0,0 +1,10 @@
+package some;
+
+import org.junit.*;
+
+public class FastTest {
+  @Test
+  public void testFast() throws Exception {
+    System.err.println("Fast test warning");
+  }
+}
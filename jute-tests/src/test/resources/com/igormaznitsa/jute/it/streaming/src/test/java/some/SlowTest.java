@@ -0,0 +1,13 @@
+package some;
+
+import org.junit.*;
+
+public class SlowTest {
+  @Test
+  public void testSlow() throws Exception {
+    for (int i = 1; i <= 3; i++) {
+      System.out.println("Working step " + i);
+      Thread.sleep(500L);
+    }
+  }
+}
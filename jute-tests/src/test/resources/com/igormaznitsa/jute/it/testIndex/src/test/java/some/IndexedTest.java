@@ -0,0 +1,47 @@
+package some;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+import com.igormaznitsa.jute.annotations.*;
+
+@JUteTest(jvmOpts = {"-Dsome.property=some value, with comma"}, in = "Hello$")
+public class IndexedTest {
+
+  public void testProperty() throws Exception {
+    assertEquals("some value, with comma", System.getProperty("some.property"));
+  }
+
+  public void testIn() throws Exception {
+    final StringBuilder bldr = new StringBuilder();
+    while (true) {
+      final int val = System.in.read();
+      if (val < 0 || val == '$') {
+        break;
+      }
+      bldr.append((char) val);
+    }
+    assertEquals("Hello", bldr.toString());
+  }
+
+  @Test
+  @Ignore
+  public void testIgnored() throws Exception {
+    fail("Must not be started");
+  }
+
+  public void testAnonymous() throws Exception {
+    final Runnable run = new Runnable() {
+      @Override
+      public void run() {
+      }
+    };
+    run.run();
+  }
+
+  public static class NestedTest {
+
+    @Test
+    public void testNested() throws Exception {
+    }
+  }
+}
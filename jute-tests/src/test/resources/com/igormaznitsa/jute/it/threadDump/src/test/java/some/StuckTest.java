@@ -0,0 +1,20 @@
+package some;
+
+import org.junit.*;
+
+public class StuckTest {
+
+  @Test
+  public void testStuck() throws Exception {
+    System.out.println("Stuck test body");
+    final Object lock = new Object();
+    synchronized (lock) {
+      lock.wait();
+    }
+  }
+
+  @Test
+  public void testPassed() {
+    System.out.println("Passed test body");
+  }
+}
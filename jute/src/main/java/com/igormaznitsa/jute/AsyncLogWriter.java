@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writer of streamed records into Maven log through single thread, so that
+ * concurrently working forks don't contend on the log. Writers wait if too
+ * many records are queued.
+ *
+ * @since 1.1.2
+ */
+final class AsyncLogWriter {
+
+  /**
+   * Max number of queued records.
+   */
+  static final int QUEUE_SIZE = 8192;
+
+  private static final class Record {
+
+    private final boolean warn;
+    private final CharSequence text;
+    private final CountDownLatch written;
+
+    private Record(final boolean warn, final CharSequence text) {
+      this(warn, text, null);
+    }
+
+    private Record(final boolean warn, final CharSequence text, final CountDownLatch written) {
+      this.warn = warn;
+      this.text = text;
+      this.written = written;
+    }
+  }
+
+  private static final Record END = new Record(false, "");
+
+  private final Log log;
+  private final BlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(QUEUE_SIZE);
+  private final Thread thread;
+
+  AsyncLogWriter(final Log log) {
+    this.log = log;
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            final Record record = queue.take();
+            if (record == END) {
+              break;
+            }
+            if (record.written != null) {
+              record.written.countDown();
+            }
+            else if (record.warn) {
+              AsyncLogWriter.this.log.warn(record.text);
+            }
+            else {
+              AsyncLogWriter.this.log.info(record.text);
+            }
+          }
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, "jute-log-writer");
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    this.thread.start();
+  }
+
+  void info(final CharSequence text) {
+    put(new Record(false, text));
+  }
+
+  void warn(final CharSequence text) {
+    put(new Record(true, text));
+  }
+
+  private void put(final Record record) {
+    if (!this.thread.isAlive()) {
+      return;
+    }
+    try {
+      this.queue.put(record);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Wait until all queued records are written, so that records logged after
+   * the call by other ways follow them.
+   *
+   * @throws InterruptedException if the thread is interrupted during waiting
+   */
+  void flush() throws InterruptedException {
+    final CountDownLatch written = new CountDownLatch(1);
+    put(new Record(false, null, written));
+    while (this.thread.isAlive() && !written.await(100L, TimeUnit.MILLISECONDS)) {
+      // wait while the writer is alive
+    }
+  }
+
+  /**
+   * Write all queued records and stop the writer thread.
+   *
+   * @throws InterruptedException if the thread is interrupted during waiting
+   */
+  void close() throws InterruptedException {
+    if (this.thread.isAlive()) {
+      this.queue.put(END);
+      this.thread.join();
+    }
+  }
+}
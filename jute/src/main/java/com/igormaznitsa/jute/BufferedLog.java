@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Log collecting records in memory to be replayed later into another log, it
+ * allows to keep output of a test class together when several classes are
+ * processed concurrently.
+ *
+ * @since 1.1.2
+ */
+final class BufferedLog implements Log {
+
+  private enum Level {
+    DEBUG, INFO, WARN, ERROR
+  }
+
+  private static final class Record {
+
+    private final Level level;
+    private final CharSequence content;
+    private final Throwable error;
+
+    private Record(final Level level, final CharSequence content, final Throwable error) {
+      this.level = level;
+      this.content = content;
+      this.error = error;
+    }
+  }
+
+  private final Log target;
+  private final List<Record> records = new ArrayList<Record>();
+
+  /**
+   * Constructor.
+   *
+   * @param target log to be used for level checks and as default replay
+   * target, must not be null
+   */
+  BufferedLog(final Log target) {
+    this.target = target;
+  }
+
+  private void add(final Level level, final CharSequence content, final Throwable error) {
+    synchronized (this.records) {
+      this.records.add(new Record(level, content, error));
+    }
+  }
+
+  /**
+   * Replay all collected records into the target log and clear the buffer.
+   */
+  void replay() {
+    final List<Record> copy;
+    synchronized (this.records) {
+      copy = new ArrayList<Record>(this.records);
+      this.records.clear();
+    }
+    for (final Record r : copy) {
+      switch (r.level) {
+        case DEBUG: {
+          if (r.error == null) {
+            this.target.debug(r.content);
+          }
+          else {
+            this.target.debug(r.content, r.error);
+          }
+        }
+        break;
+        case INFO: {
+          if (r.error == null) {
+            this.target.info(r.content);
+          }
+          else {
+            this.target.info(r.content, r.error);
+          }
+        }
+        break;
+        case WARN: {
+          if (r.error == null) {
+            this.target.warn(r.content);
+          }
+          else {
+            this.target.warn(r.content, r.error);
+          }
+        }
+        break;
+        default: {
+          if (r.error == null) {
+            this.target.error(r.content);
+          }
+          else {
+            this.target.error(r.content, r.error);
+          }
+        }
+        break;
+      }
+    }
+  }
+
+  @Override
+  public boolean isDebugEnabled() {
+    return this.target.isDebugEnabled();
+  }
+
+  @Override
+  public void debug(final CharSequence content) {
+    debug(content, null);
+  }
+
+  @Override
+  public void debug(final CharSequence content, final Throwable error) {
+    if (isDebugEnabled()) {
+      add(Level.DEBUG, content, error);
+    }
+  }
+
+  @Override
+  public void debug(final Throwable error) {
+    debug(null, error);
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return this.target.isInfoEnabled();
+  }
+
+  @Override
+  public void info(final CharSequence content) {
+    info(content, null);
+  }
+
+  @Override
+  public void info(final CharSequence content, final Throwable error) {
+    add(Level.INFO, content, error);
+  }
+
+  @Override
+  public void info(final Throwable error) {
+    info(null, error);
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return this.target.isWarnEnabled();
+  }
+
+  @Override
+  public void warn(final CharSequence content) {
+    warn(content, null);
+  }
+
+  @Override
+  public void warn(final CharSequence content, final Throwable error) {
+    add(Level.WARN, content, error);
+  }
+
+  @Override
+  public void warn(final Throwable error) {
+    warn(null, error);
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return this.target.isErrorEnabled();
+  }
+
+  @Override
+  public void error(final CharSequence content) {
+    error(content, null);
+  }
+
+  @Override
+  public void error(final CharSequence content, final Throwable error) {
+    add(Level.ERROR, content, error);
+  }
+
+  @Override
+  public void error(final Throwable error) {
+    error(null, error);
+  }
+}
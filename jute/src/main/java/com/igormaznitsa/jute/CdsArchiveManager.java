@@ -0,0 +1,319 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.maven.plugin.logging.Log;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.StartedProcess;
+
+/**
+ * Manager of dynamic class data sharing archive for test JVMs. If there is no
+ * archive then it is created in background by a training JVM started with
+ * -XX:ArchiveClassesAtExit, the JVM loads the runner and JUnit classes and
+ * exits. Test JVMs started after that get -XX:SharedArchiveFile. Archive file
+ * name is hash of the JVM, its version and the class path with size and last
+ * modification time of every jar, so that the archive is rebuilt if any of
+ * them is changed. If the JVM doesn't support dynamic archives then the
+ * manager is not used.
+ * <p>
+ * JVM can't archive classes from folders, so the archive is made only for jar
+ * files of the class path and jar files are placed before folders in the class
+ * path of test JVMs, because the archive class path must be prefix of the
+ * class path of a JVM using the archive.
+ *
+ * @since 1.1.2
+ */
+final class CdsArchiveManager {
+
+  private static final String ARCHIVE_EXTENSION = ".jsa";
+  private static final long PROBE_TIMEOUT = 30000L;
+  private static final long CREATION_TIMEOUT = 60000L;
+
+  private final Log log;
+  private final String jvm;
+  private final String archiveClassPath;
+  private final String classPath;
+  private final File archive;
+  private final File tempArchive;
+  private final boolean supported;
+  private StartedProcess creation;
+  private volatile boolean ready;
+
+  /**
+   * Constructor, it checks the JVM to detect support of dynamic archives.
+   *
+   * @param log the logger
+   * @param folder folder to keep archives
+   * @param jvm JVM interpreter
+   * @param classPath class path of test JVMs
+   */
+  CdsArchiveManager(final Log log, final File folder, final String jvm, final String classPath) {
+    this.log = log;
+
+    final StringBuilder jars = new StringBuilder();
+    final StringBuilder folders = new StringBuilder();
+    for (final String path : classPath.split(File.pathSeparator)) {
+      if (path.length() == 0) {
+        continue;
+      }
+      final StringBuilder buffer = new File(path).isDirectory() ? folders : jars;
+      if (buffer.length() > 0) {
+        buffer.append(File.pathSeparatorChar);
+      }
+      buffer.append(path);
+    }
+
+    this.jvm = jvm;
+    this.archiveClassPath = jars.toString();
+    this.classPath = folders.length() == 0 ? this.archiveClassPath : this.archiveClassPath + File.pathSeparatorChar + folders;
+
+    final String version = probeJvm(log, jvm);
+    this.supported = version != null;
+    if (this.supported) {
+      final String hash = makeHash(makeArchiveKey(jvm, version, this.archiveClassPath));
+      this.archive = new File(folder, hash + ARCHIVE_EXTENSION);
+      this.tempArchive = new File(folder, hash + ".tmp");
+      this.ready = this.archive.isFile();
+    }
+    else {
+      this.archive = null;
+      this.tempArchive = null;
+    }
+  }
+
+  /**
+   * Check that JVM supports dynamic archives.
+   *
+   * @return version text of the JVM if it supports dynamic archives, null
+   * otherwise
+   */
+  private static String probeJvm(final Log log, final String jvm) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    try {
+      final int exitCode = new ProcessExecutor(jvm, "-XX:+PrintFlagsFinal", "-version")
+              .redirectOutput(out)
+              .redirectError(err)
+              .timeout(PROBE_TIMEOUT, TimeUnit.MILLISECONDS)
+              .execute()
+              .getExitValue();
+      final String flags = new String(out.toByteArray(), Charset.defaultCharset());
+      if (exitCode != 0 || !flags.contains(" ArchiveClassesAtExit ")) {
+        log.debug("JVM doesn't support dynamic class data sharing archive: " + jvm);
+        return null;
+      }
+      return new String(err.toByteArray(), Charset.defaultCharset()).trim();
+    }
+    catch (IOException ex) {
+      log.debug("Can't check JVM for class data sharing: " + jvm, ex);
+    }
+    catch (TimeoutException ex) {
+      log.debug("Timeout during JVM check for class data sharing: " + jvm);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  /**
+   * Make text identifying content of an archive. Jar files can be rebuilt with
+   * the same path, for instance SNAPSHOT artifacts, so that size and last
+   * modification time of every jar are included.
+   *
+   * @param jvm JVM interpreter
+   * @param version version text of the JVM
+   * @param archiveClassPath class path of archived jar files
+   * @return text to be hashed for the archive name
+   */
+  static String makeArchiveKey(final String jvm, final String version, final String archiveClassPath) {
+    final StringBuilder result = new StringBuilder();
+    result.append(jvm).append('\n').append(version);
+    for (final String path : archiveClassPath.split(File.pathSeparator)) {
+      if (path.length() == 0) {
+        continue;
+      }
+      final File jar = new File(path);
+      result.append('\n').append(path).append(' ').append(jar.length()).append(' ').append(jar.lastModified());
+    }
+    return result.toString();
+  }
+
+  private static String makeHash(final String text) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      final byte[] hash = digest.digest(text.getBytes(Charset.forName("UTF-8")));
+      final StringBuilder result = new StringBuilder();
+      for (final byte b : hash) {
+        result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return result.toString();
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new Error("Can't find SHA-1", ex);
+    }
+  }
+
+  boolean isSupported() {
+    return this.supported;
+  }
+
+  boolean isReady() {
+    return this.ready;
+  }
+
+  File getArchive() {
+    return this.archive;
+  }
+
+  /**
+   * Get class path to be used by test JVMs, jar files are placed before
+   * folders.
+   *
+   * @return class path for test JVMs
+   */
+  String getClassPath() {
+    return this.classPath;
+  }
+
+  /**
+   * Start creation of the archive in background if there is no archive.
+   */
+  synchronized void startCreation() {
+    if (!this.supported || this.ready || this.creation != null) {
+      return;
+    }
+
+    final File folder = this.archive.getParentFile();
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      this.log.warn("Can't create folder for class data sharing archive: " + folder);
+      return;
+    }
+    if (this.tempArchive.isFile() && !this.tempArchive.delete()) {
+      this.log.warn("Can't delete file " + this.tempArchive);
+      return;
+    }
+
+    try {
+      this.creation = new ProcessExecutor(this.jvm, "-XX:ArchiveClassesAtExit=" + this.tempArchive.getAbsolutePath(), "-classpath", this.archiveClassPath, JuteMojo.WARM_JVM_RUNNER_CLASS)
+              .redirectInput(new ByteArrayInputStream(new byte[0]))
+              .redirectOutput(new ByteArrayOutputStream())
+              .redirectError(new ByteArrayOutputStream())
+              .destroyOnExit()
+              .start();
+      this.log.debug("Started creation of class data sharing archive " + this.archive);
+    }
+    catch (IOException ex) {
+      this.log.warn("Can't start creation of class data sharing archive : " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Get JVM options for a test JVM.
+   *
+   * @param testJvm JVM interpreter of the test
+   * @return options to be added to the JVM command line, empty if the archive
+   * is not ready or the test uses another JVM
+   */
+  List<String> getJvmOptions(final String testJvm) {
+    if (!this.supported || !this.jvm.equals(testJvm)) {
+      return Collections.<String>emptyList();
+    }
+    if (!this.ready) {
+      synchronized (this) {
+        if (this.creation != null && this.creation.getFuture().isDone()) {
+          completeCreation();
+        }
+      }
+    }
+    return this.ready ? Collections.singletonList("-XX:SharedArchiveFile=" + this.archive.getAbsolutePath()) : Collections.<String>emptyList();
+  }
+
+  /**
+   * Wait for end of archive creation, so that the archive can be used by next
+   * session.
+   */
+  synchronized void dispose() {
+    if (this.creation == null || this.ready) {
+      return;
+    }
+    try {
+      this.creation.getFuture().get(CREATION_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException ex) {
+      this.log.debug("Error during class data sharing archive creation", ex.getCause());
+    }
+    catch (TimeoutException ex) {
+      this.log.debug("Timeout of class data sharing archive creation");
+    }
+    if (this.creation.getFuture().isDone()) {
+      completeCreation();
+    }
+    else {
+      this.creation.getProcess().destroy();
+      deleteTempArchive();
+    }
+  }
+
+  private void completeCreation() {
+    boolean normalExit;
+    try {
+      normalExit = this.creation.getFuture().get().getExitValue() == 0;
+    }
+    catch (Exception ex) {
+      normalExit = false;
+    }
+    this.creation = null;
+
+    if (normalExit && this.tempArchive.isFile() && this.tempArchive.length() > 0L && this.tempArchive.renameTo(this.archive)) {
+      this.log.debug("Class data sharing archive has been created: " + this.archive);
+      final File[] oldArchives = this.archive.getParentFile().listFiles();
+      if (oldArchives != null) {
+        for (final File f : oldArchives) {
+          if (f.getName().endsWith(ARCHIVE_EXTENSION) && !f.equals(this.archive) && !f.delete()) {
+            this.log.debug("Can't delete old archive " + f);
+          }
+        }
+      }
+      this.ready = true;
+    }
+    else {
+      this.log.warn("Class data sharing archive has not been created");
+      deleteTempArchive();
+    }
+  }
+
+  private void deleteTempArchive() {
+    if (this.tempArchive.isFile() && !this.tempArchive.delete()) {
+      this.tempArchive.deleteOnExit();
+    }
+  }
+}
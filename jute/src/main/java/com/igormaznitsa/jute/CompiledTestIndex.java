@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.util.*;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Reader of test index generated by the annotation processor from
+ * jute-annotations (META-INF/jute/test-index in test classes folder). The
+ * index describes every class compiled together with test classes, so that
+ * class files don't need to be read. The processor updates modification time
+ * of the index after every class file written by javac, so that a class file
+ * which is newer than the index has been written by another compilation and
+ * it must be scanned. Class files not described by the index are scanned
+ * too, except anonymous and local classes of described classes.
+ *
+ * @since 1.1.2
+ */
+final class CompiledTestIndex {
+
+  static final String INDEX_PATH = "META-INF/jute/test-index";
+  static final String HEADER = "JUTE-TEST-INDEX 1";
+
+  private CompiledTestIndex() {
+  }
+
+  /**
+   * Load the index and find structure for every class file.
+   *
+   * @param log logger to print reason of index rejection
+   * @param testRoot test classes folder
+   * @param classFilePaths paths to class files in the folder
+   * @return map of normalized class file paths to class structures, class
+   * files which must be scanned are not in the map, null if there is no index
+   * @throws IOException it will be thrown if the index can't be read
+   */
+  static Map<String, DiscoveryIndex.ClassSummary> load(final Log log, final File testRoot, final List<String> classFilePaths) throws IOException {
+    final File indexFile = new File(testRoot, INDEX_PATH);
+    if (!indexFile.isFile()) {
+      return null;
+    }
+
+    final Map<String, DiscoveryIndex.ClassSummary> classes = parse(indexFile);
+    if (classes == null) {
+      log.debug("Unsupported test index format : " + indexFile);
+      return null;
+    }
+
+    final long indexTime = indexFile.lastModified();
+    final String testRootPath = FilenameUtils.normalize(testRoot.getAbsolutePath() + File.separatorChar);
+    final Map<String, DiscoveryIndex.ClassSummary> result = new HashMap<String, DiscoveryIndex.ClassSummary>();
+    for (final String path : classFilePaths) {
+      final String normalizedPath = FilenameUtils.normalize(path);
+      final String className = Utils.toStandardJavaClassName(testRootPath, normalizedPath);
+
+      if (new File(normalizedPath).lastModified() > indexTime) {
+        log.debug("Test index is older than class " + className + ", it will be scanned");
+        continue;
+      }
+
+      DiscoveryIndex.ClassSummary summary = classes.get(className);
+      if (summary == null) {
+        if (className.indexOf('-') >= 0 || isAnonymousOrLocal(className, classes)) {
+          // package-info, module-info, anonymous and local classes can't contain tests
+          summary = new DiscoveryIndex.ClassSummary(0, className.replace('.', '/'));
+        }
+        else {
+          log.debug("Test index doesn't contain class " + className + ", it will be scanned");
+          continue;
+        }
+      }
+      result.put(normalizedPath, summary);
+    }
+    return result;
+  }
+
+  /**
+   * Check that class is anonymous or local class of a class from the index,
+   * javac names such classes as Outer$1 or Outer$1Local.
+   */
+  private static boolean isAnonymousOrLocal(final String className, final Map<String, DiscoveryIndex.ClassSummary> classes) {
+    final int dollar = className.lastIndexOf('$');
+    return dollar > 0 && dollar < className.length() - 1
+            && Character.isDigit(className.charAt(dollar + 1))
+            && (classes.containsKey(className.substring(0, dollar)) || isAnonymousOrLocal(className.substring(0, dollar), classes));
+  }
+
+  private static Map<String, DiscoveryIndex.ClassSummary> parse(final File file) throws IOException {
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), 65536);
+    try {
+      if (!HEADER.equals(reader.readLine())) {
+        return null;
+      }
+
+      final Map<String, DiscoveryIndex.ClassSummary> result = new HashMap<String, DiscoveryIndex.ClassSummary>();
+      DiscoveryIndex.ClassSummary currentClass = null;
+      DiscoveryIndex.MethodSummary currentMethod = null;
+      while (true) {
+        final String line = reader.readLine();
+        if (line == null) {
+          break;
+        }
+        if (line.length() < 2) {
+          continue;
+        }
+        final String[] fields = line.substring(2).split(" ");
+        switch (line.charAt(0)) {
+          case 'T': {
+            currentClass = new DiscoveryIndex.ClassSummary(Integer.parseInt(fields[1]), fields[0].replace('.', '/'));
+            currentMethod = null;
+            result.put(fields[0], currentClass);
+          }
+          break;
+          case 'M': {
+            if (currentClass == null) {
+              throw new IOException("Method without class in test index : " + line);
+            }
+            currentMethod = currentClass.addMethod(Integer.parseInt(fields[1]), fields[0]);
+          }
+          break;
+          case 'A': {
+            if (currentClass == null) {
+              throw new IOException("Annotation without class in test index : " + line);
+            }
+            final DiscoveryIndex.AnnotationSummary annotation = currentMethod == null ? currentClass.addAnnotation(fields[0]) : currentMethod.addAnnotation(fields[0]);
+            for (int i = 1; i < fields.length; i++) {
+              final int eq = fields[i].indexOf('=');
+              annotation.addValue(fields[i].substring(0, eq), parseValue(fields[i].substring(eq + 1)));
+            }
+          }
+          break;
+          default:
+            throw new IOException("Unexpected line in test index : " + line);
+        }
+      }
+      return result;
+    }
+    catch (RuntimeException ex) {
+      throw new IOException("Wrong test index format : " + file, ex);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private static Object parseValue(final String text) throws IOException {
+    switch (text.charAt(0)) {
+      case 'S':
+        return URLDecoder.decode(text.substring(1), "UTF-8");
+      case 'I':
+        return Integer.valueOf(text.substring(1));
+      case 'J':
+        return Long.valueOf(text.substring(1));
+      case 'Z':
+        return Boolean.valueOf(text.substring(1));
+      case '[': {
+        final List<Object> result = new ArrayList<Object>();
+        if (text.length() > 1) {
+          for (final String item : text.substring(1).split(",")) {
+            result.add(parseValue(item));
+          }
+        }
+        return result;
+      }
+      default:
+        throw new IOException("Unsupported value in test index : " + text);
+    }
+  }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+import com.igormaznitsa.jute.runners.RunnerProtocol;
+
+/**
+ * Bounded buffer for a console stream of a test JVM. It keeps the first and
+ * the last bytes of the stream in memory, if the stream is longer than the
+ * limit then the whole stream is written into a spill file (optionally gzip
+ * compressed). Lines of the runner protocol are collected separately so that
+ * results of tests are available even if they are not kept in memory. Lines of
+ * the stream can be streamed into an async log writer as soon as they are
+ * written. The buffer never throws exceptions for writing to not break stream pumping, an
+ * error of spill file writing is reported in the text of the buffer. Data
+ * written after close are ignored.
+ *
+ * @since 1.1.2
+ */
+final class ConsoleBuffer extends OutputStream {
+
+  private static final byte[] MARKER = RunnerProtocol.MARKER.getBytes(Charset.forName("US-ASCII"));
+  private static final int[] MARKER_FAILURE = makeFailureTable(MARKER);
+  private static final int MAX_MARKER_LINE = 4096;
+
+  private final int limit;
+  private final File spillFile;
+  private final boolean gzip;
+
+  private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+  private final byte[] tail;
+  private int tailPosition;
+  private int tailLength;
+  private long total;
+
+  private OutputStream spill;
+  private String spillError;
+  private boolean closed;
+
+  private final ByteArrayOutputStream markerLines = new ByteArrayOutputStream();
+  private int markerMatched;
+  private boolean markerLine;
+  private int markerLineLength;
+
+  private AsyncLogWriter stream;
+  private String streamPrefix;
+  private boolean streamWarn;
+  private final ByteArrayOutputStream streamLine = new ByteArrayOutputStream();
+
+  /**
+   * Constructor.
+   *
+   * @param limit number of bytes kept from the start and from the end of the
+   * stream, non-positive value means that whole stream is kept in memory
+   * @param spillFile file to write the whole stream if it exceeds the limit,
+   * can be null
+   * @param gzip true if the spill file must be gzip compressed
+   */
+  ConsoleBuffer(final int limit, final File spillFile, final boolean gzip) {
+    this.limit = limit;
+    this.spillFile = spillFile;
+    this.gzip = gzip;
+    this.tail = new byte[Math.max(limit, 0)];
+  }
+
+  /**
+   * Stream every line written into the buffer into a log writer, lines of the
+   * runner protocol are not streamed.
+   *
+   * @param writer the log writer
+   * @param prefix prefix of every line
+   * @param warn true if lines must be written as warnings
+   */
+  synchronized void streamLines(final AsyncLogWriter writer, final String prefix, final boolean warn) {
+    this.stream = writer;
+    this.streamPrefix = prefix;
+    this.streamWarn = warn;
+  }
+
+  private void streamBytes(final byte[] data, final int offset, final int length) {
+    for (int i = offset; i < offset + length; i++) {
+      final byte b = data[i];
+      if (b == '\n') {
+        flushStreamLine();
+      }
+      else if (b != '\r' && this.streamLine.size() < MAX_MARKER_LINE) {
+        this.streamLine.write(b);
+      }
+    }
+  }
+
+  private void flushStreamLine() {
+    final String line = new String(this.streamLine.toByteArray(), Charset.defaultCharset());
+    this.streamLine.reset();
+    if (!line.trim().startsWith(RunnerProtocol.MARKER)) {
+      if (this.streamWarn) {
+        this.stream.warn(this.streamPrefix + line);
+      }
+      else {
+        this.stream.info(this.streamPrefix + line);
+      }
+    }
+  }
+
+  private static int[] makeFailureTable(final byte[] pattern) {
+    final int[] result = new int[pattern.length];
+    int k = 0;
+    for (int i = 1; i < pattern.length; i++) {
+      while (k > 0 && pattern[i] != pattern[k]) {
+        k = result[k - 1];
+      }
+      if (pattern[i] == pattern[k]) {
+        k++;
+      }
+      result[i] = k;
+    }
+    return result;
+  }
+
+  @Override
+  public void write(final int b) {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public synchronized void write(final byte[] data, final int offset, final int length) {
+    if (this.closed) {
+      return;
+    }
+    scanMarkers(data, offset, length);
+    if (this.stream != null) {
+      streamBytes(data, offset, length);
+    }
+
+    int off = offset;
+    int len = length;
+    if (this.limit <= 0) {
+      this.head.write(data, off, len);
+      this.total += len;
+      return;
+    }
+
+    final int toHead = Math.min(len, this.limit - this.head.size());
+    if (toHead > 0) {
+      this.head.write(data, off, toHead);
+      this.total += toHead;
+      off += toHead;
+      len -= toHead;
+    }
+    if (len == 0) {
+      return;
+    }
+
+    if (this.spill == null && this.tailLength + len > this.tail.length) {
+      openSpill();
+    }
+    writeSpill(data, off, len);
+    this.total += len;
+    for (int i = 0; i < len; i++) {
+      this.tail[this.tailPosition] = data[off + i];
+      this.tailPosition = (this.tailPosition + 1) % this.tail.length;
+    }
+    this.tailLength = Math.min(this.tail.length, this.tailLength + len);
+  }
+
+  private void scanMarkers(final byte[] data, final int offset, final int length) {
+    for (int i = offset; i < offset + length; i++) {
+      final byte b = data[i];
+      if (this.markerLine) {
+        if (b == '\n') {
+          this.markerLines.write('\n');
+          this.markerLine = false;
+          this.notifyAll();
+        }
+        else if (b != '\r' && this.markerLineLength < MAX_MARKER_LINE) {
+          this.markerLines.write(b);
+          this.markerLineLength++;
+        }
+        continue;
+      }
+      while (this.markerMatched > 0 && b != MARKER[this.markerMatched]) {
+        this.markerMatched = MARKER_FAILURE[this.markerMatched - 1];
+      }
+      if (b == MARKER[this.markerMatched]) {
+        this.markerMatched++;
+      }
+      if (this.markerMatched == MARKER.length) {
+        this.markerMatched = 0;
+        this.markerLine = true;
+        this.markerLineLength = 0;
+        this.markerLines.write(MARKER, 0, MARKER.length);
+      }
+    }
+  }
+
+  private void openSpill() {
+    if (this.spillFile == null || this.spillError != null || this.closed) {
+      return;
+    }
+    try {
+      final File folder = this.spillFile.getParentFile();
+      if (folder != null && !folder.isDirectory() && !folder.mkdirs() && !folder.isDirectory()) {
+        throw new IOException("Can't create folder " + folder);
+      }
+      final OutputStream file = new BufferedOutputStream(new FileOutputStream(this.spillFile));
+      this.spill = this.gzip ? new GZIPOutputStream(file) : file;
+      this.head.writeTo(this.spill);
+      this.spill.write(getTailBytes());
+    }
+    catch (IOException ex) {
+      this.spillError = ex.getMessage();
+      closeSpill();
+    }
+  }
+
+  private void writeSpill(final byte[] data, final int offset, final int length) {
+    if (this.spill == null) {
+      return;
+    }
+    try {
+      this.spill.write(data, offset, length);
+    }
+    catch (IOException ex) {
+      this.spillError = ex.getMessage();
+      closeSpill();
+    }
+  }
+
+  private void closeSpill() {
+    if (this.spill != null) {
+      try {
+        this.spill.close();
+      }
+      catch (IOException ex) {
+        if (this.spillError == null) {
+          this.spillError = ex.getMessage();
+        }
+      }
+      this.spill = null;
+    }
+  }
+
+  /**
+   * Close the spill file, must be called when the stream is ended.
+   */
+  @Override
+  public synchronized void close() {
+    if (this.stream != null && this.streamLine.size() > 0) {
+      flushStreamLine();
+    }
+    this.closed = true;
+    closeSpill();
+  }
+
+  /**
+   * Get number of bytes written into the buffer.
+   *
+   * @return number of bytes
+   */
+  synchronized long size() {
+    return this.total;
+  }
+
+  /**
+   * Check that a part of the stream is not kept in memory.
+   *
+   * @return true if bytes of the stream were skipped
+   */
+  synchronized boolean isTruncated() {
+    return this.total > this.head.size() + this.tailLength;
+  }
+
+  /**
+   * Get the spill file if it has been written.
+   *
+   * @return the spill file or null
+   */
+  synchronized File getSpillFile() {
+    return this.isTruncated() && this.spillError == null ? this.spillFile : null;
+  }
+
+  /**
+   * Get lines of the runner protocol found in the stream.
+   *
+   * @return text contains protocol lines
+   */
+  synchronized String getMarkerLines() {
+    return new String(this.markerLines.toByteArray(), Charset.defaultCharset());
+  }
+
+  /**
+   * Wait until a protocol line is written into the buffer.
+   *
+   * @param line the protocol line without line separator
+   * @param timeoutInMilliseconds max time to wait
+   * @return true if the line has been found, false otherwise
+   * @throws InterruptedException it will be thrown if the thread is interrupted
+   */
+  synchronized boolean awaitMarkerLine(final String line, final long timeoutInMilliseconds) throws InterruptedException {
+    final long end = System.currentTimeMillis() + timeoutInMilliseconds;
+    while (true) {
+      if (('\n' + getMarkerLines()).contains('\n' + line + '\n')) {
+        return true;
+      }
+      final long rest = end - System.currentTimeMillis();
+      if (this.closed || rest <= 0L) {
+        return false;
+      }
+      this.wait(rest);
+    }
+  }
+
+  /**
+   * Get kept text of the stream. If the stream is truncated then the text
+   * contains the first and the last bytes of the stream and a line describing
+   * skipped bytes and the spill file.
+   *
+   * @return text of the stream
+   */
+  synchronized String getText() {
+    final String headText = new String(this.head.toByteArray(), Charset.defaultCharset());
+    if (!isTruncated()) {
+      return headText + new String(getTailBytes(), Charset.defaultCharset());
+    }
+    final StringBuilder result = new StringBuilder(headText);
+    if (result.length() > 0 && result.charAt(result.length() - 1) != '\n') {
+      result.append(Utils.lineSeparator);
+    }
+    result.append("...skipped ").append(this.total - this.head.size() - this.tailLength).append(" byte(s)");
+    if (this.spillError != null) {
+      result.append(", can't write full output into ").append(this.spillFile).append(" : ").append(this.spillError);
+    }
+    else if (this.spillFile != null) {
+      result.append(", full output: ").append(this.spillFile.getAbsolutePath());
+    }
+    result.append("...").append(Utils.lineSeparator);
+    result.append(new String(getTailBytes(), Charset.defaultCharset()));
+    return result.toString();
+  }
+
+  private byte[] getTailBytes() {
+    final byte[] result = new byte[this.tailLength];
+    final int start = (this.tailPosition - this.tailLength + this.tail.length) % Math.max(this.tail.length, 1);
+    for (int i = 0; i < this.tailLength; i++) {
+      result[i] = this.tail[(start + i) % this.tail.length];
+    }
+    return result;
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Capture of console output of test JVMs. In FILE mode standard output and
+ * error streams of a JVM are redirected into files by the OS
+ * (ProcessBuilder.Redirect of Java 7+, called through reflection), so that no
+ * threads pump the streams and the output is not copied into the heap until it
+ * must be shown. Captured output can be limited, then only the first and the
+ * last bytes of every stream are kept in memory and the whole stream is
+ * written into a spill file.
+ *
+ * @since 1.1.2
+ */
+final class ConsoleCapture {
+
+  /**
+   * Mode of console capture.
+   */
+  enum Mode {
+    /**
+     * Console streams are pumped into memory buffers.
+     */
+    MEMORY,
+    /**
+     * Console streams are redirected into files.
+     */
+    FILE;
+
+    /**
+     * Find mode for its name, case insensitive.
+     *
+     * @param name the name, null or empty string is interpreted as MEMORY
+     * @return found mode
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static Mode find(final String name) {
+      if (name == null || name.trim().length() == 0) {
+        return MEMORY;
+      }
+      for (final Mode m : values()) {
+        if (m.name().equalsIgnoreCase(name.trim())) {
+          return m;
+        }
+      }
+      throw new IllegalArgumentException("Unsupported console capture mode: " + name);
+    }
+  }
+
+  /**
+   * Max allowed limit of captured console output.
+   */
+  static final long MAX_LIMIT = 256L * 1024L * 1024L;
+
+  private static final Method REDIRECT_OUTPUT;
+  private static final Method REDIRECT_ERROR;
+
+  static {
+    Method out = null;
+    Method err = null;
+    try {
+      out = ProcessBuilder.class.getMethod("redirectOutput", File.class);
+      err = ProcessBuilder.class.getMethod("redirectError", File.class);
+    }
+    catch (NoSuchMethodException ex) {
+      out = null;
+      err = null;
+    }
+    REDIRECT_OUTPUT = out;
+    REDIRECT_ERROR = err;
+  }
+
+  private final File folder;
+  private final int limit;
+  private final File spillFolder;
+  private final boolean gzip;
+  private final AsyncLogWriter stream;
+
+  /**
+   * Constructor.
+   *
+   * @param folder folder to keep console files, null if console is captured
+   * in memory
+   * @param limit number of bytes kept from the start and from the end of every
+   * stream, non-positive value means no limit
+   * @param spillFolder folder for spill files of streams exceeding the limit,
+   * can be null
+   * @param gzip true if spill files must be gzip compressed
+   * @param stream writer to stream console lines with prefix of the test name,
+   * can be null
+   */
+  ConsoleCapture(final File folder, final int limit, final File spillFolder, final boolean gzip, final AsyncLogWriter stream) {
+    this.folder = folder;
+    this.limit = limit;
+    this.spillFolder = spillFolder;
+    this.gzip = gzip;
+    this.stream = stream;
+  }
+
+  /**
+   * Parse limit of captured console output.
+   *
+   * @param value size like 64k, null or empty string means no limit
+   * @return limit in bytes, 0 means no limit
+   * @throws IllegalArgumentException if the value can't be parsed or it is
+   * too big
+   */
+  static int parseLimit(final String value) {
+    if (value == null || value.trim().length() == 0) {
+      return 0;
+    }
+    final long result = MemoryBudget.parseSize(value);
+    if (result > MAX_LIMIT) {
+      throw new IllegalArgumentException("Too big console limit: " + value);
+    }
+    return (int) result;
+  }
+
+  /**
+   * Check that the current JVM can redirect streams of processes into files.
+   *
+   * @return true if redirect is supported (Java 7+)
+   */
+  static boolean isSupported() {
+    return REDIRECT_OUTPUT != null;
+  }
+
+  File getFolder() {
+    return this.folder;
+  }
+
+  int getLimit() {
+    return this.limit;
+  }
+
+  File getSpillFolder() {
+    return this.spillFolder;
+  }
+
+  AsyncLogWriter getStream() {
+    return this.stream;
+  }
+
+  /**
+   * Check that streams are redirected into console files.
+   *
+   * @return true for FILE mode
+   */
+  boolean isFileMode() {
+    return this.folder != null;
+  }
+
+  /**
+   * Make buffer for a stream of a test JVM, old spill file is removed. Lines
+   * of the buffer are streamed if there is a stream writer.
+   *
+   * @param name name of the test or the test batch
+   * @param extension extension of the spill file
+   * @return new buffer
+   */
+  ConsoleBuffer makeBuffer(final String name, final String extension) {
+    File spillFile = null;
+    if (this.limit > 0 && this.spillFolder != null) {
+      spillFile = new File(this.spillFolder, name.replaceAll("[^A-Za-z0-9_.#\\-]", "_") + extension + (this.gzip ? ".gz" : ""));
+      if (spillFile.isFile() && !spillFile.delete()) {
+        spillFile = null;
+      }
+    }
+    final ConsoleBuffer result = new ConsoleBuffer(this.limit, spillFile, this.gzip);
+    if (this.stream != null) {
+      result.streamLines(this.stream, '[' + name + "] ", ".err".equals(extension));
+    }
+    return result;
+  }
+
+  /**
+   * Make files for output and error streams of a test, old files are removed.
+   *
+   * @param testName name of the test
+   * @return array contains file for output stream and file for error stream
+   * @throws IOException it will be thrown if the folder can't be created
+   */
+  File[] makeFiles(final String testName) throws IOException {
+    if (!this.folder.isDirectory() && !this.folder.mkdirs() && !this.folder.isDirectory()) {
+      throw new IOException("Can't create folder " + this.folder);
+    }
+    final String name = testName.replaceAll("[^A-Za-z0-9_.\\-]", "_");
+    final File[] result = new File[]{new File(this.folder, name + ".out"), new File(this.folder, name + ".err")};
+    for (final File f : result) {
+      if (f.exists() && !f.delete()) {
+        throw new IOException("Can't delete file " + f);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Redirect output and error streams of a process to be started into files.
+   *
+   * @param builder builder of the process
+   * @param files file for output stream and file for error stream
+   * @throws IOException it will be thrown if redirect is not supported
+   */
+  static void redirect(final ProcessBuilder builder, final File[] files) throws IOException {
+    if (!isSupported()) {
+      throw new IOException("Redirect of process streams into files is not supported by the JVM");
+    }
+    try {
+      REDIRECT_OUTPUT.invoke(builder, files[0]);
+      REDIRECT_ERROR.invoke(builder, files[1]);
+    }
+    catch (Exception ex) {
+      throw new IOException("Can't redirect process streams into files", ex);
+    }
+  }
+
+  /**
+   * Read a console file. If the file is longer than double limit then only the
+   * first and the last bytes are read.
+   *
+   * @param file the file
+   * @return text of the file, empty string if the file doesn't exist or
+   * description of error if it can't be read
+   */
+  String read(final File file) {
+    if (!file.isFile()) {
+      return "";
+    }
+    try {
+      final long length = file.length();
+      if (this.limit <= 0 || length <= 2L * this.limit) {
+        return FileUtils.readFileToString(file, Charset.defaultCharset().name());
+      }
+      final byte[] head = new byte[this.limit];
+      final byte[] tail = new byte[this.limit];
+      final RandomAccessFile access = new RandomAccessFile(file, "r");
+      try {
+        access.readFully(head);
+        access.seek(length - this.limit);
+        access.readFully(tail);
+      }
+      finally {
+        access.close();
+      }
+      return new String(head, Charset.defaultCharset()) + Utils.lineSeparator
+          + "...skipped " + (length - 2L * this.limit) + " byte(s), full output: " + file.getAbsolutePath() + "..." + Utils.lineSeparator
+          + new String(tail, Charset.defaultCharset());
+    }
+    catch (IOException ex) {
+      return "Can't read console file " + file + " : " + ex.getMessage();
+    }
+  }
+}
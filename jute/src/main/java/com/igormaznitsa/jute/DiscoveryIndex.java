@@ -0,0 +1,650 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.objectweb.asm.*;
+
+/**
+ * Index of already scanned test class files. For every class file it keeps
+ * size, modification time, content hash and the class structure needed to
+ * detect test methods (class name and flags, test annotations and their
+ * values, methods without arguments) and result of share analysis if it has
+ * been requested. The structure is replayed into a class visitor instead of
+ * parsing the class file, so that only changed class files are read by ASM.
+ * Entries of deleted class files are removed on save.
+ *
+ * @since 1.1.2
+ */
+final class DiscoveryIndex {
+
+  private static final int MAGIC = 0x4A555444; // JUTD
+  private static final int VERSION = 2;
+
+  private static final Set<String> RECORDED_ANNOTATIONS = new HashSet<String>(Arrays.asList(JuteMojo.ANNO_TEST, JuteMojo.ANNO_IGNORE, JuteMojo.ANNO_JUTE));
+
+  /**
+   * Class files modified close to the index save time are checked by content
+   * hash because file systems can have coarse modification time.
+   */
+  private static final long MODIFICATION_TIME_GRANULARITY = 2000L;
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private long savedTime = Long.MIN_VALUE;
+  private int hits;
+  private int misses;
+
+  private static final class Entry {
+
+    private long size;
+    private long lastModified;
+    private byte[] hash;
+    private ClassSummary summary;
+  }
+
+  /**
+   * Load index from file. If the file doesn't exist then empty index is
+   * returned.
+   *
+   * @param file file to be loaded, must not be null
+   * @return loaded index
+   * @throws IOException it will be thrown if the file can't be read or it has
+   * wrong format
+   */
+  static DiscoveryIndex load(final File file) throws IOException {
+    final DiscoveryIndex result = new DiscoveryIndex();
+    if (!file.isFile()) {
+      return result;
+    }
+
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Wrong discovery index file format: " + file);
+      }
+      final int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported discovery index version: " + version);
+      }
+      result.savedTime = in.readLong();
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final String path = in.readUTF();
+        final Entry entry = new Entry();
+        entry.size = in.readLong();
+        entry.lastModified = in.readLong();
+        entry.hash = new byte[in.readUnsignedByte()];
+        in.readFully(entry.hash);
+        entry.summary = ClassSummary.read(in);
+        result.entries.put(path, entry);
+      }
+    }
+    finally {
+      in.close();
+    }
+    return result;
+  }
+
+  /**
+   * Save index, entries for class files which don't exist anymore are removed.
+   * Data is written into a temporary file which replaces the target file.
+   *
+   * @param file target file, must not be null
+   * @throws IOException it will be thrown for any transport error
+   */
+  synchronized void save(final File file) throws IOException {
+    final Iterator<String> paths = this.entries.keySet().iterator();
+    while (paths.hasNext()) {
+      if (!new File(paths.next()).isFile()) {
+        paths.remove();
+      }
+    }
+
+    final File folder = file.getAbsoluteFile().getParentFile();
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      throw new IOException("Can't create folder " + folder);
+    }
+
+    final File tempFile = File.createTempFile("jute-discovery", ".tmp", folder);
+    boolean saved = false;
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(this.entries.size());
+        for (final Map.Entry<String, Entry> e : this.entries.entrySet()) {
+          final Entry entry = e.getValue();
+          out.writeUTF(e.getKey());
+          out.writeLong(entry.size);
+          out.writeLong(entry.lastModified);
+          out.writeByte(entry.hash.length);
+          out.write(entry.hash);
+          entry.summary.write(out);
+        }
+      }
+      finally {
+        out.close();
+      }
+
+      if (!tempFile.renameTo(file)) {
+        if (file.exists() && !file.delete()) {
+          throw new IOException("Can't replace file " + file);
+        }
+        if (!tempFile.renameTo(file)) {
+          throw new IOException("Can't rename " + tempFile + " to " + file);
+        }
+      }
+      saved = true;
+    }
+    finally {
+      if (!saved && !tempFile.delete()) {
+        tempFile.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * Get structure of a class file without share analysis.
+   *
+   * @param classFile class file, must not be null
+   * @return structure of the class
+   * @throws IOException it will be thrown if the file can't be read
+   * @see #getSummary(java.io.File, boolean)
+   */
+  ClassSummary getSummary(final File classFile) throws IOException {
+    return getSummary(classFile, false);
+  }
+
+  /**
+   * Get structure of a class file. If size and modification time of the file
+   * are the same as in the index then the file is not read at all, otherwise
+   * the file is not parsed if its content hash is the same.
+   *
+   * @param classFile class file, must not be null
+   * @param analyzeSharing true if the structure must contain result of share
+   * analysis, the class file is read if the index has no such result for it
+   * @return structure of the class
+   * @throws IOException it will be thrown if the file can't be read
+   */
+  ClassSummary getSummary(final File classFile, final boolean analyzeSharing) throws IOException {
+    final String path = classFile.getAbsolutePath();
+    final long size = classFile.length();
+    final long lastModified = classFile.lastModified();
+
+    Entry entry;
+    synchronized (this) {
+      entry = this.entries.get(path);
+      if (entry != null && entry.size == size && entry.lastModified == lastModified && lastModified < this.savedTime - MODIFICATION_TIME_GRANULARITY
+              && (!analyzeSharing || entry.summary.hazards != null)) {
+        this.hits++;
+        return entry.summary;
+      }
+    }
+
+    final byte[] content = readFile(classFile);
+    final byte[] hash = makeHash(content);
+
+    synchronized (this) {
+      entry = this.entries.get(path);
+      if (entry != null && Arrays.equals(entry.hash, hash)) {
+        entry.size = size;
+        entry.lastModified = lastModified;
+        if (analyzeSharing && entry.summary.hazards == null) {
+          entry.summary.hazards = ShareSafetyAnalyzer.analyze(content);
+        }
+        this.hits++;
+        return entry.summary;
+      }
+    }
+
+    final ClassSummary summary = ClassSummary.parse(content);
+    if (analyzeSharing) {
+      summary.hazards = ShareSafetyAnalyzer.analyze(content);
+    }
+    if (summary.isStorable()) {
+      final Entry newEntry = new Entry();
+      newEntry.size = size;
+      newEntry.lastModified = lastModified;
+      newEntry.hash = hash;
+      newEntry.summary = summary;
+      synchronized (this) {
+        this.entries.put(path, newEntry);
+      }
+    }
+    synchronized (this) {
+      this.misses++;
+    }
+    return summary;
+  }
+
+  /**
+   * Get number of class files taken from the index.
+   *
+   * @return number of class files which have not been parsed
+   */
+  synchronized int getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Get number of parsed class files.
+   *
+   * @return number of class files which have been parsed
+   */
+  synchronized int getMisses() {
+    return this.misses;
+  }
+
+  synchronized int size() {
+    return this.entries.size();
+  }
+
+  private static byte[] readFile(final File file) throws IOException {
+    final byte[] result = new byte[(int) file.length()];
+    final DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      in.readFully(result);
+    }
+    finally {
+      in.close();
+    }
+    return result;
+  }
+
+  private static byte[] makeHash(final byte[] data) {
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(data);
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new Error("Can't find SHA-1", ex);
+    }
+  }
+
+  /**
+   * Part of class structure needed to detect test methods.
+   */
+  static final class ClassSummary {
+
+    private int access;
+    private String name;
+    private final List<AnnotationSummary> annotations = new ArrayList<AnnotationSummary>();
+    private final List<MethodSummary> methods = new ArrayList<MethodSummary>();
+    private boolean storable = true;
+    private List<String> hazards;
+
+    private ClassSummary() {
+    }
+
+    ClassSummary(final int access, final String name) {
+      this.access = access;
+      this.name = name;
+    }
+
+    AnnotationSummary addAnnotation(final String desc) {
+      final AnnotationSummary result = new AnnotationSummary(desc, true);
+      this.annotations.add(result);
+      return result;
+    }
+
+    MethodSummary addMethod(final int access, final String name) {
+      final MethodSummary result = new MethodSummary(access, name, "()V");
+      this.methods.add(result);
+      return result;
+    }
+
+    /**
+     * Extract class structure from class file content.
+     *
+     * @param classFileContent content of class file
+     * @return extracted structure
+     */
+    static ClassSummary parse(final byte[] classFileContent) {
+      final ClassSummary result = new ClassSummary();
+      new ClassReader(classFileContent).accept(new ClassVisitor(Opcodes.ASM5) {
+        @Override
+        public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+          result.access = access;
+          result.name = name;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+          return result.recordAnnotation(result.annotations, desc, visible);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+          if (!desc.equals("()V") || name.startsWith("<")) {
+            return null;
+          }
+          final MethodSummary method = new MethodSummary(access, name, desc);
+          result.methods.add(method);
+          return new MethodVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+              return result.recordAnnotation(method.annotations, desc, visible);
+            }
+          };
+        }
+      }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+      return result;
+    }
+
+    private AnnotationVisitor recordAnnotation(final List<AnnotationSummary> target, final String desc, final boolean visible) {
+      if (!RECORDED_ANNOTATIONS.contains(desc)) {
+        return null;
+      }
+      final AnnotationSummary annotation = new AnnotationSummary(desc, visible);
+      target.add(annotation);
+      if (!JuteMojo.ANNO_JUTE.equals(desc)) {
+        // values of JUnit annotations are not used
+        return null;
+      }
+      return new AnnotationVisitor(Opcodes.ASM5) {
+        @Override
+        public void visit(final String name, final Object value) {
+          annotation.names.add(name);
+          annotation.values.add(value);
+          storable &= isSupportedValue(value);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(final String name) {
+          final List<Object> array = new ArrayList<Object>();
+          annotation.names.add(name);
+          annotation.values.add(array);
+          return new AnnotationVisitor(Opcodes.ASM5) {
+            @Override
+            public void visit(final String name, final Object value) {
+              array.add(value);
+              storable &= isSupportedValue(value);
+            }
+
+            @Override
+            public void visitEnum(final String name, final String desc, final String value) {
+              storable = false;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(final String name, final String desc) {
+              storable = false;
+              return null;
+            }
+          };
+        }
+
+        @Override
+        public void visitEnum(final String name, final String desc, final String value) {
+          storable = false;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String name, final String desc) {
+          storable = false;
+          return null;
+        }
+      };
+    }
+
+    private static boolean isSupportedValue(final Object value) {
+      return value instanceof String || value instanceof Integer || value instanceof Long || value instanceof Boolean;
+    }
+
+    /**
+     * Check that the structure contains only values which can be saved in the
+     * index.
+     *
+     * @return true if the structure can be saved
+     */
+    boolean isStorable() {
+      return this.storable;
+    }
+
+    String getName() {
+      return this.name;
+    }
+
+    /**
+     * Get result of share analysis.
+     *
+     * @return found hazards, empty list for share-safe class, null if the
+     * class has not been analyzed
+     * @see ShareSafetyAnalyzer
+     */
+    List<String> getHazards() {
+      return this.hazards;
+    }
+
+    /**
+     * Replay the structure into a class visitor in the same order as ASM does
+     * it for a class file.
+     *
+     * @param visitor visitor to get the structure, must not be null
+     */
+    void accept(final ClassVisitor visitor) {
+      visitor.visit(Opcodes.V1_6, this.access, this.name, null, null, null);
+      for (final AnnotationSummary a : this.annotations) {
+        a.accept(visitor.visitAnnotation(a.desc, a.visible));
+      }
+      for (final MethodSummary m : this.methods) {
+        final MethodVisitor methodVisitor = visitor.visitMethod(m.access, m.name, m.desc, null, null);
+        if (methodVisitor != null) {
+          for (final AnnotationSummary a : m.annotations) {
+            a.accept(methodVisitor.visitAnnotation(a.desc, a.visible));
+          }
+          methodVisitor.visitEnd();
+        }
+      }
+      visitor.visitEnd();
+    }
+
+    private void write(final DataOutputStream out) throws IOException {
+      out.writeInt(this.access);
+      out.writeUTF(this.name);
+      writeAnnotations(out, this.annotations);
+      out.writeInt(this.methods.size());
+      for (final MethodSummary m : this.methods) {
+        out.writeInt(m.access);
+        out.writeUTF(m.name);
+        out.writeUTF(m.desc);
+        writeAnnotations(out, m.annotations);
+      }
+      out.writeInt(this.hazards == null ? -1 : this.hazards.size());
+      if (this.hazards != null) {
+        for (final String h : this.hazards) {
+          out.writeUTF(h);
+        }
+      }
+    }
+
+    private static ClassSummary read(final DataInputStream in) throws IOException {
+      final ClassSummary result = new ClassSummary();
+      result.access = in.readInt();
+      result.name = in.readUTF();
+      readAnnotations(in, result.annotations);
+      final int methods = in.readInt();
+      for (int i = 0; i < methods; i++) {
+        final MethodSummary method = new MethodSummary(in.readInt(), in.readUTF(), in.readUTF());
+        readAnnotations(in, method.annotations);
+        result.methods.add(method);
+      }
+      final int hazards = in.readInt();
+      if (hazards >= 0) {
+        result.hazards = new ArrayList<String>(hazards);
+        for (int i = 0; i < hazards; i++) {
+          result.hazards.add(in.readUTF());
+        }
+      }
+      return result;
+    }
+
+    private static void writeAnnotations(final DataOutputStream out, final List<AnnotationSummary> annotations) throws IOException {
+      out.writeInt(annotations.size());
+      for (final AnnotationSummary a : annotations) {
+        out.writeUTF(a.desc);
+        out.writeBoolean(a.visible);
+        out.writeInt(a.names.size());
+        for (int i = 0; i < a.names.size(); i++) {
+          out.writeUTF(a.names.get(i));
+          final Object value = a.values.get(i);
+          if (value instanceof List) {
+            final List<?> array = (List<?>) value;
+            out.writeByte('[');
+            out.writeInt(array.size());
+            for (final Object v : array) {
+              writeValue(out, v);
+            }
+          }
+          else {
+            writeValue(out, value);
+          }
+        }
+      }
+    }
+
+    private static void readAnnotations(final DataInputStream in, final List<AnnotationSummary> annotations) throws IOException {
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final AnnotationSummary a = new AnnotationSummary(in.readUTF(), in.readBoolean());
+        final int values = in.readInt();
+        for (int v = 0; v < values; v++) {
+          a.names.add(in.readUTF());
+          final int type = in.readByte();
+          if (type == '[') {
+            final int size = in.readInt();
+            final List<Object> array = new ArrayList<Object>(size);
+            for (int e = 0; e < size; e++) {
+              array.add(readValue(in, in.readByte()));
+            }
+            a.values.add(array);
+          }
+          else {
+            a.values.add(readValue(in, type));
+          }
+        }
+        annotations.add(a);
+      }
+    }
+
+    private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+      if (value instanceof String) {
+        out.writeByte('S');
+        out.writeUTF((String) value);
+      }
+      else if (value instanceof Integer) {
+        out.writeByte('I');
+        out.writeInt((Integer) value);
+      }
+      else if (value instanceof Long) {
+        out.writeByte('J');
+        out.writeLong((Long) value);
+      }
+      else if (value instanceof Boolean) {
+        out.writeByte('Z');
+        out.writeBoolean((Boolean) value);
+      }
+      else {
+        throw new IOException("Unsupported annotation value: " + value);
+      }
+    }
+
+    private static Object readValue(final DataInputStream in, final int type) throws IOException {
+      switch (type) {
+        case 'S':
+          return in.readUTF();
+        case 'I':
+          return in.readInt();
+        case 'J':
+          return in.readLong();
+        case 'Z':
+          return in.readBoolean();
+        default:
+          throw new IOException("Unsupported annotation value type: " + type);
+      }
+    }
+  }
+
+  static final class MethodSummary {
+
+    private final int access;
+    private final String name;
+    private final String desc;
+    private final List<AnnotationSummary> annotations = new ArrayList<AnnotationSummary>();
+
+    private MethodSummary(final int access, final String name, final String desc) {
+      this.access = access;
+      this.name = name;
+      this.desc = desc;
+    }
+
+    AnnotationSummary addAnnotation(final String desc) {
+      final AnnotationSummary result = new AnnotationSummary(desc, true);
+      this.annotations.add(result);
+      return result;
+    }
+  }
+
+  static final class AnnotationSummary {
+
+    private final String desc;
+    private final boolean visible;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Object> values = new ArrayList<Object>();
+
+    private AnnotationSummary(final String desc, final boolean visible) {
+      this.desc = desc;
+      this.visible = visible;
+    }
+
+    /**
+     * Add value of annotation attribute.
+     *
+     * @param name attribute name
+     * @param value value, arrays are represented by lists
+     */
+    void addValue(final String name, final Object value) {
+      this.names.add(name);
+      this.values.add(value);
+    }
+
+    private void accept(final AnnotationVisitor visitor) {
+      if (visitor == null) {
+        return;
+      }
+      for (int i = 0; i < this.names.size(); i++) {
+        final Object value = this.values.get(i);
+        if (value instanceof List) {
+          final AnnotationVisitor arrayVisitor = visitor.visitArray(this.names.get(i));
+          if (arrayVisitor != null) {
+            for (final Object v : (List<?>) value) {
+              arrayVisitor.visit(null, v);
+            }
+            arrayVisitor.visitEnd();
+          }
+        }
+        else {
+          visitor.visit(this.names.get(i), value);
+        }
+      }
+      visitor.visitEnd();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.Properties;
+
+/**
+ * Session wide settings and services used to start test JVMs.
+ *
+ * @since 1.1.2
+ */
+final class ForkContext {
+
+  private final LaunchArguments launchArguments;
+  private final Properties env;
+  private final WarmJvmPool warmJvmPool;
+  private final CdsArchiveManager cdsArchiveManager;
+  private final InProcessWorkerPool inProcessWorkerPool;
+  private final MemoryBudget memoryBudget;
+  private final TimeoutWheel timeoutWheel;
+  private final ConsoleCapture consoleCapture;
+  private final AsyncLogWriter resultStream;
+  private final ResultChannel resultChannel;
+  private final ThreadDumps threadDumps;
+  private final ProcessRegistry processRegistry;
+
+  /**
+   * Constructor.
+   *
+   * @param launchArguments builder of command lines for test JVMs
+   * @param env environment variables for test JVMs, can be null
+   * @param warmJvmPool pool of pre-started JVMs, can be null
+   * @param cdsArchiveManager manager of class data sharing archive, can be
+   * null
+   * @param inProcessWorkerPool pool of workers for IN_PROCESS isolation
+   * @param memoryBudget memory budget for test JVMs, can be null
+   * @param timeoutWheel timer of deadlines of test JVMs
+   * @param consoleCapture capture of console output of test JVMs
+   * @param resultStream writer to stream results of tests as soon as they are
+   * completed, can be null
+   * @param resultChannel channel to receive structured results from runners,
+   * can be null
+   * @param threadDumps thread dumps of JVMs stopped by timeout, can be null
+   * @param processRegistry registry of started processes
+   */
+  ForkContext(final LaunchArguments launchArguments, final Properties env, final WarmJvmPool warmJvmPool, final CdsArchiveManager cdsArchiveManager, final InProcessWorkerPool inProcessWorkerPool, final MemoryBudget memoryBudget, final TimeoutWheel timeoutWheel, final ConsoleCapture consoleCapture, final AsyncLogWriter resultStream, final ResultChannel resultChannel, final ThreadDumps threadDumps, final ProcessRegistry processRegistry) {
+    this.launchArguments = launchArguments;
+    this.env = env;
+    this.warmJvmPool = warmJvmPool;
+    this.cdsArchiveManager = cdsArchiveManager;
+    this.inProcessWorkerPool = inProcessWorkerPool;
+    this.memoryBudget = memoryBudget;
+    this.timeoutWheel = timeoutWheel;
+    this.consoleCapture = consoleCapture;
+    this.resultStream = resultStream;
+    this.resultChannel = resultChannel;
+    this.threadDumps = threadDumps;
+    this.processRegistry = processRegistry;
+  }
+
+  LaunchArguments getLaunchArguments() {
+    return this.launchArguments;
+  }
+
+  Properties getEnv() {
+    return this.env;
+  }
+
+  WarmJvmPool getWarmJvmPool() {
+    return this.warmJvmPool;
+  }
+
+  CdsArchiveManager getCdsArchiveManager() {
+    return this.cdsArchiveManager;
+  }
+
+  InProcessWorkerPool getInProcessWorkerPool() {
+    return this.inProcessWorkerPool;
+  }
+
+  MemoryBudget getMemoryBudget() {
+    return this.memoryBudget;
+  }
+
+  TimeoutWheel getTimeoutWheel() {
+    return this.timeoutWheel;
+  }
+
+  ConsoleCapture getConsoleCapture() {
+    return this.consoleCapture;
+  }
+
+  AsyncLogWriter getResultStream() {
+    return this.resultStream;
+  }
+
+  ResultChannel getResultChannel() {
+    return this.resultChannel;
+  }
+
+  ThreadDumps getThreadDumps() {
+    return this.threadDumps;
+  }
+
+  ProcessRegistry getProcessRegistry() {
+    return this.processRegistry;
+  }
+}
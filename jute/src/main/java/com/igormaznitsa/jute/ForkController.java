@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.*;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Controller of adaptive fork count. It periodically samples finished forks
+ * per second, system load average and available memory and changes fork count
+ * of the scheduler in AIMD style: the fork count is increased by one while
+ * forks are waiting and the host is not overloaded, it is halved if load
+ * average or available memory show overload, an increase is rolled back if it
+ * has decreased throughput.
+ *
+ * @since 1.1.2
+ */
+final class ForkController {
+
+  /**
+   * Period of sampling in milliseconds.
+   */
+  static final long SAMPLE_PERIOD = 3000L;
+
+  /**
+   * Load average per processor which is interpreted as overload.
+   */
+  static final double OVERLOAD_PER_PROCESSOR = 1.5d;
+
+  /**
+   * Available memory which is interpreted as overload.
+   */
+  static final long LOW_MEMORY = 256L * 1024L * 1024L;
+
+  /**
+   * Relative decrease of throughput which rolls back the last increase.
+   */
+  static final double THROUGHPUT_DROP = 0.9d;
+
+  private final Log log;
+  private final boolean verbose;
+  private final ForkScheduler scheduler;
+  private final int processors;
+  private final ScheduledExecutorService timer;
+
+  private long lastSampleTime;
+  private long lastCompleted;
+  private double lastThroughput = -1.0d;
+  private boolean lastChangeIncrease;
+
+  ForkController(final Log log, final boolean verbose, final ForkScheduler scheduler) {
+    this.log = log;
+    this.verbose = verbose;
+    this.scheduler = scheduler;
+    this.processors = Runtime.getRuntime().availableProcessors();
+    this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread result = new Thread(r, "jute-fork-controller");
+        result.setDaemon(true);
+        return result;
+      }
+    });
+  }
+
+  void start() {
+    this.lastSampleTime = System.currentTimeMillis();
+    this.lastCompleted = this.scheduler.getCompletedForks();
+    this.timer.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          sample();
+        }
+        catch (Throwable thr) {
+          log.debug("Error in fork controller", thr);
+        }
+      }
+    }, SAMPLE_PERIOD, SAMPLE_PERIOD, TimeUnit.MILLISECONDS);
+  }
+
+  void stop() {
+    this.timer.shutdownNow();
+  }
+
+  private void sample() {
+    final long now = System.currentTimeMillis();
+    final long completed = this.scheduler.getCompletedForks();
+    final double throughput = (completed - this.lastCompleted) * 1000.0d / Math.max(1L, now - this.lastSampleTime);
+    final double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+    final long memory = MemoryBudget.detectAvailableMemory(new File("/"));
+    final int waiting = this.scheduler.getWaitingForks();
+
+    final boolean throughputDropped = this.lastChangeIncrease && this.lastThroughput > 0.0d && throughput < this.lastThroughput * THROUGHPUT_DROP;
+
+    final int level = this.scheduler.getForkCount();
+    final int decided = decide(level, this.scheduler.getMinForkCount(), this.scheduler.getMaxForkCount(), this.processors, load, memory, throughputDropped, waiting);
+    final int applied = decided == level ? level : this.scheduler.setForkCount(decided);
+
+    final String state = String.format(Locale.ENGLISH, "tests/s=%.2f, load=%.2f, memory=%s, waiting=%d", throughput, load, memory < 0L ? "unknown" : Utils.printMemorySize(memory), waiting);
+    if (applied != level) {
+      print("Fork count changed " + level + " -> " + applied + " (" + state + ')');
+    }
+    else {
+      print("Fork count " + level + " (" + state + ')');
+    }
+
+    this.lastChangeIncrease = applied > level;
+    this.lastThroughput = throughput;
+    this.lastCompleted = completed;
+    this.lastSampleTime = now;
+  }
+
+  private void print(final String text) {
+    if (this.verbose) {
+      this.log.info(text);
+    }
+    else {
+      this.log.debug(text);
+    }
+  }
+
+  /**
+   * Decide new fork count.
+   *
+   * @param level current fork count
+   * @param min min fork count
+   * @param max max fork count
+   * @param processors number of processors
+   * @param load system load average, negative if unknown
+   * @param availableMemory available memory in bytes, negative if unknown
+   * @param throughputDropped true if throughput has decreased after the last
+   * increase of fork count
+   * @param waiting number of fork tasks waiting for a free fork
+   * @return new fork count within the bounds
+   */
+  static int decide(final int level, final int min, final int max, final int processors, final double load, final long availableMemory, final boolean throughputDropped, final int waiting) {
+    final boolean overloaded = (load >= 0.0d && load > processors * OVERLOAD_PER_PROCESSOR) || (availableMemory >= 0L && availableMemory < LOW_MEMORY);
+    final int result;
+    if (overloaded) {
+      result = level / 2;
+    }
+    else if (throughputDropped) {
+      result = level - 1;
+    }
+    else if (waiting > 0) {
+      result = level + 1;
+    }
+    else {
+      result = level;
+    }
+    return Math.max(min, Math.min(max, result));
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Global scheduler of forked JVMs. Test classes are processed concurrently by
+ * class workers but every JVM start goes through the fork pool, so that the
+ * number of concurrently working JVMs never exceeds the fork count. The fork
+ * count can be changed during session within its bounds.
+ *
+ * @since 1.1.2
+ */
+final class ForkScheduler {
+
+  /**
+   * Start order of tests which can be executed in parallel.
+   */
+  enum Scheduling {
+    /**
+     * Alphabetical order.
+     */
+    NAME,
+    /**
+     * Longest processing time first.
+     */
+    LPT;
+
+    /**
+     * Find scheduling for its name, case insensitive.
+     *
+     * @param name the name, null or empty string is interpreted as NAME
+     * @return found scheduling
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static Scheduling find(final String name) {
+      if (name == null || name.trim().length() == 0) {
+        return NAME;
+      }
+      for (final Scheduling s : values()) {
+        if (s.name().equalsIgnoreCase(name.trim())) {
+          return s;
+        }
+      }
+      throw new IllegalArgumentException("Unsupported scheduling '" + name + "', allowed values are " + Arrays.toString(values()));
+    }
+  }
+
+  /**
+   * Max number of tests in an adaptive batch.
+   */
+  static final int MAX_BATCH_SIZE = 32;
+
+  /**
+   * Prefix of fork count value for adaptive fork count.
+   */
+  static final String AUTO = "AUTO";
+
+  private final ThreadPoolExecutor forkExecutor;
+  private final ThreadPoolExecutor classExecutor;
+  private final int minForkCount;
+  private final int maxForkCount;
+  private volatile int forkCount;
+
+  ForkScheduler(final int forkCount) {
+    this(forkCount, forkCount, forkCount);
+  }
+
+  /**
+   * Constructor of scheduler with changeable fork count.
+   *
+   * @param minForkCount min fork count, must be positive
+   * @param maxForkCount max fork count, must not be less than min fork count
+   * @param forkCount start fork count, it is adjusted to the bounds
+   */
+  ForkScheduler(final int minForkCount, final int maxForkCount, final int forkCount) {
+    if (minForkCount <= 0 || maxForkCount < minForkCount) {
+      throw new IllegalArgumentException("Wrong fork count bounds: " + minForkCount + ".." + maxForkCount);
+    }
+    this.minForkCount = minForkCount;
+    this.maxForkCount = maxForkCount;
+    this.forkCount = Math.max(minForkCount, Math.min(maxForkCount, forkCount));
+    this.forkExecutor = new ThreadPoolExecutor(this.forkCount, this.forkCount, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), makeThreadFactory("jute-fork-"));
+    // test classes wait for forks so that they are processed by max fork count
+    this.classExecutor = new ThreadPoolExecutor(maxForkCount, maxForkCount, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), makeThreadFactory("jute-class-"));
+  }
+
+  private static ThreadFactory makeThreadFactory(final String prefix) {
+    return new ThreadFactory() {
+      private final AtomicInteger counter = new AtomicInteger();
+
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread result = new Thread(r, prefix + counter.incrementAndGet());
+        result.setDaemon(true);
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Parse fork count value, it can be either a positive integer or a number
+   * with 'C' suffix which is multiplied by the number of available processors.
+   *
+   * @param value text value, like "4" or "1.5C"
+   * @param processors number of available processors
+   * @return calculated fork count, at least 1
+   * @throws IllegalArgumentException if the value can't be parsed or it is not
+   * positive
+   */
+  static int parseForkCount(final String value, final int processors) {
+    final String normalized = value.trim().toUpperCase(Locale.ENGLISH);
+    final int result;
+    try {
+      if (normalized.endsWith("C")) {
+        final float multiplier = Float.parseFloat(normalized.substring(0, normalized.length() - 1));
+        if (multiplier <= 0.0f) {
+          throw new IllegalArgumentException("Fork count must be positive: " + value);
+        }
+        result = Math.max(1, (int) Math.ceil(multiplier * processors));
+      }
+      else {
+        result = Integer.parseInt(normalized);
+        if (result <= 0) {
+          throw new IllegalArgumentException("Fork count must be positive: " + value);
+        }
+      }
+    }
+    catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Can't parse fork count: " + value, ex);
+    }
+    return result;
+  }
+
+  /**
+   * Check that fork count value defines adaptive fork count.
+   *
+   * @param value text value, can be null
+   * @return true if the value starts with AUTO, case insensitive
+   */
+  static boolean isAutoForkCount(final String value) {
+    return value != null && value.trim().toUpperCase(Locale.ENGLISH).startsWith(AUTO);
+  }
+
+  /**
+   * Parse bounds of adaptive fork count in format AUTO or AUTO:min-max where
+   * min and max have the fork count format. Default bounds are 1 and twice the
+   * number of processors.
+   *
+   * @param value text value, like "AUTO" or "AUTO:2-1.5C"
+   * @param processors number of available processors
+   * @return array contains min and max fork count
+   * @throws IllegalArgumentException if the value can't be parsed
+   * @see #parseForkCount(java.lang.String, int)
+   */
+  static int[] parseAutoForkCount(final String value, final int processors) {
+    final String normalized = value.trim();
+    if (!isAutoForkCount(normalized)) {
+      throw new IllegalArgumentException("Not adaptive fork count: " + value);
+    }
+    final String bounds = normalized.substring(AUTO.length()).trim();
+    if (bounds.length() == 0) {
+      return new int[]{1, Math.max(1, processors * 2)};
+    }
+    final int separator = bounds.indexOf('-');
+    if (!bounds.startsWith(":") || separator < 0) {
+      throw new IllegalArgumentException("Adaptive fork count must be in format AUTO:min-max : " + value);
+    }
+    final int min = parseForkCount(bounds.substring(1, separator), processors);
+    final int max = parseForkCount(bounds.substring(separator + 1), processors);
+    if (max < min) {
+      throw new IllegalArgumentException("Max fork count is less than min one: " + value);
+    }
+    return new int[]{min, max};
+  }
+
+  /**
+   * Estimate execution time of tests from their history.
+   *
+   * @param tests tests to be estimated
+   * @param history history of tests, can be null
+   * @return sum of average execution times, Long.MAX_VALUE if any test has
+   * no history
+   */
+  static long estimateDuration(final List<TestContainer> tests, final TestHistory history) {
+    long result = 0L;
+    for (final TestContainer t : tests) {
+      final long duration = history == null ? -1L : history.getAverageDuration(t.toString());
+      if (duration < 0L) {
+        return Long.MAX_VALUE;
+      }
+      result += duration;
+    }
+    return result;
+  }
+
+  /**
+   * Sort indexes of groups of tests to start the longest group first. Groups
+   * with equal estimation keep their order.
+   *
+   * @param indexes indexes of groups to be sorted
+   * @param groups groups of tests
+   * @param history history of tests, can be null
+   */
+  static void sortForLongestFirst(final List<Integer> indexes, final List<List<TestContainer>> groups, final TestHistory history) {
+    final long[] estimations = new long[groups.size()];
+    for (int i = 0; i < estimations.length; i++) {
+      estimations[i] = estimateDuration(groups.get(i), history);
+    }
+    Collections.sort(indexes, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer o1, final Integer o2) {
+        final long e1 = estimations[o1];
+        final long e2 = estimations[o2];
+        return e1 == e2 ? 0 : (e1 > e2 ? -1 : 1);
+      }
+    });
+  }
+
+  int getForkCount() {
+    return this.forkCount;
+  }
+
+  int getMinForkCount() {
+    return this.minForkCount;
+  }
+
+  int getMaxForkCount() {
+    return this.maxForkCount;
+  }
+
+  /**
+   * Change number of concurrently working JVMs. Working JVMs are not stopped,
+   * if the new value is less than the current one then JVMs are not started
+   * until their number becomes less than the new value.
+   *
+   * @param value new fork count, it is adjusted to the bounds
+   * @return the applied fork count
+   */
+  synchronized int setForkCount(final int value) {
+    final int newValue = Math.max(this.minForkCount, Math.min(this.maxForkCount, value));
+    if (newValue > this.forkCount) {
+      this.forkExecutor.setMaximumPoolSize(newValue);
+      this.forkExecutor.setCorePoolSize(newValue);
+    }
+    else if (newValue < this.forkCount) {
+      this.forkExecutor.setCorePoolSize(newValue);
+      this.forkExecutor.setMaximumPoolSize(newValue);
+    }
+    this.forkCount = newValue;
+    return newValue;
+  }
+
+  /**
+   * Get number of finished fork tasks.
+   *
+   * @return approximate number of finished tasks
+   */
+  long getCompletedForks() {
+    return this.forkExecutor.getCompletedTaskCount();
+  }
+
+  /**
+   * Get number of fork tasks waiting for a free fork.
+   *
+   * @return number of waiting tasks
+   */
+  int getWaitingForks() {
+    return this.forkExecutor.getQueue().size();
+  }
+
+  /**
+   * Executor to be used for JVM starts, its queue is unbounded but only fork
+   * count tasks are executed concurrently.
+   *
+   * @return the fork executor
+   */
+  Executor getForkExecutor() {
+    return this.forkExecutor;
+  }
+
+  /**
+   * Execute task in the fork pool and wait for its end.
+   *
+   * @param task task to be executed
+   * @throws InterruptedException it will be thrown if the thread is interrupted
+   */
+  void executeAndWait(final Runnable task) throws InterruptedException {
+    final Future<?> future = this.forkExecutor.submit(task);
+    try {
+      future.get();
+    }
+    catch (InterruptedException ex) {
+      future.cancel(true);
+      throw ex;
+    }
+    catch (ExecutionException ex) {
+      throw new RuntimeException("Unexpected error in fork task", ex.getCause());
+    }
+  }
+
+  /**
+   * Submit processing of a test class.
+   *
+   * @param <T> type of result
+   * @param task processing task
+   * @return future to get result
+   */
+  <T> Future<T> submitClass(final Callable<T> task) {
+    return this.classExecutor.submit(task);
+  }
+
+  void shutdown() {
+    this.classExecutor.shutdownNow();
+    this.forkExecutor.shutdownNow();
+  }
+}
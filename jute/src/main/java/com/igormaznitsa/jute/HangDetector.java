@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Detector of hung test JVMs by heartbeats sent by runners. A JVM is hung if
+ * during the hang window its CPU time has not advanced more than
+ * {@link #IDLE_CPU_PERCENT} percents of the wall time and there have been no
+ * active threads in its heartbeats. Hung JVM is killed. Heartbeats are handled
+ * in the thread of the result channel, so that the detector doesn't need its
+ * own thread.
+ *
+ * @see com.igormaznitsa.jute.runners.ResultReporter#PROPERTY_HEARTBEAT
+ * @since 1.1.2
+ */
+final class HangDetector {
+
+  /**
+   * Max CPU time in percents of the wall time consumed by idle JVM.
+   */
+  static final long IDLE_CPU_PERCENT = 1L;
+
+  /**
+   * Watch of a test JVM.
+   */
+  static final class Watch {
+
+    private final Process process;
+    private long lastCpu = -1L;
+    private long lastTime;
+    private long idleSince = -1L;
+    private volatile boolean hung;
+
+    private Watch(final Process process) {
+      this.process = process;
+    }
+
+    /**
+     * Check that the JVM has been killed as hung.
+     *
+     * @return true if the JVM is hung
+     */
+    boolean isHung() {
+      return this.hung;
+    }
+  }
+
+  private final long interval;
+  private final long window;
+  private final ProcessRegistry processRegistry;
+  private final Map<String, Watch> watches = new HashMap<String, Watch>();
+
+  /**
+   * Constructor.
+   *
+   * @param interval interval of heartbeats in milliseconds
+   * @param window time in milliseconds during which JVM must be idle to be
+   * interpreted as hung
+   */
+  HangDetector(final long interval, final long window) {
+    this(interval, window, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param interval interval of heartbeats in milliseconds
+   * @param window time in milliseconds during which JVM must be idle to be
+   * interpreted as hung
+   * @param processRegistry registry to kill hung JVM together with its
+   * descendants, can be null
+   */
+  HangDetector(final long interval, final long window, final ProcessRegistry processRegistry) {
+    this.interval = interval;
+    this.window = window;
+    this.processRegistry = processRegistry;
+  }
+
+  long getInterval() {
+    return this.interval;
+  }
+
+  long getWindow() {
+    return this.window;
+  }
+
+  /**
+   * Start watching of a JVM.
+   *
+   * @param testName name of the first test executed by the JVM
+   * @param process the JVM process
+   * @return the watch
+   */
+  synchronized Watch watch(final String testName, final Process process) {
+    final Watch result = new Watch(process);
+    this.watches.put(testName, result);
+    return result;
+  }
+
+  /**
+   * Stop watching of a JVM.
+   *
+   * @param testName name of the first test executed by the JVM
+   */
+  synchronized void cancel(final String testName) {
+    this.watches.remove(testName);
+  }
+
+  /**
+   * Process heartbeat of a JVM, heartbeats of not watched JVMs are ignored.
+   *
+   * @param testName name of the first test executed by the JVM
+   * @param cpuTime CPU time consumed by the JVM in nanoseconds
+   * @param activeThreads number of active threads in the JVM
+   * @param time time of the heartbeat in milliseconds
+   * @return true if the JVM has been detected as hung and killed
+   */
+  boolean onHeartbeat(final String testName, final long cpuTime, final int activeThreads, final long time) {
+    final Watch watch;
+    synchronized (this) {
+      watch = this.watches.get(testName);
+      if (watch == null || watch.hung) {
+        return false;
+      }
+      if (watch.lastCpu >= 0L && isIdle(cpuTime - watch.lastCpu, time - watch.lastTime, activeThreads)) {
+        if (watch.idleSince < 0L) {
+          watch.idleSince = watch.lastTime;
+        }
+      }
+      else {
+        watch.idleSince = -1L;
+      }
+      watch.lastCpu = cpuTime;
+      watch.lastTime = time;
+      if (watch.idleSince < 0L || time - watch.idleSince < this.window) {
+        return false;
+      }
+      watch.hung = true;
+      this.watches.remove(testName);
+    }
+    if (this.processRegistry == null) {
+      Utils.destroyForcibly(watch.process);
+    }
+    else {
+      this.processRegistry.destroy(watch.process, true);
+    }
+    return true;
+  }
+
+  /**
+   * Check that JVM has been idle between two heartbeats.
+   *
+   * @param cpuDelta consumed CPU time in nanoseconds
+   * @param timeDelta wall time in milliseconds
+   * @param activeThreads number of active threads
+   * @return true if there are no active threads and CPU time has not advanced
+   */
+  static boolean isIdle(final long cpuDelta, final long timeDelta, final int activeThreads) {
+    return activeThreads == 0 && cpuDelta * 100L <= IDLE_CPU_PERCENT * timeDelta * 1000000L;
+  }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import com.igormaznitsa.jute.runners.InProcessTestRunner;
+import com.igormaznitsa.jute.runners.RunnerProtocol;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Pool of long-living worker JVMs executing tests with IN_PROCESS isolation.
+ * Workers are grouped by their command line and environment, a worker executes
+ * one test at a time so that the number of workers is limited by the number
+ * of concurrently executed tests. A worker is destroyed if a test is timed out
+ * or if the worker asks for recycling. Class path of workers contains only
+ * jars shared between tests, folders of test and project classes are loaded
+ * by isolated class loader of every test. Output of a test is written into the
+ * console buffers of the test as soon as it is received from the worker. The
+ * pool starts nothing and writes no files until a test with IN_PROCESS
+ * isolation is executed.
+ *
+ * @since 1.1.2
+ */
+final class InProcessWorkerPool {
+
+  static final String WORKER_RUNNER_CLASS = InProcessTestRunner.class.getName();
+
+  private static final Charset CONTROL_CHARSET = Charset.forName("UTF-8");
+
+  private final Map<String, Queue<Worker>> idleWorkers = new HashMap<String, Queue<Worker>>();
+  private final List<String> isolatedFolders;
+  private final LaunchArguments baseLaunchArguments;
+  private final File launchFolder;
+  private final String classPath;
+  private LaunchArguments launchArguments;
+  private final Log log;
+  private final ProcessRegistry processRegistry;
+  private boolean disposed;
+
+  /**
+   * Constructor.
+   *
+   * @param log logger
+   * @param isolatedFolders folders to be loaded by new class loader for every
+   * test
+   * @param launchArguments builder of command lines for test JVMs, its mode,
+   * options and properties are used for workers
+   * @param launchFolder folder to write files of launch arguments of workers
+   * @param classPath class path of workers, it must not contain the isolated
+   * folders
+   * @param processRegistry registry of started processes
+   */
+  InProcessWorkerPool(final Log log, final List<String> isolatedFolders, final LaunchArguments launchArguments, final File launchFolder, final String classPath, final ProcessRegistry processRegistry) {
+    this.log = log;
+    this.isolatedFolders = new ArrayList<String>(isolatedFolders);
+    this.baseLaunchArguments = launchArguments;
+    this.launchFolder = launchFolder;
+    this.classPath = classPath;
+    this.processRegistry = processRegistry;
+  }
+
+  /**
+   * Get builder of command lines for workers, it is prepared at the first
+   * call.
+   *
+   * @return builder of command lines which class path doesn't contain
+   * isolated folders
+   * @throws IOException it will be thrown if files of launch arguments can't
+   * be written
+   */
+  synchronized LaunchArguments getLaunchArguments() throws IOException {
+    if (this.launchArguments == null) {
+      this.launchArguments = this.baseLaunchArguments.withClassPath(this.launchFolder, this.classPath);
+    }
+    return this.launchArguments;
+  }
+
+  /**
+   * Execute test in a worker.
+   *
+   * @param arguments command line of the worker JVM without main class
+   * @param env extra environment variables, can be null
+   * @param runnerClass name of the runner class to execute the test
+   * @param tests test names in format class_name#method_name
+   * @param in text to be provided to the test through System.in, can be null
+   * @param timeout timeout in milliseconds, non-positive value means no
+   * timeout
+   * @param consoleBuffer buffer to get System.out of the test
+   * @param consoleErrBuffer buffer to get System.err of the test
+   * @return exit code of the test or null if timeout
+   * @throws IOException it will be thrown for transport error
+   * @throws InterruptedException it will be thrown if the thread is interrupted
+   */
+  Integer execute(final List<String> arguments, final Properties env, final String runnerClass, final List<String> tests, final String in, final long timeout, final OutputStream consoleBuffer, final OutputStream consoleErrBuffer) throws IOException, InterruptedException {
+    final List<String> command = new ArrayList<String>(arguments);
+    command.add(WORKER_RUNNER_CLASS);
+    command.addAll(this.isolatedFolders);
+
+    final Worker worker = acquire(command, env);
+    final Worker.Result result;
+    try {
+      result = worker.execute(runnerClass, tests, in == null ? new byte[0] : in.getBytes(Charset.defaultCharset()), timeout, consoleBuffer, consoleErrBuffer);
+    }
+    catch (IOException ex) {
+      worker.destroy();
+      throw ex;
+    }
+    catch (InterruptedException ex) {
+      worker.destroy();
+      throw ex;
+    }
+
+    if (result == null) {
+      worker.destroy();
+      worker.drainStrayOutput(consoleErrBuffer);
+      return null;
+    }
+
+    worker.drainStrayOutput(consoleErrBuffer);
+
+    if (result.recycle) {
+      this.log.debug("Worker JVM is recycled after " + tests);
+      worker.destroy();
+    }
+    else {
+      release(command, env, worker);
+    }
+    return result.exitCode;
+  }
+
+  private Worker acquire(final List<String> command, final Properties env) throws IOException {
+    final String key = WarmJvmPool.makeKey(command, env);
+    synchronized (this.idleWorkers) {
+      if (this.disposed) {
+        throw new IllegalStateException("Pool is disposed");
+      }
+      final Queue<Worker> queue = this.idleWorkers.get(key);
+      while (queue != null && !queue.isEmpty()) {
+        final Worker candidate = queue.poll();
+        if (candidate.isAlive()) {
+          return candidate;
+        }
+        candidate.destroy();
+      }
+    }
+    this.log.debug("Starting worker JVM : " + command);
+    return Worker.start(command, env, this.processRegistry);
+  }
+
+  private void release(final List<String> command, final Properties env, final Worker worker) {
+    final String key = WarmJvmPool.makeKey(command, env);
+    synchronized (this.idleWorkers) {
+      if (this.disposed) {
+        worker.destroy();
+        return;
+      }
+      Queue<Worker> queue = this.idleWorkers.get(key);
+      if (queue == null) {
+        queue = new LinkedList<Worker>();
+        this.idleWorkers.put(key, queue);
+      }
+      queue.add(worker);
+    }
+  }
+
+  /**
+   * Stop all idle workers, the pool can't be used after the call.
+   */
+  void dispose() {
+    synchronized (this.idleWorkers) {
+      this.disposed = true;
+      for (final Queue<Worker> queue : this.idleWorkers.values()) {
+        for (final Worker worker : queue) {
+          worker.destroy();
+        }
+      }
+      this.idleWorkers.clear();
+    }
+  }
+
+  /**
+   * Started worker JVM.
+   */
+  private static final class Worker {
+
+    private static final Object END = new Object();
+
+    private final Process process;
+    private final ProcessRegistry processRegistry;
+    private final OutputStream control;
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+    private final ByteArrayOutputStream strayOutput = new ByteArrayOutputStream();
+    private final Object targetLock = new Object();
+    private OutputStream testOut;
+    private OutputStream testErr;
+
+    private static final class Result {
+
+      private Integer exitCode;
+      private boolean recycle;
+    }
+
+    private Worker(final Process process, final ProcessRegistry processRegistry) {
+      this.process = process;
+      this.processRegistry = processRegistry;
+      this.control = new BufferedOutputStream(process.getOutputStream());
+    }
+
+    static Worker start(final List<String> command, final Properties env, final ProcessRegistry processRegistry) throws IOException {
+      final ProcessBuilder builder = new ProcessBuilder(command);
+      if (env != null) {
+        for (final Map.Entry<Object, Object> entry : env.entrySet()) {
+          builder.environment().put((String) entry.getKey(), (String) entry.getValue());
+        }
+      }
+      final Process process = builder.start();
+      processRegistry.register(process);
+      final Worker result = new Worker(process, processRegistry);
+      result.startReaders();
+      return result;
+    }
+
+    private void startReaders() {
+      final Thread resultReader = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          readResults();
+        }
+      }, "jute-worker-out");
+      resultReader.setDaemon(true);
+      resultReader.start();
+
+      final Thread errReader = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          final InputStream err = process.getErrorStream();
+          final byte[] buffer = new byte[4096];
+          try {
+            while (true) {
+              final int read = err.read(buffer);
+              if (read < 0) {
+                break;
+              }
+              synchronized (strayOutput) {
+                strayOutput.write(buffer, 0, read);
+              }
+            }
+          }
+          catch (IOException ex) {
+            // the worker is stopped
+          }
+        }
+      }, "jute-worker-err");
+      errReader.setDaemon(true);
+      errReader.start();
+    }
+
+    private void readResults() {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(this.process.getInputStream()));
+      try {
+        while (true) {
+          final String line = readLine(in);
+          if (line == null) {
+            break;
+          }
+          final boolean outFrame = line.startsWith(RunnerProtocol.WORKER_OUT);
+          if (outFrame || line.startsWith(RunnerProtocol.WORKER_ERR)) {
+            final byte[] data = new byte[Integer.parseInt(line.substring((outFrame ? RunnerProtocol.WORKER_OUT : RunnerProtocol.WORKER_ERR).length()).trim())];
+            in.readFully(data);
+            writeOutput(outFrame, data);
+            continue;
+          }
+          if (!line.startsWith(RunnerProtocol.WORKER_RESULT)) {
+            synchronized (this.strayOutput) {
+              this.strayOutput.write((line + '\n').getBytes(Charset.defaultCharset()));
+            }
+            continue;
+          }
+
+          final String[] fields = line.substring(RunnerProtocol.WORKER_RESULT.length()).trim().split(" ");
+          final Result result = new Result();
+          result.recycle = "1".equals(fields[1]);
+          if (RunnerProtocol.WORKER_EXIT.equals(fields[0])) {
+            // exit code of the process is known only after its end
+            result.exitCode = null;
+            result.recycle = true;
+          }
+          else {
+            result.exitCode = Integer.valueOf(fields[0]);
+          }
+          setTargets(null, null);
+          this.results.add(result);
+        }
+      }
+      catch (Exception ex) {
+        synchronized (this.strayOutput) {
+          new PrintStream(this.strayOutput, true).println("Error of worker result channel : " + ex);
+        }
+      }
+      finally {
+        this.results.add(END);
+      }
+    }
+
+    /**
+     * Write output of the current test, output received when there is no
+     * test (from threads left by previous tests) is kept as stray output.
+     */
+    private void writeOutput(final boolean out, final byte[] data) throws IOException {
+      synchronized (this.targetLock) {
+        final OutputStream target = out ? this.testOut : this.testErr;
+        if (target != null) {
+          target.write(data);
+          return;
+        }
+      }
+      synchronized (this.strayOutput) {
+        this.strayOutput.write(data);
+      }
+    }
+
+    private void setTargets(final OutputStream out, final OutputStream err) {
+      synchronized (this.targetLock) {
+        this.testOut = out;
+        this.testErr = err;
+      }
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+      final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      while (true) {
+        final int chr = in.read();
+        if (chr < 0) {
+          if (buffer.size() == 0) {
+            return null;
+          }
+          break;
+        }
+        if (chr == '\n') {
+          break;
+        }
+        buffer.write(chr);
+      }
+      return new String(buffer.toByteArray(), CONTROL_CHARSET);
+    }
+
+    boolean isAlive() {
+      try {
+        this.process.exitValue();
+        return false;
+      }
+      catch (IllegalThreadStateException ex) {
+        return true;
+      }
+    }
+
+    /**
+     * Send test to the worker and wait for its result, output of the test is
+     * written into the provided streams until the result is received.
+     *
+     * @return result of the test or null if timeout
+     */
+    Result execute(final String runnerClass, final List<String> tests, final byte[] in, final long timeout, final OutputStream out, final OutputStream err) throws IOException, InterruptedException {
+      final StringBuilder command = new StringBuilder();
+      command.append(in.length).append(' ').append(runnerClass);
+      for (final String name : tests) {
+        command.append(' ').append(name);
+      }
+      command.append('\n');
+      setTargets(out, err);
+      final Object received;
+      try {
+        this.control.write(command.toString().getBytes(CONTROL_CHARSET));
+        this.control.write(in);
+        this.control.flush();
+        received = timeout > 0L ? this.results.poll(timeout, TimeUnit.MILLISECONDS) : this.results.take();
+      }
+      finally {
+        // output received after timeout is not written into the streams
+        setTargets(null, null);
+      }
+      if (received == null) {
+        return null;
+      }
+
+      if (received == END) {
+        // the worker is stopped without result
+        final Result result = new Result();
+        result.recycle = true;
+        result.exitCode = this.process.waitFor();
+        return result;
+      }
+
+      final Result result = (Result) received;
+      if (result.exitCode == null) {
+        result.exitCode = this.process.waitFor();
+      }
+      return result;
+    }
+
+    void drainStrayOutput(final OutputStream target) throws IOException {
+      synchronized (this.strayOutput) {
+        this.strayOutput.writeTo(target);
+        this.strayOutput.reset();
+      }
+    }
+
+    void destroy() {
+      try {
+        this.control.close();
+      }
+      catch (IOException ex) {
+        // ignore
+      }
+      this.processRegistry.destroy(this.process, false);
+      this.processRegistry.release(this.process);
+    }
+  }
+}
@@ -18,6 +18,8 @@ package com.igormaznitsa.jute;
 import com.igormaznitsa.jute.TestContainer.TestResult;
 import com.igormaznitsa.jute.runners.JUnitSingleTestMethodRunner;
 import com.igormaznitsa.jute.runners.JUteSingleTestMethodRunner;
+import com.igormaznitsa.jute.runners.ResultReporter;
+import com.igormaznitsa.jute.runners.WarmJvmTestMethodRunner;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.util.*;
@@ -35,6 +37,7 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.objectweb.asm.*;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.springframework.util.AntPathMatcher;
 
 /**
@@ -48,17 +51,23 @@ public class JuteMojo extends AbstractMojo {
 
   private final ThreadPoolExecutor CACHED_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
 
+  private boolean junitTestListSupported = true;
+
   private static final String TERMINAL_SECTION_START = "$$$89234098234-923598oiojadsfsldkfqwoiueq4190284";
   private static final String TERMINAL_SECTION_END = "$&^*@UYYI(*&(*@$(I@(*#@(**^&*&#$IUWYRWIHDKY(@#";
   private static final String SYNC_TEST_RESULT_PREFIX = "$$$*>";
   private static final String ASYNC_TEST_RESULT_PREFIX = ">$$$*>";
+  private static final String CLASS_METHODS_NAME = "@AfterClass";
   private static final String[] EMPTY_STR = new String[0];
+  private static final int SCAN_CHUNK_SIZE = 64;
+  private static final int DISCOVERY_QUEUE_CAPACITY = 4;
 
   static final String ANNO_TEST = "Lorg/junit/Test;";
   static final String ANNO_IGNORE = "Lorg/junit/Ignore;";
   static final String ANNO_JUTE = "Lcom/igormaznitsa/jute/annotations/JUteTest;";
   static final String JUNIT_SINGLE_RUNNER_CLASS = JUnitSingleTestMethodRunner.class.getName();
   static final String JUTE_SINGLE_RUNNER_CLASS = JUteSingleTestMethodRunner.class.getName();
+  static final String WARM_JVM_RUNNER_CLASS = WarmJvmTestMethodRunner.class.getName();
 
   @Parameter(defaultValue = "${project}", readonly = true)
   private MavenProject project;
@@ -233,6 +242,271 @@ public class JuteMojo extends AbstractMojo {
   @Parameter(name = "classesDirectory", defaultValue = "${project.build.outputDirectory}")
   private File classesDirectory;
 
+  /**
+   * Number of pre-started JVMs to be kept ready for every combination of JVM
+   * interpreter, JVM options, java properties and environment. Every such JVM
+   * waits for a test method, executes it and exits, so that every test still
+   * gets its own process but JVM start is moved off the critical path. If zero
+   * or less then the pool is not used.
+   */
+  @Parameter(name = "warmJvmPool", defaultValue = "0")
+  private int warmJvmPool;
+
+  /**
+   * Default isolation of test methods, can be overridden by JUteTest
+   * annotation. METHOD means that every test method is executed in its own JVM,
+   * CLASS means that test methods of the same class which have the same JVM
+   * configuration are executed in the same JVM with single BeforeClass and
+   * AfterClass calls, IN_PROCESS means that every test method is executed by a
+   * long-living worker JVM with new class loader for test and project classes
+   * while dependency jars are shared. A worker is restarted if a test leaves
+   * working threads or calls System.exit. AUTO means CLASS for test classes
+   * found share-safe by share analysis and METHOD for other classes.
+   */
+  @Parameter(name = "isolation", defaultValue = "METHOD")
+  private String isolation;
+
+  /**
+   * Maximum number of concurrently working test JVMs for the whole session,
+   * either an absolute value like "4" or a value multiplied by the number of
+   * processors like "1.5C". If provided then test classes are processed
+   * concurrently, order of tests inside a class is respected and log of every
+   * class is printed as a whole. By default classes are processed one by one
+   * and test methods with the same order are started without limit. AUTO or
+   * AUTO:min-max (like "AUTO:1-2C") makes the number adaptive, it is changed
+   * every few seconds within the bounds depending on finished tests per
+   * second, load average and available memory, the default bounds are 1 and
+   * 2C. Changes are logged in verbose mode.
+   */
+  @Parameter(name = "forkCount")
+  private String forkCount;
+
+  /**
+   * File to keep history of test executions (execution times and results of
+   * the last runs for every test). It is loaded at start and updated at the end
+   * of the session even if some tests fail. History of tests not found in the
+   * completed session is removed unless tests are selected by 'jute.test'.
+   */
+  @Parameter(name = "historyFile", defaultValue = "${project.build.directory}/jute-history.bin")
+  private File historyFile;
+
+  /**
+   * Start order of tests which can be executed in parallel. NAME starts them
+   * in alphabetical order, LPT (longest processing time) starts the longest
+   * tests first using execution times from the history file, tests without
+   * history are started first. Order barriers are respected and the log is
+   * always printed in alphabetical order. With forkCount, LPT also defines the
+   * start order of test classes.
+   */
+  @Parameter(name = "scheduling", defaultValue = "NAME")
+  private String scheduling;
+
+  /**
+   * Use dynamic class data sharing archive to speed up start of test JVMs.
+   * The archive is created in background in the target/jute-cds folder and
+   * used by test JVMs started after that, it is rebuilt if the class path or
+   * the JVM is changed. Only classes from jar files can be archived, so jar
+   * files are placed before folders in the class path of test JVMs. Ignored
+   * for JVMs which don't support dynamic archives (JDK 13+ is needed) and for
+   * IN_PROCESS workers.
+   */
+  @Parameter(name = "classDataSharing", defaultValue = "false")
+  private boolean classDataSharing;
+
+  /**
+   * The way to provide class path to test JVMs. ARGUMENT provides it through
+   * command line, ARGFILE writes class path, java properties and global JVM
+   * options once per session into an argument file (JDK 9+) referenced from
+   * every command line, MANIFEST_JAR writes class path into manifest of an
+   * empty jar file. If the JVM doesn't support argument files then
+   * MANIFEST_JAR is used instead of ARGFILE. Files are written into the
+   * target/jute-launch folder.
+   */
+  @Parameter(name = "classPathMode", defaultValue = "ARGUMENT")
+  private String classPathMode;
+
+  /**
+   * File to keep structure of scanned test class files, only new and changed
+   * class files are parsed if the file exists. Class files are compared by
+   * size, modification time and content hash.
+   */
+  @Parameter(name = "discoveryIndexFile", defaultValue = "${project.build.directory}/jute-discovery.bin")
+  private File discoveryIndexFile;
+
+  /**
+   * Use test index META-INF/jute/test-index written into test classes folder
+   * by annotation processor from jute-annotations, class files described by
+   * the index are not read. Class files missing in the index or newer than the
+   * index are scanned, all files are scanned if the index is missing.
+   */
+  @Parameter(name = "useTestIndex", defaultValue = "true")
+  private boolean useTestIndex;
+
+  /**
+   * Start tests while test classes are still being scanned. Scanned classes
+   * are passed to execution in batches, so that the first tests are started
+   * without waiting for the whole scan. The number of detected tests is printed
+   * at the end, test names are aligned within a batch and LPT scheduling
+   * orders classes within a batch.
+   */
+  @Parameter(name = "pipelinedDiscovery", defaultValue = "false")
+  private boolean pipelinedDiscovery;
+
+  /**
+   * Threshold in milliseconds for adaptive batching. Tests with METHOD
+   * isolation whose average execution time in the history file is below the
+   * threshold and whose last run was successful are grouped by JVM
+   * configuration and executed in the same JVM. If any test of a batch does
+   * not pass then every test of the batch is re-executed in its own JVM and
+   * only that result is reported. Tests with text for System.in are not
+   * batched. Zero or less disables batching.
+   */
+  @Parameter(name = "batchThreshold", defaultValue = "0")
+  private long batchThreshold;
+
+  /**
+   * Analyze byte code of test classes to find operations changing state shared
+   * by all code in the JVM (writes of static fields, System.setProperty,
+   * System.exit, thread starts, setters of global defaults). Classes without
+   * such operations are share-safe, AUTO isolation executes their test methods
+   * in the same JVM and only share-safe classes are used for adaptive
+   * batching. The analysis is always performed for AUTO default isolation.
+   * Test index is not used because the analysis needs class files, results
+   * are cached in the discovery index.
+   */
+  @Parameter(name = "shareAnalysis", defaultValue = "false")
+  private boolean shareAnalysis;
+
+  /**
+   * Report of share analysis, it lists every test class as SHARE-SAFE or
+   * ISOLATION-REQUIRED with found reasons.
+   */
+  @Parameter(name = "shareAnalysisReport", defaultValue = "${project.build.directory}/jute-share-analysis.txt")
+  private File shareAnalysisReport;
+
+  /**
+   * Memory budget for concurrently working test JVMs, either a size like
+   * "6g" or AUTO to use memory available at session start (cgroup limit and
+   * usage or MemAvailable from /proc/meminfo). Before start every test JVM
+   * reserves its max heap (-Xmx, or forkMemory if not provided) plus non-heap
+   * overhead and waits until the reservation fits the budget. A test which
+   * JVM can never fit the budget fails with explanation. Idle JVMs of the warm
+   * JVM pool keep their reservations, they are started only if they fit the
+   * budget and destroyed if a test needs their memory. If not provided then
+   * JVMs are started without memory control.
+   */
+  @Parameter(name = "memoryBudget")
+  private String memoryBudget;
+
+  /**
+   * Estimated heap of test JVMs which don't have -Xmx option, used by memory
+   * budget.
+   */
+  @Parameter(name = "forkMemory", defaultValue = "256m")
+  private String forkMemory;
+
+  /**
+   * The way to capture console output of test JVMs. MEMORY pumps output
+   * streams into memory, FILE redirects output and error streams of every JVM
+   * started for a single test into files of the target/jute-console folder
+   * without pumping threads, the files are read only if the console must be
+   * shown. FILE needs Java 7+ to run Maven, tests executed in warm JVMs,
+   * IN_PROCESS workers or batches are always captured in memory.
+   */
+  @Parameter(name = "consoleCapture", defaultValue = "MEMORY")
+  private String consoleCapture;
+
+  /**
+   * Limit of captured console output, a size like "64k". Only the first and
+   * the last bytes of every console stream of a test JVM within the limit are
+   * kept in memory and shown in the log, the whole stream is written into a
+   * file of the target/jute-logs folder. If not provided then console output
+   * is not limited.
+   */
+  @Parameter(name = "consoleLimit")
+  private String consoleLimit;
+
+  /**
+   * Compress files of console streams exceeding consoleLimit with gzip.
+   */
+  @Parameter(name = "consoleSpillGzip", defaultValue = "false")
+  private boolean consoleSpillGzip;
+
+  /**
+   * Write result of every test into the log as soon as the test is completed,
+   * in format [class#method] RESULT (time). Results are written by single
+   * thread, the summary of every test class is printed as usual.
+   */
+  @Parameter(name = "streamResults", defaultValue = "false")
+  private boolean streamResults;
+
+  /**
+   * Write console output of working tests into the log line by line with
+   * [class#method] prefix through single writer thread. Lines are streamed
+   * only for console captured in memory, output of warm JVMs is streamed after
+   * the test end.
+   */
+  @Parameter(name = "streamConsole", defaultValue = "false")
+  private boolean streamConsole;
+
+  /**
+   * Receive structured result of every single test from its runner through
+   * loopback socket. The result contains outcome, failure and durations of
+   * the test phases, so that time of the test body is shown separately from
+   * JVM startup and the startup time and peak heap are saved in the test
+   * history.
+   */
+  @Parameter(name = "resultChannel", defaultValue = "false")
+  private boolean resultChannel;
+
+  /**
+   * Time in milliseconds given to a test JVM to exit after its test has
+   * reported result. If it is zero or greater then the result of a single test
+   * is taken as soon as it is reported through result channel (the channel is
+   * turned on automatically), so that shutdown hooks and non-daemon threads of
+   * the test JVM count neither toward timeout nor toward test time. The JVM is
+   * reaped in background and killed if it is alive after the period. If
+   * negative then test JVMs are waited until exit.
+   */
+  @Parameter(name = "shutdownGrace", defaultValue = "-1")
+  private long shutdownGrace = -1L;
+
+  /**
+   * Interval in milliseconds of heartbeats sent by test JVMs through result
+   * channel (the channel is turned on automatically). A heartbeat contains CPU
+   * time of the JVM and number of its running threads. If zero or less then
+   * heartbeats are not used. Heartbeats are sent only by newly started test
+   * JVMs.
+   */
+  @Parameter(name = "heartbeatInterval", defaultValue = "0")
+  private long heartbeatInterval;
+
+  /**
+   * Time in milliseconds during which a test JVM must be idle to be detected as
+   * hung, idle JVM doesn't consume CPU time and all its threads are either
+   * WAITING or BLOCKED. Hung JVM is killed and its tests get HUNG result. If
+   * zero or less then five heartbeat intervals are used.
+   */
+  @Parameter(name = "hangWindow", defaultValue = "0")
+  private long hangWindow;
+
+  /**
+   * Make thread dump of a test JVM stopped by timeout. SIGQUIT is sent to the
+   * JVM shortly before it is destroyed, the printed dump is shown in the
+   * console of the test and written into file of the target/jute-logs folder.
+   * Not supported on Windows and for tests executed in process.
+   */
+  @Parameter(name = "threadDumpOnTimeout", defaultValue = "false")
+  private boolean threadDumpOnTimeout;
+
+  /**
+   * Number of top frames of every non-daemon thread shown as summary of thread
+   * dump of a test JVM stopped by timeout. If zero or less then the summary is
+   * not shown.
+   */
+  @Parameter(name = "threadDumpFrames", defaultValue = "0")
+  private int threadDumpFrames;
+
   public File getTestClassesDirectory() {
     return this.testClassesDirectory;
   }
@@ -305,6 +579,118 @@ public class JuteMojo extends AbstractMojo {
     return this.env;
   }
 
+  public int getWarmJvmPool() {
+    return this.warmJvmPool;
+  }
+
+  public String getIsolation() {
+    return this.isolation;
+  }
+
+  public String getForkCount() {
+    return this.forkCount;
+  }
+
+  public File getHistoryFile() {
+    return this.historyFile;
+  }
+
+  public String getScheduling() {
+    return this.scheduling;
+  }
+
+  public boolean isClassDataSharing() {
+    return this.classDataSharing;
+  }
+
+  public String getClassPathMode() {
+    return this.classPathMode;
+  }
+
+  public File getDiscoveryIndexFile() {
+    return this.discoveryIndexFile;
+  }
+
+  public boolean isUseTestIndex() {
+    return this.useTestIndex;
+  }
+
+  public boolean isPipelinedDiscovery() {
+    return this.pipelinedDiscovery;
+  }
+
+  public long getBatchThreshold() {
+    return this.batchThreshold;
+  }
+
+  public boolean isShareAnalysis() {
+    return this.shareAnalysis;
+  }
+
+  public File getShareAnalysisReport() {
+    return this.shareAnalysisReport;
+  }
+
+  public String getMemoryBudget() {
+    return this.memoryBudget;
+  }
+
+  public String getForkMemory() {
+    return this.forkMemory;
+  }
+
+  public String getConsoleCapture() {
+    return this.consoleCapture;
+  }
+
+  public String getConsoleLimit() {
+    return this.consoleLimit;
+  }
+
+  public boolean isConsoleSpillGzip() {
+    return this.consoleSpillGzip;
+  }
+
+  public boolean isStreamResults() {
+    return this.streamResults;
+  }
+
+  public boolean isStreamConsole() {
+    return this.streamConsole;
+  }
+
+  public boolean isResultChannel() {
+    return this.resultChannel;
+  }
+
+  public long getShutdownGrace() {
+    return this.shutdownGrace;
+  }
+
+  public long getHeartbeatInterval() {
+    return this.heartbeatInterval;
+  }
+
+  public long getHangWindow() {
+    return this.hangWindow;
+  }
+
+  public boolean isThreadDumpOnTimeout() {
+    return this.threadDumpOnTimeout;
+  }
+
+  public int getThreadDumpFrames() {
+    return this.threadDumpFrames;
+  }
+
+  private boolean isShareAnalysisActive() {
+    return this.shareAnalysis || TestContainer.Isolation.find(this.isolation) == TestContainer.Isolation.AUTO;
+  }
+
+  private ForkScheduler.Scheduling getSchedulingMode() {
+    return ForkScheduler.Scheduling.find(this.scheduling);
+  }
+
   private static List<String> collectAllPotentialTestClassPaths(final Log log, final boolean verbose, final File rootFolder, final String[] includes, final String[] excludes) {
     final List<String> result = new ArrayList<String>();
 
@@ -395,6 +781,9 @@ public class JuteMojo extends AbstractMojo {
       log.warn("No test files found in " + rootFolder.getAbsolutePath());
     }
 
+    // make order of classes independent on file system
+    Collections.sort(result);
+
     return result;
   }
 
@@ -450,6 +839,32 @@ public class JuteMojo extends AbstractMojo {
     return result;
   }
 
+  private String findJUnitVersion() {
+    for (final Artifact a : project.getArtifacts()) {
+      if ("junit".equals(a.getGroupId()) && ("junit".equals(a.getArtifactId()) || "junit-dep".equals(a.getArtifactId()))) {
+        return a.getBaseVersion();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Check that JUnit of the project can execute several test methods in the
+   * same JVM.
+   *
+   * @param junitVersion version of JUnit artifact, can be null if there is no
+   * JUnit
+   * @return true if tests can be executed in the same JVM, false otherwise
+   * @since 1.1.2
+   */
+  static boolean isJUnitTestListSupported(final String junitVersion) {
+    return junitVersion == null || new DefaultArtifactVersion(junitVersion).compareTo(new DefaultArtifactVersion(JUnitSingleTestMethodRunner.MIN_TEST_LIST_JUNIT_VERSION)) >= 0;
+  }
+
+  private boolean canShareJvm(final TestContainer container) {
+    return this.junitTestListSupported || !JUNIT_SINGLE_RUNNER_CLASS.equals(container.getRunnerClass());
+  }
+
   private Collection<File> getClassPathAsFiles() {
     final List<File> result = new ArrayList<File>();
     if (this.testClassesDirectory != null) {
@@ -510,18 +925,90 @@ public class JuteMojo extends AbstractMojo {
       throw new MojoExecutionException("Can't get path to the Mojo jar", ex);
     }
 
+    final int forks;
+    final int[] autoForks;
+    final LaunchArguments.ClassPathMode classPathMode;
+    final MemoryBudget memoryBudgetControl;
+    final ConsoleCapture.Mode consoleCaptureMode;
+    final int consoleLimitBytes;
+    try {
+      TestContainer.Isolation.find(this.isolation);
+      getSchedulingMode();
+      classPathMode = LaunchArguments.ClassPathMode.find(this.classPathMode);
+      final int processors = Runtime.getRuntime().availableProcessors();
+      if (ForkScheduler.isAutoForkCount(this.forkCount)) {
+        autoForks = ForkScheduler.parseAutoForkCount(this.forkCount, processors);
+        forks = Math.max(autoForks[0], Math.min(autoForks[1], processors));
+      }
+      else {
+        autoForks = null;
+        forks = this.forkCount == null || this.forkCount.trim().isEmpty() ? 0 : ForkScheduler.parseForkCount(this.forkCount, processors);
+      }
+      memoryBudgetControl = makeMemoryBudget();
+      consoleCaptureMode = ConsoleCapture.Mode.find(this.consoleCapture);
+      consoleLimitBytes = ConsoleCapture.parseLimit(this.consoleLimit);
+    }
+    catch (IllegalArgumentException ex) {
+      throw new MojoExecutionException(ex.getMessage(), ex);
+    }
+
+    final String junitVersion = findJUnitVersion();
+    this.junitTestListSupported = isJUnitTestListSupported(junitVersion);
+    if (!this.junitTestListSupported) {
+      getLog().warn("JUnit " + junitVersion + " can't execute several tests in the same JVM (" + JUnitSingleTestMethodRunner.MIN_TEST_LIST_JUNIT_VERSION + "+ is needed), every JUnit test will be executed in its own JVM");
+    }
+
     final File javaInterpreter = getFilePathToJVMInterpreter(this.java);
     final String testClassPath = makeClassPath(pathToMojoJar, getClassPathAsFiles());
 
-    final TestContainer baseTestConfig = new TestContainer(null, null, null, javaInterpreter == null ? this.java : javaInterpreter.getAbsolutePath(), this.jvmOptions, this.in, -1, this.enforcePrintConsole, false, this.timeout);
+    final TestContainer baseTestConfig = new TestContainer(null, null, null, javaInterpreter == null ? this.java : javaInterpreter.getAbsolutePath(), this.jvmOptions, this.in, -1, this.enforcePrintConsole, false, this.timeout, this.isolation == null ? "" : this.isolation);
 
     final List<String> collectedTestFilePaths = collectAllPotentialTestClassPaths(getLog(), this.verbose, testFolder, normalizeStringArray(this.includes), normalizeStringArray(this.excludes));
-    final Map<TestClassProcessor, List<TestContainer>> extractedTestMethods = new HashMap<TestClassProcessor, List<TestContainer>>();
-    try {
-      fillListByTestMethods(baseTestConfig, testFolder, collectedTestFilePaths, extractedTestMethods);
+    final Map<TestClassProcessor, List<TestContainer>> extractedTestMethods = new LinkedHashMap<TestClassProcessor, List<TestContainer>>();
+
+    Map<String, DiscoveryIndex.ClassSummary> compiledIndex = null;
+    if (this.useTestIndex && isShareAnalysisActive()) {
+      getLog().debug("Test index is not used because share analysis needs class files");
     }
-    catch (IOException ex) {
-      throw new MojoExecutionException("Can't scan test classes", ex);
+    else if (this.useTestIndex) {
+      try {
+        compiledIndex = CompiledTestIndex.load(getLog(), testFolder, collectedTestFilePaths);
+      }
+      catch (IOException ex) {
+        getLog().warn("Can't read test index, class files will be scanned : " + ex.getMessage());
+      }
+      if (compiledIndex != null) {
+        final int notIndexed = collectedTestFilePaths.size() - compiledIndex.size();
+        getLog().info("Test classes are taken from test index" + (notIndexed > 0 ? ", " + notIndexed + " class file(s) changed after the index will be scanned" : ""));
+      }
+    }
+
+    DiscoveryIndex discoveryIndex = null;
+    if ((compiledIndex == null || compiledIndex.size() < collectedTestFilePaths.size()) && this.discoveryIndexFile != null) {
+      try {
+        discoveryIndex = DiscoveryIndex.load(this.discoveryIndexFile);
+      }
+      catch (IOException ex) {
+        getLog().warn("Can't load discovery index, it will be reset : " + ex.getMessage());
+        discoveryIndex = new DiscoveryIndex();
+      }
+    }
+
+    final TestClassQueue testClassQueue;
+    Thread discoveryThread = null;
+    if (this.pipelinedDiscovery) {
+      testClassQueue = new TestClassQueue(DISCOVERY_QUEUE_CAPACITY);
+      discoveryThread = startPipelinedDiscovery(baseTestConfig, testFolder, collectedTestFilePaths, compiledIndex, discoveryIndex, testClassQueue);
+    }
+    else {
+      try {
+        fillListByTestMethods(getLog(), baseTestConfig, testFolder, collectedTestFilePaths, compiledIndex, discoveryIndex, extractedTestMethods);
+      }
+      catch (IOException ex) {
+        throw new MojoExecutionException("Can't scan test classes", ex);
+      }
+      saveDiscoveryIndex(getLog(), discoveryIndex);
+      testClassQueue = TestClassQueue.of(extractedTestMethods);
     }
 
     final long startTime = System.currentTimeMillis();
@@ -540,48 +1027,275 @@ public class JuteMojo extends AbstractMojo {
 
     getLog().info("Test class path: " + testClassPath);
     getLog().info(this.timeout <= 0L ? "No Timeout" : "Timeout is " + this.timeout + " ms");
-    getLog().info("Detected " + Utils.calcNumberOfItems(extractedTestMethods) + " potential test method(s)");
+    if (TestContainer.Isolation.find(this.isolation) != TestContainer.Isolation.METHOD) {
+      getLog().info("Default isolation: " + TestContainer.Isolation.find(this.isolation));
+    }
+    if (autoForks != null) {
+      getLog().info("Fork count: AUTO (" + autoForks[0] + ".." + autoForks[1] + "), started with " + forks);
+    }
+    else if (forks > 0) {
+      getLog().info("Fork count: " + forks);
+    }
+    if (getSchedulingMode() != ForkScheduler.Scheduling.NAME) {
+      getLog().info("Scheduling: " + getSchedulingMode());
+    }
+    if (this.warmJvmPool > 0) {
+      getLog().info("Warm JVM pool: " + this.warmJvmPool + " JVM(s) per configuration");
+    }
+    if (memoryBudgetControl != null) {
+      getLog().info("Memory budget: " + Utils.printMemorySize(memoryBudgetControl.getBudget()));
+    }
+    if (this.batchThreshold > 0L) {
+      if (this.historyFile == null) {
+        getLog().warn("Adaptive batching needs history file, it is disabled");
+      }
+      else {
+        getLog().info("Tests faster than " + this.batchThreshold + " ms are executed in batches");
+      }
+    }
+    if (this.pipelinedDiscovery) {
+      getLog().info("Tests are started during scan of test classes");
+    }
+    else {
+      getLog().info("Detected " + Utils.calcNumberOfItems(extractedTestMethods) + " potential test method(s)");
+    }
     getLog().info("");
 
     final AtomicInteger startedCounter = new AtomicInteger();
     final AtomicInteger errorCounter = new AtomicInteger();
     final AtomicInteger skippedCounter = new AtomicInteger();
 
-    int maxTestNameLength = 0;
-    for (final Map.Entry<TestClassProcessor, List<TestContainer>> e : extractedTestMethods.entrySet()) {
-      for (final TestContainer test : e.getValue()) {
-        if (maxTestNameLength < test.getMethodName().length()) {
-          maxTestNameLength = test.getMethodName().length();
-        }
+    TestHistory loadedHistory = null;
+    if (this.historyFile != null) {
+      try {
+        loadedHistory = TestHistory.load(this.historyFile);
+        getLog().debug("Loaded history of " + loadedHistory.size() + " test(s) from " + this.historyFile);
+      }
+      catch (IOException ex) {
+        getLog().warn("Can't load test history, it will be reset : " + ex.getMessage());
+        loadedHistory = new TestHistory();
+      }
+    }
+    final TestHistory history = loadedHistory;
+
+    final ProcessRegistry processRegistry = new ProcessRegistry(getLog());
+    if (!ProcessRegistry.isTreeSupported()) {
+      getLog().debug("Descendants of test JVMs can't be found by the current JVM (Java 9+ is needed), only test JVMs are killed");
+    }
+
+    final WarmJvmPool warmPool = this.warmJvmPool > 0 ? new WarmJvmPool(getLog(), this.warmJvmPool, processRegistry, memoryBudgetControl, consoleLimitBytes) : null;
+
+    CdsArchiveManager cdsArchiveManager = null;
+    if (this.classDataSharing) {
+      final String jvmForCds = baseTestConfig.getJVM();
+      cdsArchiveManager = new CdsArchiveManager(getLog(), new File(this.project.getBuild().getDirectory(), "jute-cds"), jvmForCds, testClassPath);
+      if (!cdsArchiveManager.isSupported()) {
+        getLog().info("Class data sharing is not supported by the JVM");
+        cdsArchiveManager = null;
+      }
+    }
+
+    if (cdsArchiveManager != null && classPathMode == LaunchArguments.ClassPathMode.MANIFEST_JAR) {
+      getLog().warn("Class data sharing can't be used with class path provided through manifest jar");
+      cdsArchiveManager = null;
+    }
+
+    final File launchFolder = new File(this.project.getBuild().getDirectory(), "jute-launch");
+    LaunchArguments launchArguments;
+    try {
+      // jar files are moved before folders only if the class path is used with the archive
+      launchArguments = LaunchArguments.prepare(getLog(), classPathMode, launchFolder, baseTestConfig.getJVM(), cdsArchiveManager == null ? testClassPath : cdsArchiveManager.getClassPath(), this.javaProperties, this.jvmOptions);
+      if (cdsArchiveManager != null && launchArguments.getMode() == LaunchArguments.ClassPathMode.MANIFEST_JAR) {
+        getLog().warn("Class data sharing can't be used with class path provided through manifest jar");
+        cdsArchiveManager = null;
+        launchArguments = launchArguments.withClassPath(launchFolder, testClassPath);
+      }
+    }
+    catch (IOException ex) {
+      throw new MojoExecutionException("Can't prepare arguments of test JVMs", ex);
+    }
+    if (launchArguments.getMode() != LaunchArguments.ClassPathMode.ARGUMENT) {
+      getLog().info("Class path mode: " + launchArguments.getMode() + " (" + launchArguments.getFile() + ')');
+    }
+
+    if (cdsArchiveManager != null) {
+      getLog().info("Class data sharing archive: " + cdsArchiveManager.getArchive() + (cdsArchiveManager.isReady() ? "" : " (will be created)"));
+      cdsArchiveManager.startCreation();
+    }
+
+    final List<String> isolatedFolders = new ArrayList<String>();
+    for (final File folder : new File[]{this.testClassesDirectory, this.classesDirectory}) {
+      if (folder != null && folder.isDirectory()) {
+        isolatedFolders.add(folder.getAbsolutePath());
       }
     }
+    final List<File> sharedClassPath = new ArrayList<File>(getClassPathAsFiles());
+    sharedClassPath.remove(this.testClassesDirectory);
+    sharedClassPath.remove(this.classesDirectory);
+    // arguments of workers are prepared only if a test is executed with IN_PROCESS isolation
+    final InProcessWorkerPool inProcessWorkerPool = new InProcessWorkerPool(getLog(), isolatedFolders, launchArguments, launchFolder, makeClassPath(pathToMojoJar, sharedClassPath), processRegistry);
+
+    File consoleFolder = null;
+    if (consoleCaptureMode == ConsoleCapture.Mode.FILE) {
+      if (ConsoleCapture.isSupported()) {
+        consoleFolder = new File(this.project.getBuild().getDirectory(), "jute-console");
+        getLog().info("Console capture: FILE (" + consoleFolder + ')');
+      }
+      else {
+        getLog().warn("Console capture into files needs Java 7+, console output is captured in memory");
+      }
+    }
+    final AsyncLogWriter streamWriter = this.streamResults || this.streamConsole ? new AsyncLogWriter(getLog()) : null;
+    if (streamWriter != null) {
+      streamWriter.start();
+      getLog().info("Streaming: " + (this.streamResults ? "results" : "") + (this.streamResults && this.streamConsole ? ", " : "") + (this.streamConsole ? "console" : ""));
+      if (this.streamConsole && consoleFolder != null) {
+        getLog().warn("Console of tests captured into files is not streamed");
+      }
+    }
+    final ConsoleCapture consoleCaptureControl = new ConsoleCapture(consoleFolder, consoleLimitBytes, new File(this.project.getBuild().getDirectory(), "jute-logs"), this.consoleSpillGzip, this.streamConsole ? streamWriter : null);
+    if (consoleLimitBytes > 0) {
+      getLog().info("Console limit: " + consoleLimitBytes + " byte(s) from start and end of every stream, full output in " + consoleCaptureControl.getSpillFolder());
+    }
 
-    for (final Map.Entry<TestClassProcessor, List<TestContainer>> e : extractedTestMethods.entrySet()) {
-      if (e.getValue().isEmpty()) {
-        continue;
+    ResultChannel resultChannelControl = null;
+    if (this.resultChannel || this.shutdownGrace >= 0L || this.heartbeatInterval > 0L) {
+      final HangDetector hangDetector = this.heartbeatInterval > 0L ? new HangDetector(this.heartbeatInterval, this.hangWindow > 0L ? this.hangWindow : this.heartbeatInterval * 5L, processRegistry) : null;
+      try {
+        resultChannelControl = new ResultChannel(getLog(), this.shutdownGrace, hangDetector);
+        getLog().info("Result channel: 127.0.0.1:" + resultChannelControl.getPort());
+        if (this.shutdownGrace >= 0L) {
+          getLog().info("Results are taken before JVM exit, shutdown grace " + this.shutdownGrace + " ms");
+        }
+        if (hangDetector != null) {
+          getLog().info("Heartbeat every " + hangDetector.getInterval() + " ms, JVM idle for " + hangDetector.getWindow() + " ms is killed as hung");
+        }
       }
+      catch (IOException ex) {
+        getLog().warn("Can't open result channel, results are detected by exit codes : " + ex.getMessage());
+      }
+    }
 
-      getLog().info(e.getKey().getClassName());
-      getLog().info(" " + (char) 0x2502);
+    final ThreadDumps threadDumps = this.threadDumpOnTimeout ? new ThreadDumps(new File(this.project.getBuild().getDirectory(), "jute-logs"), this.threadDumpFrames) : null;
+    if (threadDumps != null) {
+      getLog().info("Thread dump of JVM stopped by timeout is written into " + threadDumps.getFolder());
+    }
+    final TimeoutWheel timeoutWheel = new TimeoutWheel(threadDumps == null ? 0L : ThreadDumps.DUMP_WAIT, processRegistry);
+    final ForkContext context = new ForkContext(launchArguments, this.env, warmPool, cdsArchiveManager, inProcessWorkerPool, memoryBudgetControl, timeoutWheel, consoleCaptureControl, this.streamResults ? streamWriter : null, resultChannelControl, threadDumps, processRegistry);
+
+    final ForkScheduler scheduler;
+    ForkController forkController = null;
+    if (autoForks != null) {
+      scheduler = new ForkScheduler(autoForks[0], autoForks[1], forks);
+      forkController = new ForkController(getLog(), this.verbose, scheduler);
+      forkController.start();
+    }
+    else {
+      scheduler = forks > 0 ? new ForkScheduler(forks) : null;
+    }
+
+    boolean allTestsProcessed = false;
+    try {
+      final List<BufferedLog> classLogs = new ArrayList<BufferedLog>();
+      final List<Future<Void>> classFutures = new ArrayList<Future<Void>>();
+      int replayedClasses = 0;
+      int detectedTests = 0;
+      final Map<String, List<String>> shareAnalysisResults = isShareAnalysisActive() ? new TreeMap<String, List<String>>() : null;
+      while (true) {
+        final TestClassQueue.Batch batch;
+        try {
+          batch = testClassQueue.take();
+        }
+        catch (IOException ex) {
+          throw new MojoExecutionException("Can't scan test classes", ex);
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new MojoExecutionException("Interrupted", ex);
+        }
+        if (batch == null) {
+          break;
+        }
+        if (batch.getLog() != null) {
+          batch.getLog().replay();
+        }
+        detectedTests += Utils.calcNumberOfItems(batch.getClasses());
+        if (shareAnalysisResults != null) {
+          for (final Map.Entry<TestClassProcessor, List<TestContainer>> e : batch.getClasses().entrySet()) {
+            if (!e.getValue().isEmpty() && e.getKey().getShareHazards() != null) {
+              shareAnalysisResults.put(e.getKey().getClassName(), e.getKey().getShareHazards());
+            }
+          }
+        }
 
-      int nextTestIndex = 0;
+        final int maxTestNameLength = calcMaxTestNameLength(batch.getClasses());
+        if (scheduler == null) {
+          for (final Map.Entry<TestClassProcessor, List<TestContainer>> e : batch.getClasses().entrySet()) {
+            executeTestClass(getLog(), null, e.getKey().getClassName(), e.getValue(), maxTestNameLength, context, history, startedCounter, errorCounter, skippedCounter);
+          }
+        }
+        else {
+          submitTestClasses(scheduler, batch.getClasses(), maxTestNameLength, context, history, startedCounter, errorCounter, skippedCounter, classLogs, classFutures);
+          replayedClasses = replayClassLogs(classLogs, classFutures, replayedClasses, false);
+        }
+      }
+      replayClassLogs(classLogs, classFutures, replayedClasses, true);
+      allTestsProcessed = true;
 
-      final List<String> logStrings = new ArrayList<String>();
+      if (this.pipelinedDiscovery) {
+        getLog().info("");
+        getLog().info("Detected " + detectedTests + " potential test method(s)");
+      }
 
-      while (!Thread.currentThread().isInterrupted() && nextTestIndex < e.getValue().size()) {
+      if (shareAnalysisResults != null) {
+        writeShareAnalysisReport(shareAnalysisResults);
+      }
+    }
+    finally {
+      if (discoveryThread != null) {
+        discoveryThread.interrupt();
+      }
+      if (forkController != null) {
+        forkController.stop();
+      }
+      if (scheduler != null) {
+        scheduler.shutdown();
+      }
+      if (warmPool != null) {
+        warmPool.dispose();
+      }
+      inProcessWorkerPool.dispose();
+      timeoutWheel.dispose();
+      if (timeoutWheel.getKilled() > 0) {
+        getLog().warn(timeoutWheel.getKilled() + " test JVM(s) killed after shutdown grace");
+      }
+      processRegistry.dispose();
+      if (processRegistry.getOrphans() > 0) {
+        getLog().warn(processRegistry.getOrphans() + " orphan process(es) left by test JVMs killed");
+      }
+      if (resultChannelControl != null) {
+        resultChannelControl.dispose();
+      }
+      if (streamWriter != null) {
+        try {
+          streamWriter.close();
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (cdsArchiveManager != null) {
+        cdsArchiveManager.dispose();
+      }
+      if (history != null) {
         try {
-          logStrings.clear();
-          final int prevStartIndex = nextTestIndex;
-          final int numberOfExecuted = executeNextTestsFromList(logStrings, maxTestNameLength, testClassPath, e.getValue(), prevStartIndex, startedCounter, errorCounter, skippedCounter);
-          getLog().debug("Executed " + numberOfExecuted + " test(s)");
-          printExecutionResultIntoLog(nextTestIndex + numberOfExecuted >= e.getValue().size(), logStrings);
-          nextTestIndex += numberOfExecuted;
+          // history of tests not reached by the session is kept
+          history.save(this.historyFile, allTestsProcessed && (this.juteTest == null || this.juteTest.trim().length() == 0));
         }
-        catch (Throwable ex) {
-          throw new MojoExecutionException("Critical error during a test method execution", ex);
+        catch (IOException ex) {
+          getLog().warn("Can't save test history : " + ex.getMessage());
         }
       }
-      getLog().info("");
     }
 
     final long delay = System.currentTimeMillis() - startTime;
@@ -592,6 +1306,39 @@ public class JuteMojo extends AbstractMojo {
     }
   }
 
+  private void executeTestClass(final Log log, final ForkScheduler scheduler, final String className, final List<TestContainer> tests, final int maxTestNameLength, final ForkContext context, final TestHistory history, final AtomicInteger startedCounter, final AtomicInteger errorCounter, final AtomicInteger skippedCounter) throws MojoExecutionException {
+    if (tests.isEmpty()) {
+      return;
+    }
+
+    log.info(className);
+    log.info(" " + (char) 0x2502);
+
+    int nextTestIndex = 0;
+
+    final List<String> logStrings = new ArrayList<String>();
+
+    while (!Thread.currentThread().isInterrupted() && nextTestIndex < tests.size()) {
+      try {
+        logStrings.clear();
+        final int prevStartIndex = nextTestIndex;
+        final int numberOfExecuted = executeNextTestsFromList(log, scheduler, logStrings, maxTestNameLength, context, history, tests, prevStartIndex, startedCounter, errorCounter, skippedCounter);
+        log.debug("Executed " + numberOfExecuted + " test(s)");
+        // streamed records of the executed tests must precede their summary
+        final AsyncLogWriter stream = context.getResultStream() == null ? context.getConsoleCapture().getStream() : context.getResultStream();
+        if (stream != null) {
+          stream.flush();
+        }
+        printExecutionResultIntoLog(log, nextTestIndex + numberOfExecuted >= tests.size(), logStrings);
+        nextTestIndex += numberOfExecuted;
+      }
+      catch (Throwable ex) {
+        throw new MojoExecutionException("Critical error during a test method execution", ex);
+      }
+    }
+    log.info("");
+  }
+
   private static String extractTestNameFromLogString(final String text) {
     if (text.startsWith(SYNC_TEST_RESULT_PREFIX)) {
       return text.substring(SYNC_TEST_RESULT_PREFIX.length());
@@ -602,7 +1349,7 @@ public class JuteMojo extends AbstractMojo {
     return text;
   }
 
-  private void printExecutionResultIntoLog(final boolean endTestBunch, final List<String> result) {
+  private static void printExecutionResultIntoLog(final Log log, final boolean endTestBunch, final List<String> result) {
     int numberOfTestsInLog = 0;
     for (final String s : result) {
       numberOfTestsInLog += (s.startsWith(SYNC_TEST_RESULT_PREFIX) || s.startsWith(ASYNC_TEST_RESULT_PREFIX)) ? 1 : 0;
@@ -637,7 +1384,7 @@ public class JuteMojo extends AbstractMojo {
             prefix = " " + (char) 0x255E + (char) 0x2550;
           }
         }
-        getLog().info(prefix + substr);
+        log.info(prefix + substr);
       }
       else if (str.equals(TERMINAL_SECTION_START)) {
         final List<String> terminal = new ArrayList<String>();
@@ -652,23 +1399,23 @@ public class JuteMojo extends AbstractMojo {
         }
         maxWidth += 10;
 
-        getLog().info((char) 0x250F + Utils.makeStr(maxWidth, (char) 0x2501) + (char) 0x2513);
+        log.info((char) 0x250F + Utils.makeStr(maxWidth, (char) 0x2501) + (char) 0x2513);
         boolean error = false;
         for (final String s : terminal) {
           if (error) {
-            getLog().error(" " + s);
+            log.error(" " + s);
           }
           else {
-            getLog().info(" " + s);
+            log.info(" " + s);
             if (s.contains((char) 0x2563 + "Error" + (char) 0x2560)) {
               error = true;
             }
           }
         }
-        getLog().info((char) 0x2517 + Utils.makeStr(maxWidth, (char) 0x2501) + (char) 0x251B);
+        log.info((char) 0x2517 + Utils.makeStr(maxWidth, (char) 0x2501) + (char) 0x251B);
       }
       else {
-        getLog().warn("Unexpected log string: " + str);
+        log.warn("Unexpected log string: " + str);
       }
     }
   }
@@ -680,8 +1427,20 @@ public class JuteMojo extends AbstractMojo {
     final int len = maxTestNameLength + 5;
     buffer.append(Utils.makeStr(len - test.getMethodName().length(), '.'));
     buffer.append(testResult.name());
+    final ResultChannel.Report report = test.getLastReport();
     if (testResult != TestResult.SKIPPED && durationInMilliseconds >= 0L) {
-      buffer.append(' ').append('(').append(Utils.printTimeDelay(durationInMilliseconds)).append(')');
+      buffer.append(' ').append('(').append(Utils.printTimeDelay(durationInMilliseconds));
+      final String description = report == null ? "" : report.makeDescription();
+      if (!description.isEmpty()) {
+        buffer.append("; ").append(description);
+      }
+      buffer.append(')');
+    }
+    if (report != null && report.getExceptionClass() != null && testResult != TestResult.OK) {
+      buffer.append(" - ").append(report.getExceptionClass());
+      if (!report.getExceptionMessage().isEmpty()) {
+        buffer.append(": ").append(report.getExceptionMessage());
+      }
     }
 
     result.add(buffer.toString());
@@ -699,7 +1458,19 @@ public class JuteMojo extends AbstractMojo {
     return result;
   }
 
-  private int executeNextTestsFromList(final List<String> logStrings, final int maxTestNameLength, final String testClassPath, final List<TestContainer> testContainers, final int startIndex, final AtomicInteger startedCounter, final AtomicInteger errorCounter, final AtomicInteger skippedCounter) throws Exception {
+  private static List<String> makeClassErrorReference(final boolean syncTest, final TestContainer lastTest, final int maxTestNameLength) {
+    final List<String> result = new ArrayList<String>();
+    result.add((syncTest ? SYNC_TEST_RESULT_PREFIX : ASYNC_TEST_RESULT_PREFIX) + CLASS_METHODS_NAME + Utils.makeStr(Math.max(1, maxTestNameLength + 5 - CLASS_METHODS_NAME.length()), '.') + TestResult.ERROR.name());
+    final String terminal = lastTest.getLastTerminalOut();
+    if (terminal != null) {
+      result.add(TERMINAL_SECTION_START);
+      result.addAll(Arrays.asList(terminal.split("\\n")));
+      result.add(TERMINAL_SECTION_END);
+    }
+    return result;
+  }
+
+  private int executeNextTestsFromList(final Log log, final ForkScheduler scheduler, final List<String> logStrings, final int maxTestNameLength, final ForkContext context, final TestHistory history, final List<TestContainer> testContainers, final int startIndex, final AtomicInteger startedCounter, final AtomicInteger errorCounter, final AtomicInteger skippedCounter) throws Exception {
     final List<TestContainer> toExecute = new ArrayList<TestContainer>();
 
     int detectedOrder = -1;
@@ -729,10 +1500,39 @@ public class JuteMojo extends AbstractMojo {
         }
       }
     }
+    final List<List<TestContainer>> units = new ArrayList<List<TestContainer>>();
+    final List<List<TestContainer>> adaptiveBatches = new ArrayList<List<TestContainer>>();
+    List<TestContainer> classUnit = null;
+    List<TestContainer> adaptiveBatch = null;
+    for (final TestContainer container : toExecute) {
+      if (container.getIsolation() == TestContainer.Isolation.CLASS && canShareJvm(container) && !container.shouldBeSkipped(this.onlyAnnotated)) {
+        adaptiveBatch = null;
+        if (classUnit == null || !classUnit.get(0).makeLaunchKey().equals(container.makeLaunchKey())) {
+          classUnit = new ArrayList<TestContainer>();
+          units.add(classUnit);
+        }
+        classUnit.add(container);
+      }
+      else if (canShareJvm(container) && !container.shouldBeSkipped(this.onlyAnnotated) && container.isBatchable(history, this.batchThreshold)) {
+        classUnit = null;
+        if (adaptiveBatch == null || adaptiveBatch.size() >= ForkScheduler.MAX_BATCH_SIZE || !adaptiveBatch.get(0).makeLaunchKey().equals(container.makeLaunchKey())) {
+          adaptiveBatch = new ArrayList<TestContainer>();
+          units.add(adaptiveBatch);
+          adaptiveBatches.add(adaptiveBatch);
+        }
+        adaptiveBatch.add(container);
+      }
+      else {
+        classUnit = null;
+        adaptiveBatch = null;
+        units.add(Collections.singletonList(container));
+      }
+    }
+
     final CountDownLatch counterDown;
 
-    if (detectedOrder >= 0 && toExecute.size() > 1) {
-      counterDown = new CountDownLatch(toExecute.size());
+    if (detectedOrder >= 0 && units.size() > 1) {
+      counterDown = new CountDownLatch(units.size());
     }
     else {
       counterDown = null;
@@ -740,41 +1540,85 @@ public class JuteMojo extends AbstractMojo {
 
     final List<Throwable> thrownErrors = Collections.synchronizedList(new ArrayList<Throwable>());
 
-    for (final TestContainer container : toExecute) {
+    // every unit has its own log to keep log order independent on start order
+    final List<List<String>> unitLogs = new ArrayList<List<String>>();
+    final List<Integer> startOrder = new ArrayList<Integer>();
+    for (int i = 0; i < units.size(); i++) {
+      unitLogs.add(new ArrayList<String>());
+      startOrder.add(i);
+    }
+
+    if (counterDown != null && this.getSchedulingMode() == ForkScheduler.Scheduling.LPT) {
+      ForkScheduler.sortForLongestFirst(startOrder, units, history);
+    }
+
+    for (final Integer unitIndex : startOrder) {
+      final List<TestContainer> unit = units.get(unitIndex);
+      final List<String> unitLog = unitLogs.get(unitIndex);
       final Runnable run = new Runnable() {
         @Override
         public void run() {
           final long startTime = System.currentTimeMillis();
           try {
-            getLog().debug("Start execution: " + container.toString());
-            startedCounter.incrementAndGet();
-            final TestResult result = container.executeTest(getLog(), onlyAnnotated, maxTestNameLength, testClassPath, javaProperties, env);
+            log.debug("Start execution: " + unit);
+            startedCounter.addAndGet(unit.size());
+            final Map<TestContainer, TestResult> results;
+            if (unit.size() == 1) {
+              final TestContainer container = unit.get(0);
+              results = Collections.singletonMap(container, container.executeTest(log, onlyAnnotated, maxTestNameLength, context));
+            }
+            else if (adaptiveBatches.contains(unit)) {
+              results = TestContainer.executeAdaptiveBatch(log, unit, onlyAnnotated, maxTestNameLength, context);
+            }
+            else {
+              results = TestContainer.executeTestBatch(log, unit, context);
+            }
             final long endTime = System.currentTimeMillis();
-            switch (result) {
-              case ERROR:
-              case TIMEOUT: {
-                errorCounter.incrementAndGet();
+
+            for (final TestContainer container : unit) {
+              final TestResult result = results.get(container);
+              switch (result) {
+                case ERROR:
+                case TIMEOUT:
+                case HUNG: {
+                  errorCounter.incrementAndGet();
+                }
+                break;
+                case SKIPPED: {
+                  skippedCounter.incrementAndGet();
+                }
+                break;
               }
-              break;
-              case SKIPPED: {
-                skippedCounter.incrementAndGet();
+
+              // time of the method reported by the runner is used, so that JVM start doesn't change history of tests
+              final long duration = container.getLastExecutionTime() < 0L ? endTime - startTime : container.getLastExecutionTime();
+              final ResultChannel.Report report = container.getLastReport();
+              if (history != null && result != TestResult.SKIPPED) {
+                final long startup = report == null ? -1L : report.getPhase(ResultReporter.PHASE_JVM_READY);
+                history.record(container.toString(), result, duration, startup < 0L ? -1L : startup / 1000000L, report == null ? -1L : report.getPeakMemory());
               }
-              break;
-            }
 
-            if (logStrings != null) {
-              final boolean printConsoleLog = result != TestResult.OK || container.isPrintConsole();
-              synchronized (logStrings) {
-                logStrings.addAll(makeTestResultReference(counterDown == null, container, endTime - startTime, maxTestNameLength, result, (printConsoleLog ? container.getLastTerminalOut() : null)));
+              if (context.getResultStream() != null) {
+                context.getResultStream().info('[' + container.toString() + "] " + result.name() + (result == TestResult.SKIPPED ? "" : " (" + Utils.printTimeDelay(duration) + ')'));
               }
+
+              final boolean printConsoleLog = result != TestResult.OK || container.isPrintConsole();
+              unitLog.addAll(makeTestResultReference(counterDown == null, container, duration, maxTestNameLength, result, (printConsoleLog ? container.getLastTerminalOut() : null)));
+            }
+
+            final TestContainer lastTest = unit.get(unit.size() - 1);
+            if (lastTest.isLastClassError()) {
+              // failure of AfterClass methods is not a failure of already reported tests
+              errorCounter.incrementAndGet();
+              unitLog.addAll(makeClassErrorReference(counterDown == null, lastTest, maxTestNameLength));
             }
           }
           catch (Throwable thr) {
-            getLog().debug("Error during execution " + container.toString(), thr);
+            log.debug("Error during execution " + unit, thr);
             thrownErrors.add(thr);
           }
           finally {
-            getLog().debug("End execution: " + container.toString());
+            log.debug("End execution: " + unit);
             if (counterDown != null) {
               counterDown.countDown();
             }
@@ -782,12 +1626,17 @@ public class JuteMojo extends AbstractMojo {
         }
       };
       if (counterDown == null) {
-        getLog().debug("Sync.execution: " + container.toString());
-        run.run();
+        log.debug("Sync.execution: " + unit);
+        if (scheduler == null) {
+          run.run();
+        }
+        else {
+          scheduler.executeAndWait(run);
+        }
       }
       else {
-        getLog().debug("Async.execution: " + container.toString());
-        CACHED_EXECUTOR.execute(run);
+        log.debug("Async.execution: " + unit);
+        (scheduler == null ? CACHED_EXECUTOR : scheduler.getForkExecutor()).execute(run);
       }
     }
     if (counterDown != null) {
@@ -795,52 +1644,302 @@ public class JuteMojo extends AbstractMojo {
         counterDown.await();
       }
       catch (InterruptedException ex) {
-        getLog().error(ex);
+        log.error(ex);
       }
     }
     if (!thrownErrors.isEmpty()) {
       for (final Throwable thr : thrownErrors) {
-        getLog().error(thr);
+        log.error(thr);
+      }
+    }
+
+    if (logStrings != null) {
+      for (final List<String> l : unitLogs) {
+        logStrings.addAll(l);
       }
     }
 
     return toExecute.size();
   }
 
+  private static int calcMaxTestNameLength(final Map<TestClassProcessor, List<TestContainer>> classes) {
+    int result = 0;
+    for (final Map.Entry<TestClassProcessor, List<TestContainer>> e : classes.entrySet()) {
+      for (final TestContainer test : e.getValue()) {
+        result = Math.max(result, test.getMethodName().length());
+      }
+    }
+    return result;
+  }
+
+  private void submitTestClasses(final ForkScheduler scheduler, final Map<TestClassProcessor, List<TestContainer>> classes, final int maxTestNameLength, final ForkContext context, final TestHistory history, final AtomicInteger startedCounter, final AtomicInteger errorCounter, final AtomicInteger skippedCounter, final List<BufferedLog> classLogs, final List<Future<Void>> classFutures) {
+    final int firstClass = classFutures.size();
+    final List<List<TestContainer>> classTests = new ArrayList<List<TestContainer>>();
+    final List<String> classNames = new ArrayList<String>();
+    final List<Integer> startOrder = new ArrayList<Integer>();
+    for (final Map.Entry<TestClassProcessor, List<TestContainer>> e : classes.entrySet()) {
+      startOrder.add(classTests.size());
+      classTests.add(e.getValue());
+      classNames.add(e.getKey().getClassName());
+      classLogs.add(new BufferedLog(getLog()));
+      classFutures.add(null);
+    }
+
+    if (getSchedulingMode() == ForkScheduler.Scheduling.LPT) {
+      ForkScheduler.sortForLongestFirst(startOrder, classTests, history);
+    }
+
+    for (final Integer classIndex : startOrder) {
+      final BufferedLog classLog = classLogs.get(firstClass + classIndex);
+      final List<TestContainer> tests = classTests.get(classIndex);
+      final String className = classNames.get(classIndex);
+      classFutures.set(firstClass + classIndex, scheduler.submitClass(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          executeTestClass(classLog, scheduler, className, tests, maxTestNameLength, context, history, startedCounter, errorCounter, skippedCounter);
+          return null;
+        }
+      }));
+    }
+  }
+
+  /**
+   * Replay logs of completed test classes in order of the classes.
+   *
+   * @param classLogs logs of submitted classes
+   * @param classFutures futures of submitted classes
+   * @param firstClass index of the first class which log has not been
+   * replayed
+   * @param wait true to wait for all classes, false to stop at the first not
+   * completed class
+   * @return index of the first class which log has not been replayed
+   * @throws MojoExecutionException if a class execution has been completed with
+   * critical error
+   */
+  private static int replayClassLogs(final List<BufferedLog> classLogs, final List<Future<Void>> classFutures, final int firstClass, final boolean wait) throws MojoExecutionException {
+    int index = firstClass;
+    while (index < classFutures.size() && (wait || classFutures.get(index).isDone())) {
+      try {
+        classFutures.get(index).get();
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted", ex);
+      }
+      catch (ExecutionException ex) {
+        classLogs.get(index).replay();
+        if (ex.getCause() instanceof MojoExecutionException) {
+          throw (MojoExecutionException) ex.getCause();
+        }
+        throw new MojoExecutionException("Critical error during a test class execution", ex.getCause());
+      }
+      classLogs.get(index).replay();
+      index++;
+    }
+    return index;
+  }
+
+  private Thread startPipelinedDiscovery(final TestContainer base, final File testRoot, final List<String> testClassFilePaths, final Map<String, DiscoveryIndex.ClassSummary> compiledIndex, final DiscoveryIndex discoveryIndex, final TestClassQueue queue) {
+    final int batchSize = SCAN_CHUNK_SIZE * Math.max(1, Runtime.getRuntime().availableProcessors());
+    final Thread result = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (int start = 0; start < testClassFilePaths.size(); start += batchSize) {
+            final BufferedLog batchLog = new BufferedLog(getLog());
+            final Map<TestClassProcessor, List<TestContainer>> batch = new LinkedHashMap<TestClassProcessor, List<TestContainer>>();
+            fillListByTestMethods(batchLog, base, testRoot, testClassFilePaths.subList(start, Math.min(start + batchSize, testClassFilePaths.size())), compiledIndex, discoveryIndex, batch);
+            queue.put(new TestClassQueue.Batch(batchLog, batch));
+          }
+          final BufferedLog indexLog = new BufferedLog(getLog());
+          saveDiscoveryIndex(indexLog, discoveryIndex);
+          queue.put(new TestClassQueue.Batch(indexLog, Collections.<TestClassProcessor, List<TestContainer>>emptyMap()));
+          queue.finish();
+        }
+        catch (InterruptedException ex) {
+          // execution has been stopped
+        }
+        catch (Throwable thr) {
+          try {
+            queue.fail(thr);
+          }
+          catch (InterruptedException ex) {
+            // execution has been stopped
+          }
+        }
+      }
+    }, "jute-discovery");
+    result.setDaemon(true);
+    result.start();
+    return result;
+  }
+
+  private void saveDiscoveryIndex(final Log log, final DiscoveryIndex discoveryIndex) {
+    if (discoveryIndex != null) {
+      log.debug("Discovery index : " + discoveryIndex.getMisses() + " class file(s) parsed, " + discoveryIndex.getHits() + " taken from index");
+      try {
+        discoveryIndex.save(this.discoveryIndexFile);
+      }
+      catch (IOException ex) {
+        log.warn("Can't save discovery index : " + ex.getMessage());
+      }
+    }
+  }
+
+  private MemoryBudget makeMemoryBudget() {
+    if (this.memoryBudget == null || this.memoryBudget.trim().isEmpty()) {
+      return null;
+    }
+    final long defaultHeap = MemoryBudget.parseSize(this.forkMemory == null ? "256m" : this.forkMemory);
+    if ("AUTO".equalsIgnoreCase(this.memoryBudget.trim())) {
+      final long available = MemoryBudget.detectAvailableMemory(new File("/"));
+      if (available <= 0L) {
+        getLog().warn("Can't detect available memory, memory budget is not used");
+        return null;
+      }
+      return new MemoryBudget(available, defaultHeap);
+    }
+    return new MemoryBudget(MemoryBudget.parseSize(this.memoryBudget), defaultHeap);
+  }
+
+  private void writeShareAnalysisReport(final Map<String, List<String>> classes) {
+    int required = 0;
+    for (final List<String> hazards : classes.values()) {
+      if (!hazards.isEmpty()) {
+        required++;
+      }
+    }
+    getLog().info("");
+    getLog().info("Share analysis: " + required + " of " + classes.size() + " test class(es) require isolation");
+    if (this.shareAnalysisReport != null) {
+      try {
+        ShareSafetyAnalyzer.writeReport(this.shareAnalysisReport, classes);
+        getLog().info("Share analysis report: " + this.shareAnalysisReport);
+      }
+      catch (IOException ex) {
+        getLog().warn("Can't write share analysis report : " + ex.getMessage());
+      }
+    }
+  }
+
   private boolean isSkipExecution() {
     return this.isSkip() || this.isSkipTests();
   }
 
-  private void fillListByTestMethods(final TestContainer base, final File testRoot, final List<String> testClassFilePaths, final Map<TestClassProcessor, List<TestContainer>> detectedTestMap) throws IOException {
+  private void fillListByTestMethods(final Log log, final TestContainer base, final File testRoot, final List<String> testClassFilePaths, final Map<String, DiscoveryIndex.ClassSummary> compiledIndex, final DiscoveryIndex index, final Map<TestClassProcessor, List<TestContainer>> detectedTestMap) throws IOException {
     final String testRootPath = FilenameUtils.normalize(testRoot.getAbsolutePath() + File.separatorChar);
 
-    for (final String classFilePath : testClassFilePaths) {
-      final String normalizedClassFilePath = FilenameUtils.normalize(classFilePath);
-      final String standardJavaClassName = Utils.toStandardJavaClassName(testRootPath, normalizedClassFilePath);
+    // structures from test index don't need parallel processing
+    int filesToScan = testClassFilePaths.size();
+    if (compiledIndex != null) {
+      for (final String classFilePath : testClassFilePaths) {
+        if (compiledIndex.containsKey(FilenameUtils.normalize(classFilePath))) {
+          filesToScan--;
+        }
+      }
+    }
+    final int threads = Math.min(Runtime.getRuntime().availableProcessors(), (filesToScan + SCAN_CHUNK_SIZE - 1) / SCAN_CHUNK_SIZE);
+    if (threads <= 1) {
+      for (final String classFilePath : testClassFilePaths) {
+        scanClassFile(log, base, testRootPath, classFilePath, compiledIndex, index, detectedTestMap);
+      }
+      return;
+    }
 
-      getLog().debug("Process class file : " + normalizedClassFilePath + '[' + standardJavaClassName + ']');
+    log.debug("Scan " + testClassFilePaths.size() + " class file(s) in " + threads + " thread(s)");
 
-      if (!Utils.checkClassAndMethodForPattern(this.juteTest, standardJavaClassName, "", true)) {
-        getLog().debug("Excluded for 'juteTest' (" + this.juteTest + ')');
-        continue;
+    final ExecutorService scanExecutor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<BufferedLog> chunkLogs = new ArrayList<BufferedLog>();
+      final List<Future<Map<TestClassProcessor, List<TestContainer>>>> chunkResults = new ArrayList<Future<Map<TestClassProcessor, List<TestContainer>>>>();
+
+      for (int start = 0; start < testClassFilePaths.size(); start += SCAN_CHUNK_SIZE) {
+        final List<String> chunk = testClassFilePaths.subList(start, Math.min(start + SCAN_CHUNK_SIZE, testClassFilePaths.size()));
+        final BufferedLog chunkLog = new BufferedLog(log);
+        chunkLogs.add(chunkLog);
+        chunkResults.add(scanExecutor.submit(new Callable<Map<TestClassProcessor, List<TestContainer>>>() {
+          @Override
+          public Map<TestClassProcessor, List<TestContainer>> call() throws Exception {
+            final Map<TestClassProcessor, List<TestContainer>> result = new LinkedHashMap<TestClassProcessor, List<TestContainer>>();
+            for (final String classFilePath : chunk) {
+              scanClassFile(chunkLog, base, testRootPath, classFilePath, compiledIndex, index, result);
+            }
+            return result;
+          }
+        }));
       }
 
-      final InputStream classInStream = new FileInputStream(normalizedClassFilePath);
-      try {
-        final ClassReader classReader = new ClassReader(classInStream);
-        final List<TestContainer> listOfDetectedMethods = new ArrayList<TestContainer>();
+      // merge in order of files to get the same result as sequential scan
+      for (int i = 0; i < chunkResults.size(); i++) {
+        try {
+          detectedTestMap.putAll(chunkResults.get(i).get());
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Scan of test classes has been interrupted", ex);
+        }
+        catch (ExecutionException ex) {
+          if (ex.getCause() instanceof IOException) {
+            throw (IOException) ex.getCause();
+          }
+          throw new IOException("Error during scan of test classes", ex.getCause());
+        }
+        finally {
+          chunkLogs.get(i).replay();
+        }
+      }
+    }
+    finally {
+      scanExecutor.shutdownNow();
+    }
+  }
 
-        final TestClassProcessor tcv = new TestClassProcessor(this.onlyAnnotated, this.juteTest, normalizedClassFilePath, base, this.getLog(), listOfDetectedMethods, normalizeStringArray(this.includeTests), normalizeStringArray(this.excludeTests));
-        classReader.accept(tcv, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+  private void scanClassFile(final Log log, final TestContainer base, final String testRootPath, final String classFilePath, final Map<String, DiscoveryIndex.ClassSummary> compiledIndex, final DiscoveryIndex index, final Map<TestClassProcessor, List<TestContainer>> detectedTestMap) throws IOException {
+    final String normalizedClassFilePath = FilenameUtils.normalize(classFilePath);
+    final String standardJavaClassName = Utils.toStandardJavaClassName(testRootPath, normalizedClassFilePath);
 
-        getLog().debug("Class file " + normalizedClassFilePath + " has " + listOfDetectedMethods.size() + " detected methods");
+    log.debug("Process class file : " + normalizedClassFilePath + '[' + standardJavaClassName + ']');
+
+    if (!Utils.checkClassAndMethodForPattern(this.juteTest, standardJavaClassName, "", true)) {
+      log.debug("Excluded for 'juteTest' (" + this.juteTest + ')');
+      return;
+    }
 
-        detectedTestMap.put(tcv, Utils.sortDetectedClassMethodsForNameAndOrder(listOfDetectedMethods));
+    final List<TestContainer> listOfDetectedMethods = new ArrayList<TestContainer>();
+    final TestClassProcessor tcv = new TestClassProcessor(this.onlyAnnotated, this.juteTest, normalizedClassFilePath, base, log, listOfDetectedMethods, normalizeStringArray(this.includeTests), normalizeStringArray(this.excludeTests));
+
+    final boolean analyzeSharing = isShareAnalysisActive();
+    final DiscoveryIndex.ClassSummary indexedSummary = compiledIndex == null ? null : compiledIndex.get(normalizedClassFilePath);
+    if (indexedSummary != null) {
+      indexedSummary.accept(tcv);
+    }
+    else if (index == null) {
+      final byte[] content;
+      final InputStream classInStream = new FileInputStream(normalizedClassFilePath);
+      try {
+        content = IOUtils.toByteArray(classInStream);
       }
       finally {
         IOUtils.closeQuietly(classInStream);
       }
+      new ClassReader(content).accept(tcv, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+      if (analyzeSharing) {
+        tcv.setShareHazards(ShareSafetyAnalyzer.analyze(content));
+      }
+    }
+    else {
+      final DiscoveryIndex.ClassSummary summary = index.getSummary(new File(normalizedClassFilePath), analyzeSharing);
+      summary.accept(tcv);
+      if (analyzeSharing) {
+        tcv.setShareHazards(summary.getHazards());
+      }
     }
+
+    log.debug("Class file " + normalizedClassFilePath + " has " + listOfDetectedMethods.size() + " detected methods");
+
+    detectedTestMap.put(tcv, Utils.sortDetectedClassMethodsForNameAndOrder(listOfDetectedMethods));
   }
 
+
+
 }
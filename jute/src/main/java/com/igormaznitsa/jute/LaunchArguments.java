@@ -0,0 +1,300 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.apache.maven.plugin.logging.Log;
+import org.zeroturnaround.exec.ProcessExecutor;
+
+/**
+ * Builder of JVM command lines for tests. Class path and other arguments which
+ * are the same for all tests can be written once per session into a file
+ * referenced from every command line.
+ *
+ * @since 1.1.2
+ */
+final class LaunchArguments {
+
+  /**
+   * The way to provide class path for test JVMs.
+   */
+  enum ClassPathMode {
+    /**
+     * Class path, java properties and JVM options are provided as command line
+     * arguments.
+     */
+    ARGUMENT,
+    /**
+     * Class path, java properties and global JVM options are written into
+     * argument file (JDK 9+) provided as @file argument. If JVM doesn't support
+     * argument files then MANIFEST_JAR is used.
+     */
+    ARGFILE,
+    /**
+     * Class path is written into Class-Path attribute of manifest of an empty
+     * jar file provided as the class path.
+     */
+    MANIFEST_JAR;
+
+    /**
+     * Find mode for its name, case insensitive.
+     *
+     * @param name the name, null or empty string is interpreted as ARGUMENT
+     * @return found mode
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static ClassPathMode find(final String name) {
+      if (name == null || name.trim().length() == 0) {
+        return ARGUMENT;
+      }
+      for (final ClassPathMode m : values()) {
+        if (m.name().equalsIgnoreCase(name.trim())) {
+          return m;
+        }
+      }
+      throw new IllegalArgumentException("Unsupported class path mode '" + name + "', allowed values are " + Arrays.toString(values()));
+    }
+  }
+
+  private static final long PROBE_TIMEOUT = 30000L;
+
+  private final ClassPathMode mode;
+  private final String jvm;
+  private final String classPath;
+  private final List<String> javaProperties;
+  private final List<String> globalJvmOptions;
+  private final File file;
+
+  private LaunchArguments(final ClassPathMode mode, final String jvm, final String classPath, final List<String> javaProperties, final List<String> globalJvmOptions, final File file) {
+    this.mode = mode;
+    this.jvm = jvm;
+    this.classPath = classPath;
+    this.javaProperties = javaProperties;
+    this.globalJvmOptions = globalJvmOptions;
+    this.file = file;
+  }
+
+  /**
+   * Prepare arguments, write file if it is needed by the mode.
+   *
+   * @param log the logger
+   * @param mode required mode
+   * @param folder folder to write files
+   * @param jvm JVM interpreter, argument file support is checked for it
+   * @param classPath class path of tests
+   * @param javaProperties java properties, can be null
+   * @param globalJvmOptions JVM options for all tests, can be null
+   * @return prepared arguments
+   * @throws IOException it will be thrown if the file can't be written
+   */
+  static LaunchArguments prepare(final Log log, final ClassPathMode mode, final File folder, final String jvm, final String classPath, final Properties javaProperties, final String[] globalJvmOptions) throws IOException {
+    final List<String> properties = new ArrayList<String>();
+    if (javaProperties != null && !javaProperties.isEmpty()) {
+      for (final Map.Entry<Object, Object> entry : javaProperties.entrySet()) {
+        final String key = (String) entry.getKey();
+        final String value = (String) entry.getValue();
+        properties.add("-D" + key + "=" + value);
+      }
+    }
+    final List<String> options = globalJvmOptions == null ? Collections.<String>emptyList() : Arrays.asList(globalJvmOptions);
+
+    ClassPathMode effectiveMode = mode;
+    File file = null;
+    if (mode == ClassPathMode.ARGFILE) {
+      file = writeArgumentFile(folder, makeFileArguments(options, properties, classPath));
+      if (!isArgumentFileSupported(log, jvm, file)) {
+        log.warn("JVM doesn't support argument files, class path will be provided through manifest jar");
+        effectiveMode = ClassPathMode.MANIFEST_JAR;
+      }
+    }
+    if (effectiveMode == ClassPathMode.MANIFEST_JAR) {
+      file = writeManifestJar(folder, classPath);
+    }
+
+    return new LaunchArguments(effectiveMode, jvm, classPath, properties, options, file);
+  }
+
+  /**
+   * Make arguments with the same mode, JVM options and java properties but
+   * with another class path, the JVM is not checked again.
+   *
+   * @param folder folder to write files
+   * @param newClassPath class path of the new arguments
+   * @return prepared arguments
+   * @throws IOException it will be thrown if the file can't be written
+   */
+  LaunchArguments withClassPath(final File folder, final String newClassPath) throws IOException {
+    File newFile = null;
+    if (this.mode == ClassPathMode.ARGFILE) {
+      newFile = writeArgumentFile(folder, makeFileArguments(this.globalJvmOptions, this.javaProperties, newClassPath));
+    }
+    else if (this.mode == ClassPathMode.MANIFEST_JAR) {
+      newFile = writeManifestJar(folder, newClassPath);
+    }
+    return new LaunchArguments(this.mode, this.jvm, newClassPath, this.javaProperties, this.globalJvmOptions, newFile);
+  }
+
+  private static List<String> makeFileArguments(final List<String> options, final List<String> properties, final String classPath) {
+    final List<String> result = new ArrayList<String>(options);
+    result.addAll(properties);
+    result.add("-classpath");
+    result.add(classPath);
+    return result;
+  }
+
+  private static String makeName(final String prefix, final String content, final String extension) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      final byte[] hash = digest.digest(content.getBytes(Charset.forName("UTF-8")));
+      final StringBuilder result = new StringBuilder(prefix);
+      for (int i = 0; i < 8; i++) {
+        result.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+      }
+      return result.append(extension).toString();
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new Error("Can't find SHA-1", ex);
+    }
+  }
+
+  private static void makeFolder(final File folder) throws IOException {
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      throw new IOException("Can't create folder " + folder);
+    }
+  }
+
+  /**
+   * Make text of argument file, every argument is quoted and placed on its own
+   * line.
+   *
+   * @param arguments arguments to be written
+   * @return text of argument file
+   */
+  static String makeArgumentFileText(final List<String> arguments) {
+    final StringBuilder result = new StringBuilder();
+    for (final String arg : arguments) {
+      result.append('"').append(arg.replace("\\", "\\\\").replace("\"", "\\\"")).append('"').append('\n');
+    }
+    return result.toString();
+  }
+
+  private static File writeArgumentFile(final File folder, final List<String> arguments) throws IOException {
+    makeFolder(folder);
+    final String text = makeArgumentFileText(arguments);
+    final File result = new File(folder, makeName("launch-", text, ".args"));
+    final Writer writer = new OutputStreamWriter(new FileOutputStream(result), Charset.defaultCharset());
+    try {
+      writer.write(text);
+    }
+    finally {
+      writer.close();
+    }
+    return result;
+  }
+
+  private static File writeManifestJar(final File folder, final String classPath) throws IOException {
+    makeFolder(folder);
+    final StringBuilder urls = new StringBuilder();
+    for (final String path : classPath.split(File.pathSeparator)) {
+      if (path.length() == 0) {
+        continue;
+      }
+      if (urls.length() > 0) {
+        urls.append(' ');
+      }
+      urls.append(new File(path).getAbsoluteFile().toURI().toString());
+    }
+
+    final Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, urls.toString());
+
+    final File result = new File(folder, makeName("classpath-", urls.toString(), ".jar"));
+    final JarOutputStream out = new JarOutputStream(new FileOutputStream(result), manifest);
+    out.close();
+    return result;
+  }
+
+  private static boolean isArgumentFileSupported(final Log log, final String jvm, final File file) {
+    try {
+      return new ProcessExecutor(jvm, '@' + file.getAbsolutePath(), "-version")
+              .redirectOutput(new ByteArrayOutputStream())
+              .redirectError(new ByteArrayOutputStream())
+              .timeout(PROBE_TIMEOUT, TimeUnit.MILLISECONDS)
+              .execute()
+              .getExitValue() == 0;
+    }
+    catch (IOException ex) {
+      log.debug("Can't check JVM for argument file support: " + jvm, ex);
+    }
+    catch (TimeoutException ex) {
+      log.debug("Timeout during JVM check for argument file support: " + jvm);
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  ClassPathMode getMode() {
+    return this.mode;
+  }
+
+  /**
+   * Get file with arguments.
+   *
+   * @return argument file or manifest jar, null for ARGUMENT mode
+   */
+  File getFile() {
+    return this.file;
+  }
+
+  /**
+   * Make command line of a test JVM without the main class.
+   *
+   * @param testJvm JVM interpreter of the test
+   * @param testJvmOptions JVM options of the test, they contain global JVM
+   * options at start
+   * @return list of arguments
+   */
+  List<String> make(final String testJvm, final List<String> testJvmOptions) {
+    final List<String> result = new ArrayList<String>();
+    result.add(testJvm);
+
+    final boolean startsWithGlobal = testJvmOptions.size() >= this.globalJvmOptions.size() && testJvmOptions.subList(0, this.globalJvmOptions.size()).equals(this.globalJvmOptions);
+
+    if (this.mode == ClassPathMode.ARGFILE && this.jvm.equals(testJvm) && startsWithGlobal) {
+      result.add('@' + this.file.getAbsolutePath());
+      result.addAll(testJvmOptions.subList(this.globalJvmOptions.size(), testJvmOptions.size()));
+    }
+    else {
+      result.addAll(testJvmOptions);
+      result.addAll(this.javaProperties);
+      result.add("-classpath");
+      result.add(this.mode == ClassPathMode.MANIFEST_JAR ? this.file.getAbsolutePath() : this.classPath);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Memory budget for concurrently working test JVMs. Every JVM reserves its
+ * estimated memory (max heap plus non-heap overhead) before start and releases
+ * it after end, a JVM waits until its reservation fits the budget.
+ *
+ * @since 1.1.2
+ */
+final class MemoryBudget {
+
+  /**
+   * Estimated memory used by a JVM outside of heap (metaspace, code cache,
+   * thread stacks and GC structures).
+   */
+  static final long NON_HEAP_OVERHEAD = 64L * 1024L * 1024L;
+
+  private static final long NO_CGROUP_LIMIT = 1L << 60;
+
+  private final long budget;
+  private final long defaultHeap;
+  private long reserved;
+
+  /**
+   * Constructor.
+   *
+   * @param budget memory available for test JVMs in bytes
+   * @param defaultHeap estimated heap of JVMs without -Xmx option in bytes
+   */
+  MemoryBudget(final long budget, final long defaultHeap) {
+    if (budget <= 0L) {
+      throw new IllegalArgumentException("Memory budget must be positive");
+    }
+    this.budget = budget;
+    this.defaultHeap = defaultHeap;
+  }
+
+  long getBudget() {
+    return this.budget;
+  }
+
+  synchronized long getReserved() {
+    return this.reserved;
+  }
+
+  /**
+   * Estimate memory of a JVM for its options. The last -Xmx (or
+   * -XX:MaxHeapSize) is used as heap size, if there is no such option then
+   * the max of -Xms and default heap is used.
+   *
+   * @param jvmOptions options of the JVM
+   * @return estimated memory in bytes
+   */
+  long estimate(final List<String> jvmOptions) {
+    long maxHeap = -1L;
+    long initialHeap = -1L;
+    for (final String opt : jvmOptions) {
+      if (opt.startsWith("-Xmx")) {
+        maxHeap = parseSize(opt.substring(4));
+      }
+      else if (opt.startsWith("-XX:MaxHeapSize=")) {
+        maxHeap = parseSize(opt.substring(16));
+      }
+      else if (opt.startsWith("-Xms")) {
+        initialHeap = parseSize(opt.substring(4));
+      }
+    }
+    return (maxHeap >= 0L ? maxHeap : Math.max(this.defaultHeap, initialHeap)) + NON_HEAP_OVERHEAD;
+  }
+
+  /**
+   * Check that a reservation can ever fit the budget.
+   *
+   * @param amount reservation in bytes
+   * @return true if the reservation is not greater than the budget
+   */
+  boolean canFit(final long amount) {
+    return amount <= this.budget;
+  }
+
+  /**
+   * Reserve memory, wait until the reservation fits the budget. The
+   * reservation is accepted if there is no other reservation.
+   *
+   * @param amount reservation in bytes
+   * @throws InterruptedException it will be thrown if the thread is interrupted
+   * @see #canFit(long)
+   */
+  synchronized void reserve(final long amount) throws InterruptedException {
+    while (this.reserved > 0L && this.reserved + amount > this.budget) {
+      wait();
+    }
+    this.reserved += amount;
+  }
+
+  /**
+   * Reserve memory only if the reservation fits the budget now.
+   *
+   * @param amount reservation in bytes
+   * @return true if the memory has been reserved
+   */
+  synchronized boolean tryReserve(final long amount) {
+    if (this.reserved > 0L && this.reserved + amount > this.budget) {
+      return false;
+    }
+    this.reserved += amount;
+    return true;
+  }
+
+  synchronized void release(final long amount) {
+    this.reserved -= amount;
+    notifyAll();
+  }
+
+  /**
+   * Parse memory size in JVM option format, like 512m or 2G.
+   *
+   * @param value text value, a number with optional k, m, g or t suffix
+   * @return size in bytes
+   * @throws IllegalArgumentException if the value can't be parsed
+   */
+  static long parseSize(final String value) {
+    final String normalized = value.trim().toLowerCase(Locale.ENGLISH);
+    if (normalized.length() == 0) {
+      throw new IllegalArgumentException("Empty memory size");
+    }
+    long multiplier = 1L;
+    String number = normalized;
+    final int suffix = "kmgt".indexOf(normalized.charAt(normalized.length() - 1));
+    if (suffix >= 0) {
+      multiplier = 1L << (10 * (suffix + 1));
+      number = normalized.substring(0, normalized.length() - 1);
+    }
+    try {
+      final long result = Long.parseLong(number);
+      if (result < 0L) {
+        throw new IllegalArgumentException("Negative memory size: " + value);
+      }
+      return result * multiplier;
+    }
+    catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Can't parse memory size: " + value, ex);
+    }
+  }
+
+  /**
+   * Detect memory available for new processes. Limit and usage of cgroup (v2
+   * or v1) are used if the limit is defined, MemAvailable from /proc/meminfo
+   * is used otherwise, the smaller value is returned if both are known.
+   *
+   * @param root root of the file system
+   * @return available memory in bytes, -1 if it can't be detected
+   */
+  static long detectAvailableMemory(final File root) {
+    long result = -1L;
+
+    long limit = readNumber(new File(root, "sys/fs/cgroup/memory.max"));
+    long usage = readNumber(new File(root, "sys/fs/cgroup/memory.current"));
+    if (limit < 0L) {
+      limit = readNumber(new File(root, "sys/fs/cgroup/memory/memory.limit_in_bytes"));
+      usage = readNumber(new File(root, "sys/fs/cgroup/memory/memory.usage_in_bytes"));
+    }
+    if (limit > 0L && limit < NO_CGROUP_LIMIT) {
+      result = Math.max(0L, limit - Math.max(0L, usage));
+    }
+
+    final long available = readMemAvailable(new File(root, "proc/meminfo"));
+    if (available >= 0L) {
+      result = result < 0L ? available : Math.min(result, available);
+    }
+    return result;
+  }
+
+  private static long readNumber(final File file) {
+    if (!file.isFile()) {
+      return -1L;
+    }
+    try {
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charset.forName("US-ASCII")));
+      try {
+        final String line = reader.readLine();
+        return line == null ? -1L : Long.parseLong(line.trim());
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (IOException ex) {
+      return -1L;
+    }
+    catch (NumberFormatException ex) {
+      // 'max' means no limit
+      return -1L;
+    }
+  }
+
+  private static long readMemAvailable(final File file) {
+    if (!file.isFile()) {
+      return -1L;
+    }
+    try {
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charset.forName("US-ASCII")));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.startsWith("MemAvailable:")) {
+            final String[] parts = line.substring(13).trim().split("\\s+");
+            return parts.length > 1 && "kB".equals(parts[1]) ? Long.parseLong(parts[0]) * 1024L : Long.parseLong(parts[0]);
+          }
+        }
+      }
+      finally {
+        reader.close();
+      }
+    }
+    catch (IOException ex) {
+      return -1L;
+    }
+    catch (NumberFormatException ex) {
+      return -1L;
+    }
+    return -1L;
+  }
+}
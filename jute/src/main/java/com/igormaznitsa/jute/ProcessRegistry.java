@@ -0,0 +1,396 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Registry of processes started by the plugin. The registry keeps one shutdown
+ * hook for the whole session which kills all registered processes if Maven is
+ * aborted. If the JVM provides ProcessHandle (Java 9+, called through
+ * reflection) then a process is killed together with all its descendants, and
+ * descendants of registered processes are periodically remembered (one
+ * snapshot of all processes of the OS per scan) so that processes which have
+ * survived the end of their test JVM (orphans) are found and killed too.
+ * Without ProcessHandle only registered processes are killed. Released
+ * processes are kept by the registry until they exit.
+ *
+ * @since 1.1.2
+ */
+final class ProcessRegistry {
+
+  /**
+   * Interval in milliseconds between scans of descendants of registered
+   * processes.
+   */
+  static final long SCAN_INTERVAL = 500L;
+
+  private static final Method TO_HANDLE;
+  private static final Method DESCENDANTS;
+  private static final Method ALL_PROCESSES;
+  private static final Method HANDLE_PARENT;
+  private static final Method OPTIONAL_IS_PRESENT;
+  private static final Method OPTIONAL_GET;
+  private static final Method STREAM_ITERATOR;
+  private static final Method HANDLE_IS_ALIVE;
+  private static final Method HANDLE_DESTROY_FORCIBLY;
+
+  static {
+    Method toHandle = null;
+    Method descendants = null;
+    Method allProcesses = null;
+    Method parent = null;
+    Method isPresent = null;
+    Method get = null;
+    Method iterator = null;
+    Method isAlive = null;
+    Method destroyForcibly = null;
+    try {
+      final Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+      final Class<?> optionalClass = Class.forName("java.util.Optional");
+      toHandle = Process.class.getMethod("toHandle");
+      descendants = handleClass.getMethod("descendants");
+      allProcesses = handleClass.getMethod("allProcesses");
+      parent = handleClass.getMethod("parent");
+      isPresent = optionalClass.getMethod("isPresent");
+      get = optionalClass.getMethod("get");
+      iterator = Class.forName("java.util.stream.BaseStream").getMethod("iterator");
+      isAlive = handleClass.getMethod("isAlive");
+      destroyForcibly = handleClass.getMethod("destroyForcibly");
+    }
+    catch (Exception ex) {
+      toHandle = null;
+    }
+    TO_HANDLE = toHandle;
+    DESCENDANTS = descendants;
+    ALL_PROCESSES = allProcesses;
+    HANDLE_PARENT = parent;
+    OPTIONAL_IS_PRESENT = isPresent;
+    OPTIONAL_GET = get;
+    STREAM_ITERATOR = iterator;
+    HANDLE_IS_ALIVE = isAlive;
+    HANDLE_DESTROY_FORCIBLY = destroyForcibly;
+  }
+
+  private static final class Entry {
+
+    private final Process process;
+    private volatile List<Object> descendants = Collections.emptyList();
+    private boolean released;
+
+    private Entry(final Process process) {
+      this.process = process;
+    }
+  }
+
+  private final Log log;
+  private final Map<Process, Entry> entries = new LinkedHashMap<Process, Entry>();
+  private final AtomicInteger orphans = new AtomicInteger();
+  private final Thread shutdownHook;
+  private final Thread scanner;
+
+  ProcessRegistry(final Log log) {
+    this.log = log;
+    this.shutdownHook = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        destroyAll();
+      }
+    }, "jute-process-registry-hook");
+    Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+
+    this.scanner = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (!Thread.currentThread().isInterrupted()) {
+            Thread.sleep(SCAN_INTERVAL);
+            scan();
+          }
+        }
+        catch (InterruptedException ex) {
+          // disposed
+        }
+      }
+    }, "jute-process-registry");
+    this.scanner.setDaemon(true);
+    this.scanner.start();
+  }
+
+  /**
+   * Check that descendants of processes can be found (Java 9+).
+   *
+   * @return true if process trees are supported
+   */
+  static boolean isTreeSupported() {
+    return TO_HANDLE != null;
+  }
+
+  /**
+   * Register started process.
+   *
+   * @param process the process, must not be null
+   */
+  void register(final Process process) {
+    synchronized (this.entries) {
+      this.entries.put(process, new Entry(process));
+    }
+  }
+
+  /**
+   * Release process which is not needed by its owner any more. If the process
+   * is still alive (for instance it is reaped after its result is reported)
+   * then it is kept until it exits. Alive descendants of exited process are
+   * killed as orphans.
+   *
+   * @param process registered process
+   */
+  void release(final Process process) {
+    final Entry entry;
+    synchronized (this.entries) {
+      entry = this.entries.get(process);
+      if (entry == null) {
+        return;
+      }
+      entry.released = true;
+      if (isAlive(process)) {
+        return;
+      }
+      this.entries.remove(process);
+    }
+    killOrphans(entry);
+  }
+
+  /**
+   * Destroy process together with all its descendants, descendants are always
+   * killed forcibly.
+   *
+   * @param process the process, can be not registered
+   * @param forcibly true if the process must be killed forcibly
+   */
+  void destroy(final Process process, final boolean forcibly) {
+    final Entry entry;
+    synchronized (this.entries) {
+      entry = this.entries.get(process);
+    }
+    final Set<Object> tree = new LinkedHashSet<Object>(findDescendants(process));
+    if (entry != null) {
+      tree.addAll(entry.descendants);
+    }
+    for (final Object handle : tree) {
+      destroyHandle(handle);
+    }
+    if (forcibly) {
+      Utils.destroyForcibly(process);
+    }
+    else {
+      process.destroy();
+    }
+  }
+
+  /**
+   * Get number of processes which have survived their test JVMs and have been
+   * killed.
+   *
+   * @return number of killed orphans
+   */
+  int getOrphans() {
+    return this.orphans.get();
+  }
+
+  /**
+   * Kill all registered processes and their descendants, remove the shutdown
+   * hook. The registry can't be used after the call.
+   */
+  void dispose() {
+    this.scanner.interrupt();
+    scan();
+    destroyAll();
+    try {
+      Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+    }
+    catch (IllegalStateException ex) {
+      // JVM is shutting down
+    }
+  }
+
+  private void destroyAll() {
+    final List<Entry> rest;
+    synchronized (this.entries) {
+      rest = new ArrayList<Entry>(this.entries.values());
+      this.entries.clear();
+    }
+    for (final Entry e : rest) {
+      if (isAlive(e.process)) {
+        destroy(e.process, true);
+      }
+      else {
+        killOrphans(e);
+      }
+    }
+  }
+
+  private void scan() {
+    final List<Entry> current;
+    synchronized (this.entries) {
+      current = new ArrayList<Entry>(this.entries.values());
+    }
+    if (current.isEmpty()) {
+      return;
+    }
+    final Map<Object, List<Object>> children = snapshotChildren();
+    for (final Entry e : current) {
+      if (isAlive(e.process)) {
+        e.descendants = findDescendants(e.process, children);
+      }
+      else {
+        synchronized (this.entries) {
+          if (!e.released || this.entries.remove(e.process) == null) {
+            continue;
+          }
+        }
+        killOrphans(e);
+      }
+    }
+  }
+
+  private void killOrphans(final Entry entry) {
+    for (final Object handle : entry.descendants) {
+      if (destroyHandle(handle)) {
+        this.orphans.incrementAndGet();
+        this.log.debug("Killed orphan process " + handle + " of test JVM");
+      }
+    }
+  }
+
+  private static boolean isAlive(final Process process) {
+    try {
+      process.exitValue();
+      return false;
+    }
+    catch (IllegalThreadStateException ex) {
+      return true;
+    }
+  }
+
+  /**
+   * Find descendants of a process.
+   *
+   * @param process the process
+   * @return handles of descendant processes, empty if the process has no
+   * descendants or they can't be found
+   */
+  static List<Object> findDescendants(final Process process) {
+    if (TO_HANDLE == null) {
+      return Collections.emptyList();
+    }
+    final List<Object> result = new ArrayList<Object>();
+    try {
+      final Iterator<?> iterator = (Iterator<?>) STREAM_ITERATOR.invoke(DESCENDANTS.invoke(TO_HANDLE.invoke(process)));
+      while (iterator.hasNext()) {
+        result.add(iterator.next());
+      }
+    }
+    catch (Exception ex) {
+      // the process has exited or it can't be inspected
+    }
+    return result;
+  }
+
+  /**
+   * Make snapshot of all processes of the OS grouped by their parents.
+   *
+   * @return map of process handles to handles of their children, empty if
+   * processes can't be listed
+   */
+  static Map<Object, List<Object>> snapshotChildren() {
+    if (TO_HANDLE == null) {
+      return Collections.emptyMap();
+    }
+    final Map<Object, List<Object>> result = new HashMap<Object, List<Object>>();
+    try {
+      final Iterator<?> iterator = (Iterator<?>) STREAM_ITERATOR.invoke(ALL_PROCESSES.invoke(null));
+      while (iterator.hasNext()) {
+        final Object handle = iterator.next();
+        final Object parent = HANDLE_PARENT.invoke(handle);
+        if ((Boolean) OPTIONAL_IS_PRESENT.invoke(parent)) {
+          final Object parentHandle = OPTIONAL_GET.invoke(parent);
+          List<Object> list = result.get(parentHandle);
+          if (list == null) {
+            list = new ArrayList<Object>();
+            result.put(parentHandle, list);
+          }
+          list.add(handle);
+        }
+      }
+    }
+    catch (Exception ex) {
+      // processes can't be listed
+    }
+    return result;
+  }
+
+  /**
+   * Find descendants of a process in snapshot of processes.
+   *
+   * @param process the process
+   * @param children snapshot made by {@link #snapshotChildren()}
+   * @return handles of descendant processes, empty if the process has no
+   * descendants or they can't be found
+   */
+  static List<Object> findDescendants(final Process process, final Map<Object, List<Object>> children) {
+    if (TO_HANDLE == null || children.isEmpty()) {
+      return Collections.emptyList();
+    }
+    final List<Object> result = new ArrayList<Object>();
+    try {
+      final Set<Object> visited = new HashSet<Object>();
+      final LinkedList<Object> queue = new LinkedList<Object>();
+      queue.add(TO_HANDLE.invoke(process));
+      while (!queue.isEmpty()) {
+        final List<Object> found = children.get(queue.removeFirst());
+        if (found != null) {
+          for (final Object child : found) {
+            if (visited.add(child)) {
+              result.add(child);
+              queue.add(child);
+            }
+          }
+        }
+      }
+    }
+    catch (Exception ex) {
+      // the process can't be inspected
+    }
+    return result;
+  }
+
+  private static boolean destroyHandle(final Object handle) {
+    try {
+      if ((Boolean) HANDLE_IS_ALIVE.invoke(handle)) {
+        HANDLE_DESTROY_FORCIBLY.invoke(handle);
+        return true;
+      }
+    }
+    catch (Exception ex) {
+      // the process can't be killed
+    }
+    return false;
+  }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import com.igormaznitsa.jute.runners.ResultReporter;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Loopback socket to receive structured results from runners of single tests,
+ * so that the plugin gets outcome, failure and phase timings of a test without
+ * parsing of its console output. Connections are accepted by single thread and
+ * read by pooled threads, so that a stalled runner doesn't delay reports and
+ * heartbeats of other runners. Reports are stored only for expected tests
+ * until taken by the test name. If shutdown grace is defined then a test JVM
+ * is not waited after its report, the JVM is given the grace period to exit
+ * and it is killed after that. Heartbeats of runners are passed to hang
+ * detector.
+ *
+ * @see ResultReporter
+ * @since 1.1.2
+ */
+final class ResultChannel {
+
+  /**
+   * Timeout to read report from connected runner in milliseconds.
+   */
+  private static final int READ_TIMEOUT = 5000;
+  private static final String HEARTBEAT = "HEARTBEAT ";
+
+  /**
+   * Structured result of a test.
+   */
+  static final class Report {
+
+    private final String testName;
+    private String outcome;
+    private String exceptionClass;
+    private String exceptionMessage;
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private long peakMemory = -1L;
+
+    Report(final String testName) {
+      this.testName = testName;
+    }
+
+    String getTestName() {
+      return this.testName;
+    }
+
+    String getOutcome() {
+      return this.outcome;
+    }
+
+    String getExceptionClass() {
+      return this.exceptionClass;
+    }
+
+    String getExceptionMessage() {
+      return this.exceptionMessage;
+    }
+
+    /**
+     * Get duration of a phase.
+     *
+     * @param phase name of the phase
+     * @return duration in nanoseconds or -1 if the phase is not reported
+     */
+    long getPhase(final String phase) {
+      final Long result = this.phases.get(phase);
+      return result == null ? -1L : result;
+    }
+
+    /**
+     * Get execution time of the test method, it includes Before and After
+     * methods but doesn't include JVM start and class level methods, so that it
+     * is the same time as the runner reports for a test executed together with
+     * other tests.
+     *
+     * @return time in milliseconds or -1 if the body phase is not reported
+     */
+    long getMethodTime() {
+      final long body = getPhase(ResultReporter.PHASE_BODY);
+      if (body < 0L) {
+        return -1L;
+      }
+      return (body + Math.max(0L, getPhase(ResultReporter.PHASE_BEFORE)) + Math.max(0L, getPhase(ResultReporter.PHASE_AFTER))) / 1000000L;
+    }
+
+    Map<String, Long> getPhases() {
+      return Collections.unmodifiableMap(this.phases);
+    }
+
+    long getPeakMemory() {
+      return this.peakMemory;
+    }
+
+    /**
+     * Check that the test is successful.
+     *
+     * @return true if the outcome is OK or ASSUMPTION
+     */
+    boolean isSuccessful() {
+      return ResultReporter.OUTCOME_OK.equals(this.outcome) || ResultReporter.OUTCOME_ASSUMPTION.equals(this.outcome);
+    }
+
+    /**
+     * Make short description of the report for the test result line.
+     *
+     * @return text contains startup and body time and failure
+     */
+    String makeDescription() {
+      final StringBuilder result = new StringBuilder();
+      final long startup = getPhase(ResultReporter.PHASE_JVM_READY);
+      if (startup >= 0L) {
+        result.append("startup ").append(Utils.printTimeDelay(startup / 1000000L));
+      }
+      final long body = getPhase(ResultReporter.PHASE_BODY);
+      if (body >= 0L) {
+        if (result.length() > 0) {
+          result.append(", ");
+        }
+        result.append("body ").append(Utils.printTimeDelay(body / 1000000L));
+      }
+      if (ResultReporter.OUTCOME_ASSUMPTION.equals(this.outcome)) {
+        if (result.length() > 0) {
+          result.append(", ");
+        }
+        result.append("assumption failed");
+      }
+      return result.toString();
+    }
+
+    /**
+     * Parse report, lines after the END line are not read.
+     *
+     * @param reader reader of the report
+     * @return parsed report or null if the report is empty or incomplete
+     * @throws IOException it will be thrown for transport error
+     */
+    static Report parse(final BufferedReader reader) throws IOException {
+      Report result = null;
+      while (true) {
+        final String line = reader.readLine();
+        if (line == null) {
+          return null;
+        }
+        final int space = line.indexOf(' ');
+        final String key = space < 0 ? line : line.substring(0, space);
+        final String value = space < 0 ? "" : line.substring(space + 1);
+        if ("END".equals(key)) {
+          return result;
+        }
+        else if ("TEST".equals(key)) {
+          result = new Report(value);
+        }
+        else if (result != null) {
+          if ("OUTCOME".equals(key)) {
+            result.outcome = value;
+          }
+          else if ("EXCEPTION".equals(key)) {
+            final int index = value.indexOf(' ');
+            result.exceptionClass = index < 0 ? value : value.substring(0, index);
+            result.exceptionMessage = index < 0 ? "" : value.substring(index + 1);
+          }
+          else if ("PHASE".equals(key)) {
+            final int index = value.indexOf(' ');
+            if (index > 0) {
+              try {
+                result.phases.put(value.substring(0, index), Long.parseLong(value.substring(index + 1).trim()));
+              }
+              catch (NumberFormatException ex) {
+                // ignore wrong phase
+              }
+            }
+          }
+          else if ("MEMORY".equals(key)) {
+            try {
+              result.peakMemory = Long.parseLong(value.trim());
+            }
+            catch (NumberFormatException ex) {
+              // ignore wrong value
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private final Log log;
+  private final long shutdownGrace;
+  private final HangDetector hangDetector;
+  private final ServerSocket serverSocket;
+  private final Map<String, Report> reports = new HashMap<String, Report>();
+  private final Set<String> expected = new HashSet<String>();
+  private final ExecutorService readers;
+  private final Thread thread;
+
+  /**
+   * Constructor.
+   *
+   * @param log the logger
+   * @param shutdownGrace time in milliseconds given to a test JVM to exit
+   * after its report, negative value means that test JVMs are waited until
+   * exit
+   * @param hangDetector detector of hung JVMs to process heartbeats, can be
+   * null
+   * @throws IOException it will be thrown if the socket can't be opened
+   */
+  ResultChannel(final Log log, final long shutdownGrace, final HangDetector hangDetector) throws IOException {
+    this.log = log;
+    this.shutdownGrace = shutdownGrace;
+    this.hangDetector = hangDetector;
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    this.readers = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread result = new Thread(r, "jute-result-reader");
+        result.setDaemon(true);
+        return result;
+      }
+    });
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!serverSocket.isClosed()) {
+          try {
+            final Socket socket = serverSocket.accept();
+            try {
+              readers.execute(new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    receive(socket);
+                  }
+                  catch (IOException ex) {
+                    ResultChannel.this.log.debug("Error of result channel", ex);
+                  }
+                }
+              });
+            }
+            catch (RejectedExecutionException ex) {
+              socket.close();
+            }
+          }
+          catch (SocketException ex) {
+            // closed
+          }
+          catch (IOException ex) {
+            ResultChannel.this.log.debug("Error of result channel", ex);
+          }
+        }
+      }
+    }, "jute-result-channel");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  private void receive(final Socket socket) throws IOException {
+    try {
+      socket.setSoTimeout(READ_TIMEOUT);
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      reader.mark(1024);
+      final String first = reader.readLine();
+      if (first != null && first.startsWith(HEARTBEAT)) {
+        receiveHeartbeat(first);
+        return;
+      }
+      reader.reset();
+      final Report report = Report.parse(reader);
+      if (report != null) {
+        synchronized (this) {
+          if (this.expected.contains(report.getTestName())) {
+            this.reports.put(report.getTestName(), report);
+            this.notifyAll();
+          }
+          else {
+            this.log.debug("Dropped report of not expected test " + report.getTestName());
+          }
+        }
+      }
+      final OutputStream out = socket.getOutputStream();
+      out.write("ACK\n".getBytes("UTF-8"));
+      out.flush();
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  private void receiveHeartbeat(final String line) {
+    final String[] parsed = line.substring(HEARTBEAT.length()).trim().split("\\s+");
+    if (this.hangDetector == null || parsed.length != 3) {
+      return;
+    }
+    try {
+      if (this.hangDetector.onHeartbeat(parsed[0], Long.parseLong(parsed[1]), Integer.parseInt(parsed[2]), System.currentTimeMillis())) {
+        this.log.debug("Test JVM of " + parsed[0] + " is hung and killed");
+      }
+    }
+    catch (NumberFormatException ex) {
+      this.log.debug("Wrong heartbeat : " + line);
+    }
+  }
+
+  /**
+   * Get port of the channel.
+   *
+   * @return the port number
+   */
+  int getPort() {
+    return this.serverSocket.getLocalPort();
+  }
+
+  /**
+   * Get JVM option to provide the channel port to runners.
+   *
+   * @return system property definition
+   */
+  String makeJvmOption() {
+    return "-D" + ResultReporter.PROPERTY_PORT + '=' + getPort();
+  }
+
+  /**
+   * Start expecting report of a test, reports of not expected tests are
+   * dropped.
+   *
+   * @param testName test name in format class_name#method_name
+   */
+  synchronized void expect(final String testName) {
+    this.expected.add(testName);
+  }
+
+  /**
+   * Take received report of a test and stop expecting it, must be called when
+   * the test is finished.
+   *
+   * @param testName test name in format class_name#method_name
+   * @return the report or null if it is not received
+   */
+  synchronized Report take(final String testName) {
+    this.expected.remove(testName);
+    return this.reports.remove(testName);
+  }
+
+  /**
+   * Get number of stored reports and expected tests.
+   *
+   * @return number of records kept by the channel
+   */
+  synchronized int size() {
+    return this.reports.size() + this.expected.size();
+  }
+
+  /**
+   * Wait for report of a test, the report is not taken.
+   *
+   * @param testName test name in format class_name#method_name
+   * @param timeoutInMilliseconds max time to wait
+   * @return the report or null if it is not received during the time
+   * @throws InterruptedException it will be thrown if the thread is interrupted
+   */
+  synchronized Report await(final String testName, final long timeoutInMilliseconds) throws InterruptedException {
+    final long end = System.currentTimeMillis() + timeoutInMilliseconds;
+    while (true) {
+      final Report result = this.reports.get(testName);
+      final long rest = end - System.currentTimeMillis();
+      if (result != null || rest <= 0L) {
+        return result;
+      }
+      this.wait(rest);
+    }
+  }
+
+  /**
+   * Get time given to test JVM to exit after its report.
+   *
+   * @return time in milliseconds, negative if test JVMs are waited until exit
+   */
+  long getShutdownGrace() {
+    return this.shutdownGrace;
+  }
+
+  /**
+   * Get detector of hung JVMs.
+   *
+   * @return the detector or null if heartbeats are not used
+   */
+  HangDetector getHangDetector() {
+    return this.hangDetector;
+  }
+
+  /**
+   * Get JVM option to turn on heartbeats of runners.
+   *
+   * @return system property definition or null if heartbeats are not used
+   */
+  String makeHeartbeatJvmOption() {
+    return this.hangDetector == null ? null : "-D" + ResultReporter.PROPERTY_HEARTBEAT + '=' + this.hangDetector.getInterval();
+  }
+
+  void dispose() {
+    this.readers.shutdownNow();
+    try {
+      this.serverSocket.close();
+    }
+    catch (IOException ex) {
+      this.log.debug("Error during close of result channel", ex);
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.*;
+import java.util.*;
+import org.objectweb.asm.*;
+
+/**
+ * Static analysis of test class byte code to find operations which change
+ * state shared by all code in the JVM: writes of static fields, changes of
+ * system properties and system streams, JVM exit, thread starts and calls of
+ * known global setters (default locale, time zone, security providers etc).
+ * Test methods of a class without such operations can share a JVM. Only code
+ * of the class itself is analyzed, its super classes and nested classes are
+ * not visited.
+ *
+ * @since 1.1.2
+ */
+final class ShareSafetyAnalyzer {
+
+  private static final String ANNO_BEFORE_CLASS = "Lorg/junit/BeforeClass;";
+  private static final String ANNO_AFTER_CLASS = "Lorg/junit/AfterClass;";
+
+  private static final Map<String, Set<String>> GLOBAL_CALLS = new HashMap<String, Set<String>>();
+
+  static {
+    addGlobalCalls("java/lang/System", "exit", "setProperty", "clearProperty", "setProperties", "setOut", "setErr", "setIn", "setSecurityManager");
+    addGlobalCalls("java/lang/Runtime", "exit", "halt", "addShutdownHook", "removeShutdownHook");
+    addGlobalCalls("java/lang/Thread", "start", "setDefaultUncaughtExceptionHandler");
+    addGlobalCalls("java/util/Timer", "<init>");
+    addGlobalCalls("java/util/concurrent/Executors", "newFixedThreadPool", "newCachedThreadPool", "newSingleThreadExecutor", "newScheduledThreadPool", "newSingleThreadScheduledExecutor", "newWorkStealingPool");
+    addGlobalCalls("java/util/Locale", "setDefault");
+    addGlobalCalls("java/util/TimeZone", "setDefault");
+    addGlobalCalls("java/net/Authenticator", "setDefault");
+    addGlobalCalls("java/net/ProxySelector", "setDefault");
+    addGlobalCalls("java/net/CookieHandler", "setDefault");
+    addGlobalCalls("java/net/ResponseCache", "setDefault");
+    addGlobalCalls("java/net/URL", "setURLStreamHandlerFactory");
+    addGlobalCalls("java/net/URLConnection", "setDefaultUseCaches", "setFileNameMap", "setContentHandlerFactory");
+    addGlobalCalls("java/security/Security", "addProvider", "insertProviderAt", "removeProvider", "setProperty");
+    addGlobalCalls("javax/net/ssl/SSLContext", "setDefault");
+    addGlobalCalls("javax/net/ssl/HttpsURLConnection", "setDefaultSSLSocketFactory", "setDefaultHostnameVerifier");
+    addGlobalCalls("java/sql/DriverManager", "registerDriver", "deregisterDriver", "setLoginTimeout", "setLogWriter");
+    addGlobalCalls("java/util/logging/LogManager", "reset", "readConfiguration");
+  }
+
+  private ShareSafetyAnalyzer() {
+  }
+
+  private static void addGlobalCalls(final String owner, final String... methods) {
+    GLOBAL_CALLS.put(owner, new HashSet<String>(Arrays.asList(methods)));
+  }
+
+  /**
+   * Find operations changing shared state in class file.
+   *
+   * @param classFileContent content of class file
+   * @return list of found hazards in format 'method: description', empty if
+   * the class is share-safe
+   */
+  static List<String> analyze(final byte[] classFileContent) {
+    final Set<String> result = new LinkedHashSet<String>();
+    new ClassReader(classFileContent).accept(new ClassVisitor(Opcodes.ASM5) {
+      private String className;
+
+      @Override
+      public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+        this.className = name;
+      }
+
+      @Override
+      public MethodVisitor visitMethod(final int access, final String methodName, final String methodDesc, final String signature, final String[] exceptions) {
+        return new MethodVisitor(Opcodes.ASM5) {
+          private boolean classFixture;
+
+          @Override
+          public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+            this.classFixture |= ANNO_BEFORE_CLASS.equals(desc) || ANNO_AFTER_CLASS.equals(desc);
+            return null;
+          }
+
+          @Override
+          public void visitFieldInsn(final int opcode, final String owner, final String name, final String desc) {
+            // static final fields can be written only by static initializer of their class,
+            // class fixtures are called once per JVM for the class
+            if (opcode == Opcodes.PUTSTATIC && !(owner.equals(className) && ("<clinit>".equals(methodName) || this.classFixture))) {
+              result.add(methodName + ": writes static field " + owner.replace('/', '.') + '.' + name);
+            }
+          }
+
+          @Override
+          public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc, final boolean itf) {
+            final Set<String> calls = GLOBAL_CALLS.get(owner);
+            if (calls != null && calls.contains(name)) {
+              result.add(methodName + ": calls " + owner.replace('/', '.') + '.' + name);
+            }
+            else if ("start".equals(name) && "()V".equals(desc) && opcode == Opcodes.INVOKEVIRTUAL && owner.endsWith("Thread")) {
+              result.add(methodName + ": starts thread " + owner.replace('/', '.'));
+            }
+          }
+        };
+      }
+    }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return new ArrayList<String>(result);
+  }
+
+  /**
+   * Write text report of analyzed test classes.
+   *
+   * @param file target file, must not be null
+   * @param classes found hazards for class names, empty lists for share-safe
+   * classes
+   * @throws IOException it will be thrown for any transport error
+   */
+  static void writeReport(final File file, final Map<String, List<String>> classes) throws IOException {
+    final File folder = file.getAbsoluteFile().getParentFile();
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      throw new IOException("Can't create folder " + folder);
+    }
+
+    int required = 0;
+    for (final List<String> hazards : classes.values()) {
+      if (!hazards.isEmpty()) {
+        required++;
+      }
+    }
+
+    final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      out.println("# JUte share analysis: " + classes.size() + " test class(es), " + required + " isolation required");
+      for (final Map.Entry<String, List<String>> e : classes.entrySet()) {
+        out.println(e.getKey() + ' ' + (e.getValue().isEmpty() ? "SHARE-SAFE" : "ISOLATION-REQUIRED"));
+        for (final String hazard : e.getValue()) {
+          out.println("  " + hazard);
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+    if (out.checkError()) {
+      throw new IOException("Can't write report " + file);
+    }
+  }
+}
@@ -33,6 +33,7 @@ final class TestClassProcessor extends ClassVisitor {
   private final TestContainer baseParameters;
   private TestContainer clazzJuteTestParameters;
   private boolean inappropriateClass;
+  private List<String> shareHazards;
 
   private final String juteTestParameter;
 
@@ -203,6 +204,28 @@ final class TestClassProcessor extends ClassVisitor {
     return this.clazzJuteTestParameters;
   }
 
+  /**
+   * Get result of share analysis of the class.
+   *
+   * @return found hazards, empty for share-safe class, null if the class has
+   * not been analyzed
+   */
+  public List<String> getShareHazards() {
+    return this.shareHazards;
+  }
+
+  /**
+   * Set result of share analysis for the class and all its detected tests.
+   *
+   * @param hazards found hazards, empty for share-safe class
+   */
+  public void setShareHazards(final List<String> hazards) {
+    this.shareHazards = hazards;
+    for (final TestContainer t : this.detectedTestMethodList) {
+      t.setShareSafe(hazards.isEmpty());
+    }
+  }
+
   @Override
   public int hashCode() {
     return this.classFilePath.hashCode();
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded queue of scanned test classes between discovery and execution. The
+ * discovery puts batches of scanned classes in order of their class files, the
+ * execution takes them and starts tests without waiting for the whole scan.
+ *
+ * @since 1.1.2
+ */
+final class TestClassQueue {
+
+  private static final Object END = new Object();
+
+  private final BlockingQueue<Object> queue;
+
+  /**
+   * Batch of scanned test classes.
+   */
+  static final class Batch {
+
+    private final BufferedLog log;
+    private final Map<TestClassProcessor, List<TestContainer>> classes;
+
+    /**
+     * Constructor.
+     *
+     * @param log log records made during scan of the batch, can be null
+     * @param classes scanned classes with their sorted tests
+     */
+    Batch(final BufferedLog log, final Map<TestClassProcessor, List<TestContainer>> classes) {
+      this.log = log;
+      this.classes = classes;
+    }
+
+    BufferedLog getLog() {
+      return this.log;
+    }
+
+    Map<TestClassProcessor, List<TestContainer>> getClasses() {
+      return this.classes;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param capacity max number of batches waiting for execution
+   */
+  TestClassQueue(final int capacity) {
+    this.queue = new ArrayBlockingQueue<Object>(capacity + 1);
+  }
+
+  /**
+   * Make completed queue containing single batch with all classes.
+   *
+   * @param classes all scanned classes
+   * @return completed queue
+   */
+  static TestClassQueue of(final Map<TestClassProcessor, List<TestContainer>> classes) {
+    final TestClassQueue result = new TestClassQueue(1);
+    result.queue.add(new Batch(null, classes));
+    result.queue.add(END);
+    return result;
+  }
+
+  /**
+   * Put batch, wait if the queue is full.
+   *
+   * @param batch batch of scanned classes
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  void put(final Batch batch) throws InterruptedException {
+    this.queue.put(batch);
+  }
+
+  /**
+   * Mark end of discovery.
+   *
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  void finish() throws InterruptedException {
+    this.queue.put(END);
+  }
+
+  /**
+   * Mark end of discovery because of error.
+   *
+   * @param error error to be thrown on the execution side
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  void fail(final Throwable error) throws InterruptedException {
+    this.queue.put(error);
+  }
+
+  /**
+   * Take the next batch, wait if there is no scanned batch.
+   *
+   * @return next batch or null if discovery is completed
+   * @throws IOException if discovery has been completed with error
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  Batch take() throws IOException, InterruptedException {
+    final Object item = this.queue.take();
+    if (item == END) {
+      this.queue.put(END);
+      return null;
+    }
+    if (item instanceof Throwable) {
+      this.queue.put(item);
+      if (item instanceof IOException) {
+        throw (IOException) item;
+      }
+      throw new IOException("Error during scan of test classes", (Throwable) item);
+    }
+    return (Batch) item;
+  }
+}
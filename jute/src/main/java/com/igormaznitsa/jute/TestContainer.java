@@ -19,21 +19,90 @@ import java.io.*;
 import java.lang.reflect.Field;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
+import com.igormaznitsa.jute.runners.RunnerProtocol;
+import org.apache.commons.io.IOUtils;
 import org.apache.maven.plugin.logging.Log;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Opcodes;
 import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.StartedProcess;
+import org.zeroturnaround.exec.listener.ProcessListener;
 
 public final class TestContainer extends AnnotationVisitor {
   public enum TestResult{
     SKIPPED,
     OK,
     TIMEOUT,
-    ERROR;
+    ERROR,
+    HUNG;
+  }
+
+  /**
+   * Isolation level of test methods.
+   *
+   * @since 1.1.2
+   */
+  public enum Isolation {
+    /**
+     * Every test method is executed in its own JVM.
+     */
+    METHOD,
+    /**
+     * Test methods of the same class are executed in the same JVM.
+     */
+    CLASS,
+    /**
+     * Every test method is executed by a long-living worker JVM with new class
+     * loader for test and project classes.
+     */
+    IN_PROCESS,
+    /**
+     * CLASS for test classes detected as share-safe by share analysis, METHOD
+     * for other test classes and if share analysis is not performed.
+     */
+    AUTO;
+
+    /**
+     * Find isolation for its name, case insensitive.
+     *
+     * @param name the name, empty string is interpreted as METHOD
+     * @return found isolation
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static Isolation find(final String name) {
+      if (name == null || name.trim().length() == 0) {
+        return METHOD;
+      }
+      for (final Isolation i : values()) {
+        if (i.name().equalsIgnoreCase(name.trim())) {
+          return i;
+        }
+      }
+      throw new IllegalArgumentException("Unsupported isolation '" + name + "', allowed values are " + Arrays.toString(values()));
+    }
   }
   
+  /**
+   * Exit code reported for tests which JVM can never fit the memory budget.
+   */
+  private static final int MEMORY_BUDGET_EXIT_CODE = -2;
+  /**
+   * Exit code reported for tests which JVM has been killed as hung.
+   */
+  private static final int HUNG_EXIT_CODE = -3;
+  /**
+   * Interval in milliseconds to check exit of a test JVM while its result is
+   * waited through result channel.
+   */
+  private static final long EXIT_POLL_INTERVAL = 20L;
+  /**
+   * Max time in milliseconds to wait for end of test console after the test
+   * result has been reported.
+   */
+  private static final long CONSOLE_END_WAIT = 1000L;
+
   // all fields to be filled by JUteTest annotation values must have the same names!
   private String jvm = "";
   private String in = "";
@@ -41,6 +110,7 @@ public final class TestContainer extends AnnotationVisitor {
   private boolean printConsole = false;
   private boolean skip = false;
   private long timeout = 0L;
+  private String isolation = "";
   private final List<String> jvmOpts = new ArrayList<String>();
   //---------------------------
   private boolean junitTest = false;
@@ -53,9 +123,16 @@ public final class TestContainer extends AnnotationVisitor {
 
   private String visitingArrayName = null;
   
+  private Boolean shareSafe;
+
   private volatile String lastTerminalOut;
+  private volatile File[] lastConsoleFiles;
+  private volatile ConsoleCapture lastConsoleCapture;
+  private volatile long lastExecutionTime = -1L;
+  private volatile ResultChannel.Report lastReport;
+  private volatile boolean lastClassError;
   
-  public TestContainer(final String classFilePath, final String className, final String testName, final String jvm, final String[] jvmOpts, final String in, final int order, final boolean enforcePrintConsole, final boolean skip, final long timeout) {
+  public TestContainer(final String classFilePath, final String className, final String testName, final String jvm, final String[] jvmOpts, final String in, final int order, final boolean enforcePrintConsole, final boolean skip, final long timeout, final String isolation) {
     super(Opcodes.ASM5);
     this.classFilePath = classFilePath;
     this.className = className;
@@ -66,6 +143,7 @@ public final class TestContainer extends AnnotationVisitor {
     this.printConsole = enforcePrintConsole;
     this.skip = skip;
     this.timeout = timeout;
+    this.isolation = isolation;
     if (jvmOpts != null) {
       for (final String s : jvmOpts) {
         this.jvmOpts.add(s);
@@ -86,6 +164,7 @@ public final class TestContainer extends AnnotationVisitor {
       this.printConsole = base.printConsole;
       this.skip = base.skip;
       this.timeout = base.timeout;
+      this.isolation = base.isolation;
       this.jvmOpts.addAll(base.jvmOpts);
       this.junitIgnore = base.junitIgnore;
       this.juteTest = base.juteTest;
@@ -137,6 +216,35 @@ public final class TestContainer extends AnnotationVisitor {
     return this.timeout;
   }
 
+  /**
+   * Get isolation of the test, AUTO isolation is resolved by result of share
+   * analysis.
+   *
+   * @return isolation of the test, never AUTO
+   */
+  public Isolation getIsolation() {
+    final Isolation result = Isolation.find(this.isolation);
+    if (result == Isolation.AUTO) {
+      return Boolean.TRUE.equals(this.shareSafe) ? Isolation.CLASS : Isolation.METHOD;
+    }
+    return result;
+  }
+
+  /**
+   * Get result of share analysis of the test class.
+   *
+   * @return true if the class is share-safe, false if it requires isolation,
+   * null if it has not been analyzed
+   * @since 1.1.2
+   */
+  public Boolean getShareSafe() {
+    return this.shareSafe;
+  }
+
+  public void setShareSafe(final Boolean value) {
+    this.shareSafe = value;
+  }
+
   public boolean isJUnitTest() {
     return this.junitTest;
   }
@@ -195,64 +303,424 @@ public final class TestContainer extends AnnotationVisitor {
     }
   }
 
-  public TestResult executeTest(final Log log, final boolean startOnlyJUteMarkedTests, final int maxTestNameLength, final String classPath, final Properties javaProperties, final Properties env) throws IOException, InterruptedException {
-    final boolean shouldBeSkipped;
-    if (startOnlyJUteMarkedTests){
-      if (!this.isJUteTest()){
-        shouldBeSkipped = true;
-      }else{
-        shouldBeSkipped = this.skip;
-      }
-    }else{
-      shouldBeSkipped = (this.junitTest && this.junitIgnore) || (this.juteTest && this.skip);
+  /**
+   * Check that the test should be skipped.
+   *
+   * @param startOnlyJUteMarkedTests true if only tests marked by JUteTest
+   * annotation are allowed
+   * @return true if the test must not be started
+   */
+  public boolean shouldBeSkipped(final boolean startOnlyJUteMarkedTests) {
+    if (startOnlyJUteMarkedTests) {
+      return !this.isJUteTest() || this.skip;
+    }
+    else {
+      return (this.junitTest && this.junitIgnore) || (this.juteTest && this.skip);
+    }
+  }
+
+  /**
+   * Get the name of the class to be used as the runner of the test.
+   *
+   * @return the runner class name
+   */
+  public String getRunnerClass() {
+    return this.isJUnitTest() && !this.isJUnitIgnore() ? JuteMojo.JUNIT_SINGLE_RUNNER_CLASS : JuteMojo.JUTE_SINGLE_RUNNER_CLASS;
+  }
+
+  /**
+   * Make key describing the JVM to execute the test, tests with equal keys can
+   * be executed in the same JVM.
+   *
+   * @return key of JVM configuration of the test
+   */
+  public String makeLaunchKey() {
+    final StringBuilder result = new StringBuilder();
+    result.append(this.jvm).append('\n').append(this.in).append('\n').append(getRunnerClass()).append('\n');
+    for (final String opt : this.jvmOpts) {
+      result.append(opt).append('\n');
+    }
+    return result.toString();
+  }
+
+  private List<String> makeJvmArguments(final ForkContext context) throws IOException {
+    if (getIsolation() == Isolation.IN_PROCESS && context.getInProcessWorkerPool() != null) {
+      return context.getInProcessWorkerPool().getLaunchArguments().make(this.jvm, this.jvmOpts);
     }
+    return context.getLaunchArguments().make(this.jvm, this.jvmOpts);
+  }
 
-    if (shouldBeSkipped) {
+  public TestResult executeTest(final Log log, final boolean startOnlyJUteMarkedTests, final int maxTestNameLength, final ForkContext context) throws IOException, InterruptedException {
+    this.lastExecutionTime = -1L;
+    this.lastReport = null;
+    this.lastClassError = false;
+
+    if (shouldBeSkipped(startOnlyJUteMarkedTests)) {
       return TestResult.SKIPPED;
     }
-    
-    final List<String> arguments = new ArrayList<String>();
-    arguments.add(this.jvm);
 
-    if (!this.jvmOpts.isEmpty()) {
-      for (final String opt : this.jvmOpts) {
-        arguments.add(opt);
+    final List<String> arguments = makeJvmArguments(context);
+    final String runnerClass = getRunnerClass();
+
+    log.debug("Test " + this + " will be started by " + (JuteMojo.JUNIT_SINGLE_RUNNER_CLASS.equals(runnerClass) ? "JUnit runner" : "JUte runner"));
+
+    final ConsoleCapture consoleCapture = context.getConsoleCapture();
+    final ConsoleBuffer consoleBuffer = consoleCapture.makeBuffer(this.toString(), ".out");
+    final ConsoleBuffer consoleErrBuffer = consoleCapture.makeBuffer(this.toString(), ".err");
+    final boolean inProcess = getIsolation() == Isolation.IN_PROCESS;
+    final File[] consoleFiles = consoleCapture.isFileMode() && !inProcess ? consoleCapture.makeFiles(this.toString()) : null;
+
+    final Integer result;
+    try {
+      result = startJvm(log, arguments, this.jvmOpts, runnerClass, Collections.singletonList(this.toString()), context, inProcess, this.in, this.timeout, consoleBuffer, consoleErrBuffer, consoleFiles);
+    }
+    finally {
+      consoleBuffer.close();
+      consoleErrBuffer.close();
+      if (context.getResultChannel() != null) {
+        this.lastReport = context.getResultChannel().take(this.toString());
+        if (this.lastReport != null) {
+          this.lastExecutionTime = this.lastReport.getMethodTime();
+        }
+      }
+    }
+
+    if (consoleFiles != null && consoleFiles[0].isFile()) {
+      // console files are read only if the console must be shown
+      this.lastConsoleCapture = consoleCapture;
+      this.lastConsoleFiles = consoleFiles;
+      this.lastTerminalOut = null;
+    }
+    else {
+      this.lastConsoleFiles = null;
+      this.lastTerminalOut = prepareTerminalLog(consoleBuffer, consoleErrBuffer);
+    }
+
+    if (result == null) {
+      if (context.getThreadDumps() != null) {
+        captureThreadDump(log, context.getThreadDumps(), getLastTerminalOut());
       }
+      return TestResult.TIMEOUT;
+    }
+    if (result == HUNG_EXIT_CODE) {
+      return TestResult.HUNG;
     }
+    return result == 0 ? TestResult.OK : TestResult.ERROR;
+  }
 
-    if (javaProperties != null && !javaProperties.isEmpty()) {
-      for (final Map.Entry<Object, Object> entry : javaProperties.entrySet()) {
-        final String key = (String) entry.getKey();
-        final String value = (String) entry.getValue();
-        arguments.add("-D" + key + "=" + value);
+  /**
+   * Execute several test methods of the same class in one JVM. All tests must
+   * have the same launch key. Timeout of the JVM is the sum of the test
+   * timeouts, if any test has no timeout then the JVM has no timeout.
+   *
+   * @param log the logger
+   * @param tests tests to be executed, must not be empty
+   * @param context settings and services to start the JVM
+   * @return map contains result for every test
+   * @throws IOException it will be thrown for transport error
+   * @throws InterruptedException it will be thrown if the thread is interrupted
+   * @see #makeLaunchKey()
+   */
+  public static Map<TestContainer, TestResult> executeTestBatch(final Log log, final List<TestContainer> tests, final ForkContext context) throws IOException, InterruptedException {
+    final TestContainer first = tests.get(0);
+
+    final List<String> arguments = first.makeJvmArguments(context);
+    final String runnerClass = first.getRunnerClass();
+
+    final List<String> names = new ArrayList<String>();
+    long timeout = 0L;
+    boolean noTimeout = false;
+    for (final TestContainer t : tests) {
+      names.add(t.toString());
+      if (t.timeout > 0L) {
+        timeout += t.timeout;
+      }
+      else {
+        noTimeout = true;
       }
     }
 
-    arguments.add("-classpath");
-    arguments.add(classPath);
+    log.debug("Tests " + names + " will be started in the same JVM");
 
-    final boolean junitRunner;
-    
-    if (this.isJUnitTest() && !this.isJUnitIgnore()){
-      junitRunner = true;
-      arguments.add(JuteMojo.JUNIT_SINGLE_RUNNER_CLASS);
-    }else{
-      junitRunner = false;
-      arguments.add(JuteMojo.JUTE_SINGLE_RUNNER_CLASS);
+    final ConsoleBuffer consoleBuffer = context.getConsoleCapture().makeBuffer(first.getClassName() + "#batch", ".out");
+    final ConsoleBuffer consoleErrBuffer = context.getConsoleCapture().makeBuffer(first.getClassName() + "#batch", ".err");
+
+    final Integer exitCode;
+    try {
+      exitCode = startJvm(log, arguments, first.jvmOpts, runnerClass, names, context, false, first.in, noTimeout ? 0L : timeout, consoleBuffer, consoleErrBuffer, null);
+    }
+    finally {
+      consoleBuffer.close();
+      consoleErrBuffer.close();
+      if (context.getResultChannel() != null) {
+        // results of batch tests are taken from the console protocol
+        for (final String name : names) {
+          context.getResultChannel().take(name);
+        }
+      }
     }
-    
-    log.debug("Test "+this+" will be started by "+(junitRunner ? "JUnit runner" : "JUte runner"));
-    
-    arguments.add(this.toString());
 
-    final StringBuilder buffer = new StringBuilder();
-    for (final String s : arguments) {
-      if (buffer.length() > 0) {
-        buffer.append(' ');
+    final Map<String, String> outSections = Utils.splitConsoleForTests(consoleBuffer.getText());
+    final Map<String, String> errSections = Utils.splitConsoleForTests(consoleErrBuffer.getText());
+    // protocol lines are kept by the buffer even if they are skipped from the kept text
+    final String protocol = consoleBuffer.getMarkerLines();
+    final Set<String> startedTests = Utils.splitConsoleForTests(protocol).keySet();
+    final Map<String, String[]> reported = Utils.extractTestResults(protocol);
+    final Set<String> classErrors = Utils.extractClassErrors(protocol);
+
+    final Map<TestContainer, TestResult> result = new HashMap<TestContainer, TestResult>();
+    boolean isFirst = true;
+    for (final TestContainer t : tests) {
+      final String name = t.toString();
+      final boolean started = startedTests.contains(name);
+      String testOut = outSections.containsKey(name) ? outSections.get(name) : "";
+      String testErr = errSections.containsKey(name) ? errSections.get(name) : "";
+      if (isFirst || !started) {
+        // common output of the JVM is shown for the first test and for tests which have not been started
+        testOut = (outSections.containsKey("") ? outSections.get("") : "") + testOut;
+        testErr = (errSections.containsKey("") ? errSections.get("") : "") + testErr;
       }
-      buffer.append(s);
+      isFirst = false;
+
+      t.lastConsoleFiles = null;
+      t.lastTerminalOut = collectConsoleData(testOut, testErr);
+      t.lastExecutionTime = -1L;
+      t.lastClassError = classErrors.contains(t.getClassName());
+
+      final String[] testResult = reported.get(name);
+      if (testResult != null) {
+        try {
+          t.lastExecutionTime = Long.parseLong(testResult[1]);
+        }
+        catch (NumberFormatException ex) {
+          log.debug("Can't parse execution time of " + name + " : " + testResult[1]);
+        }
+        result.put(t, RunnerProtocol.RESULT_OK.equals(testResult[0]) ? TestResult.OK : TestResult.ERROR);
+      }
+      else if (exitCode == null && started) {
+        if (context.getThreadDumps() != null) {
+          t.captureThreadDump(log, context.getThreadDumps(), testOut);
+        }
+        result.put(t, TestResult.TIMEOUT);
+      }
+      else if (exitCode != null && exitCode == HUNG_EXIT_CODE && started) {
+        result.put(t, TestResult.HUNG);
+      }
+      else {
+        result.put(t, TestResult.ERROR);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Execute several fast test methods in one JVM and re-execute every test in
+   * its own JVM if any test of the batch has not passed, so that a failure is
+   * always confirmed in isolation. All tests must have the same launch key.
+   *
+   * @param log the logger
+   * @param tests tests to be executed, must not be empty
+   * @param startOnlyJUteMarkedTests true if only tests marked by JUteTest
+   * annotation are allowed
+   * @param maxTestNameLength max length of test name
+   * @param context settings and services to start JVMs
+   * @return map contains result for every test
+   * @throws IOException it will be thrown for transport error
+   * @throws InterruptedException it will be thrown if the thread is interrupted
+   * @see #executeTestBatch(org.apache.maven.plugin.logging.Log, java.util.List, com.igormaznitsa.jute.ForkContext)
+   */
+  public static Map<TestContainer, TestResult> executeAdaptiveBatch(final Log log, final List<TestContainer> tests, final boolean startOnlyJUteMarkedTests, final int maxTestNameLength, final ForkContext context) throws IOException, InterruptedException {
+    final Map<TestContainer, TestResult> batchResult = executeTestBatch(log, tests, context);
+    if (!batchResult.values().contains(TestResult.ERROR) && !batchResult.values().contains(TestResult.TIMEOUT) && !batchResult.values().contains(TestResult.HUNG) && !tests.get(tests.size() - 1).lastClassError) {
+      return batchResult;
     }
-    log.debug(buffer.toString());
+
+    log.info("Batch of " + tests.size() + " test(s) of " + tests.get(0).getClassName() + " has not passed, tests are re-executed in separate JVMs");
+
+    final Map<TestContainer, TestResult> result = new HashMap<TestContainer, TestResult>();
+    for (final TestContainer t : tests) {
+      final long start = System.currentTimeMillis();
+      result.put(t, t.executeTest(log, startOnlyJUteMarkedTests, maxTestNameLength, context));
+      if (t.lastExecutionTime < 0L) {
+        // the runner has not reported time of the method
+        t.lastExecutionTime = System.currentTimeMillis() - start;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Start JVM to execute tests and wait for its end. If there is memory budget
+   * then the JVM waits until its estimated memory fits the budget.
+   *
+   * Output of a new JVM is redirected into console files if they are provided
+   * and supported.
+   *
+   * @return exit code of the JVM or null if it has been stopped by timeout
+   */
+  private static Integer startJvm(final Log log, final List<String> jvmArguments, final List<String> jvmOptions, final String runnerClass, final List<String> tests, final ForkContext context, final boolean inProcess, final String in, final long timeout, final OutputStream consoleBuffer, final OutputStream consoleErrBuffer, final File[] consoleFiles) throws IOException, InterruptedException {
+    final MemoryBudget memoryBudget = context.getMemoryBudget();
+    if (memoryBudget == null) {
+      return startJvm(log, jvmArguments, runnerClass, tests, context, inProcess, in, timeout, 0L, consoleBuffer, consoleErrBuffer, consoleFiles);
+    }
+
+    final long reservation = memoryBudget.estimate(jvmOptions);
+    if (!memoryBudget.canFit(reservation)) {
+      final String message = "Estimated memory of test JVM (" + Utils.printMemorySize(reservation) + ") exceeds memory budget (" + Utils.printMemorySize(memoryBudget.getBudget()) + "), check -Xmx of the test";
+      log.debug(message + " : " + tests);
+      consoleErrBuffer.write((message + Utils.lineSeparator).getBytes(Charset.defaultCharset()));
+      return MEMORY_BUDGET_EXIT_CODE;
+    }
+
+    if (!inProcess && context.getWarmJvmPool() != null) {
+      // warm JVM holds reservation of its memory while it is alive
+      return startJvm(log, jvmArguments, runnerClass, tests, context, inProcess, in, timeout, reservation, consoleBuffer, consoleErrBuffer, consoleFiles);
+    }
+
+    memoryBudget.reserve(reservation);
+    try {
+      return startJvm(log, jvmArguments, runnerClass, tests, context, inProcess, in, timeout, reservation, consoleBuffer, consoleErrBuffer, consoleFiles);
+    }
+    finally {
+      memoryBudget.release(reservation);
+    }
+  }
+
+  private static Integer startJvm(final Log log, final List<String> jvmArguments, final String runnerClass, final List<String> tests, final ForkContext context, final boolean inProcess, final String in, final long timeout, final long memory, final OutputStream consoleBuffer, final OutputStream consoleErrBuffer, final File[] consoleFiles) throws IOException, InterruptedException {
+    final List<String> arguments = new ArrayList<String>(jvmArguments);
+
+    // class path of in-process workers doesn't match the archive
+    if (context.getCdsArchiveManager() != null && !inProcess) {
+      arguments.addAll(1, context.getCdsArchiveManager().getJvmOptions(arguments.get(0)));
+    }
+
+    if (context.getResultChannel() != null) {
+      arguments.add(1, context.getResultChannel().makeJvmOption());
+      for (final String name : tests) {
+        context.getResultChannel().expect(name);
+      }
+    }
+
+    if (inProcess && context.getInProcessWorkerPool() != null) {
+      log.debug(joinArguments(arguments) + " <= " + runnerClass + ' ' + joinArguments(tests));
+      return context.getInProcessWorkerPool().execute(arguments, context.getEnv(), runnerClass, tests, in, timeout, consoleBuffer, consoleErrBuffer);
+    }
+    else if (context.getWarmJvmPool() != null) {
+      arguments.add(JuteMojo.WARM_JVM_RUNNER_CLASS);
+      return startInWarmJvm(log, context.getWarmJvmPool(), arguments, runnerClass, tests, context.getEnv(), in, timeout, memory, context.getTimeoutWheel().getThreadDumpWait(), consoleBuffer, consoleErrBuffer);
+    }
+    else {
+      // result of single test can be taken before exit of its JVM
+      final ResultChannel resultChannel = context.getResultChannel();
+      final ResultChannel earlyResultChannel = tests.size() == 1 && resultChannel != null && resultChannel.getShutdownGrace() >= 0L ? resultChannel : null;
+      final HangDetector hangDetector = resultChannel == null ? null : resultChannel.getHangDetector();
+      if (hangDetector != null) {
+        arguments.add(1, resultChannel.makeHeartbeatJvmOption());
+      }
+      if (consoleFiles != null) {
+        return startNewJvmWithConsoleFiles(log, arguments, runnerClass, tests, context.getEnv(), context.getProcessRegistry(), context.getTimeoutWheel(), earlyResultChannel, hangDetector, in, timeout, consoleFiles);
+      }
+      else {
+        return startNewJvm(log, arguments, runnerClass, tests, context.getEnv(), context.getProcessRegistry(), context.getTimeoutWheel(), earlyResultChannel, hangDetector, in, timeout, consoleBuffer, consoleErrBuffer);
+      }
+    }
+  }
+
+  /**
+   * Wait for either exit of a process or report of its test.
+   *
+   * @param process the process
+   * @param channel the result channel
+   * @param testName name of the test executed by the process
+   * @return the report or null if the process has exited without report
+   * @throws InterruptedException it will be thrown if the thread is interrupted
+   */
+  private static ResultChannel.Report waitForExitOrReport(final Process process, final ResultChannel channel, final String testName) throws InterruptedException {
+    while (true) {
+      final ResultChannel.Report report = channel.await(testName, EXIT_POLL_INTERVAL);
+      if (report != null) {
+        return report;
+      }
+      try {
+        process.exitValue();
+        // the report can be sent just before exit
+        return channel.await(testName, 0L);
+      }
+      catch (IllegalThreadStateException ex) {
+        // alive
+      }
+    }
+  }
+
+  private static Integer startNewJvmWithConsoleFiles(final Log log, final List<String> arguments, final String runnerClass, final List<String> tests, final Properties env, final ProcessRegistry processRegistry, final TimeoutWheel timeoutWheel, final ResultChannel earlyResultChannel, final HangDetector hangDetector, final String in, final long timeout, final File[] consoleFiles) throws IOException, InterruptedException {
+    arguments.add(runnerClass);
+    arguments.addAll(tests);
+
+    log.debug(joinArguments(arguments) + " > " + consoleFiles[0].getName());
+
+    final ProcessBuilder builder = new ProcessBuilder(arguments);
+    if (env != null && !env.isEmpty()) {
+      for (final Map.Entry<Object, Object> entry : env.entrySet()) {
+        builder.environment().put((String) entry.getKey(), (String) entry.getValue());
+      }
+    }
+    ConsoleCapture.redirect(builder, consoleFiles);
+
+    final Process process = builder.start();
+    processRegistry.register(process);
+    final TimeoutWheel.Deadline deadline = timeout > 0L ? timeoutWheel.watch(process, timeout) : null;
+    final HangDetector.Watch hangWatch = hangDetector == null ? null : hangDetector.watch(tests.get(0), process);
+    try {
+      final OutputStream processIn = process.getOutputStream();
+      try {
+        if (in != null) {
+          processIn.write(in.getBytes(Charset.defaultCharset()));
+        }
+      }
+      catch (IOException ex) {
+        log.debug("Can't write input of test JVM : " + ex.getMessage());
+      }
+      finally {
+        IOUtils.closeQuietly(processIn);
+      }
+
+      final ResultChannel.Report report = earlyResultChannel == null ? null : waitForExitOrReport(process, earlyResultChannel, tests.get(0));
+      final int exitCode;
+      if (report == null) {
+        exitCode = process.waitFor();
+      }
+      else {
+        // console files are written directly by the JVM so that they are already complete
+        exitCode = report.isSuccessful() ? 0 : 1;
+        timeoutWheel.reap(process, earlyResultChannel.getShutdownGrace());
+      }
+      if (hangWatch != null && hangWatch.isHung()) {
+        return HUNG_EXIT_CODE;
+      }
+      return deadline == null || deadline.cancel() ? exitCode : null;
+    }
+    catch (InterruptedException ex) {
+      processRegistry.destroy(process, false);
+      throw ex;
+    }
+    finally {
+      if (deadline != null) {
+        deadline.cancel();
+      }
+      if (hangDetector != null) {
+        hangDetector.cancel(tests.get(0));
+      }
+      processRegistry.release(process);
+      IOUtils.closeQuietly(process.getInputStream());
+      IOUtils.closeQuietly(process.getErrorStream());
+    }
+  }
+
+  private static Integer startNewJvm(final Log log, final List<String> arguments, final String runnerClass, final List<String> tests, final Properties env, final ProcessRegistry processRegistry, final TimeoutWheel timeoutWheel, final ResultChannel earlyResultChannel, final HangDetector hangDetector, final String in, final long timeout, final OutputStream consoleBuffer, final OutputStream consoleErrBuffer) throws IOException, InterruptedException {
+    arguments.add(runnerClass);
+    arguments.addAll(tests);
+
+    log.debug(joinArguments(arguments));
 
     final ProcessExecutor exec = new ProcessExecutor(arguments.toArray(new String[arguments.size()]));
 
@@ -262,39 +730,165 @@ public final class TestContainer extends AnnotationVisitor {
       }
     }
 
-    if (this.in != null) {
-      exec.redirectInput(new ByteArrayInputStream(this.in.getBytes(Charset.defaultCharset())));
+    if (in != null) {
+      exec.redirectInput(new ByteArrayInputStream(in.getBytes(Charset.defaultCharset())));
+    }
+
+    // the process is waited in the current thread, the shared timeout wheel destroys it if its deadline expires
+    final Process[] started = new Process[1];
+    final TimeoutWheel.Deadline[] deadline = new TimeoutWheel.Deadline[1];
+    final HangDetector.Watch[] hangWatch = new HangDetector.Watch[1];
+    final ProcessExecutor executor = exec.redirectError(consoleErrBuffer).redirectOutput(consoleBuffer).addListener(new ProcessListener() {
+      @Override
+      public void afterStart(final Process process, final ProcessExecutor processExecutor) {
+        started[0] = process;
+        processRegistry.register(process);
+        if (timeout > 0L) {
+          deadline[0] = timeoutWheel.watch(process, timeout);
+        }
+        if (hangDetector != null) {
+          hangWatch[0] = hangDetector.watch(tests.get(0), process);
+        }
+      }
+    });
+    try {
+      final int exitCode;
+      if (earlyResultChannel == null) {
+        exitCode = executor.executeNoTimeout().getExitValue();
+      }
+      else {
+        exitCode = waitForEarlyResult(executor.start(), timeoutWheel, earlyResultChannel, tests.get(0), consoleBuffer, consoleErrBuffer);
+      }
+      if (hangWatch[0] != null && hangWatch[0].isHung()) {
+        return HUNG_EXIT_CODE;
+      }
+      return deadline[0] == null || deadline[0].cancel() ? exitCode : null;
+    }
+    catch (InterruptedException ex) {
+      if (started[0] != null) {
+        processRegistry.destroy(started[0], false);
+      }
+      throw ex;
+    }
+    finally {
+      if (deadline[0] != null) {
+        deadline[0].cancel();
+      }
+      if (hangDetector != null) {
+        hangDetector.cancel(tests.get(0));
+      }
+      if (started[0] != null) {
+        processRegistry.release(started[0]);
+      }
+    }
+  }
+
+  private static int waitForEarlyResult(final StartedProcess started, final TimeoutWheel timeoutWheel, final ResultChannel channel, final String testName, final OutputStream consoleBuffer, final OutputStream consoleErrBuffer) throws IOException, InterruptedException {
+    final Process process = started.getProcess();
+    try {
+      final ResultChannel.Report report = waitForExitOrReport(process, channel, testName);
+      if (report == null) {
+        return started.getFuture().get().getExitValue();
+      }
+      // console is read by pumping threads, wait until they read the end of the test
+      final String endMarker = RunnerProtocol.TEST_END + testName;
+      for (final OutputStream buffer : new OutputStream[]{consoleBuffer, consoleErrBuffer}) {
+        if (buffer instanceof ConsoleBuffer) {
+          ((ConsoleBuffer) buffer).awaitMarkerLine(endMarker, CONSOLE_END_WAIT);
+        }
+      }
+      timeoutWheel.reap(process, channel.getShutdownGrace());
+      return report.isSuccessful() ? 0 : 1;
     }
+    catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      throw cause instanceof IOException ? (IOException) cause : new IOException("Error during test JVM execution", cause);
+    }
+  }
 
-    final ByteArrayOutputStream consoleBuffer = new ByteArrayOutputStream();
-    final ByteArrayOutputStream consoleErrBuffer = new ByteArrayOutputStream();
+  private static Integer startInWarmJvm(final Log log, final WarmJvmPool pool, final List<String> arguments, final String runnerClass, final List<String> tests, final Properties env, final String in, final long timeout, final long memory, final long threadDumpWait, final OutputStream consoleBuffer, final OutputStream consoleErrBuffer) throws IOException, InterruptedException {
+    log.debug(joinArguments(arguments) + " <- " + runnerClass + ' ' + joinArguments(tests));
 
-    final ProcessExecutor executor = exec.destroyOnExit().redirectError(consoleErrBuffer).redirectOutput(consoleBuffer);
-    int result;
-    if (this.timeout > 0L) {
+    final WarmJvmPool.WarmJvm jvm = pool.acquire(arguments, env, memory);
+    try {
+      jvm.run(runnerClass, tests, in, consoleBuffer, consoleErrBuffer);
+      return jvm.waitFor(timeout);
+    }
+    catch (TimeoutException ex) {
       try {
-        result = executor.timeout(this.timeout, TimeUnit.MILLISECONDS).execute().getExitValue();
+        if (threadDumpWait > 0L && jvm.requestThreadDump()) {
+          Thread.sleep(threadDumpWait);
+        }
       }
-      catch (TimeoutException ex) {
-        this.lastTerminalOut = prepareTerminalLog(consoleBuffer, consoleErrBuffer);
-        return TestResult.TIMEOUT;
+      finally {
+        jvm.destroy();
       }
+      return null;
     }
-    else {
-      result = executor.executeNoTimeout().getExitValue();
+    catch (IOException ex) {
+      jvm.destroy();
+      throw ex;
+    }
+    catch (InterruptedException ex) {
+      jvm.destroy();
+      throw ex;
     }
+    finally {
+      jvm.release();
+    }
+  }
 
-    this.lastTerminalOut = prepareTerminalLog(consoleBuffer, consoleErrBuffer);
+  /**
+   * Find thread dump in console of the test stopped by timeout, write it into
+   * file and show the file and the summary of the dump at the start of the
+   * console.
+   *
+   * @param log the logger
+   * @param threadDumps thread dump settings
+   * @param console console text of the test
+   */
+  private void captureThreadDump(final Log log, final ThreadDumps threadDumps, final String console) {
+    final String dump = ThreadDumps.extract(console);
+    if (dump == null) {
+      log.debug("Thread dump of " + this + " is not found in its console");
+      return;
+    }
+    final StringBuilder record = new StringBuilder();
+    record.append((char) 0x2562 + "Thread dump" + (char) 0x255F).append(Utils.lineSeparator);
+    try {
+      record.append(threadDumps.save(this.toString(), dump).getAbsolutePath()).append(Utils.lineSeparator);
+    }
+    catch (IOException ex) {
+      log.warn("Can't write thread dump of " + this + " : " + ex.getMessage());
+    }
+    if (threadDumps.getFrames() > 0) {
+      for (final String s : ThreadDumps.summarize(dump, threadDumps.getFrames())) {
+        record.append(s).append(Utils.lineSeparator);
+      }
+    }
+    this.lastTerminalOut = record.append(this.lastTerminalOut).toString();
+  }
 
-    return result == 0 ? TestResult.OK : TestResult.ERROR;
+  private static String joinArguments(final List<String> arguments) {
+    final StringBuilder buffer = new StringBuilder();
+    for (final String s : arguments) {
+      if (buffer.length() > 0) {
+        buffer.append(' ');
+      }
+      buffer.append(s);
+    }
+    return buffer.toString();
+  }
+
+  private static String collectConsoleData(final ConsoleBuffer out, final ConsoleBuffer err) {
+    return collectConsoleData(out.getText(), err.getText());
   }
 
-  private static String collectConsoleData(final ByteArrayOutputStream out, final ByteArrayOutputStream err) {
+  private static String collectConsoleData(final String outText, final String errText) {
+    final String outStr = Utils.removeProtocolLines(outText);
+    final String errStr = Utils.removeProtocolLines(errText);
     final StringBuilder record = new StringBuilder();
     
-    final String outStr = new String(out.toByteArray(), Charset.defaultCharset());
-    final String errStr = new String(err.toByteArray(), Charset.defaultCharset());
-    
     record.append((char)0x2562+"Output"+(char) 0x255F).append(Utils.lineSeparator).append(outStr).append(Utils.lineSeparator);
     if (!errStr.isEmpty()){
       record.append((char) 0x2563 +"Error"+ (char) 0x2560).append(Utils.lineSeparator).append(errStr);
@@ -302,7 +896,7 @@ public final class TestContainer extends AnnotationVisitor {
     return record.toString();
   }
 
-  private static String prepareTerminalLog(final ByteArrayOutputStream out, final ByteArrayOutputStream err) {
+  private static String prepareTerminalLog(final ConsoleBuffer out, final ConsoleBuffer err) {
     final StringBuilder record = new StringBuilder();
     record.append(collectConsoleData(out, err));
     return record.toString();
@@ -314,11 +908,75 @@ public final class TestContainer extends AnnotationVisitor {
   }
 
   public String getLastTerminalOut() {
+    final File[] consoleFiles = this.lastConsoleFiles;
+    if (this.lastTerminalOut == null && consoleFiles != null) {
+      final ConsoleCapture consoleCapture = this.lastConsoleCapture;
+      this.lastTerminalOut = collectConsoleData(consoleCapture.read(consoleFiles[0]), consoleCapture.read(consoleFiles[1]));
+    }
     return this.lastTerminalOut;
   }
+
+  /**
+   * Check that class level methods (like AfterClass) of the test class have
+   * failed during the last execution of several tests in one JVM, after the
+   * result of the test has been reported.
+   *
+   * @return true if class level methods have failed, false otherwise
+   */
+  public boolean isLastClassError() {
+    return this.lastClassError;
+  }
+
+  /**
+   * Check that the test can be executed in an adaptive batch together with
+   * other fast tests. The test must have METHOD isolation, no text for
+   * System.in, its class must not be marked as isolation-required by share
+   * analysis and its last execution must be successful and faster than the
+   * threshold.
+   *
+   * @param history history of tests, can be null
+   * @param threshold max average execution time in milliseconds, zero or less
+   * disables batching
+   * @return true if the test can be batched, false otherwise
+   * @since 1.1.2
+   */
+  public boolean isBatchable(final TestHistory history, final long threshold) {
+    if (threshold <= 0L || history == null) {
+      return false;
+    }
+    if (getIsolation() != Isolation.METHOD || (this.in != null && this.in.length() > 0) || Boolean.FALSE.equals(getShareSafe())) {
+      return false;
+    }
+    final TestHistory.Entry entry = history.find(this.toString());
+    if (entry == null || entry.getLastResult() != TestResult.OK) {
+      return false;
+    }
+    final long duration = entry.getAverageDuration();
+    return duration >= 0L && duration < threshold;
+  }
+
+  /**
+   * Get execution time of the test method reported by the runner.
+   *
+   * @return time in milliseconds or -1 if it is unknown
+   */
+  public long getLastExecutionTime() {
+    return this.lastExecutionTime;
+  }
+
+  /**
+   * Get structured result of the last single execution of the test, received
+   * through result channel.
+   *
+   * @return the report or null if it is not received
+   */
+  ResultChannel.Report getLastReport() {
+    return this.lastReport;
+  }
   
   public void dispose(){
     this.lastTerminalOut = null;
+    this.lastConsoleFiles = null;
   }
   
 }
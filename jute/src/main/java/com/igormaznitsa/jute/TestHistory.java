@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import com.igormaznitsa.jute.TestContainer.TestResult;
+import java.io.*;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * History of test executions, for every test (class_name#method_name) it keeps
+ * the last execution times, the last result, JVM start share and peak memory.
+ * The history is saved in compact binary format to be loaded fast even for
+ * big number of tests. Tests which have been neither recorded nor queried
+ * since load (removed or renamed tests) are dropped on save of a full run.
+ *
+ * @since 1.1.2
+ */
+final class TestHistory {
+
+  /**
+   * Number of the last execution times kept for every test.
+   */
+  static final int WINDOW_SIZE = 8;
+
+  private static final int MAGIC = 0x4A555448; // JUTH
+  private static final int VERSION = 1;
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+  private final Set<String> seen = new HashSet<String>();
+
+  /**
+   * Execution history of a test. Entries returned by the history are
+   * snapshots which are not changed by later records.
+   */
+  static final class Entry {
+
+    private final long[] durations = new long[WINDOW_SIZE];
+    private int size;
+    private int next;
+    private TestResult lastResult = TestResult.OK;
+    private long startupShare = -1L;
+    private long peakMemory = -1L;
+
+    private Entry copy() {
+      final Entry result = new Entry();
+      System.arraycopy(this.durations, 0, result.durations, 0, WINDOW_SIZE);
+      result.size = this.size;
+      result.next = this.next;
+      result.lastResult = this.lastResult;
+      result.startupShare = this.startupShare;
+      result.peakMemory = this.peakMemory;
+      return result;
+    }
+
+    private void addDuration(final long duration) {
+      this.durations[this.next] = duration;
+      this.next = (this.next + 1) % WINDOW_SIZE;
+      this.size = Math.min(this.size + 1, WINDOW_SIZE);
+    }
+
+    /**
+     * Get recorded execution times from the oldest one.
+     *
+     * @return array of durations in milliseconds
+     */
+    long[] getDurations() {
+      final long[] result = new long[this.size];
+      final int start = (this.next - this.size + WINDOW_SIZE) % WINDOW_SIZE;
+      for (int i = 0; i < this.size; i++) {
+        result[i] = this.durations[(start + i) % WINDOW_SIZE];
+      }
+      return result;
+    }
+
+    /**
+     * Get average execution time.
+     *
+     * @return average time in milliseconds, -1 if there is no data
+     */
+    long getAverageDuration() {
+      if (this.size == 0) {
+        return -1L;
+      }
+      long sum = 0L;
+      for (int i = 0; i < this.size; i++) {
+        sum += this.durations[i];
+      }
+      return sum / this.size;
+    }
+
+    TestResult getLastResult() {
+      return this.lastResult;
+    }
+
+    /**
+     * Get time spent to start JVM for the test.
+     *
+     * @return time in milliseconds, -1 if unknown
+     */
+    long getStartupShare() {
+      return this.startupShare;
+    }
+
+    /**
+     * Get peak memory used by the test JVM.
+     *
+     * @return memory in bytes, -1 if unknown
+     */
+    long getPeakMemory() {
+      return this.peakMemory;
+    }
+  }
+
+  /**
+   * Load history from file. If the file doesn't exist then empty history is
+   * returned.
+   *
+   * @param file file to be loaded, must not be null
+   * @return loaded history
+   * @throws IOException it will be thrown if the file can't be read or it has
+   * wrong format
+   */
+  static TestHistory load(final File file) throws IOException {
+    final TestHistory result = new TestHistory();
+    if (!file.isFile()) {
+      return result;
+    }
+
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Wrong test history file format: " + file);
+      }
+      final int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported test history version: " + version);
+      }
+      final TestResult[] results = TestResult.values();
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final String name = in.readUTF();
+        final Entry entry = new Entry();
+        final int resultIndex = in.readByte();
+        entry.lastResult = resultIndex >= 0 && resultIndex < results.length ? results[resultIndex] : TestResult.ERROR;
+        entry.startupShare = in.readLong();
+        entry.peakMemory = in.readLong();
+        final int durations = in.readByte();
+        for (int d = 0; d < durations; d++) {
+          entry.addDuration(in.readLong());
+        }
+        result.entries.put(name, entry);
+      }
+    }
+    finally {
+      in.close();
+    }
+    return result;
+  }
+
+  /**
+   * Save history. Data is written into a temporary file which replaces the
+   * target file, so that the target file is never left partially written.
+   * Entries of tests not seen since load can be removed, if no test has been
+   * seen then all entries are kept.
+   *
+   * @param file target file, must not be null
+   * @param pruneNotSeen true if entries of tests not seen since load must be
+   * removed, false if the session hasn't reached all tests
+   * @throws IOException it will be thrown for any transport error
+   */
+  synchronized void save(final File file, final boolean pruneNotSeen) throws IOException {
+    final File folder = file.getAbsoluteFile().getParentFile();
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      throw new IOException("Can't create folder " + folder);
+    }
+
+    if (pruneNotSeen && !this.seen.isEmpty()) {
+      this.entries.keySet().retainAll(this.seen);
+    }
+
+    final File tempFile = File.createTempFile("jute-history", ".tmp", folder);
+    boolean saved = false;
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(this.entries.size());
+        for (final Map.Entry<String, Entry> e : this.entries.entrySet()) {
+          final Entry entry = e.getValue();
+          out.writeUTF(e.getKey());
+          out.writeByte(entry.lastResult.ordinal());
+          out.writeLong(entry.startupShare);
+          out.writeLong(entry.peakMemory);
+          final long[] durations = entry.getDurations();
+          out.writeByte(durations.length);
+          for (final long d : durations) {
+            out.writeLong(d);
+          }
+        }
+      }
+      finally {
+        out.close();
+      }
+
+      if (!tempFile.renameTo(file)) {
+        if (file.exists() && !file.delete()) {
+          throw new IOException("Can't replace file " + file);
+        }
+        if (!tempFile.renameTo(file)) {
+          throw new IOException("Can't rename " + tempFile + " to " + file);
+        }
+      }
+      saved = true;
+    }
+    finally {
+      if (!saved && !tempFile.delete()) {
+        tempFile.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * Record execution of a test.
+   *
+   * @param testId test identifier in format class_name#method_name
+   * @param result result of the test
+   * @param duration execution time of the test method reported by the runner
+   * in milliseconds, without JVM start
+   * @param startupShare time spent to start JVM in milliseconds, -1 if
+   * unknown
+   * @param peakMemory peak memory in bytes, -1 if unknown
+   */
+  synchronized void record(final String testId, final TestResult result, final long duration, final long startupShare, final long peakMemory) {
+    this.seen.add(testId);
+    Entry entry = this.entries.get(testId);
+    if (entry == null) {
+      entry = new Entry();
+      this.entries.put(testId, entry);
+    }
+    entry.addDuration(duration);
+    entry.lastResult = result;
+    if (startupShare >= 0L) {
+      entry.startupShare = startupShare;
+    }
+    if (peakMemory >= 0L) {
+      entry.peakMemory = peakMemory;
+    }
+  }
+
+  /**
+   * Find history of a test.
+   *
+   * @param testId test identifier in format class_name#method_name
+   * @return snapshot of found entry or null
+   */
+  synchronized Entry find(final String testId) {
+    this.seen.add(testId);
+    final Entry entry = this.entries.get(testId);
+    return entry == null ? null : entry.copy();
+  }
+
+  /**
+   * Get average execution time of a test.
+   *
+   * @param testId test identifier in format class_name#method_name
+   * @return average time in milliseconds, -1 if unknown
+   */
+  synchronized long getAverageDuration(final String testId) {
+    this.seen.add(testId);
+    final Entry entry = this.entries.get(testId);
+    return entry == null ? -1L : entry.getAverageDuration();
+  }
+
+  synchronized int size() {
+    return this.entries.size();
+  }
+}
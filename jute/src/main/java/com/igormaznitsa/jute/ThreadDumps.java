@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Thread dumps of test JVMs stopped by timeout. Before destroying the JVM its
+ * threads are dumped into its standard output (SIGQUIT), the dump is cut from
+ * the console of the test, written into a file and optionally summarized as
+ * top frames of non-daemon threads.
+ *
+ * @see Utils#requestThreadDump(java.lang.Process)
+ * @since 1.1.2
+ */
+final class ThreadDumps {
+
+  /**
+   * Time in milliseconds given to JVM to print its thread dump before it is
+   * destroyed.
+   */
+  static final long DUMP_WAIT = 500L;
+
+  /**
+   * Start of thread dump printed by HotSpot JVM.
+   */
+  static final String DUMP_START = "Full thread dump";
+
+  /**
+   * Start of the last line of thread dump printed by HotSpot JVM.
+   */
+  static final String DUMP_END = "JNI global ref";
+
+  private static final String STATE_PREFIX = "java.lang.Thread.State:";
+
+  private final File folder;
+  private final int frames;
+
+  /**
+   * Constructor.
+   *
+   * @param folder folder to write thread dump files
+   * @param frames number of top frames of every non-daemon thread shown in
+   * summary, zero or less if summary is not needed
+   */
+  ThreadDumps(final File folder, final int frames) {
+    this.folder = folder;
+    this.frames = frames;
+  }
+
+  File getFolder() {
+    return this.folder;
+  }
+
+  int getFrames() {
+    return this.frames;
+  }
+
+  /**
+   * Cut the last thread dump from console text.
+   *
+   * @param text console text, can be null
+   * @return found thread dump or null
+   */
+  static String extract(final String text) {
+    if (text == null) {
+      return null;
+    }
+    final int start = text.lastIndexOf(DUMP_START);
+    if (start < 0) {
+      return null;
+    }
+    final int lineStart = text.lastIndexOf('\n', start) + 1;
+    final int end = text.indexOf(DUMP_END, start);
+    if (end < 0) {
+      return text.substring(lineStart);
+    }
+    final int eol = text.indexOf('\n', end);
+    return text.substring(lineStart, eol < 0 ? text.length() : eol + 1);
+  }
+
+  /**
+   * Make summary of thread dump, every non-daemon thread having java frames
+   * is presented by its name, state and top frames.
+   *
+   * @param dump thread dump, must not be null
+   * @param frames max number of frames for every thread
+   * @return lines of the summary
+   */
+  static List<String> summarize(final String dump, final int frames) {
+    final List<String> result = new ArrayList<String>();
+    String header = null;
+    List<String> stack = null;
+    for (final String line : dump.split("\\r?\\n")) {
+      if (line.startsWith("\"")) {
+        addThread(result, header, stack);
+        final int nameEnd = line.indexOf('"', 1);
+        header = nameEnd < 0 || line.substring(nameEnd).contains(" daemon ") ? null : line.substring(0, nameEnd + 1);
+        stack = new ArrayList<String>();
+      }
+      else if (header != null) {
+        final String trimmed = line.trim();
+        if (trimmed.startsWith(STATE_PREFIX)) {
+          header = header + ' ' + trimmed.substring(STATE_PREFIX.length()).trim();
+        }
+        else if (trimmed.startsWith("at ") && stack.size() < frames) {
+          stack.add("    " + trimmed);
+        }
+      }
+    }
+    addThread(result, header, stack);
+    return result;
+  }
+
+  private static void addThread(final List<String> result, final String header, final List<String> stack) {
+    if (header != null && !stack.isEmpty()) {
+      result.add(header);
+      result.addAll(stack);
+    }
+  }
+
+  /**
+   * Write thread dump of a test into file, old file is overwritten.
+   *
+   * @param testName name of the test
+   * @param dump thread dump
+   * @return written file
+   * @throws IOException it will be thrown if the file can't be written
+   */
+  File save(final String testName, final String dump) throws IOException {
+    final File result = new File(this.folder, testName.replaceAll("[^A-Za-z0-9_.#\\-]", "_") + ".threaddump.txt");
+    FileUtils.writeStringToFile(result, dump, "UTF-8");
+    return result;
+  }
+}
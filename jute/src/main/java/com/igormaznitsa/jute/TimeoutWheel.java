@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single timer tracking deadlines of all started test JVMs. A JVM is waited in
+ * the thread which has started it and the timer destroys the JVM if its
+ * deadline is expired, so that number of threads doesn't depend on number of
+ * concurrently executed tests. The timer also reaps JVMs which have reported
+ * result but not exited yet, such JVM is killed if it is alive after its
+ * shutdown grace period or when the timer is disposed. If thread dump wait is
+ * defined then SIGQUIT is sent to JVM with expired deadline by a separate
+ * thread, so that the timer is never blocked by external commands, and the
+ * timer destroys the JVM after the wait, so that the JVM prints its threads.
+ *
+ * @since 1.1.2
+ */
+final class TimeoutWheel {
+
+  /**
+   * Deadline of a process.
+   */
+  static final class Deadline implements Runnable {
+
+    private final Process process;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService signaller;
+    private final long threadDumpWait;
+    private final ProcessRegistry processRegistry;
+    private final AtomicBoolean fired = new AtomicBoolean();
+    private volatile boolean expired;
+    private volatile ScheduledFuture<?> future;
+
+    private Deadline(final Process process, final ScheduledExecutorService timer, final ExecutorService signaller, final long threadDumpWait, final ProcessRegistry processRegistry) {
+      this.process = process;
+      this.timer = timer;
+      this.signaller = signaller;
+      this.threadDumpWait = threadDumpWait;
+      this.processRegistry = processRegistry;
+    }
+
+    @Override
+    public void run() {
+      if (this.fired.compareAndSet(false, true)) {
+        this.expired = true;
+        if (this.threadDumpWait > 0L) {
+          try {
+            this.signaller.execute(new Runnable() {
+              @Override
+              public void run() {
+                requestThreadDump();
+              }
+            });
+          }
+          catch (RejectedExecutionException ex) {
+            // the wheel is disposed
+            destroy(this.processRegistry, this.process, false);
+          }
+        }
+        else {
+          destroy(this.processRegistry, this.process, false);
+        }
+      }
+    }
+
+    private void requestThreadDump() {
+      if (Utils.requestThreadDump(this.process)) {
+        try {
+          this.timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+              destroy(processRegistry, process, false);
+            }
+          }, this.threadDumpWait, TimeUnit.MILLISECONDS);
+          return;
+        }
+        catch (RejectedExecutionException ex) {
+          // the wheel is disposed
+        }
+      }
+      destroy(this.processRegistry, this.process, false);
+    }
+
+    /**
+     * Cancel the deadline.
+     *
+     * @return true if the deadline has been cancelled, false if it is already
+     * expired and the process has been destroyed
+     */
+    boolean cancel() {
+      if (this.fired.compareAndSet(false, true)) {
+        final ScheduledFuture<?> f = this.future;
+        if (f != null) {
+          f.cancel(false);
+        }
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Check that the deadline is expired.
+     *
+     * @return true if the process has been destroyed by timeout
+     */
+    boolean isExpired() {
+      return this.expired;
+    }
+  }
+
+  private final ScheduledThreadPoolExecutor timer;
+  private final ExecutorService signaller;
+  private final Set<Process> reaped = Collections.synchronizedSet(new HashSet<Process>());
+  private final AtomicInteger killed = new AtomicInteger();
+  private final long threadDumpWait;
+  private final ProcessRegistry processRegistry;
+
+  TimeoutWheel() {
+    this(0L, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param threadDumpWait time in milliseconds between request of thread dump
+   * and destroying of JVM with expired deadline, zero or less if thread dump
+   * is not requested
+   * @param processRegistry registry to destroy JVMs together with their
+   * descendants, can be null
+   */
+  TimeoutWheel(final long threadDumpWait, final ProcessRegistry processRegistry) {
+    this.threadDumpWait = threadDumpWait;
+    this.processRegistry = processRegistry;
+    this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread result = new Thread(r, "jute-timeout-wheel");
+        result.setDaemon(true);
+        return result;
+      }
+    });
+    this.signaller = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread result = new Thread(r, "jute-thread-dump");
+        result.setDaemon(true);
+        return result;
+      }
+    });
+  }
+
+  /**
+   * Start tracking of a process deadline.
+   *
+   * @param process started process, must not be null
+   * @param timeout timeout in milliseconds, must be positive
+   * @return deadline of the process
+   */
+  Deadline watch(final Process process, final long timeout) {
+    final Deadline result = new Deadline(process, this.timer, this.signaller, this.threadDumpWait, this.processRegistry);
+    result.future = this.timer.schedule(result, timeout, TimeUnit.MILLISECONDS);
+    return result;
+  }
+
+  long getThreadDumpWait() {
+    return this.threadDumpWait;
+  }
+
+  /**
+   * Leave process to exit by itself during grace period, the process is
+   * killed if it is alive after the period.
+   *
+   * @param process process which result is already known, must not be null
+   * @param grace grace period in milliseconds
+   */
+  void reap(final Process process, final long grace) {
+    this.reaped.add(process);
+    this.timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (reaped.remove(process)) {
+          kill(process);
+        }
+      }
+    }, grace, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Get number of processes killed after grace period.
+   *
+   * @return number of killed processes
+   */
+  int getKilled() {
+    return this.killed.get();
+  }
+
+  private void kill(final Process process) {
+    try {
+      process.exitValue();
+      return;
+    }
+    catch (IllegalThreadStateException ex) {
+      // alive
+    }
+    this.killed.incrementAndGet();
+    destroy(this.processRegistry, process, true);
+  }
+
+  private static void destroy(final ProcessRegistry processRegistry, final Process process, final boolean forcibly) {
+    if (processRegistry != null) {
+      processRegistry.destroy(process, forcibly);
+    }
+    else if (forcibly) {
+      Utils.destroyForcibly(process);
+    }
+    else {
+      process.destroy();
+    }
+  }
+
+  /**
+   * Get number of tracked deadlines.
+   *
+   * @return number of deadlines which are neither expired nor cancelled and
+   * reaped processes which grace period is not ended
+   */
+  int size() {
+    this.timer.purge();
+    return this.timer.getQueue().size();
+  }
+
+  void dispose() {
+    this.signaller.shutdown();
+    this.timer.shutdownNow();
+    final List<Process> rest;
+    synchronized (this.reaped) {
+      rest = new ArrayList<Process>(this.reaped);
+      this.reaped.clear();
+    }
+    for (final Process p : rest) {
+      kill(p);
+    }
+  }
+}
@@ -15,6 +15,9 @@
  */
 package com.igormaznitsa.jute;
 
+import com.igormaznitsa.jute.runners.RunnerProtocol;
+import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.*;
 import org.apache.commons.io.FilenameUtils;
 import org.joda.time.Duration;
@@ -66,6 +69,17 @@ public abstract class Utils {
     return TIME_FORMATTER.print(period);
   }
 
+  /**
+   * Print memory size in megabytes, rounded up.
+   *
+   * @param bytes size in bytes
+   * @return text like "320 MB"
+   * @since 1.1.2
+   */
+  public static String printMemorySize(final long bytes) {
+    return ((bytes + 1024L * 1024L - 1L) / (1024L * 1024L)) + " MB";
+  }
+
   public static int getMaxLineWidth(final List<String> str) {
     int max = 0;
     if (str != null && !str.isEmpty()) {
@@ -140,4 +154,184 @@ public abstract class Utils {
     }
     return diff;
   }
+
+  /**
+   * Split console text of a JVM which has executed several tests, by test start
+   * markers. Marker lines are removed from the text.
+   *
+   * @param text console text
+   * @return map of test names to their console text, text printed before the
+   * first marker is placed under the empty string key
+   * @see RunnerProtocol
+   */
+  public static Map<String, String> splitConsoleForTests(final String text) {
+    final Map<String, StringBuilder> sections = new LinkedHashMap<String, StringBuilder>();
+    String current = "";
+    int pos = 0;
+    while (true) {
+      final int marker = text.indexOf(RunnerProtocol.MARKER, pos);
+      final String chunk = text.substring(pos, marker < 0 ? text.length() : marker);
+      if (chunk.length() > 0 || !sections.containsKey(current)) {
+        StringBuilder buffer = sections.get(current);
+        if (buffer == null) {
+          buffer = new StringBuilder();
+          sections.put(current, buffer);
+        }
+        buffer.append(chunk);
+      }
+      if (marker < 0) {
+        break;
+      }
+      final int eol = text.indexOf('\n', marker);
+      final String markerLine = (eol < 0 ? text.substring(marker) : text.substring(marker, eol)).trim();
+      if (markerLine.startsWith(RunnerProtocol.TEST_START)) {
+        current = markerLine.substring(RunnerProtocol.TEST_START.length()).trim();
+      }
+      pos = eol < 0 ? text.length() : eol + 1;
+    }
+
+    final Map<String, String> result = new LinkedHashMap<String, String>();
+    for (final Map.Entry<String, StringBuilder> e : sections.entrySet()) {
+      result.put(e.getKey(), e.getValue().toString());
+    }
+    return result;
+  }
+
+  /**
+   * Remove lines of the runner protocol from console text.
+   *
+   * @param text console text
+   * @return the text without protocol lines
+   * @see RunnerProtocol
+   */
+  public static String removeProtocolLines(final String text) {
+    if (!text.contains(RunnerProtocol.MARKER)) {
+      return text;
+    }
+    final StringBuilder result = new StringBuilder();
+    for (final String section : splitConsoleForTests(text).values()) {
+      result.append(section);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Extract test results reported by a runner into console.
+   *
+   * @param text console text
+   * @return map of test names to arrays contain result and execution time
+   * @see RunnerProtocol
+   */
+  public static Map<String, String[]> extractTestResults(final String text) {
+    final Map<String, String[]> result = new HashMap<String, String[]>();
+    int pos = 0;
+    while (true) {
+      final int marker = text.indexOf(RunnerProtocol.TEST_RESULT, pos);
+      if (marker < 0) {
+        break;
+      }
+      final int eol = text.indexOf('\n', marker);
+      final String[] parsed = (eol < 0 ? text.substring(marker) : text.substring(marker, eol)).substring(RunnerProtocol.TEST_RESULT.length()).trim().split("\\s+");
+      if (parsed.length == 3) {
+        result.put(parsed[0], new String[]{parsed[1], parsed[2]});
+      }
+      pos = eol < 0 ? text.length() : eol + 1;
+    }
+    return result;
+  }
+
+  /**
+   * Extract names of classes which class level methods have failed, from
+   * {@link RunnerProtocol#CLASS_ERROR} markers.
+   *
+   * @param text console text
+   * @return set of class names, can be empty
+   */
+  public static Set<String> extractClassErrors(final String text) {
+    final Set<String> result = new HashSet<String>();
+    int pos = 0;
+    while (true) {
+      final int marker = text.indexOf(RunnerProtocol.CLASS_ERROR, pos);
+      if (marker < 0) {
+        break;
+      }
+      final int eol = text.indexOf('\n', marker);
+      final String className = (eol < 0 ? text.substring(marker) : text.substring(marker, eol)).substring(RunnerProtocol.CLASS_ERROR.length()).trim();
+      if (className.length() > 0) {
+        result.add(className);
+      }
+      pos = eol < 0 ? text.length() : eol + 1;
+    }
+    return result;
+  }
+
+  /**
+   * Kill process, Process#destroyForcibly is used if it is provided by the
+   * JVM (Java 8+).
+   *
+   * @param process the process to be killed
+   */
+  public static void destroyForcibly(final Process process) {
+    try {
+      Process.class.getMethod("destroyForcibly").invoke(process);
+    }
+    catch (Exception ex) {
+      process.destroy();
+    }
+  }
+
+  /**
+   * Find identifier of a process, Process#pid is used if it is provided by the
+   * JVM (Java 9+), otherwise the private pid field of UNIX process
+   * implementation is read.
+   *
+   * @param process the process
+   * @return the process identifier or -1 if it can't be found
+   */
+  public static long findPid(final Process process) {
+    try {
+      return ((Number) Process.class.getMethod("pid").invoke(process)).longValue();
+    }
+    catch (Exception ex) {
+      // Java 8-
+    }
+    try {
+      final Field field = process.getClass().getDeclaredField("pid");
+      field.setAccessible(true);
+      return ((Number) field.get(process)).longValue();
+    }
+    catch (Exception ex) {
+      return -1L;
+    }
+  }
+
+  /**
+   * Send SIGQUIT to a JVM process to make it print thread dump into its
+   * standard output. Not supported on Windows.
+   *
+   * @param process the JVM process
+   * @return true if the signal has been sent
+   */
+  public static boolean requestThreadDump(final Process process) {
+    if (System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH).startsWith("windows")) {
+      return false;
+    }
+    final long pid = findPid(process);
+    if (pid <= 0L) {
+      return false;
+    }
+    try {
+      final Process kill = new ProcessBuilder("kill", "-QUIT", Long.toString(pid)).redirectErrorStream(true).start();
+      kill.getOutputStream().close();
+      kill.getInputStream().close();
+      return kill.waitFor() == 0;
+    }
+    catch (IOException ex) {
+      return false;
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
 }
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.maven.plugin.logging.Log;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.StartedProcess;
+
+/**
+ * Pool of pre-started JVMs grouped by their command line and environment. Every
+ * JVM waits for the name of a test method, executes the test and exits, so that
+ * a test still gets its own process but JVM start is moved off the critical
+ * path. Replacements of acquired JVMs are started by a background thread, the
+ * number of idle and starting JVMs of a configuration never exceeds the
+ * configured size. If there is memory budget then every pooled JVM holds its
+ * reservation which is passed to the test executed by the JVM, idle JVMs of
+ * the least recently used configurations are destroyed one by one if a test
+ * needs memory. Output of a pooled JVM is kept in a buffer limited like
+ * console of tests until the JVM gets a test, then it is written into console
+ * buffers of the test.
+ *
+ * @since 1.1.2
+ */
+final class WarmJvmPool {
+
+  private static final Charset CONTROL_CHARSET = Charset.forName("UTF-8");
+  /**
+   * Max time in milliseconds to wait for replacement start during disposal.
+   */
+  private static final long STARTER_STOP_WAIT = 10000L;
+
+  /**
+   * Idle JVMs of configurations, the least recently acquired configuration is
+   * the first one.
+   */
+  private final Map<String, Queue<WarmJvm>> idleJvms = new LinkedHashMap<String, Queue<WarmJvm>>();
+  private final Map<String, Integer> pendingStarts = new HashMap<String, Integer>();
+  private final int jvmsPerConfiguration;
+  private final int consoleLimit;
+  private final Log log;
+  private final ProcessRegistry processRegistry;
+  private final MemoryBudget memoryBudget;
+  private final ExecutorService starter;
+  private boolean disposed;
+
+  /**
+   * Constructor.
+   *
+   * @param log the logger
+   * @param jvmsPerConfiguration number of idle JVMs kept for every
+   * configuration
+   * @param processRegistry registry of started processes
+   * @param memoryBudget memory budget to be charged by pooled JVMs, can be
+   * null
+   * @param consoleLimit number of bytes of output kept from the start and from
+   * the end of every stream of a JVM until it gets a test, non-positive value
+   * means no limit
+   */
+  WarmJvmPool(final Log log, final int jvmsPerConfiguration, final ProcessRegistry processRegistry, final MemoryBudget memoryBudget, final int consoleLimit) {
+    this.log = log;
+    this.jvmsPerConfiguration = jvmsPerConfiguration;
+    this.consoleLimit = consoleLimit;
+    this.processRegistry = processRegistry;
+    this.memoryBudget = memoryBudget;
+    this.starter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread result = new Thread(r, "jute-warm-jvm-starter");
+        result.setDaemon(true);
+        return result;
+      }
+    });
+  }
+
+  /**
+   * Get a started JVM for the configuration and start replacement ones in the
+   * background. If there is memory budget then the returned JVM holds
+   * reservation of its memory until it is released, a JVM started for the call
+   * waits for its reservation and idle JVMs are destroyed one by one, the least
+   * recently used first, until the reservation fits the budget.
+   *
+   * @param arguments command line of the JVM, including the main class
+   * @param env extra environment variables, can be null
+   * @param memory estimated memory of the JVM in bytes, used only if there is
+   * memory budget
+   * @return started JVM waiting for a test name
+   * @throws IOException it will be thrown if a process can't be started
+   * @throws InterruptedException it will be thrown if the thread is
+   * interrupted during waiting for memory
+   */
+  WarmJvm acquire(final List<String> arguments, final Properties env, final long memory) throws IOException, InterruptedException {
+    final String key = makeKey(arguments, env);
+
+    WarmJvm result = null;
+    final int toStart;
+    synchronized (this.idleJvms) {
+      if (this.disposed) {
+        throw new IllegalStateException("Pool is disposed");
+      }
+      // the configuration is moved to the end as the most recently used one
+      Queue<WarmJvm> queue = this.idleJvms.remove(key);
+      if (queue == null) {
+        queue = new LinkedList<WarmJvm>();
+      }
+      this.idleJvms.put(key, queue);
+      while (!queue.isEmpty()) {
+        final WarmJvm candidate = queue.poll();
+        if (candidate.isAlive()) {
+          result = candidate;
+          break;
+        }
+        else {
+          candidate.release();
+          this.log.debug("Dropped dead warm JVM, its output: " + candidate.getConsole());
+        }
+      }
+      final int pending = getPending(key);
+      toStart = Math.max(0, this.jvmsPerConfiguration - queue.size() - pending);
+      this.pendingStarts.put(key, pending + toStart);
+    }
+
+    for (int i = 0; i < toStart; i++) {
+      try {
+        this.starter.execute(new Runnable() {
+          @Override
+          public void run() {
+            startReplacement(key, arguments, env, memory);
+          }
+        });
+      }
+      catch (RejectedExecutionException ex) {
+        // the pool is disposed
+        synchronized (this.idleJvms) {
+          this.pendingStarts.put(key, getPending(key) - 1);
+        }
+      }
+    }
+
+    if (result == null) {
+      this.log.debug("No warm JVM, starting new one");
+      final long reservation = this.memoryBudget == null ? 0L : memory;
+      if (this.memoryBudget != null && !this.memoryBudget.tryReserve(reservation)) {
+        boolean reserved = false;
+        while (!reserved && destroyLeastRecentlyUsed()) {
+          reserved = this.memoryBudget.tryReserve(reservation);
+        }
+        if (!reserved) {
+          this.memoryBudget.reserve(reservation);
+        }
+      }
+      try {
+        result = WarmJvm.start(arguments, env, this.processRegistry, this.memoryBudget, reservation, this.consoleLimit);
+      }
+      catch (IOException ex) {
+        if (this.memoryBudget != null) {
+          this.memoryBudget.release(reservation);
+        }
+        throw ex;
+      }
+    }
+
+    return result;
+  }
+
+  private int getPending(final String key) {
+    final Integer pending = this.pendingStarts.get(key);
+    return pending == null ? 0 : pending;
+  }
+
+  private void startReplacement(final String key, final List<String> arguments, final Properties env, final long memory) {
+    WarmJvm started = null;
+    final long reservation = this.memoryBudget == null ? 0L : memory;
+    // replacement takes only free memory, so that it never delays a test
+    if (this.memoryBudget == null || this.memoryBudget.tryReserve(reservation)) {
+      try {
+        started = WarmJvm.start(arguments, env, this.processRegistry, this.memoryBudget, reservation, this.consoleLimit);
+      }
+      catch (IOException ex) {
+        this.log.debug("Can't start warm JVM : " + ex.getMessage());
+        if (this.memoryBudget != null) {
+          this.memoryBudget.release(reservation);
+        }
+      }
+    }
+    synchronized (this.idleJvms) {
+      this.pendingStarts.put(key, getPending(key) - 1);
+      if (started != null) {
+        if (this.disposed) {
+          started.destroy();
+        }
+        else {
+          this.idleJvms.get(key).add(started);
+        }
+      }
+    }
+  }
+
+  /**
+   * Destroy the oldest idle JVM of the least recently used configuration which
+   * has idle JVMs.
+   *
+   * @return true if a JVM has been destroyed, false if there is no idle JVM
+   */
+  boolean destroyLeastRecentlyUsed() {
+    synchronized (this.idleJvms) {
+      for (final Queue<WarmJvm> queue : this.idleJvms.values()) {
+        final WarmJvm jvm = queue.poll();
+        if (jvm != null) {
+          jvm.destroy();
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Get number of idle and starting JVMs of a configuration.
+   *
+   * @param arguments command line of the JVM, including the main class
+   * @param env extra environment variables, can be null
+   * @return number of JVMs
+   */
+  int size(final List<String> arguments, final Properties env) {
+    final String key = makeKey(arguments, env);
+    synchronized (this.idleJvms) {
+      final Queue<WarmJvm> queue = this.idleJvms.get(key);
+      return (queue == null ? 0 : queue.size()) + getPending(key);
+    }
+  }
+
+  /**
+   * Get number of idle JVMs of a configuration, starting JVMs are not counted.
+   *
+   * @param arguments command line of the JVM, including the main class
+   * @param env extra environment variables, can be null
+   * @return number of idle JVMs
+   */
+  int countIdle(final List<String> arguments, final Properties env) {
+    synchronized (this.idleJvms) {
+      final Queue<WarmJvm> queue = this.idleJvms.get(makeKey(arguments, env));
+      return queue == null ? 0 : queue.size();
+    }
+  }
+
+  /**
+   * Destroy all idle JVMs, the pool can't be used after the call. The call
+   * waits for the end of replacement start in progress.
+   */
+  void dispose() {
+    this.starter.shutdownNow();
+    try {
+      if (!this.starter.awaitTermination(STARTER_STOP_WAIT, TimeUnit.MILLISECONDS)) {
+        this.log.debug("Warm JVM start is not completed during pool disposal");
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this.idleJvms) {
+      this.disposed = true;
+      for (final Queue<WarmJvm> queue : this.idleJvms.values()) {
+        for (final WarmJvm jvm : queue) {
+          jvm.destroy();
+        }
+      }
+      this.idleJvms.clear();
+    }
+  }
+
+  static String makeKey(final List<String> arguments, final Properties env) {
+    final StringBuilder result = new StringBuilder();
+    for (final String s : arguments) {
+      result.append(s).append('\n');
+    }
+    if (env != null) {
+      for (final String name : new TreeSet<String>(env.stringPropertyNames())) {
+        result.append(name).append('=').append(env.getProperty(name)).append('\n');
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Started JVM waiting for a test to be executed.
+   */
+  static final class WarmJvm {
+
+    private final StartedProcess process;
+    private final ProcessRegistry processRegistry;
+    private final MemoryBudget memoryBudget;
+    private final long reservation;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private final OutputStream control;
+    private final ConsoleRedirection consoleBuffer;
+    private final ConsoleRedirection consoleErrBuffer;
+
+    private WarmJvm(final StartedProcess process, final ProcessRegistry processRegistry, final MemoryBudget memoryBudget, final long reservation, final OutputStream control, final ConsoleRedirection out, final ConsoleRedirection err) {
+      this.process = process;
+      this.processRegistry = processRegistry;
+      this.memoryBudget = memoryBudget;
+      this.reservation = reservation;
+      this.control = control;
+      this.consoleBuffer = out;
+      this.consoleErrBuffer = err;
+    }
+
+    static WarmJvm start(final List<String> arguments, final Properties env, final ProcessRegistry processRegistry, final MemoryBudget memoryBudget, final long reservation, final int consoleLimit) throws IOException {
+      final PipedInputStream processIn = new PipedInputStream(16384);
+      final PipedOutputStream control = new PipedOutputStream(processIn);
+
+      final ConsoleRedirection out = new ConsoleRedirection(consoleLimit);
+      final ConsoleRedirection err = new ConsoleRedirection(consoleLimit);
+
+      final ProcessExecutor exec = new ProcessExecutor(arguments);
+      if (env != null && !env.isEmpty()) {
+        for (final Map.Entry<Object, Object> entry : env.entrySet()) {
+          exec.environment((String) entry.getKey(), (String) entry.getValue());
+        }
+      }
+
+      final StartedProcess started = exec.redirectInput(processIn).redirectOutput(out).redirectError(err).start();
+      processRegistry.register(started.getProcess());
+      return new WarmJvm(started, processRegistry, memoryBudget, reservation, control, out, err);
+    }
+
+    boolean isAlive() {
+      return !this.process.getFuture().isDone();
+    }
+
+    /**
+     * Send the test to the JVM, the control channel is closed after the call so
+     * that the JVM can be used only once. Output written by the JVM before the
+     * call and all next output are written into the provided streams.
+     *
+     * @param runnerClass name of the runner class to execute the test
+     * @param testNames test names in format class_name#method_name
+     * @param in text to be provided to the test through System.in, can be null
+     * @param out stream to get output of the JVM
+     * @param err stream to get error output of the JVM
+     * @throws IOException it will be thrown for transport error
+     */
+    void run(final String runnerClass, final List<String> testNames, final String in, final OutputStream out, final OutputStream err) throws IOException {
+      this.consoleBuffer.redirect(out);
+      this.consoleErrBuffer.redirect(err);
+      final StringBuilder command = new StringBuilder(runnerClass);
+      for (final String name : testNames) {
+        command.append(' ').append(name);
+      }
+      command.append('\n');
+      try {
+        this.control.write(command.toString().getBytes(CONTROL_CHARSET));
+        if (in != null) {
+          this.control.write(in.getBytes(Charset.defaultCharset()));
+        }
+        this.control.flush();
+      }
+      finally {
+        this.control.close();
+      }
+    }
+
+    int waitFor(final long timeoutInMilliseconds) throws IOException, InterruptedException, TimeoutException {
+      try {
+        if (timeoutInMilliseconds > 0L) {
+          return this.process.getFuture().get(timeoutInMilliseconds, TimeUnit.MILLISECONDS).getExitValue();
+        }
+        else {
+          return this.process.getFuture().get().getExitValue();
+        }
+      }
+      catch (ExecutionException ex) {
+        throw new IOException("Error during warm JVM execution", ex.getCause());
+      }
+    }
+
+    void destroy() {
+      try {
+        this.control.close();
+      }
+      catch (IOException ex) {
+        // ignore
+      }
+      this.processRegistry.destroy(this.process.getProcess(), false);
+      release();
+    }
+
+    /**
+     * Release the JVM process in the process registry and its memory
+     * reservation, must be called when the JVM is not needed any more.
+     */
+    void release() {
+      if (this.released.compareAndSet(false, true)) {
+        this.processRegistry.release(this.process.getProcess());
+        if (this.memoryBudget != null) {
+          this.memoryBudget.release(this.reservation);
+        }
+      }
+    }
+
+    /**
+     * Request thread dump of the JVM.
+     *
+     * @return true if the JVM has been signalled to print thread dump
+     * @see Utils#requestThreadDump(java.lang.Process)
+     */
+    boolean requestThreadDump() {
+      return Utils.requestThreadDump(this.process.getProcess());
+    }
+
+    private String getConsole() {
+      return this.consoleErrBuffer.getText();
+    }
+  }
+
+  /**
+   * Stream of a pooled JVM, output is kept in a limited buffer until the JVM
+   * gets a test, then the kept output and all next output are written into the
+   * target stream.
+   */
+  private static final class ConsoleRedirection extends OutputStream {
+
+    private final ConsoleBuffer beforeTest;
+    private OutputStream target;
+
+    ConsoleRedirection(final int limit) {
+      this.beforeTest = new ConsoleBuffer(limit, null, false);
+    }
+
+    synchronized void redirect(final OutputStream target) throws IOException {
+      this.beforeTest.close();
+      if (this.beforeTest.size() > 0L) {
+        target.write(this.beforeTest.getText().getBytes(Charset.defaultCharset()));
+      }
+      this.target = target;
+    }
+
+    synchronized String getText() {
+      return this.beforeTest.getText();
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] data, final int offset, final int length) throws IOException {
+      if (this.target == null) {
+        this.beforeTest.write(data, offset, length);
+      }
+      else {
+        this.target.write(data, offset, length);
+      }
+    }
+  }
+}
@@ -46,6 +46,20 @@ abstract class AbstractRunner {
     }
   }
 
+  /**
+   * Load test class through the context class loader of the current thread, so
+   * that a test can be loaded by an isolated class loader.
+   *
+   * @param className name of the test class
+   * @return loaded and initialized class
+   * @throws ClassNotFoundException if the class is not found
+   * @since 1.1.2
+   */
+  public static Class<?> findTestClass(final String className) throws ClassNotFoundException {
+    final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    return loader == null ? Class.forName(className) : Class.forName(className, true, loader);
+  }
+
   public static boolean execBoolean(final Object obj, final String method) {
     try {
       return (Boolean) obj.getClass().getMethod(method).invoke(obj);
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.runners;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Daemon thread which periodically sends progress of the JVM to the plugin
+ * result channel, so that the plugin can detect hung tests. Every heartbeat is
+ * the line
+ * <pre>
+ * HEARTBEAT class_name#method_name cpu_time_nanoseconds active_threads
+ * </pre> where active threads are threads in RUNNABLE or TIMED_WAITING state
+ * excluding JVM system threads, daemon threads of JDK services (like
+ * Common-Cleaner of JDK 9+ which is always TIMED_WAITING) and the heartbeat
+ * thread. Heartbeats are sent
+ * only if both {@link ResultReporter#PROPERTY_PORT} and
+ * {@link ResultReporter#PROPERTY_HEARTBEAT} system properties are defined.
+ *
+ * @author Igor Maznitsa (http://www.igormaznitsa.com)
+ * @since 1.1.2
+ */
+final class Heartbeat implements Runnable {
+
+  private static final Method PROCESS_CPU_TIME;
+
+  static {
+    Method method = null;
+    try {
+      method = Class.forName("com.sun.management.OperatingSystemMXBean").getMethod("getProcessCpuTime");
+    }
+    catch (Exception ex) {
+      method = null;
+    }
+    PROCESS_CPU_TIME = method;
+  }
+
+  private final String testName;
+  private final int port;
+  private final long interval;
+  private final Thread thread;
+  private volatile boolean stopped;
+
+  private Heartbeat(final String testName, final int port, final long interval) {
+    this.testName = testName;
+    this.port = port;
+    this.interval = interval;
+    this.thread = new Thread(this, "jute-heartbeat");
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Start heartbeat thread for tests.
+   *
+   * @param testName name of the first test executed by the JVM
+   * @return started heartbeat or null if heartbeats are not required
+   */
+  static Heartbeat start(final String testName) {
+    final String port = System.getProperty(ResultReporter.PROPERTY_PORT);
+    final String interval = System.getProperty(ResultReporter.PROPERTY_HEARTBEAT);
+    if (port == null || interval == null) {
+      return null;
+    }
+    try {
+      final Heartbeat result = new Heartbeat(testName, Integer.parseInt(port.trim()), Long.parseLong(interval.trim()));
+      if (result.interval <= 0L) {
+        return null;
+      }
+      result.thread.start();
+      return result;
+    }
+    catch (NumberFormatException ex) {
+      return null;
+    }
+  }
+
+  void stop() {
+    this.stopped = true;
+    this.thread.interrupt();
+  }
+
+  @Override
+  public void run() {
+    while (!this.stopped) {
+      try {
+        Thread.sleep(this.interval);
+      }
+      catch (InterruptedException ex) {
+        break;
+      }
+      send("HEARTBEAT " + this.testName + ' ' + findCpuTime() + ' ' + countActiveThreads(this.thread) + '\n');
+    }
+  }
+
+  private void send(final String line) {
+    Socket socket = null;
+    try {
+      socket = new Socket(InetAddress.getByName("127.0.0.1"), this.port);
+      final OutputStream out = socket.getOutputStream();
+      out.write(line.getBytes("UTF-8"));
+      out.flush();
+    }
+    catch (IOException ex) {
+      // the plugin can be already stopped
+    }
+    finally {
+      if (socket != null) {
+        try {
+          socket.close();
+        }
+        catch (IOException ex) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  /**
+   * Get CPU time consumed by the JVM.
+   *
+   * @return CPU time in nanoseconds, sum of thread CPU times if process CPU
+   * time is not provided
+   */
+  static long findCpuTime() {
+    if (PROCESS_CPU_TIME != null) {
+      try {
+        return (Long) PROCESS_CPU_TIME.invoke(ManagementFactory.getOperatingSystemMXBean());
+      }
+      catch (Exception ex) {
+        // use thread times
+      }
+    }
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    long result = 0L;
+    for (final long id : threads.getAllThreadIds()) {
+      result += Math.max(0L, threads.getThreadCpuTime(id));
+    }
+    return result;
+  }
+
+  /**
+   * Count threads which can progress without notification from other
+   * threads. Threads of the system thread group are ignored, daemon threads
+   * are ignored if they are not in the thread group of the current thread
+   * (or its subgroups), because JDK starts its service threads in other
+   * subgroups of the system group.
+   *
+   * @param ignored thread to be ignored
+   * @return number of threads in RUNNABLE and TIMED_WAITING states which
+   * belong to the application
+   */
+  static int countActiveThreads(final Thread ignored) {
+    final ThreadGroup application = Thread.currentThread().getThreadGroup();
+    ThreadGroup system = application;
+    while (system.getParent() != null) {
+      system = system.getParent();
+    }
+    Thread[] threads = new Thread[system.activeCount() + 16];
+    int number;
+    while ((number = system.enumerate(threads, true)) == threads.length) {
+      threads = new Thread[threads.length * 2];
+    }
+    int result = 0;
+    for (int i = 0; i < number; i++) {
+      final Thread t = threads[i];
+      final ThreadGroup group = t.getThreadGroup();
+      if (t == ignored || group == system || group == null || (t.isDaemon() && !isInGroup(group, application))) {
+        continue;
+      }
+      final Thread.State state = t.getState();
+      if (state == Thread.State.RUNNABLE || state == Thread.State.TIMED_WAITING) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  private static boolean isInGroup(final ThreadGroup group, final ThreadGroup parent) {
+    for (ThreadGroup g = group; g != null; g = g.getParent()) {
+      if (g == parent) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.runners;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Runner for long-living worker JVMs executing tests in process. Folders
+ * provided as arguments (test and project classes) are loaded by new class
+ * loader for every test, classes from jars of the JVM class path are shared
+ * between tests. Requests are read from System.in, a request is a line
+ * 'in_length runner_class class_name#method_name' followed by in_length bytes
+ * to be provided to the test through System.in. The standard output of the
+ * worker is used only by the protocol: output of a test is sent as
+ * {@link RunnerProtocol#WORKER_OUT} and {@link RunnerProtocol#WORKER_ERR}
+ * frames during the test and the result is sent as
+ * {@link RunnerProtocol#WORKER_RESULT} line, every frame is written atomically.
+ * Between tests System.out is redirected into System.err, so that threads
+ * left by tests can't break the protocol. System properties are restored
+ * after every test.
+ * <p>
+ * If a test leaves working threads or class loaders of previous tests are not
+ * collected then the recycle flag is set in the result and the worker exits.
+ *
+ * @author Igor Maznitsa (http://www.igormaznitsa.com)
+ * @since 1.1.2
+ */
+public final class InProcessTestRunner extends AbstractRunner {
+
+  private static final Class<?>[] ALLOWED_RUNNERS = new Class<?>[]{
+    JUnitSingleTestMethodRunner.class,
+    JUteSingleTestMethodRunner.class
+  };
+
+  /**
+   * Time to wait for threads started by a test.
+   */
+  private static final long THREAD_STOP_WAIT = 200L;
+  /**
+   * Class loaders are checked for collection after every such number of tests.
+   */
+  private static final int LOADER_CHECK_PERIOD = 16;
+  /**
+   * Max number of not collected class loaders of previous tests.
+   */
+  private static final int MAX_NOT_COLLECTED_LOADERS = 8;
+  /**
+   * Max size of data in one output frame.
+   */
+  private static final int MAX_FRAME = 65536;
+  /**
+   * Size of buffers of test output.
+   */
+  private static final int OUTPUT_BUFFER = 8192;
+
+  private static final Charset PROTOCOL_CHARSET = Charset.forName("UTF-8");
+  private static final Object PROTOCOL_LOCK = new Object();
+  private static OutputStream protocol;
+  private static boolean testActive;
+
+  /**
+   * Stream sending written data as protocol frames.
+   */
+  private static final class FrameOutputStream extends OutputStream {
+
+    private final String header;
+
+    FrameOutputStream(final String header) {
+      this.header = header;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      int offset = off;
+      int rest = len;
+      while (rest > 0) {
+        final int size = Math.min(rest, MAX_FRAME);
+        sendFrame(this.header + size + '\n', b, offset, size);
+        offset += size;
+        rest -= size;
+      }
+    }
+  }
+
+  /**
+   * Class loader loading classes from isolated folders before the parent.
+   */
+  private static final class IsolatedClassLoader extends URLClassLoader {
+
+    IsolatedClassLoader(final URL[] urls, final ClassLoader parent) {
+      super(urls, parent);
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+      Class<?> result = findLoadedClass(name);
+      if (result == null && !name.startsWith("java.") && !name.startsWith(RunnerProtocol.class.getPackage().getName() + '.')) {
+        try {
+          result = findClass(name);
+        }
+        catch (ClassNotFoundException ex) {
+          result = null;
+        }
+      }
+      if (result == null) {
+        result = super.loadClass(name, false);
+      }
+      if (resolve) {
+        resolveClass(result);
+      }
+      return result;
+    }
+
+    @Override
+    public URL getResource(final String name) {
+      final URL result = findResource(name);
+      return result == null ? super.getResource(name) : result;
+    }
+  }
+
+  /**
+   * Execute tests from System.in until end of stream or empty line.
+   *
+   * @param args folders to be loaded by isolated class loaders
+   */
+  public static void main(final String... args) {
+    final URL[] isolated = new URL[args.length];
+    try {
+      for (int i = 0; i < args.length; i++) {
+        isolated[i] = new File(args[i]).toURI().toURL();
+      }
+    }
+    catch (MalformedURLException ex) {
+      ex.printStackTrace(System.err);
+      System.exit(2);
+      return;
+    }
+
+    final InputStream requests = System.in;
+    protocol = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), MAX_FRAME);
+    final PrintStream originalErr = System.err;
+    System.setOut(originalErr);
+
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        // the test has stopped the JVM, send the rest of its output
+        System.out.flush();
+        System.err.flush();
+        synchronized (PROTOCOL_LOCK) {
+          if (testActive) {
+            sendResult(RunnerProtocol.WORKER_EXIT, true);
+          }
+        }
+      }
+    }));
+
+    final List<WeakReference<ClassLoader>> previousLoaders = new ArrayList<WeakReference<ClassLoader>>();
+    int executedTests = 0;
+
+    while (true) {
+      final String command;
+      final byte[] in;
+      try {
+        command = readLine(requests);
+        if (command == null || command.trim().length() == 0) {
+          break;
+        }
+        in = new byte[Integer.parseInt(command.substring(0, command.indexOf(' ')))];
+        new DataInputStream(requests).readFully(in);
+      }
+      catch (Exception ex) {
+        ex.printStackTrace(originalErr);
+        System.exit(2);
+        return;
+      }
+
+      final String[] parts = command.trim().split("\\s+");
+      final IsolatedClassLoader loader = new IsolatedClassLoader(isolated, InProcessTestRunner.class.getClassLoader());
+      final Set<Thread> threadsBefore = new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+      final Properties properties = (Properties) System.getProperties().clone();
+
+      synchronized (PROTOCOL_LOCK) {
+        testActive = true;
+      }
+      System.setOut(new PrintStream(new BufferedOutputStream(new FrameOutputStream(RunnerProtocol.WORKER_OUT), OUTPUT_BUFFER), true));
+      System.setErr(new PrintStream(new BufferedOutputStream(new FrameOutputStream(RunnerProtocol.WORKER_ERR), OUTPUT_BUFFER), true));
+      System.setIn(new ByteArrayInputStream(in));
+      Thread.currentThread().setContextClassLoader(loader);
+
+      int exitCode;
+      try {
+        exitCode = executeTest(parts[1], Arrays.copyOfRange(parts, 2, parts.length));
+      }
+      catch (Throwable thr) {
+        thr.printStackTrace(System.err);
+        exitCode = 2;
+      }
+      finally {
+        System.out.flush();
+        System.err.flush();
+        Thread.currentThread().setContextClassLoader(InProcessTestRunner.class.getClassLoader());
+        System.setIn(requests);
+        System.setOut(originalErr);
+        System.setErr(originalErr);
+        System.setProperties(properties);
+      }
+
+      boolean recycle = hasNewThreads(threadsBefore);
+
+      closeQuietly(loader);
+      previousLoaders.add(new WeakReference<ClassLoader>(loader));
+      executedTests++;
+      if (!recycle && executedTests % LOADER_CHECK_PERIOD == 0) {
+        recycle = countNotCollected(previousLoaders) > MAX_NOT_COLLECTED_LOADERS;
+      }
+
+      synchronized (PROTOCOL_LOCK) {
+        testActive = false;
+        sendResult(Integer.toString(exitCode), recycle);
+      }
+
+      if (recycle) {
+        break;
+      }
+    }
+    System.exit(0);
+  }
+
+  private static int executeTest(final String runnerName, final String[] testNames) throws Exception {
+    for (final Class<?> r : ALLOWED_RUNNERS) {
+      if (r.getName().equals(runnerName)) {
+        return (Integer) r.getMethod("execute", String[].class).invoke(null, (Object) testNames);
+      }
+    }
+    System.err.println("Unsupported runner: " + runnerName);
+    return 999;
+  }
+
+  private static void sendResult(final String exitCode, final boolean recycle) {
+    final byte[] line = (RunnerProtocol.WORKER_RESULT + exitCode + ' ' + (recycle ? '1' : '0') + '\n').getBytes(PROTOCOL_CHARSET);
+    try {
+      synchronized (PROTOCOL_LOCK) {
+        protocol.write(line);
+        protocol.flush();
+      }
+    }
+    catch (IOException ex) {
+      // the plugin is stopped, the worker exits at the end of requests
+    }
+  }
+
+  private static void sendFrame(final String header, final byte[] data, final int offset, final int length) throws IOException {
+    final byte[] line = header.getBytes(PROTOCOL_CHARSET);
+    synchronized (PROTOCOL_LOCK) {
+      protocol.write(line);
+      protocol.write(data, offset, length);
+      protocol.flush();
+    }
+  }
+
+  private static boolean hasNewThreads(final Set<Thread> threadsBefore) {
+    final long endTime = System.currentTimeMillis() + THREAD_STOP_WAIT;
+    for (final Thread t : Thread.getAllStackTraces().keySet()) {
+      if (!threadsBefore.contains(t) && t != Thread.currentThread()) {
+        try {
+          t.join(Math.max(1L, endTime - System.currentTimeMillis()));
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return true;
+        }
+        if (t.isAlive()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static int countNotCollected(final List<WeakReference<ClassLoader>> loaders) {
+    System.gc();
+    final Iterator<WeakReference<ClassLoader>> iterator = loaders.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().get() == null) {
+        iterator.remove();
+      }
+    }
+    return loaders.size();
+  }
+
+  private static void closeQuietly(final URLClassLoader loader) {
+    // URLClassLoader is closeable since Java 7
+    if (loader instanceof Closeable) {
+      try {
+        ((Closeable) loader).close();
+      }
+      catch (IOException ex) {
+        // ignore
+      }
+    }
+  }
+
+  private static String readLine(final InputStream in) throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    while (true) {
+      final int chr = in.read();
+      if (chr < 0) {
+        if (buffer.size() == 0) {
+          return null;
+        }
+        break;
+      }
+      if (chr == '\n') {
+        break;
+      }
+      buffer.write(chr);
+    }
+    return new String(buffer.toByteArray(), "UTF-8");
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.runners;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * Listener measures phases of single test execution for {@link ResultReporter}.
+ * JUnit doesn't notify about @Before and @After methods so that they are
+ * included into the test body time, @BeforeClass and @AfterClass methods are
+ * measured as time before start and after end of the test. The class is
+ * compiled against JUnit but loaded only by
+ * {@link JUnitSingleTestMethodRunner} when JUnit is presented.
+ *
+ * @author Igor Maznitsa (http://www.igormaznitsa.com)
+ * @since 1.1.2
+ */
+final class JUnitPhaseListener extends RunListener {
+
+  private final ResultReporter reporter;
+  private long runStart = -1L;
+  private long testStart = -1L;
+  private long testEnd = -1L;
+
+  JUnitPhaseListener(final ResultReporter reporter) {
+    this.reporter = reporter;
+  }
+
+  @Override
+  public void testRunStarted(final Description description) throws Exception {
+    this.runStart = System.nanoTime();
+  }
+
+  @Override
+  public void testStarted(final Description description) throws Exception {
+    this.testStart = System.nanoTime();
+    if (this.runStart >= 0L) {
+      this.reporter.phase(ResultReporter.PHASE_BEFORE_CLASS, this.testStart - this.runStart);
+    }
+  }
+
+  @Override
+  public void testFinished(final Description description) throws Exception {
+    this.testEnd = System.nanoTime();
+    if (this.testStart >= 0L) {
+      this.reporter.phase(ResultReporter.PHASE_BODY, this.testEnd - this.testStart);
+    }
+  }
+
+  @Override
+  public void testRunFinished(final Result result) throws Exception {
+    if (this.testEnd >= 0L) {
+      this.reporter.phase(ResultReporter.PHASE_AFTER_CLASS, System.nanoTime() - this.testEnd);
+    }
+  }
+
+  @Override
+  public void testFailure(final Failure failure) throws Exception {
+    this.reporter.error(failure.getException());
+  }
+
+  @Override
+  public void testAssumptionFailure(final Failure failure) {
+    this.reporter.assumption(failure.getException());
+  }
+}
@@ -16,6 +16,7 @@
 package com.igormaznitsa.jute.runners;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Comparator;
 
 /**
  * Runner to start single test method with JUnit.
@@ -24,13 +25,49 @@ import java.lang.reflect.InvocationTargetException;
  */
 public final class JUnitSingleTestMethodRunner extends AbstractRunner {
 
+  /**
+   * The minimal JUnit version which allows to execute several tests in the same
+   * JVM.
+   *
+   * @since 1.1.2
+   */
+  public static final String MIN_TEST_LIST_JUNIT_VERSION = "4.6";
+
   /**
    * Execute method provided as the first argument in format
-   * class_name#method_name
+   * class_name#method_name and exit with the result code.
    *
    * @param args command line arguments
+   * @see #execute(java.lang.String...)
    */
   public static void main(final String... args) {
+    ResultReporter.markJvmReady();
+    System.exit(execute(args));
+  }
+
+  /**
+   * Execute method provided as the first argument in format
+   * class_name#method_name. If there are several arguments then all of them
+   * are executed one by one and results are reported through
+   * {@link RunnerProtocol} markers.
+   *
+   * @param args test names
+   * @return exit code, 0 if all tests are successful
+   * @since 1.1.2
+   */
+  public static int execute(final String... args) {
+    final Heartbeat heartbeat = args == null || args.length == 0 ? null : Heartbeat.start(args[0]);
+    try {
+      return executeTests(args);
+    }
+    finally {
+      if (heartbeat != null) {
+        heartbeat.stop();
+      }
+    }
+  }
+
+  private static int executeTests(final String... args) {
     final Class<?> CLASS_JUNIT_REQUEST = findClass("org.junit.runner.Request");
     final Class<?> CLASS_JUNIT_CORE = findClass("org.junit.runner.JUnitCore");
     final Class<?> CLASS_JUNIT_RESULT = findClass("org.junit.runner.Result");
@@ -38,20 +75,40 @@ public final class JUnitSingleTestMethodRunner extends AbstractRunner {
 
     if (CLASS_JUNIT_CORE == null || CLASS_JUNIT_FAILURE == null || CLASS_JUNIT_REQUEST == null || CLASS_JUNIT_RESULT == null) {
       System.err.println("Can't find needed JUnit classes, either JUnit is not provided or incompatible version!");
-      System.exit(1);
+      return 1;
     }
 
     if (args == null || args.length == 0) {
       System.err.println("No provided test method name");
-      System.exit(999);
+      return 999;
     }
+
+    if (args.length > 1) {
+      if (!isTestListSupported(CLASS_JUNIT_REQUEST)) {
+        System.err.println("Execution of several tests in the same JVM needs JUnit " + MIN_TEST_LIST_JUNIT_VERSION + "+");
+        return 1;
+      }
+      return JUnitTestListRunner.execute(args) ? 0 : 1;
+    }
+
+    final ResultReporter reporter = ResultReporter.isActive() ? new ResultReporter(args[0]) : null;
     Object result = null;
     try {
       final String[] classAndMethod = args[0].split("#");
-      final Object requestObject = CLASS_JUNIT_REQUEST.getMethod("method", Class.class, String.class).invoke(null, Class.forName(classAndMethod[0]), classAndMethod[1]);
-      result = CLASS_JUNIT_CORE.getMethod("run", CLASS_JUNIT_REQUEST).invoke(CLASS_JUNIT_CORE.newInstance(), requestObject);
+      final Object requestObject = CLASS_JUNIT_REQUEST.getMethod("method", Class.class, String.class).invoke(null, findTestClass(classAndMethod[0]), classAndMethod[1]);
+      final Object core = CLASS_JUNIT_CORE.newInstance();
+      if (reporter != null) {
+        final Class<?> listenerClass = findClass("org.junit.runner.notification.RunListener");
+        if (listenerClass != null) {
+          CLASS_JUNIT_CORE.getMethod("addListener", listenerClass).invoke(core, new JUnitPhaseListener(reporter));
+        }
+      }
+      result = CLASS_JUNIT_CORE.getMethod("run", CLASS_JUNIT_REQUEST).invoke(core, requestObject);
     }
     catch (Throwable thr) {
+      if (reporter != null) {
+        reporter.error(thr instanceof InvocationTargetException && thr.getCause() != null ? thr.getCause() : thr);
+      }
       thr.printStackTrace();
       if (thr instanceof InvocationTargetException) {
         final Throwable cause = thr.getCause();
@@ -67,18 +124,37 @@ public final class JUnitSingleTestMethodRunner extends AbstractRunner {
       }
     }
 
+    if (reporter != null) {
+      reporter.send();
+    }
+
     if (result == null) {
-      System.exit(2);
+      return 2;
     }
     else if (execBoolean(result, "wasSuccessful")) {
-      System.exit(0);
+      return 0;
     }
     else {
       for (final Object f : execList(result, "getFailures")) {
         System.err.println(execString(f, "getMessage"));
         System.err.println(execString(f, "getTrace"));
       }
-      System.exit(1);
+      return 1;
+    }
+  }
+
+  private static boolean isTestListSupported(final Class<?> requestClass) {
+    final Class<?> descriptionClass = findClass("org.junit.runner.Description");
+    if (descriptionClass == null) {
+      return false;
+    }
+    try {
+      descriptionClass.getMethod("getMethodName");
+      requestClass.getMethod("sortWith", Comparator.class);
+      return true;
+    }
+    catch (NoSuchMethodException ex) {
+      return false;
     }
   }
 }
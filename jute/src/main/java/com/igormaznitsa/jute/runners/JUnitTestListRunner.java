@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.runners;
+
+import java.util.*;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * Executes several test methods in the same JVM with JUnit. The class is
+ * compiled against JUnit but loaded only by {@link JUnitSingleTestMethodRunner}
+ * when there are several test methods to execute, so that JUnit is not needed
+ * for other runners.
+ *
+ * @author Igor Maznitsa (http://www.igormaznitsa.com)
+ * @since 1.1.2
+ */
+final class JUnitTestListRunner {
+
+  private JUnitTestListRunner() {
+  }
+
+  /**
+   * Execute tests, every test in format class_name#method_name, methods of the
+   * same class must be placed one by one.
+   *
+   * @param tests tests to be executed
+   * @return true if all tests are successful, false otherwise
+   */
+  static boolean execute(final String[] tests) {
+    boolean noerrors = true;
+    int index = 0;
+    while (index < tests.length) {
+      final String className = tests[index].split("#")[0];
+      final List<String> methods = new ArrayList<String>();
+      while (index < tests.length && tests[index].split("#")[0].equals(className)) {
+        methods.add(tests[index].split("#")[1]);
+        index++;
+      }
+      if (!executeClassMethods(className, methods)) {
+        noerrors = false;
+      }
+    }
+    return noerrors;
+  }
+
+  private static boolean executeClassMethods(final String className, final List<String> methods) {
+    final Class<?> klazz;
+    try {
+      klazz = AbstractRunner.findTestClass(className);
+    }
+    catch (Throwable thr) {
+      thr.printStackTrace(System.err);
+      return false;
+    }
+
+    final Set<String> reported = new HashSet<String>();
+    final Set<String> failed = new HashSet<String>();
+    final boolean[] classFailure = new boolean[1];
+
+    final Request request = Request.aClass(klazz).filterWith(new Filter() {
+      @Override
+      public boolean shouldRun(final Description description) {
+        if (description.isTest()) {
+          return methods.contains(description.getMethodName());
+        }
+        for (final Description child : description.getChildren()) {
+          if (shouldRun(child)) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      @Override
+      public String describe() {
+        return "Methods " + methods;
+      }
+    }).sortWith(new Comparator<Description>() {
+      @Override
+      public int compare(final Description o1, final Description o2) {
+        final int index1 = methods.indexOf(o1.getMethodName());
+        final int index2 = methods.indexOf(o2.getMethodName());
+        return index1 < index2 ? -1 : (index1 == index2 ? 0 : 1);
+      }
+    });
+
+    final JUnitCore core = new JUnitCore();
+    core.addListener(new RunListener() {
+      private long startTime;
+
+      @Override
+      public void testStarted(final Description description) throws Exception {
+        RunnerProtocol.markTestStart(className + '#' + description.getMethodName());
+        this.startTime = System.currentTimeMillis();
+      }
+
+      @Override
+      public void testFinished(final Description description) throws Exception {
+        // result is reported at once, so that it is not lost if a next test stops the JVM
+        final String methodName = description.getMethodName();
+        reported.add(methodName);
+        RunnerProtocol.reportResult(className + '#' + methodName, !failed.contains(methodName), System.currentTimeMillis() - this.startTime);
+      }
+
+      @Override
+      public void testFailure(final Failure failure) throws Exception {
+        final String methodName = failure.getDescription().getMethodName();
+        if (methodName == null) {
+          classFailure[0] = true;
+        }
+        else {
+          failed.add(methodName);
+        }
+        System.err.println(failure.getMessage());
+        System.err.println(failure.getTrace());
+      }
+    });
+
+    try {
+      core.run(request);
+    }
+    catch (Throwable thr) {
+      thr.printStackTrace(System.err);
+      classFailure[0] = true;
+    }
+
+    boolean noerrors = failed.isEmpty() && !classFailure[0];
+    for (final String method : methods) {
+      if (!reported.contains(method)) {
+        // not executed, for instance because of BeforeClass failure
+        RunnerProtocol.reportResult(className + '#' + method, false, 0L);
+        noerrors = false;
+      }
+    }
+    if (classFailure[0] && !reported.isEmpty()) {
+      RunnerProtocol.reportClassError(className);
+    }
+    return noerrors;
+  }
+}
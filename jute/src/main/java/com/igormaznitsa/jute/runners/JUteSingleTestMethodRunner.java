@@ -29,11 +29,39 @@ public final class JUteSingleTestMethodRunner extends AbstractRunner {
 
   /**
    * Execute method provided as the first argument in format
-   * class_name#method_name
+   * class_name#method_name and exit with the result code.
    *
    * @param args command line arguments
+   * @see #execute(java.lang.String...)
    */
   public static void main(final String... args) {
+    ResultReporter.markJvmReady();
+    System.exit(execute(args));
+  }
+
+  /**
+   * Execute method provided as the first argument in format
+   * class_name#method_name. If there are several arguments then all of them
+   * are executed one by one and results are reported through
+   * {@link RunnerProtocol} markers.
+   *
+   * @param args test names
+   * @return exit code, 0 if all tests are successful
+   * @since 1.1.2
+   */
+  public static int execute(final String... args) {
+    final Heartbeat heartbeat = args == null || args.length == 0 ? null : Heartbeat.start(args[0]);
+    try {
+      return executeTests(args);
+    }
+    finally {
+      if (heartbeat != null) {
+        heartbeat.stop();
+      }
+    }
+  }
+
+  private static int executeTests(final String... args) {
     final Class<? extends Annotation> CLASS_JUNIT_AFTER = findAnnotationClass("org.junit.After");
     final Class<? extends Annotation> CLASS_JUNIT_AFTER_CLASS = findAnnotationClass("org.junit.AfterClass");
     final Class<? extends Annotation> CLASS_JUNIT_BEFORE = findAnnotationClass("org.junit.Before");
@@ -41,12 +69,16 @@ public final class JUteSingleTestMethodRunner extends AbstractRunner {
 
     if (args == null || args.length == 0) {
       System.err.println("No provided test method name");
-      System.exit(999);
+      return 999;
+    }
+
+    if (args.length > 1) {
+      return executeTestList(args, CLASS_JUNIT_BEFORE_CLASS, CLASS_JUNIT_AFTER_CLASS, CLASS_JUNIT_BEFORE, CLASS_JUNIT_AFTER) ? 0 : 1;
     }
 
     try {
       final String[] classAndMethod = args[0].split("#");
-      final Class theKlazz = Class.forName(classAndMethod[0]);
+      final Class theKlazz = findTestClass(classAndMethod[0]);
 
       final Method testMethod = theKlazz.getMethod(classAndMethod[1]);
       final Object theKlazzInstance = theKlazz.newInstance();
@@ -56,49 +88,156 @@ public final class JUteSingleTestMethodRunner extends AbstractRunner {
       final List<Method> beforeTest = collectMethodsForFlagAnnotation(theKlazz, false, CLASS_JUNIT_BEFORE);
       final List<Method> afterTest = collectMethodsForFlagAnnotation(theKlazz, false, CLASS_JUNIT_AFTER);
 
+      final ResultReporter reporter = new ResultReporter(args[0]);
       boolean error = false;
-      if (!executeMethodList(null, beforeClass, true)) {
+      long start = System.nanoTime();
+      if (!executeMethodList(null, beforeClass, true, reporter)) {
         error = true;
       }
+      reporter.phase(ResultReporter.PHASE_BEFORE_CLASS, System.nanoTime() - start);
       try {
         if (!error) {
           try {
-            if (executeMethodList(theKlazzInstance, beforeTest, true)) {
-              testMethod.invoke(theKlazzInstance);
+            start = System.nanoTime();
+            final boolean before = executeMethodList(theKlazzInstance, beforeTest, true, reporter);
+            reporter.phase(ResultReporter.PHASE_BEFORE, System.nanoTime() - start);
+            if (before) {
+              start = System.nanoTime();
+              try {
+                testMethod.invoke(theKlazzInstance);
+              }
+              catch (InvocationTargetException ex) {
+                error = true;
+                final Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                cause.printStackTrace();
+                reporter.error(cause);
+              }
+              finally {
+                reporter.phase(ResultReporter.PHASE_BODY, System.nanoTime() - start);
+              }
             }
             else {
               error = true;
             }
           }
           finally {
-            if (!executeMethodList(theKlazzInstance, afterTest, false)) {
+            start = System.nanoTime();
+            if (!executeMethodList(theKlazzInstance, afterTest, false, reporter)) {
               error = true;
             }
+            reporter.phase(ResultReporter.PHASE_AFTER, System.nanoTime() - start);
           }
         }
       }
       finally {
-        if (!executeMethodList(null, afterClass, false) || error) {
-          System.exit(1);
+        start = System.nanoTime();
+        if (!executeMethodList(null, afterClass, false, reporter)) {
+          error = true;
         }
+        reporter.phase(ResultReporter.PHASE_AFTER_CLASS, System.nanoTime() - start);
+        reporter.send();
       }
 
-      System.exit(0);
+      return error ? 1 : 0;
     }
     catch (Throwable thr) {
       if (thr instanceof InvocationTargetException) {
         if (thr.getCause() != null) {
           thr.getCause().printStackTrace();
-          System.exit(1);
+          return 1;
         }
       }
 
       thr.printStackTrace(System.err);
-      System.exit(1);
+      return 1;
     }
   }
 
-  private static boolean executeMethodList(final Object instance, final List<Method> methods, final boolean breakForError) {
+  private static boolean executeTestList(final String[] tests, final Class<? extends Annotation> beforeClassAnno, final Class<? extends Annotation> afterClassAnno, final Class<? extends Annotation> beforeAnno, final Class<? extends Annotation> afterAnno) {
+    boolean noerrors = true;
+    int index = 0;
+    while (index < tests.length) {
+      final String className = tests[index].split("#")[0];
+      final List<String> methods = new ArrayList<String>();
+      while (index < tests.length && tests[index].split("#")[0].equals(className)) {
+        methods.add(tests[index].split("#")[1]);
+        index++;
+      }
+      if (!executeClassMethods(className, methods, beforeClassAnno, afterClassAnno, beforeAnno, afterAnno)) {
+        noerrors = false;
+      }
+    }
+    return noerrors;
+  }
+
+  private static boolean executeClassMethods(final String className, final List<String> methods, final Class<? extends Annotation> beforeClassAnno, final Class<? extends Annotation> afterClassAnno, final Class<? extends Annotation> beforeAnno, final Class<? extends Annotation> afterAnno) {
+    final Class theKlazz;
+    try {
+      theKlazz = findTestClass(className);
+    }
+    catch (Throwable thr) {
+      thr.printStackTrace(System.err);
+      return false;
+    }
+
+    final List<Method> beforeClass = collectMethodsForFlagAnnotation(theKlazz, true, beforeClassAnno);
+    final List<Method> afterClass = collectMethodsForFlagAnnotation(theKlazz, true, afterClassAnno);
+    final List<Method> beforeTest = collectMethodsForFlagAnnotation(theKlazz, false, beforeAnno);
+    final List<Method> afterTest = collectMethodsForFlagAnnotation(theKlazz, false, afterAnno);
+
+    final boolean classError = !executeMethodList(null, beforeClass, true, null);
+    boolean noerrors = !classError;
+    try {
+      for (final String method : methods) {
+        RunnerProtocol.markTestStart(className + '#' + method);
+        final long start = System.currentTimeMillis();
+        final boolean ok = !classError && executeTestMethod(theKlazz, method, beforeTest, afterTest);
+        // result is reported at once, so that it is not lost if a next test stops the JVM
+        RunnerProtocol.reportResult(className + '#' + method, ok, System.currentTimeMillis() - start);
+        noerrors &= ok;
+      }
+    }
+    finally {
+      if (!executeMethodList(null, afterClass, false, null)) {
+        noerrors = false;
+        RunnerProtocol.reportClassError(className);
+      }
+    }
+    return noerrors;
+  }
+
+  private static boolean executeTestMethod(final Class klazz, final String methodName, final List<Method> beforeTest, final List<Method> afterTest) {
+    boolean noerrors = true;
+    try {
+      final Method testMethod = klazz.getMethod(methodName);
+      final Object instance = klazz.newInstance();
+      try {
+        if (executeMethodList(instance, beforeTest, true, null)) {
+          testMethod.invoke(instance);
+        }
+        else {
+          noerrors = false;
+        }
+      }
+      finally {
+        if (!executeMethodList(instance, afterTest, false, null)) {
+          noerrors = false;
+        }
+      }
+    }
+    catch (Throwable thr) {
+      noerrors = false;
+      if (thr instanceof InvocationTargetException && thr.getCause() != null) {
+        thr.getCause().printStackTrace(System.err);
+      }
+      else {
+        thr.printStackTrace(System.err);
+      }
+    }
+    return noerrors;
+  }
+
+  private static boolean executeMethodList(final Object instance, final List<Method> methods, final boolean breakForError, final ResultReporter reporter) {
     boolean noerrors = true;
     for (final Method m : methods) {
       try {
@@ -107,6 +246,9 @@ public final class JUteSingleTestMethodRunner extends AbstractRunner {
       catch (Throwable thr) {
         noerrors = false;
         thr.printStackTrace(System.err);
+        if (reporter != null) {
+          reporter.error(thr instanceof InvocationTargetException && thr.getCause() != null ? thr.getCause() : thr);
+        }
         if (breakForError) {
           break;
         }
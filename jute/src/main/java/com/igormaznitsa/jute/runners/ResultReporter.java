@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.runners;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reporter of structured test result to the plugin through loopback socket
+ * which port is provided by the {@link #PROPERTY_PORT} system property. The
+ * report is line-delimited text in UTF-8:
+ * <pre>
+ * TEST class_name#method_name
+ * OUTCOME OK|FAILURE|ERROR|ASSUMPTION
+ * EXCEPTION class_name message (optional)
+ * PHASE phase_name nanoseconds (for every measured phase)
+ * MEMORY peak_heap_bytes
+ * END
+ * </pre> The plugin answers by ACK line when the report is stored, so the
+ * report is never lost if the JVM is ended just after sending. The
+ * {@link RunnerProtocol#TEST_END} marker is printed into console before
+ * sending. Nothing is sent if the property is not defined.
+ *
+ * @author Igor Maznitsa (http://www.igormaznitsa.com)
+ * @since 1.1.2
+ */
+public final class ResultReporter {
+
+  /**
+   * System property contains port of the plugin result channel.
+   */
+  public static final String PROPERTY_PORT = "jute.result.port";
+  /**
+   * System property contains interval of heartbeats in milliseconds.
+   *
+   * @see Heartbeat
+   */
+  public static final String PROPERTY_HEARTBEAT = "jute.heartbeat";
+
+  public static final String OUTCOME_OK = "OK";
+  public static final String OUTCOME_FAILURE = "FAILURE";
+  public static final String OUTCOME_ERROR = "ERROR";
+  public static final String OUTCOME_ASSUMPTION = "ASSUMPTION";
+
+  /**
+   * Time from the JVM start to the runner start, measured only if the runner
+   * is started as the main class.
+   */
+  public static final String PHASE_JVM_READY = "JVM_READY";
+  public static final String PHASE_BEFORE_CLASS = "BEFORE_CLASS";
+  public static final String PHASE_BEFORE = "BEFORE";
+  public static final String PHASE_BODY = "BODY";
+  public static final String PHASE_AFTER = "AFTER";
+  public static final String PHASE_AFTER_CLASS = "AFTER_CLASS";
+
+  /**
+   * Timeout of the plugin answer in milliseconds.
+   */
+  private static final int ANSWER_TIMEOUT = 5000;
+  private static final int MAX_MESSAGE_LENGTH = 512;
+
+  private static volatile long jvmReady = -1L;
+
+  private final String testName;
+  private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+  private String outcome = OUTCOME_OK;
+  private Throwable error;
+
+  public ResultReporter(final String testName) {
+    this.testName = testName;
+    final long ready = jvmReady;
+    jvmReady = -1L;
+    if (ready >= 0L) {
+      this.phases.put(PHASE_JVM_READY, ready);
+    }
+  }
+
+  /**
+   * Check that the result channel is provided.
+   *
+   * @return true if reports are sent
+   */
+  public static boolean isActive() {
+    return System.getProperty(PROPERTY_PORT) != null;
+  }
+
+  /**
+   * Remember time from the JVM start, it is added to the next report. Must be
+   * called at the start of main method of a runner.
+   */
+  public static void markJvmReady() {
+    try {
+      jvmReady = Math.max(0L, System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime()) * 1000000L;
+    }
+    catch (Throwable thr) {
+      jvmReady = -1L;
+    }
+  }
+
+  /**
+   * Add duration of a phase, durations of the same phase are summed.
+   *
+   * @param phase name of the phase
+   * @param nanoseconds duration in nanoseconds
+   */
+  public void phase(final String phase, final long nanoseconds) {
+    final Long prev = this.phases.get(phase);
+    this.phases.put(phase, prev == null ? nanoseconds : prev + nanoseconds);
+  }
+
+  /**
+   * Register error of the test, only the first error is reported.
+   *
+   * @param thr the error
+   */
+  public void error(final Throwable thr) {
+    if (this.error != null || thr == null) {
+      return;
+    }
+    this.error = thr;
+    this.outcome = classify(thr);
+  }
+
+  /**
+   * Register assumption failure, the test is interpreted as skipped.
+   *
+   * @param thr the assumption error
+   */
+  public void assumption(final Throwable thr) {
+    if (this.error == null) {
+      this.error = thr;
+      this.outcome = OUTCOME_ASSUMPTION;
+    }
+  }
+
+  /**
+   * Get outcome for an error.
+   *
+   * @param thr the error
+   * @return ASSUMPTION for assumption violation, FAILURE for assertion error,
+   * ERROR for other errors
+   */
+  public static String classify(final Throwable thr) {
+    for (Class<?> c = thr.getClass(); c != null; c = c.getSuperclass()) {
+      if (c.getName().endsWith("AssumptionViolatedException")) {
+        return OUTCOME_ASSUMPTION;
+      }
+    }
+    return thr instanceof AssertionError ? OUTCOME_FAILURE : OUTCOME_ERROR;
+  }
+
+  String getOutcome() {
+    return this.outcome;
+  }
+
+  Map<String, Long> getPhases() {
+    return this.phases;
+  }
+
+  /**
+   * Make text of the report.
+   *
+   * @return report lines
+   */
+  String makeReport() {
+    final StringBuilder result = new StringBuilder();
+    result.append("TEST ").append(this.testName).append('\n');
+    result.append("OUTCOME ").append(this.outcome).append('\n');
+    if (this.error != null) {
+      String message = this.error.getMessage() == null ? "" : this.error.getMessage().replace('\r', ' ').replace('\n', ' ');
+      if (message.length() > MAX_MESSAGE_LENGTH) {
+        message = message.substring(0, MAX_MESSAGE_LENGTH);
+      }
+      result.append("EXCEPTION ").append(this.error.getClass().getName()).append(' ').append(message).append('\n');
+    }
+    for (final Map.Entry<String, Long> e : this.phases.entrySet()) {
+      result.append("PHASE ").append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+    }
+    final long memory = findPeakHeap();
+    if (memory >= 0L) {
+      result.append("MEMORY ").append(memory).append('\n');
+    }
+    result.append("END\n");
+    return result.toString();
+  }
+
+  private static long findPeakHeap() {
+    try {
+      long result = 0L;
+      for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+          result += pool.getPeakUsage().getUsed();
+        }
+      }
+      return result;
+    }
+    catch (Throwable thr) {
+      return -1L;
+    }
+  }
+
+  /**
+   * Send the report to the plugin and wait for its answer. Errors are ignored
+   * because the plugin still gets the result through the exit code.
+   */
+  public void send() {
+    final String port = System.getProperty(PROPERTY_PORT);
+    if (port == null) {
+      return;
+    }
+    RunnerProtocol.markTestEnd(this.testName);
+    Socket socket = null;
+    try {
+      socket = new Socket(InetAddress.getByName("127.0.0.1"), Integer.parseInt(port.trim()));
+      socket.setSoTimeout(ANSWER_TIMEOUT);
+      final Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+      writer.write(makeReport());
+      writer.flush();
+      new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")).readLine();
+    }
+    catch (Exception ex) {
+      // the result is still provided by exit code
+    }
+    finally {
+      if (socket != null) {
+        try {
+          socket.close();
+        }
+        catch (IOException ex) {
+          // ignore
+        }
+      }
+    }
+  }
+}
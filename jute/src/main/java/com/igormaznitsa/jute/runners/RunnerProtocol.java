@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.runners;
+
+/**
+ * Markers printed by runners into console streams when several test methods are
+ * executed in the same JVM, they allow the plugin to split console output and
+ * to get result for every test method.
+ *
+ * @author Igor Maznitsa (http://www.igormaznitsa.com)
+ * @since 1.1.2
+ */
+public final class RunnerProtocol {
+
+  /**
+   * Prefix of every marker, a marker takes the rest of the line and it can
+   * start in the middle of a line if the test has not finished its output by
+   * line separator.
+   */
+  public static final String MARKER = "##JUTE##";
+  /**
+   * Marker of test method start, followed by class_name#method_name. Printed
+   * both into System.out and System.err.
+   */
+  public static final String TEST_START = MARKER + "START ";
+  /**
+   * Marker of test method result, followed by class_name#method_name, result
+   * (OK or ERROR) and execution time in milliseconds separated by spaces.
+   * Printed into System.out.
+   */
+  public static final String TEST_RESULT = MARKER + "RESULT ";
+  /**
+   * Marker of failure of class level methods (like AfterClass) which has
+   * happened after results of test methods of the class have been reported,
+   * followed by class_name. Printed into System.out.
+   *
+   * @since 1.1.2
+   */
+  public static final String CLASS_ERROR = MARKER + "CLASS-ERROR ";
+  /**
+   * Marker of test lifecycle end, followed by class_name#method_name. Printed
+   * both into System.out and System.err before the result is sent through
+   * result channel, so that the plugin can check that console of the test is
+   * completely read without waiting for the JVM exit.
+   *
+   * @see ResultReporter
+   */
+  public static final String TEST_END = MARKER + "END ";
+  /**
+   * Header of test result sent by in-process worker, followed by exit code
+   * (or EXIT if the test has stopped the worker JVM) and recycle flag (1 or 0)
+   * separated by space. Output of the test is sent before the result by
+   * {@link #WORKER_OUT} and {@link #WORKER_ERR} frames.
+   *
+   * @since 1.1.2
+   */
+  public static final String WORKER_RESULT = MARKER + "WORKER ";
+  /**
+   * Header of frame of System.out data sent by in-process worker, followed by
+   * length of the data. The data follow the header line.
+   *
+   * @since 1.1.2
+   */
+  public static final String WORKER_OUT = MARKER + "WORKER-OUT ";
+  /**
+   * Header of frame of System.err data sent by in-process worker, followed by
+   * length of the data. The data follow the header line.
+   *
+   * @since 1.1.2
+   */
+  public static final String WORKER_ERR = MARKER + "WORKER-ERR ";
+  /**
+   * Exit code value in worker result if the test has stopped the worker JVM.
+   *
+   * @since 1.1.2
+   */
+  public static final String WORKER_EXIT = "EXIT";
+
+  public static final String RESULT_OK = "OK";
+  public static final String RESULT_ERROR = "ERROR";
+
+  private RunnerProtocol() {
+  }
+
+  public static void markTestStart(final String testName) {
+    System.out.println(TEST_START + testName);
+    System.out.flush();
+    System.err.println(TEST_START + testName);
+    System.err.flush();
+  }
+
+  public static void markTestEnd(final String testName) {
+    System.out.println(TEST_END + testName);
+    System.out.flush();
+    System.err.println(TEST_END + testName);
+    System.err.flush();
+  }
+
+  public static void reportResult(final String testName, final boolean ok, final long timeInMilliseconds) {
+    System.out.println(TEST_RESULT + testName + ' ' + (ok ? RESULT_OK : RESULT_ERROR) + ' ' + timeInMilliseconds);
+    System.out.flush();
+  }
+
+  /**
+   * Report failure of class level methods of a class.
+   *
+   * @param className name of the class
+   * @since 1.1.2
+   */
+  public static void reportClassError(final String className) {
+    System.out.println(CLASS_ERROR + className);
+    System.out.flush();
+  }
+}
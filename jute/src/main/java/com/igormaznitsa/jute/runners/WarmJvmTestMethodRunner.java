@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.runners;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Runner for pre-started JVMs. It loads common classes and waits for the first
+ * line from System.in in format 'runner_class_name class_name#method_name',
+ * after that it passes the test to the runner. Several tests can be provided
+ * separated by spaces. All data after the line is left in System.in for the
+ * test.
+ *
+ * @author Igor Maznitsa (http://www.igormaznitsa.com)
+ * @since 1.1.2
+ */
+public final class WarmJvmTestMethodRunner extends AbstractRunner {
+
+  private static final String[] PRELOADED_CLASSES = new String[]{
+    "org.junit.runner.JUnitCore",
+    "org.junit.runner.Request",
+    "org.junit.runner.Result",
+    "org.junit.runner.notification.Failure",
+    "org.junit.Before",
+    "org.junit.After",
+    "org.junit.BeforeClass",
+    "org.junit.AfterClass"
+  };
+
+  private static final Class<?>[] ALLOWED_RUNNERS = new Class<?>[]{
+    JUnitSingleTestMethodRunner.class,
+    JUteSingleTestMethodRunner.class
+  };
+
+  /**
+   * Wait for a test on System.in and execute it.
+   *
+   * @param args command line arguments, not used
+   */
+  public static void main(final String... args) {
+    for (final String className : PRELOADED_CLASSES) {
+      findClass(className);
+    }
+
+    final String command;
+    try {
+      command = readLine(System.in);
+    }
+    catch (IOException ex) {
+      ex.printStackTrace(System.err);
+      System.exit(2);
+      return;
+    }
+
+    if (command == null || command.trim().length() == 0) {
+      // the pool has been closed
+      System.exit(0);
+      return;
+    }
+
+    final int separator = command.indexOf(' ');
+    if (separator < 0) {
+      System.err.println("Unexpected command: " + command);
+      System.exit(999);
+      return;
+    }
+
+    final String runnerName = command.substring(0, separator);
+    final String[] testNames = command.substring(separator + 1).trim().split("\\s+");
+
+    Class<?> runner = null;
+    for (final Class<?> r : ALLOWED_RUNNERS) {
+      if (r.getName().equals(runnerName)) {
+        runner = r;
+        break;
+      }
+    }
+
+    if (runner == null) {
+      System.err.println("Unsupported runner: " + runnerName);
+      System.exit(999);
+      return;
+    }
+
+    try {
+      runner.getMethod("main", String[].class).invoke(null, (Object) testNames);
+    }
+    catch (Throwable thr) {
+      thr.printStackTrace(System.err);
+      System.exit(2);
+    }
+  }
+
+  private static String readLine(final InputStream in) throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    while (true) {
+      final int chr = in.read();
+      if (chr < 0) {
+        if (buffer.size() == 0) {
+          return null;
+        }
+        break;
+      }
+      if (chr == '\n') {
+        break;
+      }
+      buffer.write(chr);
+    }
+    return new String(buffer.toByteArray(), "UTF-8");
+  }
+}
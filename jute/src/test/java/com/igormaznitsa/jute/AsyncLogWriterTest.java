@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AsyncLogWriterTest {
+
+  static final class CollectingLog extends SystemStreamLog {
+
+    final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    public void info(final CharSequence content) {
+      this.records.add("I " + content);
+    }
+
+    @Override
+    public void warn(final CharSequence content) {
+      this.records.add("W " + content);
+    }
+  }
+
+  @Test
+  public void testRecordsAreWrittenInOrderByOneThread() throws Exception {
+    final CollectingLog log = new CollectingLog();
+    final AsyncLogWriter writer = new AsyncLogWriter(log);
+    writer.start();
+
+    final Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int index = t;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 1000; i++) {
+            writer.info(index + ":" + i);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread t : threads) {
+      t.join();
+    }
+    writer.warn("last");
+    writer.close();
+
+    assertEquals(4001, log.records.size());
+    assertEquals("W last", log.records.get(4000));
+    final int[] next = new int[threads.length];
+    for (final String r : log.records.subList(0, 4000)) {
+      final String[] parsed = r.substring(2).split(":");
+      final int thread = Integer.parseInt(parsed[0]);
+      assertEquals(next[thread]++, Integer.parseInt(parsed[1]));
+    }
+
+    writer.info("ignored after close");
+    assertEquals(4001, log.records.size());
+  }
+
+  @Test
+  public void testFlushWaitsForQueuedRecords() throws Exception {
+    final CollectingLog log = new CollectingLog();
+    final AsyncLogWriter writer = new AsyncLogWriter(log);
+    writer.start();
+    try {
+      for (int i = 0; i < 1000; i++) {
+        writer.info("record " + i);
+      }
+      writer.flush();
+      assertEquals(1000, log.records.size());
+      assertEquals("I record 999", log.records.get(999));
+    }
+    finally {
+      writer.close();
+    }
+    writer.flush();
+  }
+}
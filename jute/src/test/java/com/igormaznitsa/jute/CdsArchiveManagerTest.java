@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class CdsArchiveManagerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static void write(final File file, final int size) throws Exception {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[size]);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void testArchiveKeyDependsOnJarContent() throws Exception {
+    final File jar1 = folder.newFile("lib1.jar");
+    final File jar2 = folder.newFile("lib2.jar");
+    write(jar1, 10);
+    write(jar2, 20);
+    assertTrue(jar1.setLastModified(100000L));
+    assertTrue(jar2.setLastModified(100000L));
+    final String classPath = jar1.getAbsolutePath() + File.pathSeparator + jar2.getAbsolutePath();
+
+    final String key = CdsArchiveManager.makeArchiveKey("java", "1.0", classPath);
+    assertEquals(key, CdsArchiveManager.makeArchiveKey("java", "1.0", classPath));
+    assertFalse(key.equals(CdsArchiveManager.makeArchiveKey("java", "2.0", classPath)));
+
+    assertTrue(jar2.setLastModified(200000L));
+    final String touched = CdsArchiveManager.makeArchiveKey("java", "1.0", classPath);
+    assertFalse(key.equals(touched));
+
+    write(jar1, 11);
+    assertTrue(jar1.setLastModified(100000L));
+    assertFalse(touched.equals(CdsArchiveManager.makeArchiveKey("java", "1.0", classPath)));
+  }
+}
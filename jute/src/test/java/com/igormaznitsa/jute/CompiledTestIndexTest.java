@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.*;
+import static org.junit.Assert.*;
+
+public class CompiledTestIndexTest {
+
+  private static final String INDEX
+          = CompiledTestIndex.HEADER + '\n'
+          + "T some.Test 1\n"
+          + "A Lcom/igormaznitsa/jute/annotations/JUteTest; timeout=J1000 jvmOpts=[S-Dsome%3Dhello+world,S-ea in=Sa%2Cb order=I2 skip=Ztrue\n"
+          + "M testOne 1\n"
+          + "A Lorg/junit/Test;\n"
+          + "M testTwo 1\n"
+          + "T some.Test$Nested 0\n"
+          + "T some.Test$Empty 0\n"
+          + "A Lcom/igormaznitsa/jute/annotations/JUteTest; jvmOpts=[\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File root;
+
+  @Before
+  public void init() throws Exception {
+    this.root = folder.newFolder("classes");
+  }
+
+  private File writeFile(final String path, final String text) throws IOException {
+    final File file = new File(this.root, path);
+    file.getParentFile().mkdirs();
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(text.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private List<String> makeClassFiles(final String... names) throws IOException {
+    final List<String> result = new ArrayList<String>();
+    for (final String name : names) {
+      final File file = writeFile(name, "");
+      // class files are written by javac before the last update of the index
+      assertTrue(file.setLastModified(System.currentTimeMillis() - 60000L));
+      result.add(file.getAbsolutePath());
+    }
+    return result;
+  }
+
+  @Test
+  public void testNoIndex() throws Exception {
+    assertNull(CompiledTestIndex.load(new SystemStreamLog(), this.root, makeClassFiles("some/Test.class")));
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+    writeFile(CompiledTestIndex.INDEX_PATH, INDEX);
+    final List<String> files = makeClassFiles("some/Test.class", "some/Test$Nested.class", "some/Test$1.class", "some/package-info.class", "some/Test$Nested$1Local.class");
+    final Map<String, DiscoveryIndex.ClassSummary> index = CompiledTestIndex.load(new SystemStreamLog(), this.root, files);
+    assertNotNull(index);
+    assertEquals(5, index.size());
+    assertEquals("some/Test", index.get(files.get(0)).getName());
+    assertEquals("some/Test$Nested", index.get(files.get(1)).getName());
+    assertEquals("some/Test$1", index.get(files.get(2)).getName());
+
+    final StringBuilder trace = new StringBuilder();
+    index.get(files.get(0)).accept(new ClassVisitor(Opcodes.ASM5) {
+      @Override
+      public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+        trace.append(desc).append(';');
+        return new AnnotationVisitor(Opcodes.ASM5) {
+          @Override
+          public void visit(final String name, final Object value) {
+            trace.append(name).append('=').append(value).append(';');
+          }
+
+          @Override
+          public AnnotationVisitor visitArray(final String name) {
+            trace.append(name).append("=[");
+            return this;
+          }
+        };
+      }
+
+      @Override
+      public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+        trace.append(name).append(desc).append(';');
+        return null;
+      }
+    });
+    assertEquals("Lcom/igormaznitsa/jute/annotations/JUteTest;;timeout=1000;jvmOpts=[null=-Dsome=hello world;null=-ea;in=a,b;order=2;skip=true;testOne()V;testTwo()V;", trace.toString());
+  }
+
+  @Test
+  public void testMissingClassIsScanned() throws Exception {
+    writeFile(CompiledTestIndex.INDEX_PATH, INDEX);
+    final List<String> files = makeClassFiles("some/Test.class", "some/Other.class", "some/Test$Unknown.class", "some/Test$Unknown$1.class", "some/Test$1$Inner.class");
+    final Map<String, DiscoveryIndex.ClassSummary> index = CompiledTestIndex.load(new SystemStreamLog(), this.root, files);
+    assertEquals(1, index.size());
+    assertTrue(index.containsKey(files.get(0)));
+  }
+
+  @Test
+  public void testClassNewerThanIndexIsScanned() throws Exception {
+    final File index = writeFile(CompiledTestIndex.INDEX_PATH, INDEX);
+    final List<String> files = makeClassFiles("some/Test.class", "some/Test$Nested.class");
+    assertEquals(2, CompiledTestIndex.load(new SystemStreamLog(), this.root, files).size());
+
+    // written in the same millisecond as the last update of the index
+    assertTrue(new File(files.get(1)).setLastModified(index.lastModified()));
+    assertEquals(2, CompiledTestIndex.load(new SystemStreamLog(), this.root, files).size());
+
+    // recompiled without annotation processing
+    assertTrue(new File(files.get(1)).setLastModified(index.lastModified() + 1000L));
+    final Map<String, DiscoveryIndex.ClassSummary> loaded = CompiledTestIndex.load(new SystemStreamLog(), this.root, files);
+    assertEquals(1, loaded.size());
+    assertTrue(loaded.containsKey(files.get(0)));
+
+    assertTrue(index.setLastModified(System.currentTimeMillis() - 3600000L));
+    assertTrue(CompiledTestIndex.load(new SystemStreamLog(), this.root, files).isEmpty());
+  }
+
+  @Test
+  public void testUnknownHeader() throws Exception {
+    writeFile(CompiledTestIndex.INDEX_PATH, "JUTE-TEST-INDEX 100\n");
+    assertNull(CompiledTestIndex.load(new SystemStreamLog(), this.root, makeClassFiles("some/Test.class")));
+  }
+
+  @Test(expected = IOException.class)
+  public void testWrongFormat() throws Exception {
+    writeFile(CompiledTestIndex.INDEX_PATH, CompiledTestIndex.HEADER + "\nM test 1\n");
+    CompiledTestIndex.load(new SystemStreamLog(), this.root, Arrays.asList(writeFile("some/Test.class", "").getAbsolutePath()));
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.zip.GZIPInputStream;
+import com.igormaznitsa.jute.runners.RunnerProtocol;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ConsoleBufferTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static void write(final ConsoleBuffer buffer, final String text) throws Exception {
+    final byte[] data = text.getBytes("UTF-8");
+    buffer.write(data, 0, data.length);
+  }
+
+  @Test
+  public void testUnlimited() throws Exception {
+    final ConsoleBuffer buffer = new ConsoleBuffer(0, null, false);
+    write(buffer, "Hello");
+    buffer.write(' ');
+    write(buffer, "World");
+    buffer.close();
+    assertFalse(buffer.isTruncated());
+    assertNull(buffer.getSpillFile());
+    assertEquals(11L, buffer.size());
+    assertEquals("Hello World", buffer.getText());
+  }
+
+  @Test
+  public void testNoSpillWithinDoubleLimit() throws Exception {
+    final File spill = new File(this.folder.getRoot(), "test.out");
+    final ConsoleBuffer buffer = new ConsoleBuffer(4, spill, false);
+    write(buffer, "0123");
+    write(buffer, "4567");
+    buffer.close();
+    assertFalse(buffer.isTruncated());
+    assertEquals("01234567", buffer.getText());
+    assertFalse(spill.exists());
+  }
+
+  @Test
+  public void testHeadTailAndSpill() throws Exception {
+    final File spill = new File(this.folder.getRoot(), "logs/test.out");
+    final ConsoleBuffer buffer = new ConsoleBuffer(4, spill, false);
+    write(buffer, "HEAD");
+    for (int i = 0; i < 1000; i++) {
+      write(buffer, "middle");
+    }
+    write(buffer, "TA");
+    buffer.write('I');
+    buffer.write('L');
+    buffer.close();
+
+    assertTrue(buffer.isTruncated());
+    assertEquals(spill, buffer.getSpillFile());
+    final String text = buffer.getText();
+    assertTrue(text.startsWith("HEAD"));
+    assertTrue(text.contains("...skipped 6000 byte(s), full output: " + spill.getAbsolutePath() + "..."));
+    assertTrue(text.endsWith("TAIL"));
+
+    final String full = FileUtils.readFileToString(spill, "UTF-8");
+    assertEquals(6008, full.length());
+    assertTrue(full.startsWith("HEADmiddle"));
+    assertTrue(full.endsWith("middleTAIL"));
+  }
+
+  @Test
+  public void testGzipSpill() throws Exception {
+    final File spill = new File(this.folder.getRoot(), "test.out.gz");
+    final ConsoleBuffer buffer = new ConsoleBuffer(2, spill, true);
+    write(buffer, "0123456789");
+    buffer.close();
+
+    final GZIPInputStream in = new GZIPInputStream(new FileInputStream(spill));
+    try {
+      assertEquals("0123456789", IOUtils.toString(in, "UTF-8"));
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testProtocolLinesAreKeptForTruncatedStream() throws Exception {
+    final ConsoleBuffer buffer = new ConsoleBuffer(8, null, false);
+    write(buffer, "start of output\n");
+    write(buffer, RunnerProtocol.TEST_START + "some.Test#test1\n");
+    write(buffer, "#" + RunnerProtocol.TEST_RESULT.substring(0, 5));
+    write(buffer, RunnerProtocol.TEST_RESULT.substring(5) + "some.Test#test1 OK 12\r\n");
+    write(buffer, "end of output\n");
+    buffer.close();
+
+    assertTrue(buffer.isTruncated());
+    assertFalse(buffer.getText().contains("test1"));
+    assertTrue(buffer.getText().contains("skipped"));
+    assertEquals(RunnerProtocol.TEST_START + "some.Test#test1\n" + RunnerProtocol.TEST_RESULT + "some.Test#test1 OK 12\n", buffer.getMarkerLines());
+    assertArrayEquals(new String[]{"OK", "12"}, Utils.extractTestResults(buffer.getMarkerLines()).get("some.Test#test1"));
+  }
+
+  @Test
+  public void testStreamLines() throws Exception {
+    final AsyncLogWriterTest.CollectingLog log = new AsyncLogWriterTest.CollectingLog();
+    final AsyncLogWriter writer = new AsyncLogWriter(log);
+    writer.start();
+
+    final ConsoleBuffer out = new ConsoleBuffer(0, null, false);
+    out.streamLines(writer, "[some.Test#test1] ", false);
+    final ConsoleBuffer err = new ConsoleBuffer(0, null, false);
+    err.streamLines(writer, "[some.Test#test1] ", true);
+
+    write(out, RunnerProtocol.TEST_START + "some.Test#test1\n");
+    write(out, "first ");
+    write(out, "line\r\nsecond");
+    write(err, "error\n");
+    out.close();
+    err.close();
+    writer.close();
+
+    assertEquals(3, log.records.size());
+    assertEquals("I [some.Test#test1] first line", log.records.get(0));
+    assertEquals("W [some.Test#test1] error", log.records.get(1));
+    assertEquals("I [some.Test#test1] second", log.records.get(2));
+  }
+
+  @Test
+  public void testAwaitMarkerLine() throws Exception {
+    final ConsoleBuffer buffer = new ConsoleBuffer(0, null, false);
+    final String line = RunnerProtocol.TEST_END + "a.B#m1";
+    assertFalse(buffer.awaitMarkerLine(line, 10L));
+    final Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100L);
+          write(buffer, "text\n" + RunnerProtocol.TEST_END + "a.B#m1\r\n");
+        }
+        catch (Exception ex) {
+          throw new RuntimeException(ex);
+        }
+      }
+    });
+    writer.start();
+    assertTrue(buffer.awaitMarkerLine(line, 5000L));
+    writer.join();
+    assertFalse(buffer.awaitMarkerLine(RunnerProtocol.TEST_END + "a.B#m", 10L));
+  }
+
+  @Test
+  public void testWritesAfterCloseAreIgnored() throws Exception {
+    final ConsoleBuffer buffer = new ConsoleBuffer(0, null, false);
+    write(buffer, "Hello");
+    buffer.close();
+    write(buffer, " World");
+    assertEquals("Hello", buffer.getText());
+    assertFalse(buffer.awaitMarkerLine(RunnerProtocol.TEST_END + "a.B#m1", 5000L));
+  }
+}
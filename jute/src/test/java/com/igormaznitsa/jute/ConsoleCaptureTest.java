@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ConsoleCaptureTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testFindMode() {
+    assertEquals(ConsoleCapture.Mode.MEMORY, ConsoleCapture.Mode.find(null));
+    assertEquals(ConsoleCapture.Mode.MEMORY, ConsoleCapture.Mode.find(" "));
+    assertEquals(ConsoleCapture.Mode.FILE, ConsoleCapture.Mode.find("file"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFindMode_Unknown() {
+    ConsoleCapture.Mode.find("PIPE");
+  }
+
+  @Test
+  public void testMakeFiles() throws Exception {
+    final ConsoleCapture capture = new ConsoleCapture(new File(this.folder.getRoot(), "console"), 0, null, false, null);
+    final File[] files = capture.makeFiles("some.Test#test1");
+    assertEquals("some.Test_test1.out", files[0].getName());
+    assertEquals("some.Test_test1.err", files[1].getName());
+    assertTrue(capture.getFolder().isDirectory());
+
+    FileUtils.writeStringToFile(files[0], "old", "UTF-8");
+    assertEquals("old", capture.read(files[0]));
+    capture.makeFiles("some.Test#test1");
+    assertFalse(files[0].exists());
+    assertEquals("", capture.read(files[0]));
+  }
+
+  @Test
+  public void testRedirect() throws Exception {
+    final File[] files = new ConsoleCapture(this.folder.getRoot(), 0, null, false, null).makeFiles("java");
+    final ProcessBuilder builder = new ProcessBuilder(Arrays.asList(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java", "-version"));
+    ConsoleCapture.redirect(builder, files);
+    assertEquals(0, builder.start().waitFor());
+    assertEquals(0L, files[0].length());
+    assertTrue(FileUtils.readFileToString(files[1], "UTF-8").contains("version"));
+  }
+
+  @Test
+  public void testParseLimit() {
+    assertEquals(0, ConsoleCapture.parseLimit(null));
+    assertEquals(0, ConsoleCapture.parseLimit(""));
+    assertEquals(64 * 1024, ConsoleCapture.parseLimit("64k"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseLimit_TooBig() {
+    ConsoleCapture.parseLimit("1g");
+  }
+
+  @Test
+  public void testReadHeadAndTailOfBigFile() throws Exception {
+    final ConsoleCapture capture = new ConsoleCapture(this.folder.getRoot(), 4, null, false, null);
+    final File file = this.folder.newFile("big.out");
+    FileUtils.writeStringToFile(file, "HEAD-middle-TAIL", "UTF-8");
+    final String text = capture.read(file);
+    assertTrue(text.startsWith("HEAD"));
+    assertTrue(text.contains("...skipped 8 byte(s), full output: " + file.getAbsolutePath()));
+    assertTrue(text.endsWith("TAIL"));
+    assertFalse(text.contains("middle"));
+  }
+
+  @Test
+  public void testMakeBuffer() throws Exception {
+    final File spillFolder = new File(this.folder.getRoot(), "logs");
+    final ConsoleCapture capture = new ConsoleCapture(null, 4, spillFolder, true, null);
+    assertFalse(capture.isFileMode());
+
+    final ConsoleBuffer buffer = capture.makeBuffer("some.Test#test1", ".out");
+    buffer.write("0123456789".getBytes("UTF-8"));
+    buffer.close();
+    assertEquals(new File(spillFolder, "some.Test#test1.out.gz"), buffer.getSpillFile());
+
+    capture.makeBuffer("some.Test#test1", ".out");
+    assertFalse(buffer.getSpillFile().exists());
+  }
+}
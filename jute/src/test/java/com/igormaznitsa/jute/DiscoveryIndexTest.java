@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.*;
+import static org.junit.Assert.*;
+
+public class DiscoveryIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] makeClass(final String name, final long timeout) {
+    final ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+    final AnnotationVisitor classAnno = writer.visitAnnotation(JuteMojo.ANNO_JUTE, true);
+    classAnno.visit("timeout", timeout);
+    final AnnotationVisitor opts = classAnno.visitArray("jvmOpts");
+    opts.visit(null, "-Xmx32m");
+    opts.visit(null, "-ea");
+    opts.visitEnd();
+    classAnno.visitEnd();
+
+    MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "testOne", "()V", null, null);
+    AnnotationVisitor anno = method.visitAnnotation(JuteMojo.ANNO_TEST, true);
+    anno.visit("timeout", 10L);
+    anno.visitEnd();
+    anno = method.visitAnnotation(JuteMojo.ANNO_JUTE, true);
+    anno.visit("order", 3);
+    anno.visit("printConsole", Boolean.TRUE);
+    anno.visit("in", "hello");
+    anno.visitEnd();
+    method.visitEnd();
+
+    method = writer.visitMethod(Opcodes.ACC_PUBLIC, "testTwo", "()V", null, null);
+    method.visitAnnotation(JuteMojo.ANNO_IGNORE, true).visitEnd();
+    method.visitEnd();
+
+    writer.visitMethod(Opcodes.ACC_PUBLIC, "notTest", "(I)V", null, null).visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static File writeFile(final File file, final byte[] data) throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data);
+    }
+    finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private static String trace(final DiscoveryIndex.ClassSummary summary) {
+    final StringBuilder result = new StringBuilder();
+    summary.accept(new TracingClassVisitor(result));
+    return result.toString();
+  }
+
+  private static String trace(final byte[] classFile) {
+    final StringBuilder result = new StringBuilder();
+    new ClassReader(classFile).accept(new TracingClassVisitor(result), ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return result.toString();
+  }
+
+  @Test
+  public void testReplayIsTheSameAsClassFileForTestAnnotations() throws Exception {
+    final byte[] classFile = makeClass("some/Test", 1000L);
+    final String replayed = trace(DiscoveryIndex.ClassSummary.parse(classFile));
+    final String parsed = trace(classFile);
+    assertEquals(parsed.replace("[Test:timeout=10;]", "[Test:]").replace("notTest(I)V\n;", ""), replayed);
+    assertTrue(replayed.contains("jvmOpts[-Xmx32m,-ea]"));
+    assertTrue(replayed.contains("order=3"));
+  }
+
+  @Test
+  public void testSaveLoadAndReuse() throws Exception {
+    final File indexFile = new File(folder.getRoot(), "sub/index.bin");
+    final File classFile = writeFile(folder.newFile("Test.class"), makeClass("some/Test", 1000L));
+    assertTrue(classFile.setLastModified(System.currentTimeMillis() - 60000L));
+
+    final DiscoveryIndex index = DiscoveryIndex.load(indexFile);
+    final String expected = trace(index.getSummary(classFile));
+    assertEquals(1, index.getMisses());
+    index.save(indexFile);
+
+    DiscoveryIndex loaded = DiscoveryIndex.load(indexFile);
+    assertEquals(1, loaded.size());
+    assertEquals(expected, trace(loaded.getSummary(classFile)));
+    assertEquals(1, loaded.getHits());
+    assertEquals(0, loaded.getMisses());
+
+    // the same content with new modification time
+    assertTrue(classFile.setLastModified(System.currentTimeMillis() - 30000L));
+    assertEquals(expected, trace(loaded.getSummary(classFile)));
+    assertEquals(2, loaded.getHits());
+    assertEquals(0, loaded.getMisses());
+
+    // changed content
+    writeFile(classFile, makeClass("some/Test", 2000L));
+    final String changed = trace(loaded.getSummary(classFile));
+    assertFalse(expected.equals(changed));
+    assertTrue(changed.contains("timeout=2000"));
+    assertEquals(1, loaded.getMisses());
+  }
+
+  @Test
+  public void testRecentlyModifiedFileIsCheckedByHash() throws Exception {
+    final File indexFile = new File(folder.getRoot(), "index.bin");
+    final File classFile = writeFile(folder.newFile("Test.class"), makeClass("some/Test", 1000L));
+    final DiscoveryIndex index = new DiscoveryIndex();
+    index.getSummary(classFile);
+    index.save(indexFile);
+
+    // rewritten in the same second with the same size
+    final long time = classFile.lastModified();
+    writeFile(classFile, makeClass("some/Test", 3000L));
+    assertTrue(classFile.setLastModified(time));
+
+    final DiscoveryIndex loaded = DiscoveryIndex.load(indexFile);
+    assertTrue(trace(loaded.getSummary(classFile)).contains("timeout=3000"));
+    assertEquals(1, loaded.getMisses());
+  }
+
+  @Test
+  public void testDeletedClassIsRemovedOnSave() throws Exception {
+    final File indexFile = new File(folder.getRoot(), "index.bin");
+    final File classFile1 = writeFile(folder.newFile("Test1.class"), makeClass("some/Test1", 1000L));
+    final File classFile2 = writeFile(folder.newFile("Test2.class"), makeClass("some/Test2", 1000L));
+    final DiscoveryIndex index = new DiscoveryIndex();
+    index.getSummary(classFile1);
+    index.getSummary(classFile2);
+    index.save(indexFile);
+    assertEquals(2, DiscoveryIndex.load(indexFile).size());
+
+    assertTrue(classFile2.delete());
+    index.save(indexFile);
+    assertEquals(1, DiscoveryIndex.load(indexFile).size());
+  }
+
+  @Test
+  public void testShareAnalysisIsCached() throws Exception {
+    final File indexFile = new File(folder.getRoot(), "index.bin");
+    final File classFile = writeFile(folder.newFile("Test.class"), makeClass("some/Test", 1000L));
+    assertTrue(classFile.setLastModified(System.currentTimeMillis() - 60000L));
+
+    final DiscoveryIndex index = new DiscoveryIndex();
+    assertNull(index.getSummary(classFile).getHazards());
+    index.save(indexFile);
+
+    // cached structure without analysis is completed by the analysis
+    DiscoveryIndex loaded = DiscoveryIndex.load(indexFile);
+    assertEquals(Collections.<String>emptyList(), loaded.getSummary(classFile, true).getHazards());
+    assertEquals(1, loaded.getHits());
+    assertEquals(0, loaded.getMisses());
+    loaded.save(indexFile);
+
+    loaded = DiscoveryIndex.load(indexFile);
+    assertEquals(Collections.<String>emptyList(), loaded.getSummary(classFile, true).getHazards());
+    assertEquals(1, loaded.getHits());
+  }
+
+  @Test(expected = IOException.class)
+  public void testWrongFormat() throws Exception {
+    final File file = writeFile(folder.newFile("wrong.bin"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    DiscoveryIndex.load(file);
+  }
+
+  private static final class TracingClassVisitor extends ClassVisitor {
+
+    private final StringBuilder buffer;
+
+    TracingClassVisitor(final StringBuilder buffer) {
+      super(Opcodes.ASM5);
+      this.buffer = buffer;
+    }
+
+    private AnnotationVisitor traceAnnotation(final String desc) {
+      this.buffer.append('[').append(desc.substring(desc.lastIndexOf('/') + 1, desc.length() - 1)).append(':');
+      return new AnnotationVisitor(Opcodes.ASM5) {
+        @Override
+        public void visit(final String name, final Object value) {
+          buffer.append(name).append('=').append(value).append(';');
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(final String name) {
+          buffer.append(name).append('[');
+          return new AnnotationVisitor(Opcodes.ASM5) {
+            private boolean first = true;
+
+            @Override
+            public void visit(final String name, final Object value) {
+              buffer.append(first ? "" : ",").append(value);
+              first = false;
+            }
+
+            @Override
+            public void visitEnd() {
+              buffer.append("];");
+            }
+          };
+        }
+
+        @Override
+        public void visitEnd() {
+          buffer.append(']');
+        }
+      };
+    }
+
+    @Override
+    public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+      this.buffer.append(name).append(' ').append(access).append('\n');
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+      return traceAnnotation(desc);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+      this.buffer.append(name).append(desc).append('\n');
+      return new MethodVisitor(Opcodes.ASM5) {
+        @Override
+        public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+          return traceAnnotation(desc);
+        }
+
+        @Override
+        public void visitEnd() {
+          buffer.append(";");
+        }
+      };
+    }
+
+    @Override
+    public void visitEnd() {
+      this.buffer.append("END");
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ForkControllerTest {
+
+  private static final long MB = 1024L * 1024L;
+
+  @Test
+  public void testAdditiveIncreaseWhileForksAreWaiting() {
+    assertEquals(3, ForkController.decide(2, 1, 4, 4, 1.0d, 4096L * MB, false, 5));
+    assertEquals(4, ForkController.decide(4, 1, 4, 4, 1.0d, 4096L * MB, false, 5));
+    assertEquals(2, ForkController.decide(2, 1, 4, 4, 1.0d, 4096L * MB, false, 0));
+    // unknown load and memory don't block increase
+    assertEquals(3, ForkController.decide(2, 1, 4, 4, -1.0d, -1L, false, 1));
+  }
+
+  @Test
+  public void testMultiplicativeDecreaseForOverload() {
+    assertEquals(3, ForkController.decide(6, 1, 8, 4, 7.0d, 4096L * MB, false, 5));
+    assertEquals(3, ForkController.decide(6, 1, 8, 4, 1.0d, 100L * MB, false, 5));
+    assertEquals(2, ForkController.decide(3, 2, 8, 4, 7.0d, 4096L * MB, false, 5));
+  }
+
+  @Test
+  public void testRollbackForThroughputDrop() {
+    assertEquals(3, ForkController.decide(4, 1, 8, 4, 1.0d, 4096L * MB, true, 5));
+    assertEquals(1, ForkController.decide(1, 1, 8, 4, 1.0d, 4096L * MB, true, 5));
+  }
+}
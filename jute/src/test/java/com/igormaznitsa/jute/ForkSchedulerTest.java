@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ForkSchedulerTest {
+
+  @Test
+  public void testParseForkCount(){
+    assertEquals(4, ForkScheduler.parseForkCount("4", 8));
+    assertEquals(4, ForkScheduler.parseForkCount(" 4 ", 8));
+    assertEquals(8, ForkScheduler.parseForkCount("1C", 8));
+    assertEquals(12, ForkScheduler.parseForkCount("1.5c", 8));
+    assertEquals(2, ForkScheduler.parseForkCount("1.5C", 1));
+    assertEquals(1, ForkScheduler.parseForkCount("0.1C", 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseForkCount_Zero(){
+    ForkScheduler.parseForkCount("0", 8);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseForkCount_Wrong(){
+    ForkScheduler.parseForkCount("many", 8);
+  }
+
+  @Test
+  public void testSortForLongestFirst(){
+    final TestHistory history = new TestHistory();
+    history.record("some.Test#fast", TestContainer.TestResult.OK, 10L, -1L, -1L);
+    history.record("some.Test#slow", TestContainer.TestResult.OK, 1000L, -1L, -1L);
+    history.record("some.Test#middle", TestContainer.TestResult.OK, 100L, -1L, -1L);
+
+    final List<List<TestContainer>> groups = new ArrayList<List<TestContainer>>();
+    for (final String name : new String[]{"fast", "middle", "slow", "unknown", "fast"}) {
+      groups.add(Collections.singletonList(new TestContainer(null, "some.Test", name, null, null)));
+    }
+
+    final List<Integer> indexes = new ArrayList<Integer>(Arrays.asList(0, 1, 2, 3, 4));
+    ForkScheduler.sortForLongestFirst(indexes, groups, history);
+    assertEquals(Arrays.asList(3, 2, 1, 0, 4), indexes);
+
+    final List<Integer> noHistory = new ArrayList<Integer>(Arrays.asList(0, 1, 2, 3, 4));
+    ForkScheduler.sortForLongestFirst(noHistory, groups, null);
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4), noHistory);
+  }
+
+  @Test
+  public void testFindScheduling(){
+    assertEquals(ForkScheduler.Scheduling.NAME, ForkScheduler.Scheduling.find(null));
+    assertEquals(ForkScheduler.Scheduling.NAME, ForkScheduler.Scheduling.find(""));
+    assertEquals(ForkScheduler.Scheduling.LPT, ForkScheduler.Scheduling.find("lpt"));
+  }
+
+  @Test
+  public void testParseAutoForkCount(){
+    assertTrue(ForkScheduler.isAutoForkCount(" auto "));
+    assertTrue(ForkScheduler.isAutoForkCount("AUTO:1-4"));
+    assertFalse(ForkScheduler.isAutoForkCount("4"));
+    assertFalse(ForkScheduler.isAutoForkCount(null));
+
+    assertArrayEquals(new int[]{1, 8}, ForkScheduler.parseAutoForkCount("auto", 4));
+    assertArrayEquals(new int[]{2, 6}, ForkScheduler.parseAutoForkCount("AUTO:2-1.5C", 4));
+    assertArrayEquals(new int[]{3, 3}, ForkScheduler.parseAutoForkCount("Auto:3-3", 4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseAutoForkCount_WrongBounds(){
+    ForkScheduler.parseAutoForkCount("AUTO:4-2", 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseAutoForkCount_WrongFormat(){
+    ForkScheduler.parseAutoForkCount("AUTO4", 4);
+  }
+
+  @Test
+  public void testSetForkCount() throws Exception {
+    final ForkScheduler scheduler = new ForkScheduler(1, 3, 2);
+    try {
+      assertEquals(2, scheduler.getForkCount());
+      assertEquals(3, scheduler.setForkCount(10));
+      assertEquals(1, scheduler.setForkCount(0));
+      assertEquals(2, scheduler.setForkCount(2));
+
+      final boolean[] executed = new boolean[1];
+      scheduler.executeAndWait(new Runnable() {
+        @Override
+        public void run() {
+          executed[0] = true;
+        }
+      });
+      assertTrue(executed[0]);
+    }
+    finally {
+      scheduler.shutdown();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HangDetectorTest {
+
+  static final class FakeProcess extends Process {
+
+    volatile boolean destroyed;
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() {
+      return 0;
+    }
+
+    @Override
+    public int exitValue() {
+      return 0;
+    }
+
+    @Override
+    public void destroy() {
+      this.destroyed = true;
+    }
+  }
+
+  @Test
+  public void testIsIdle() {
+    assertTrue(HangDetector.isIdle(0L, 1000L, 0));
+    assertTrue(HangDetector.isIdle(10000000L, 1000L, 0));
+    assertFalse(HangDetector.isIdle(10000001L, 1000L, 0));
+    assertFalse(HangDetector.isIdle(0L, 1000L, 1));
+  }
+
+  @Test
+  public void testIdleJvmIsKilledAfterWindow() {
+    final HangDetector detector = new HangDetector(500L, 1000L);
+    final FakeProcess process = new FakeProcess();
+    final HangDetector.Watch watch = detector.watch("a.B#m", process);
+    assertFalse(detector.onHeartbeat("a.B#m", 1000000000L, 0, 10000L));
+    assertFalse(detector.onHeartbeat("a.B#m", 1000100000L, 0, 10500L));
+    assertFalse(watch.isHung());
+    assertTrue(detector.onHeartbeat("a.B#m", 1000200000L, 0, 11000L));
+    assertTrue(watch.isHung());
+    assertTrue(process.destroyed);
+    assertFalse(detector.onHeartbeat("a.B#m", 1000200000L, 0, 11500L));
+  }
+
+  @Test
+  public void testActivityRestartsWindow() {
+    final HangDetector detector = new HangDetector(500L, 1000L);
+    final FakeProcess process = new FakeProcess();
+    final HangDetector.Watch watch = detector.watch("a.B#m", process);
+    assertFalse(detector.onHeartbeat("a.B#m", 0L, 0, 0L));
+    assertFalse(detector.onHeartbeat("a.B#m", 0L, 0, 500L));
+    assertFalse(detector.onHeartbeat("a.B#m", 0L, 1, 1000L));
+    assertFalse(detector.onHeartbeat("a.B#m", 0L, 0, 1500L));
+    assertFalse(detector.onHeartbeat("a.B#m", 200000000L, 0, 2000L));
+    assertFalse(detector.onHeartbeat("a.B#m", 200000000L, 0, 2500L));
+    assertFalse(watch.isHung());
+    assertFalse(process.destroyed);
+  }
+
+  @Test
+  public void testNotWatchedJvmIsIgnored() {
+    final HangDetector detector = new HangDetector(500L, 1000L);
+    final FakeProcess process = new FakeProcess();
+    detector.watch("a.B#m", process);
+    detector.cancel("a.B#m");
+    for (int i = 0; i < 10; i++) {
+      assertFalse(detector.onHeartbeat("a.B#m", 0L, 0, i * 500L));
+    }
+    assertFalse(process.destroyed);
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.util.Collections;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class InProcessWorkerPoolTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testLaunchArgumentsArePreparedAtFirstUse() throws Exception {
+    final LaunchArguments args = LaunchArguments.prepare(new SystemStreamLog(), LaunchArguments.ClassPathMode.MANIFEST_JAR, folder.getRoot(), "java", "classes" + File.pathSeparator + "a.jar", null, null);
+    assertEquals(1, folder.getRoot().list().length);
+
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    final InProcessWorkerPool pool = new InProcessWorkerPool(new SystemStreamLog(), Collections.singletonList("classes"), args, folder.getRoot(), "a.jar", registry);
+    try {
+      assertEquals(1, folder.getRoot().list().length);
+
+      final LaunchArguments workerArgs = pool.getLaunchArguments();
+      assertEquals(LaunchArguments.ClassPathMode.MANIFEST_JAR, workerArgs.getMode());
+      assertTrue(workerArgs.getFile().isFile());
+      assertEquals(2, folder.getRoot().list().length);
+      assertSame(workerArgs, pool.getLaunchArguments());
+    }
+    finally {
+      pool.dispose();
+      registry.dispose();
+    }
+  }
+}
@@ -63,6 +63,32 @@ public class JuteMojoTest extends AbstractMojoTestCase {
     assertNull(myMojo.getJUteTest());
     assertNull(myMojo.getClassesDirectory());
     assertNull(myMojo.getTestClassesDirectory());
+    assertEquals(0, myMojo.getWarmJvmPool());
+    assertNull(myMojo.getIsolation());
+    assertNull(myMojo.getForkCount());
+    assertNull(myMojo.getHistoryFile());
+    assertNull(myMojo.getScheduling());
+    assertFalse(myMojo.isClassDataSharing());
+    assertNull(myMojo.getClassPathMode());
+    assertNull(myMojo.getDiscoveryIndexFile());
+    assertFalse(myMojo.isUseTestIndex());
+    assertFalse(myMojo.isPipelinedDiscovery());
+    assertEquals(0L, myMojo.getBatchThreshold());
+    assertFalse(myMojo.isShareAnalysis());
+    assertNull(myMojo.getShareAnalysisReport());
+    assertNull(myMojo.getMemoryBudget());
+    assertNull(myMojo.getForkMemory());
+    assertNull(myMojo.getConsoleCapture());
+    assertNull(myMojo.getConsoleLimit());
+    assertFalse(myMojo.isConsoleSpillGzip());
+    assertFalse(myMojo.isStreamResults());
+    assertFalse(myMojo.isStreamConsole());
+    assertFalse(myMojo.isResultChannel());
+    assertEquals(-1L, myMojo.getShutdownGrace());
+    assertEquals(0L, myMojo.getHeartbeatInterval());
+    assertEquals(0L, myMojo.getHangWindow());
+    assertFalse(myMojo.isThreadDumpOnTimeout());
+    assertEquals(0, myMojo.getThreadDumpFrames());
   }
 
   public void testNonDefaultConfig() throws Exception {
@@ -97,5 +123,40 @@ public class JuteMojoTest extends AbstractMojoTestCase {
     assertEquals("some.package.DefaultTest#Method", myMojo.getJUteTest());
     assertEquals("target/classes",myMojo.getClassesDirectory().toString());
     assertEquals("target/test-classes",myMojo.getTestClassesDirectory().toString());
+    assertEquals(2, myMojo.getWarmJvmPool());
+    assertEquals("CLASS", myMojo.getIsolation());
+    assertEquals("1.5C", myMojo.getForkCount());
+    assertEquals("target/history.bin", myMojo.getHistoryFile().toString());
+    assertEquals("LPT", myMojo.getScheduling());
+    assertTrue(myMojo.isClassDataSharing());
+    assertEquals("ARGFILE", myMojo.getClassPathMode());
+    assertEquals("target/discovery.bin", myMojo.getDiscoveryIndexFile().toString());
+    assertFalse(myMojo.isUseTestIndex());
+    assertTrue(myMojo.isPipelinedDiscovery());
+    assertEquals(50L, myMojo.getBatchThreshold());
+    assertTrue(myMojo.isShareAnalysis());
+    assertEquals("target/share.txt", myMojo.getShareAnalysisReport().toString());
+    assertEquals("6g", myMojo.getMemoryBudget());
+    assertEquals("512m", myMojo.getForkMemory());
+    assertEquals("FILE", myMojo.getConsoleCapture());
+    assertEquals("64k", myMojo.getConsoleLimit());
+    assertTrue(myMojo.isConsoleSpillGzip());
+    assertTrue(myMojo.isStreamResults());
+    assertTrue(myMojo.isStreamConsole());
+    assertTrue(myMojo.isResultChannel());
+    assertEquals(700L, myMojo.getShutdownGrace());
+    assertEquals(1000L, myMojo.getHeartbeatInterval());
+    assertEquals(30000L, myMojo.getHangWindow());
+    assertTrue(myMojo.isThreadDumpOnTimeout());
+    assertEquals(5, myMojo.getThreadDumpFrames());
+  }
+
+  public void testJUnitTestListSupported() throws Exception {
+    assertTrue(JuteMojo.isJUnitTestListSupported(null));
+    assertTrue(JuteMojo.isJUnitTestListSupported("4.6"));
+    assertTrue(JuteMojo.isJUnitTestListSupported("4.12"));
+    assertTrue(JuteMojo.isJUnitTestListSupported("4.13-beta-1"));
+    assertFalse(JuteMojo.isJUnitTestListSupported("4.5"));
+    assertFalse(JuteMojo.isJUnitTestListSupported("4.4"));
   }
 }
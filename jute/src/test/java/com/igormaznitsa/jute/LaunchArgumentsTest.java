@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class LaunchArgumentsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static String getJava() {
+    return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+  }
+
+  @Test
+  public void testMakeArgumentFileText() {
+    assertEquals("\"-Da=b c\"\n\"C:\\\\some\\\\path\"\n\"quote\\\"d\"\n", LaunchArguments.makeArgumentFileText(Arrays.asList("-Da=b c", "C:\\some\\path", "quote\"d")));
+  }
+
+  @Test
+  public void testArgumentMode() throws Exception {
+    final Properties props = new Properties();
+    props.setProperty("key", "value");
+    final LaunchArguments args = LaunchArguments.prepare(new SystemStreamLog(), LaunchArguments.ClassPathMode.ARGUMENT, folder.getRoot(), "java", "a.jar", props, new String[]{"-Xmx100m"});
+    assertNull(args.getFile());
+    assertEquals(Arrays.asList("java", "-Xmx100m", "-Xss1m", "-Dkey=value", "-classpath", "a.jar"), args.make("java", Arrays.asList("-Xmx100m", "-Xss1m")));
+  }
+
+  @Test
+  public void testWithClassPath() throws Exception {
+    final LaunchArguments args = LaunchArguments.prepare(new SystemStreamLog(), LaunchArguments.ClassPathMode.ARGUMENT, folder.getRoot(), "java", "classes" + File.pathSeparator + "a.jar", null, null);
+    final LaunchArguments shared = args.withClassPath(folder.getRoot(), "a.jar");
+    assertEquals(LaunchArguments.ClassPathMode.ARGUMENT, shared.getMode());
+    assertEquals(Arrays.asList("java", "-Xss1m", "-classpath", "a.jar"), shared.make("java", Arrays.asList("-Xss1m")));
+
+    final LaunchArguments jarArgs = LaunchArguments.prepare(new SystemStreamLog(), LaunchArguments.ClassPathMode.MANIFEST_JAR, folder.getRoot(), "java", "classes" + File.pathSeparator + "a.jar", null, null);
+    final LaunchArguments sharedJar = jarArgs.withClassPath(folder.getRoot(), "a.jar");
+    assertEquals(LaunchArguments.ClassPathMode.MANIFEST_JAR, sharedJar.getMode());
+    assertTrue(sharedJar.getFile().isFile());
+    assertFalse(sharedJar.getFile().equals(jarArgs.getFile()));
+  }
+
+  @Test
+  public void testManifestJarMode() throws Exception {
+    final File jar = new File(folder.getRoot(), "lib.jar");
+    final File classes = folder.newFolder("classes");
+    final String classPath = jar.getAbsolutePath() + File.pathSeparator + classes.getAbsolutePath();
+    final LaunchArguments args = LaunchArguments.prepare(new SystemStreamLog(), LaunchArguments.ClassPathMode.MANIFEST_JAR, folder.getRoot(), "java", classPath, null, null);
+    assertTrue(args.getFile().isFile());
+    assertEquals(Arrays.asList("java", "-Xss1m", "-classpath", args.getFile().getAbsolutePath()), args.make("java", Arrays.asList("-Xss1m")));
+
+    final JarFile jarFile = new JarFile(args.getFile());
+    try {
+      final String manifestClassPath = jarFile.getManifest().getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+      assertEquals(jar.toURI().toString() + ' ' + classes.toURI().toString(), manifestClassPath);
+      assertTrue(manifestClassPath.endsWith("/"));
+    }
+    finally {
+      jarFile.close();
+    }
+  }
+
+  @Test
+  public void testArgFileMode() throws Exception {
+    final LaunchArguments args = LaunchArguments.prepare(new SystemStreamLog(), LaunchArguments.ClassPathMode.ARGFILE, folder.getRoot(), getJava(), "a.jar", null, new String[]{"-Xmx100m"});
+    assertTrue(args.getFile().isFile());
+    if (args.getMode() == LaunchArguments.ClassPathMode.ARGFILE) {
+      assertEquals(Arrays.asList(getJava(), '@' + args.getFile().getAbsolutePath(), "-Xss1m"), args.make(getJava(), Arrays.asList("-Xmx100m", "-Xss1m")));
+      assertEquals(Arrays.asList("other", "-Xmx100m", "-classpath", "a.jar"), args.make("other", Arrays.asList("-Xmx100m")));
+    }
+    else {
+      // the JVM doesn't support argument files
+      assertEquals(LaunchArguments.ClassPathMode.MANIFEST_JAR, args.getMode());
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class MemoryBudgetTest {
+
+  private static final long MB = 1024L * 1024L;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testParseSize() {
+    assertEquals(123L, MemoryBudget.parseSize("123"));
+    assertEquals(64L * 1024L, MemoryBudget.parseSize("64k"));
+    assertEquals(512L * MB, MemoryBudget.parseSize("512M"));
+    assertEquals(2048L * MB, MemoryBudget.parseSize(" 2g "));
+    assertEquals(1024L * 1024L * MB, MemoryBudget.parseSize("1T"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseSize_Wrong() {
+    MemoryBudget.parseSize("lot");
+  }
+
+  @Test
+  public void testEstimate() {
+    final MemoryBudget budget = new MemoryBudget(4096L * MB, 256L * MB);
+    assertEquals(256L * MB + MemoryBudget.NON_HEAP_OVERHEAD, budget.estimate(Arrays.<String>asList()));
+    assertEquals(512L * MB + MemoryBudget.NON_HEAP_OVERHEAD, budget.estimate(Arrays.asList("-ea", "-Xms512m")));
+    assertEquals(2048L * MB + MemoryBudget.NON_HEAP_OVERHEAD, budget.estimate(Arrays.asList("-Xmx1g", "-Xms512m", "-Xmx2g")));
+    assertEquals(128L * MB + MemoryBudget.NON_HEAP_OVERHEAD, budget.estimate(Arrays.asList("-XX:MaxHeapSize=128m")));
+  }
+
+  @Test
+  public void testTryReserve() {
+    final MemoryBudget budget = new MemoryBudget(1000L, 0L);
+    assertTrue(budget.tryReserve(600L));
+    assertFalse(budget.tryReserve(600L));
+    assertTrue(budget.tryReserve(400L));
+    assertEquals(1000L, budget.getReserved());
+    budget.release(1000L);
+    // single reservation is allowed even if it exceeds the budget
+    assertTrue(budget.tryReserve(2000L));
+  }
+
+  @Test
+  public void testReserveWaitsForRelease() throws Exception {
+    final MemoryBudget budget = new MemoryBudget(1000L, 0L);
+    assertTrue(budget.canFit(1000L));
+    assertFalse(budget.canFit(1001L));
+
+    budget.reserve(600L);
+    final CountDownLatch reserved = new CountDownLatch(1);
+    final Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          budget.reserve(600L);
+          reserved.countDown();
+        }
+        catch (InterruptedException ex) {
+          // stopped
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+
+    assertFalse(reserved.await(200L, TimeUnit.MILLISECONDS));
+    budget.release(600L);
+    assertTrue(reserved.await(5L, TimeUnit.SECONDS));
+    assertEquals(600L, budget.getReserved());
+  }
+
+  @Test
+  public void testDetectAvailableMemory() throws Exception {
+    final File root = folder.getRoot();
+    assertEquals(-1L, MemoryBudget.detectAvailableMemory(root));
+
+    FileUtils.writeStringToFile(new File(root, "proc/meminfo"), "MemTotal:       16000000 kB\nMemFree:         1000000 kB\nMemAvailable:    8000000 kB\n", "US-ASCII");
+    assertEquals(8000000L * 1024L, MemoryBudget.detectAvailableMemory(root));
+
+    FileUtils.writeStringToFile(new File(root, "sys/fs/cgroup/memory.max"), "max\n", "US-ASCII");
+    assertEquals(8000000L * 1024L, MemoryBudget.detectAvailableMemory(root));
+
+    FileUtils.writeStringToFile(new File(root, "sys/fs/cgroup/memory.max"), (4096L * MB) + "\n", "US-ASCII");
+    FileUtils.writeStringToFile(new File(root, "sys/fs/cgroup/memory.current"), (1024L * MB) + "\n", "US-ASCII");
+    assertEquals(3072L * MB, MemoryBudget.detectAvailableMemory(root));
+  }
+}
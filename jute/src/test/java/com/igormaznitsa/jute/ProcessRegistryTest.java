@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class ProcessRegistryTest {
+
+  private static boolean isUnix() {
+    return !System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH).startsWith("windows");
+  }
+
+  private static boolean isAlive(final Object handle) throws Exception {
+    return (Boolean) Class.forName("java.lang.ProcessHandle").getMethod("isAlive").invoke(handle);
+  }
+
+  @Test
+  public void testDestroyAndReleaseOfExitedProcess() throws Exception {
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    try {
+      final HangDetectorTest.FakeProcess process = new HangDetectorTest.FakeProcess();
+      registry.register(process);
+      registry.destroy(process, false);
+      assertTrue(process.destroyed);
+      registry.release(process);
+      registry.release(process);
+    }
+    finally {
+      registry.dispose();
+    }
+    assertEquals(0, registry.getOrphans());
+  }
+
+  @Test(timeout = 10000L)
+  public void testReleasedAliveProcessIsKilledByDispose() throws Exception {
+    assumeTrue(isUnix());
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    final Process process = new ProcessBuilder("sleep", "30").start();
+    try {
+      registry.register(process);
+      registry.release(process);
+    }
+    finally {
+      registry.dispose();
+    }
+    process.waitFor();
+  }
+
+  @Test(timeout = 10000L)
+  public void testDescendantsAreDestroyed() throws Exception {
+    assumeTrue(isUnix() && ProcessRegistry.isTreeSupported());
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    try {
+      final Process process = new ProcessBuilder("sh", "-c", "sleep 30 & wait").start();
+      registry.register(process);
+      List<Object> descendants = ProcessRegistry.findDescendants(process);
+      while (descendants.isEmpty()) {
+        Thread.sleep(50L);
+        descendants = ProcessRegistry.findDescendants(process);
+      }
+      registry.destroy(process, true);
+      process.waitFor();
+      registry.release(process);
+      for (final Object handle : descendants) {
+        while (isAlive(handle)) {
+          Thread.sleep(50L);
+        }
+      }
+    }
+    finally {
+      registry.dispose();
+    }
+    assertEquals(0, registry.getOrphans());
+  }
+
+  @Test(timeout = 10000L)
+  public void testDescendantsAreFoundInSnapshot() throws Exception {
+    assumeTrue(isUnix() && ProcessRegistry.isTreeSupported());
+    final Process process = new ProcessBuilder("sh", "-c", "sh -c 'sleep 30 & wait' & wait").start();
+    try {
+      List<Object> descendants = ProcessRegistry.findDescendants(process);
+      while (descendants.size() < 2) {
+        Thread.sleep(50L);
+        descendants = ProcessRegistry.findDescendants(process);
+      }
+      final List<Object> found = ProcessRegistry.findDescendants(process, ProcessRegistry.snapshotChildren());
+      assertEquals(new HashSet<Object>(descendants), new HashSet<Object>(found));
+      assertTrue(ProcessRegistry.findDescendants(process, Collections.<Object, List<Object>>emptyMap()).isEmpty());
+    }
+    finally {
+      final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+      registry.destroy(process, true);
+      registry.dispose();
+      process.waitFor();
+    }
+  }
+
+  @Test(timeout = 10000L)
+  public void testOrphansAreKilled() throws Exception {
+    assumeTrue(isUnix() && ProcessRegistry.isTreeSupported());
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    try {
+      final Process process = new ProcessBuilder("sh", "-c", "sleep 30 & sleep " + (ProcessRegistry.SCAN_INTERVAL * 3L / 1000L + 1L)).start();
+      registry.register(process);
+      process.waitFor();
+      registry.release(process);
+      assertEquals(1, registry.getOrphans());
+    }
+    finally {
+      registry.dispose();
+    }
+  }
+}
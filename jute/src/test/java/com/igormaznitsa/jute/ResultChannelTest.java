@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import com.igormaznitsa.jute.runners.ResultReporter;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.net.Socket;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ResultChannelTest {
+
+  @Test
+  public void testParseReport() throws Exception {
+    final ResultChannel.Report report = ResultChannel.Report.parse(new BufferedReader(new StringReader("TEST some.Test#test1\nOUTCOME FAILURE\nEXCEPTION java.lang.AssertionError expected: <1> but was: <2>\nPHASE JVM_READY 300000000\nPHASE BODY 12000000\nPHASE WRONG x\nMEMORY 1024\nEND\nTEST other#test\n")));
+    assertEquals("some.Test#test1", report.getTestName());
+    assertEquals("FAILURE", report.getOutcome());
+    assertEquals("java.lang.AssertionError", report.getExceptionClass());
+    assertEquals("expected: <1> but was: <2>", report.getExceptionMessage());
+    assertEquals(300000000L, report.getPhase(ResultReporter.PHASE_JVM_READY));
+    assertEquals(12000000L, report.getPhase(ResultReporter.PHASE_BODY));
+    assertEquals(-1L, report.getPhase(ResultReporter.PHASE_AFTER));
+    assertEquals(2, report.getPhases().size());
+    assertEquals(1024L, report.getPeakMemory());
+    assertEquals("startup 00:00:00.300, body 00:00:00.012", report.makeDescription());
+    assertEquals(12L, report.getMethodTime());
+  }
+
+  @Test
+  public void testMethodTimeIncludesBeforeAndAfter() throws Exception {
+    final ResultChannel.Report report = ResultChannel.Report.parse(new BufferedReader(new StringReader("TEST some.Test#test1\nOUTCOME OK\nPHASE JVM_READY 300000000\nPHASE BEFORE_CLASS 50000000\nPHASE BEFORE 2000000\nPHASE BODY 12000000\nPHASE AFTER 3000000\nEND\n")));
+    assertEquals(17L, report.getMethodTime());
+    assertEquals(-1L, ResultChannel.Report.parse(new BufferedReader(new StringReader("TEST some.Test#test1\nOUTCOME ERROR\nPHASE JVM_READY 300000000\nEND\n"))).getMethodTime());
+  }
+
+  @Test
+  public void testParseIncompleteReport() throws Exception {
+    assertNull(ResultChannel.Report.parse(new BufferedReader(new StringReader("TEST some.Test#test1\nOUTCOME OK\n"))));
+    assertNull(ResultChannel.Report.parse(new BufferedReader(new StringReader(""))));
+  }
+
+  @Test
+  public void testReportIsReceivedFromRunner() throws Exception {
+    final ResultChannel channel = new ResultChannel(new SystemStreamLog(), -1L, null);
+    try {
+      channel.expect("some.Test#test1");
+      System.setProperty(ResultReporter.PROPERTY_PORT, Integer.toString(channel.getPort()));
+      final ResultReporter reporter = new ResultReporter("some.Test#test1");
+      reporter.phase(ResultReporter.PHASE_BEFORE, 1000L);
+      reporter.phase(ResultReporter.PHASE_BODY, 2000L);
+      reporter.phase(ResultReporter.PHASE_BODY, 3000L);
+      reporter.assumption(new IllegalStateException("line1\nline2"));
+      reporter.error(new AssertionError("ignored"));
+      reporter.send();
+
+      final ResultChannel.Report report = channel.take("some.Test#test1");
+      assertNotNull(report);
+      assertEquals(ResultReporter.OUTCOME_ASSUMPTION, report.getOutcome());
+      assertEquals("java.lang.IllegalStateException", report.getExceptionClass());
+      assertEquals("line1 line2", report.getExceptionMessage());
+      assertEquals(1000L, report.getPhase(ResultReporter.PHASE_BEFORE));
+      assertEquals(5000L, report.getPhase(ResultReporter.PHASE_BODY));
+      assertTrue(report.getPeakMemory() > 0L);
+      assertNull(channel.take("some.Test#test1"));
+      assertEquals(0, channel.size());
+    }
+    finally {
+      System.clearProperty(ResultReporter.PROPERTY_PORT);
+      channel.dispose();
+    }
+  }
+
+  @Test
+  public void testAwaitReport() throws Exception {
+    final ResultChannel channel = new ResultChannel(new SystemStreamLog(), 100L, null);
+    try {
+      assertEquals(100L, channel.getShutdownGrace());
+      channel.expect("some.Test#test1");
+      assertNull(channel.await("some.Test#test1", 10L));
+      System.setProperty(ResultReporter.PROPERTY_PORT, Integer.toString(channel.getPort()));
+      final Thread runner = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          new ResultReporter("some.Test#test1").send();
+        }
+      });
+      runner.start();
+      final ResultChannel.Report report = channel.await("some.Test#test1", 5000L);
+      runner.join();
+      assertNotNull(report);
+      assertTrue(report.isSuccessful());
+      assertSame(report, channel.take("some.Test#test1"));
+    }
+    finally {
+      System.clearProperty(ResultReporter.PROPERTY_PORT);
+      channel.dispose();
+    }
+  }
+
+  @Test
+  public void testReportOfNotExpectedTestIsDropped() throws Exception {
+    final ResultChannel channel = new ResultChannel(new SystemStreamLog(), -1L, null);
+    try {
+      System.setProperty(ResultReporter.PROPERTY_PORT, Integer.toString(channel.getPort()));
+      new ResultReporter("some.Test#unknown").send();
+      assertNull(channel.take("some.Test#unknown"));
+      assertEquals(0, channel.size());
+    }
+    finally {
+      System.clearProperty(ResultReporter.PROPERTY_PORT);
+      channel.dispose();
+    }
+  }
+
+  @Test
+  public void testStalledConnectionDoesNotDelayReports() throws Exception {
+    final ResultChannel channel = new ResultChannel(new SystemStreamLog(), 100L, null);
+    final Socket stalled = new Socket("127.0.0.1", channel.getPort());
+    try {
+      stalled.getOutputStream().write("TEST some.Test#stalled\n".getBytes("UTF-8"));
+      channel.expect("some.Test#test1");
+      System.setProperty(ResultReporter.PROPERTY_PORT, Integer.toString(channel.getPort()));
+      final long start = System.currentTimeMillis();
+      new ResultReporter("some.Test#test1").send();
+      assertNotNull(channel.await("some.Test#test1", 1000L));
+      assertTrue(System.currentTimeMillis() - start < 1000L);
+    }
+    finally {
+      System.clearProperty(ResultReporter.PROPERTY_PORT);
+      stalled.close();
+      channel.dispose();
+    }
+  }
+
+  @Test
+  public void testHeartbeatIsPassedToHangDetector() throws Exception {
+    final HangDetector detector = new HangDetector(100L, 1L);
+    final ResultChannel channel = new ResultChannel(new SystemStreamLog(), -1L, detector);
+    try {
+      assertEquals("-D" + ResultReporter.PROPERTY_HEARTBEAT + "=100", channel.makeHeartbeatJvmOption());
+      final HangDetectorTest.FakeProcess process = new HangDetectorTest.FakeProcess();
+      final HangDetector.Watch watch = detector.watch("some.Test#test1", process);
+      for (int i = 0; i < 20 && !watch.isHung(); i++) {
+        final Socket socket = new Socket("127.0.0.1", channel.getPort());
+        socket.getOutputStream().write("HEARTBEAT some.Test#test1 0 0\n".getBytes("UTF-8"));
+        socket.close();
+        Thread.sleep(100L);
+      }
+      assertTrue(watch.isHung());
+      assertTrue(process.destroyed);
+    }
+    finally {
+      channel.dispose();
+    }
+  }
+
+  @Test
+  public void testClassifyErrors() {
+    assertEquals(ResultReporter.OUTCOME_FAILURE, ResultReporter.classify(new AssertionError()));
+    assertEquals(ResultReporter.OUTCOME_ERROR, ResultReporter.classify(new RuntimeException()));
+    assertEquals(ResultReporter.OUTCOME_ASSUMPTION, ResultReporter.classify(new org.junit.internal.AssumptionViolatedException("skip")));
+  }
+}
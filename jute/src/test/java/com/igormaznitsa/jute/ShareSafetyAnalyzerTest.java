@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.util.*;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.*;
+import static org.junit.Assert.*;
+
+public class ShareSafetyAnalyzerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static MethodVisitor startMethod(final ClassWriter writer, final int access, final String name, final String annotation) {
+    final MethodVisitor result = writer.visitMethod(access, name, "()V", null, null);
+    if (annotation != null) {
+      result.visitAnnotation(annotation, true).visitEnd();
+    }
+    result.visitCode();
+    return result;
+  }
+
+  private static void endMethod(final MethodVisitor method) {
+    method.visitInsn(Opcodes.RETURN);
+    method.visitMaxs(4, 1);
+    method.visitEnd();
+  }
+
+  private static ClassWriter startClass(final String name) {
+    final ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+    writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, "counter", "I", null, null).visitEnd();
+    return writer;
+  }
+
+  @Test
+  public void testShareSafeClass() {
+    final ClassWriter writer = startClass("some/SafeTest");
+
+    MethodVisitor method = startMethod(writer, Opcodes.ACC_STATIC, "<clinit>", null);
+    method.visitInsn(Opcodes.ICONST_1);
+    method.visitFieldInsn(Opcodes.PUTSTATIC, "some/SafeTest", "counter", "I");
+    endMethod(method);
+
+    method = startMethod(writer, Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "setUpClass", "Lorg/junit/BeforeClass;");
+    method.visitInsn(Opcodes.ICONST_0);
+    method.visitFieldInsn(Opcodes.PUTSTATIC, "some/SafeTest", "counter", "I");
+    endMethod(method);
+
+    method = startMethod(writer, Opcodes.ACC_PUBLIC, "testRead", JuteMojo.ANNO_TEST);
+    method.visitFieldInsn(Opcodes.GETSTATIC, "some/SafeTest", "counter", "I");
+    method.visitInsn(Opcodes.POP);
+    method.visitLdcInsn("user.dir");
+    method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "getProperty", "(Ljava/lang/String;)Ljava/lang/String;", false);
+    method.visitInsn(Opcodes.POP);
+    endMethod(method);
+    writer.visitEnd();
+
+    assertTrue(ShareSafetyAnalyzer.analyze(writer.toByteArray()).isEmpty());
+  }
+
+  @Test
+  public void testHazards() {
+    final ClassWriter writer = startClass("some/UnsafeTest");
+
+    MethodVisitor method = startMethod(writer, Opcodes.ACC_PUBLIC, "testCounter", JuteMojo.ANNO_TEST);
+    method.visitInsn(Opcodes.ICONST_1);
+    method.visitFieldInsn(Opcodes.PUTSTATIC, "some/UnsafeTest", "counter", "I");
+    method.visitInsn(Opcodes.ICONST_2);
+    method.visitFieldInsn(Opcodes.PUTSTATIC, "some/Other", "value", "I");
+    endMethod(method);
+
+    method = startMethod(writer, Opcodes.ACC_PUBLIC, "testGlobals", JuteMojo.ANNO_TEST);
+    method.visitLdcInsn("key");
+    method.visitLdcInsn("value");
+    method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "setProperty", "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", false);
+    method.visitInsn(Opcodes.POP);
+    method.visitFieldInsn(Opcodes.GETSTATIC, "java/util/Locale", "US", "Ljava/util/Locale;");
+    method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/util/Locale", "setDefault", "(Ljava/util/Locale;)V", false);
+    endMethod(method);
+
+    method = startMethod(writer, Opcodes.ACC_PUBLIC, "testThread", JuteMojo.ANNO_JUTE);
+    method.visitTypeInsn(Opcodes.NEW, "some/WorkerThread");
+    method.visitInsn(Opcodes.DUP);
+    method.visitMethodInsn(Opcodes.INVOKESPECIAL, "some/WorkerThread", "<init>", "()V", false);
+    method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "some/WorkerThread", "start", "()V", false);
+    method.visitInsn(Opcodes.ICONST_0);
+    method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "exit", "(I)V", false);
+    endMethod(method);
+    writer.visitEnd();
+
+    assertEquals(Arrays.asList(
+            "testCounter: writes static field some.UnsafeTest.counter",
+            "testCounter: writes static field some.Other.value",
+            "testGlobals: calls java.lang.System.setProperty",
+            "testGlobals: calls java.util.Locale.setDefault",
+            "testThread: starts thread some.WorkerThread",
+            "testThread: calls java.lang.System.exit"
+    ), ShareSafetyAnalyzer.analyze(writer.toByteArray()));
+  }
+
+  @Test
+  public void testWriteReport() throws Exception {
+    final Map<String, List<String>> classes = new TreeMap<String, List<String>>();
+    classes.put("some.B", Arrays.asList("test1: calls java.lang.System.exit", "test2: starts thread java.lang.Thread"));
+    classes.put("some.A", Collections.<String>emptyList());
+
+    final File report = new File(folder.getRoot(), "sub/report.txt");
+    ShareSafetyAnalyzer.writeReport(report, classes);
+
+    assertEquals(Arrays.asList(
+            "# JUte share analysis: 2 test class(es), 1 isolation required",
+            "some.A SHARE-SAFE",
+            "some.B ISOLATION-REQUIRED",
+            "  test1: calls java.lang.System.exit",
+            "  test2: starts thread java.lang.Thread"
+    ), FileUtils.readLines(report, "UTF-8"));
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TestContainerTest {
+
+  @Test
+  public void testIsBatchable(){
+    final TestHistory history = new TestHistory();
+    history.record("some.Test#fast", TestContainer.TestResult.OK, 10L, -1L, -1L);
+    history.record("some.Test#slow", TestContainer.TestResult.OK, 1000L, -1L, -1L);
+    history.record("some.Test#failed", TestContainer.TestResult.ERROR, 10L, -1L, -1L);
+
+    final TestContainer fast = new TestContainer(null, "some.Test", "fast", null, null);
+    assertTrue(fast.isBatchable(history, 100L));
+    assertFalse(fast.isBatchable(history, 0L));
+    assertFalse(fast.isBatchable(null, 100L));
+    assertFalse(new TestContainer(null, "some.Test", "slow", null, null).isBatchable(history, 100L));
+    assertFalse(new TestContainer(null, "some.Test", "failed", null, null).isBatchable(history, 100L));
+    assertFalse(new TestContainer(null, "some.Test", "unknown", null, null).isBatchable(history, 100L));
+    assertFalse(new TestContainer(null, "some.Test", "fast", null, null, "text", -1, false, false, 0L, "").isBatchable(history, 100L));
+    assertFalse(new TestContainer(null, "some.Test", "fast", null, null, "", -1, false, false, 0L, "CLASS").isBatchable(history, 100L));
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import com.igormaznitsa.jute.TestContainer.TestResult;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class TestHistoryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testLoadNonExistingFile() throws Exception {
+    final TestHistory history = TestHistory.load(new File(folder.getRoot(), "nothing.bin"));
+    assertEquals(0, history.size());
+    assertEquals(-1L, history.getAverageDuration("some.Test#test"));
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    final File file = new File(folder.getRoot(), "sub/history.bin");
+    final TestHistory history = new TestHistory();
+    history.record("some.Test#test1", TestResult.OK, 100L, -1L, -1L);
+    history.record("some.Test#test1", TestResult.ERROR, 300L, 20L, 1024L);
+    history.record("some.Test#test2", TestResult.TIMEOUT, 5000L, -1L, -1L);
+    history.save(file, true);
+    history.save(file, true);
+
+    final TestHistory loaded = TestHistory.load(file);
+    assertEquals(2, loaded.size());
+    assertEquals(200L, loaded.getAverageDuration("some.Test#test1"));
+    final TestHistory.Entry entry = loaded.find("some.Test#test1");
+    assertArrayEquals(new long[]{100L, 300L}, entry.getDurations());
+    assertEquals(TestResult.ERROR, entry.getLastResult());
+    assertEquals(20L, entry.getStartupShare());
+    assertEquals(1024L, entry.getPeakMemory());
+    assertEquals(TestResult.TIMEOUT, loaded.find("some.Test#test2").getLastResult());
+    assertEquals(1, folder.getRoot().listFiles()[0].listFiles().length);
+  }
+
+  @Test
+  public void testRollingWindow() {
+    final TestHistory history = new TestHistory();
+    for (int i = 0; i < TestHistory.WINDOW_SIZE + 3; i++) {
+      history.record("some.Test#test", TestResult.OK, i, -1L, -1L);
+    }
+    final long[] durations = history.find("some.Test#test").getDurations();
+    assertEquals(TestHistory.WINDOW_SIZE, durations.length);
+    assertEquals(3L, durations[0]);
+    assertEquals(TestHistory.WINDOW_SIZE + 2L, durations[durations.length - 1]);
+  }
+
+  @Test
+  public void testFoundEntryIsSnapshot() {
+    final TestHistory history = new TestHistory();
+    history.record("some.Test#test", TestResult.OK, 100L, -1L, -1L);
+    final TestHistory.Entry entry = history.find("some.Test#test");
+    history.record("some.Test#test", TestResult.ERROR, 300L, -1L, -1L);
+    assertArrayEquals(new long[]{100L}, entry.getDurations());
+    assertEquals(TestResult.OK, entry.getLastResult());
+    assertEquals(TestResult.ERROR, history.find("some.Test#test").getLastResult());
+  }
+
+  @Test
+  public void testNotSeenTestsAreRemovedOnSave() throws Exception {
+    final File file = new File(folder.getRoot(), "history.bin");
+    final TestHistory history = new TestHistory();
+    history.record("some.Test#removed", TestResult.OK, 100L, -1L, -1L);
+    history.record("some.Test#skipped", TestResult.OK, 100L, -1L, -1L);
+    history.record("some.Test#test", TestResult.OK, 100L, -1L, -1L);
+    history.save(file, true);
+
+    // nothing is seen, all entries are kept
+    TestHistory.load(file).save(file, true);
+    assertEquals(3, TestHistory.load(file).size());
+
+    final TestHistory next = TestHistory.load(file);
+    next.record("some.Test#test", TestResult.OK, 200L, -1L, -1L);
+    next.getAverageDuration("some.Test#skipped");
+    next.save(file, false);
+    assertEquals(3, TestHistory.load(file).size());
+    next.save(file, true);
+
+    final TestHistory loaded = TestHistory.load(file);
+    assertEquals(2, loaded.size());
+    assertNull(loaded.find("some.Test#removed"));
+    assertNotNull(loaded.find("some.Test#skipped"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testWrongFormat() throws Exception {
+    final File file = folder.newFile("wrong.bin");
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    }
+    finally {
+      out.close();
+    }
+    TestHistory.load(file);
+  }
+}
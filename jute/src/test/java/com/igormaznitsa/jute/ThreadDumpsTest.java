@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.File;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ThreadDumpsTest {
+
+  private static final String DUMP = "2026-10-17 13:24:02\n"
+      + "Full thread dump OpenJDK 64-Bit Server VM (25.392-b08 mixed mode):\n"
+      + "\n"
+      + "\"Signal Dispatcher\" #4 daemon prio=9 os_prio=0 tid=0x1 nid=0x2 runnable [0x0]\n"
+      + "   java.lang.Thread.State: RUNNABLE\n"
+      + "\n"
+      + "\"Finalizer\" #3 daemon prio=8 os_prio=0 tid=0x1 nid=0x3 in Object.wait() [0x0]\n"
+      + "   java.lang.Thread.State: WAITING (on object monitor)\n"
+      + "\tat java.lang.Object.wait(Native Method)\n"
+      + "\tat java.lang.ref.Finalizer$FinalizerThread.run(Finalizer.java:216)\n"
+      + "\n"
+      + "\"main\" #1 prio=5 os_prio=0 tid=0x1 nid=0x4 in Object.wait() [0x0]\n"
+      + "   java.lang.Thread.State: WAITING (on object monitor)\n"
+      + "\tat java.lang.Object.wait(Native Method)\n"
+      + "\t- waiting on <0x1> (a java.lang.Object)\n"
+      + "\tat java.lang.Object.wait(Object.java:502)\n"
+      + "\tat some.HangingTest.testHanging(HangingTest.java:12)\n"
+      + "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)\n"
+      + "\n"
+      + "\"VM Thread\" os_prio=0 tid=0x1 nid=0x5 runnable \n"
+      + "\n"
+      + "JNI global references: 5\n";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testExtract() {
+    assertNull(ThreadDumps.extract(null));
+    assertNull(ThreadDumps.extract("Hello\nWorld\n"));
+    assertEquals(DUMP.substring(DUMP.indexOf("Full")), ThreadDumps.extract("Test body\n" + DUMP + "Heap\n PSYoungGen total 1K\n"));
+    assertEquals("Full thread dump\n\"main\"", ThreadDumps.extract("Test body\nFull thread dump\n\"main\""));
+  }
+
+  @Test
+  public void testSummarize() {
+    assertEquals(Arrays.asList(
+        "\"main\" WAITING (on object monitor)",
+        "    at java.lang.Object.wait(Native Method)",
+        "    at java.lang.Object.wait(Object.java:502)",
+        "    at some.HangingTest.testHanging(HangingTest.java:12)"), ThreadDumps.summarize(DUMP, 3));
+    assertEquals(Arrays.asList(
+        "\"main\" WAITING (on object monitor)",
+        "    at java.lang.Object.wait(Native Method)"), ThreadDumps.summarize(DUMP.replace("\n", "\r\n"), 1));
+  }
+
+  @Test
+  public void testSave() throws Exception {
+    final ThreadDumps dumps = new ThreadDumps(new File(folder.getRoot(), "jute-logs"), 0);
+    final File file = dumps.save("some.Test#test1", DUMP);
+    assertEquals(new File(new File(folder.getRoot(), "jute-logs"), "some.Test#test1.threaddump.txt"), file);
+    assertEquals(DUMP, FileUtils.readFileToString(file, "UTF-8"));
+  }
+}
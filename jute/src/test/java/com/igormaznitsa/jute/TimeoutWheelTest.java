@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TimeoutWheelTest {
+
+  private static final class FakeProcess extends Process {
+
+    private final CountDownLatch destroyed = new CountDownLatch(1);
+    private volatile String destroyingThread;
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+      this.destroyed.await();
+      return 1;
+    }
+
+    @Override
+    public int exitValue() {
+      if (this.destroyed.getCount() > 0L) {
+        throw new IllegalThreadStateException();
+      }
+      return 1;
+    }
+
+    @Override
+    public void destroy() {
+      if (this.destroyingThread == null) {
+        this.destroyingThread = Thread.currentThread().getName();
+      }
+      this.destroyed.countDown();
+    }
+
+    boolean isDestroyed() {
+      return this.destroyed.getCount() == 0L;
+    }
+  }
+
+  @Test
+  public void testExpiredDeadlineDestroysProcess() throws Exception {
+    final TimeoutWheel wheel = new TimeoutWheel();
+    try {
+      final FakeProcess process = new FakeProcess();
+      final long start = System.currentTimeMillis();
+      final TimeoutWheel.Deadline deadline = wheel.watch(process, 100L);
+      assertTrue(process.destroyed.await(5L, TimeUnit.SECONDS));
+      assertTrue(System.currentTimeMillis() - start >= 100L);
+      assertTrue(deadline.isExpired());
+      assertFalse(deadline.cancel());
+      assertEquals(0, wheel.size());
+    }
+    finally {
+      wheel.dispose();
+    }
+  }
+
+  @Test
+  public void testThreadDumpIsNotRequestedByTimerThread() throws Exception {
+    final TimeoutWheel wheel = new TimeoutWheel(60000L, null);
+    try {
+      // PID of the fake process can't be found, so that it is destroyed by
+      // the thread which has tried to request thread dump
+      final FakeProcess process = new FakeProcess();
+      final TimeoutWheel.Deadline deadline = wheel.watch(process, 50L);
+      assertTrue(process.destroyed.await(5L, TimeUnit.SECONDS));
+      assertTrue(deadline.isExpired());
+      assertEquals("jute-thread-dump", process.destroyingThread);
+    }
+    finally {
+      wheel.dispose();
+    }
+  }
+
+  @Test
+  public void testCancelledDeadlineKeepsProcess() throws Exception {
+    final TimeoutWheel wheel = new TimeoutWheel();
+    try {
+      final FakeProcess process = new FakeProcess();
+      final TimeoutWheel.Deadline deadline = wheel.watch(process, 60000L);
+      assertEquals(1, wheel.size());
+      assertTrue(deadline.cancel());
+      assertFalse(deadline.isExpired());
+      assertFalse(process.isDestroyed());
+      assertEquals(0, wheel.size());
+    }
+    finally {
+      wheel.dispose();
+    }
+  }
+
+  private static int countWheelThreads() {
+    int result = 0;
+    for (final Thread t : Thread.getAllStackTraces().keySet()) {
+      if ("jute-timeout-wheel".equals(t.getName()) && t.isAlive()) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testSingleThreadForManyDeadlines() throws Exception {
+    // threads of disposed wheels can be still alive for a while
+    final int threadsBefore = countWheelThreads();
+    final TimeoutWheel wheel = new TimeoutWheel();
+    try {
+      final FakeProcess[] processes = new FakeProcess[200];
+      for (int i = 0; i < processes.length; i++) {
+        processes[i] = new FakeProcess();
+        wheel.watch(processes[i], 50L + i % 10);
+      }
+      for (final FakeProcess p : processes) {
+        assertTrue(p.destroyed.await(5L, TimeUnit.SECONDS));
+      }
+      assertTrue(countWheelThreads() - threadsBefore <= 1);
+    }
+    finally {
+      wheel.dispose();
+    }
+  }
+
+  @Test
+  public void testReapKillsAliveProcessAfterGrace() throws Exception {
+    final TimeoutWheel wheel = new TimeoutWheel();
+    try {
+      final FakeProcess alive = new FakeProcess();
+      final FakeProcess exited = new FakeProcess();
+      exited.destroy();
+      wheel.reap(alive, 100L);
+      wheel.reap(exited, 100L);
+      assertFalse(alive.isDestroyed());
+      assertTrue(alive.destroyed.await(5L, TimeUnit.SECONDS));
+      assertEquals(1, wheel.getKilled());
+    }
+    finally {
+      wheel.dispose();
+    }
+  }
+
+  @Test
+  public void testDisposeKillsReapedProcess() throws Exception {
+    final TimeoutWheel wheel = new TimeoutWheel();
+    final FakeProcess process = new FakeProcess();
+    wheel.reap(process, 60000L);
+    wheel.dispose();
+    assertTrue(process.isDestroyed());
+    assertEquals(1, wheel.getKilled());
+  }
+}
@@ -15,6 +15,8 @@
  */
 package com.igormaznitsa.jute;
 
+import com.igormaznitsa.jute.runners.RunnerProtocol;
+import java.util.Map;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -25,6 +27,13 @@ public class UtilsTest {
     assertEquals("34:17:36.789",Utils.printTimeDelay(123456789L));
   }
   
+  @Test
+  public void testPrintMemorySize(){
+    assertEquals("0 MB",Utils.printMemorySize(0L));
+    assertEquals("1 MB",Utils.printMemorySize(1L));
+    assertEquals("2112 MB",Utils.printMemorySize(2048L*1024L*1024L+64L*1024L*1024L));
+  }
+
   @Test
   public void testToStandardJavaClassName(){
     assertEquals("some.package.Klazz$Hello",Utils.toStandardJavaClassName("/root/","/root/some/package/Klazz$Hello.class"));
@@ -53,5 +62,27 @@ public class UtilsTest {
     assertFalse(Utils.checkClassAndMethodForPattern("com.package.Klazz#SomE", "com.package.Klazz", "Some", false));
     assertFalse(Utils.checkClassAndMethodForPattern("com.package.Klazz#Som??", "com.package.Klazz", "Some", false));
   }
-  
+
+  @Test
+  public void testSplitConsoleForTests(){
+    final Map<String,String> sections = Utils.splitConsoleForTests("init\n"+RunnerProtocol.TEST_START+"a.B#m1\nout1\nout2"+RunnerProtocol.TEST_START+"a.B#m2\n"+RunnerProtocol.TEST_RESULT+"a.B#m1 OK 1\n");
+    assertEquals(3, sections.size());
+    assertEquals("init\n", sections.get(""));
+    assertEquals("out1\nout2", sections.get("a.B#m1"));
+    assertEquals("", sections.get("a.B#m2"));
+  }
+
+  @Test
+  public void testExtractTestResults(){
+    final Map<String,String[]> results = Utils.extractTestResults("some\n"+RunnerProtocol.TEST_RESULT+"a.B#m1 OK 12\r\ntext"+RunnerProtocol.TEST_RESULT+"a.B#m2 ERROR 3");
+    assertEquals(2, results.size());
+    assertArrayEquals(new String[]{"OK","12"}, results.get("a.B#m1"));
+    assertArrayEquals(new String[]{"ERROR","3"}, results.get("a.B#m2"));
+  }
+
+  @Test
+  public void testRemoveProtocolLines(){
+    assertEquals("no markers\n", Utils.removeProtocolLines("no markers\n"));
+    assertEquals("line1\nline2\nhook\n", Utils.removeProtocolLines("line1\nline2\n"+RunnerProtocol.TEST_END+"a.B#m1\nhook\n"));
+  }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class WarmJvmPoolTest {
+
+  // any long-living process can play a warm JVM which is never used
+  private static final List<String> ARGUMENTS = Arrays.asList("sleep", "30");
+
+  private static boolean isUnix() {
+    return !System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH).startsWith("windows");
+  }
+
+  private static void waitForSize(final WarmJvmPool pool, final int expected) throws Exception {
+    final long endTime = System.currentTimeMillis() + 10000L;
+    while (pool.size(ARGUMENTS, null) != expected && System.currentTimeMillis() < endTime) {
+      Thread.sleep(20L);
+    }
+  }
+
+  private static void waitForIdle(final WarmJvmPool pool, final List<String> arguments, final int expected) throws Exception {
+    final long endTime = System.currentTimeMillis() + 10000L;
+    while (pool.countIdle(arguments, null) != expected && System.currentTimeMillis() < endTime) {
+      Thread.sleep(20L);
+    }
+  }
+
+  @Test
+  public void testParallelAcquireDoesNotStartExtraJvms() throws Exception {
+    assumeTrue(isUnix());
+
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    final WarmJvmPool pool = new WarmJvmPool(new SystemStreamLog(), 2, registry, null, 0);
+    final List<WarmJvmPool.WarmJvm> acquired = Collections.synchronizedList(new ArrayList<WarmJvmPool.WarmJvm>());
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < 6; i++) {
+        final Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+              acquired.add(pool.acquire(ARGUMENTS, null, 1000L));
+            }
+            catch (Exception ex) {
+              throw new RuntimeException(ex);
+            }
+          }
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      start.countDown();
+      for (final Thread t : threads) {
+        t.join(10000L);
+      }
+
+      assertEquals(6, acquired.size());
+      assertTrue(pool.size(ARGUMENTS, null) <= 2);
+      waitForSize(pool, 2);
+      assertEquals(2, pool.size(ARGUMENTS, null));
+    }
+    finally {
+      for (final WarmJvmPool.WarmJvm jvm : acquired) {
+        jvm.destroy();
+      }
+      pool.dispose();
+      registry.dispose();
+    }
+  }
+
+  @Test
+  public void testIdleJvmsHoldMemoryBudget() throws Exception {
+    assumeTrue(isUnix());
+
+    final long estimate = 1000L;
+    final MemoryBudget budget = new MemoryBudget(10 * estimate, 0L);
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    final WarmJvmPool pool = new WarmJvmPool(new SystemStreamLog(), 2, registry, budget, 0);
+    try {
+      final WarmJvmPool.WarmJvm jvm = pool.acquire(ARGUMENTS, null, estimate);
+      final long endTime = System.currentTimeMillis() + 10000L;
+      while (budget.getReserved() < 3 * estimate && System.currentTimeMillis() < endTime) {
+        Thread.sleep(20L);
+      }
+      assertEquals(3 * estimate, budget.getReserved());
+
+      jvm.destroy();
+      jvm.destroy();
+      assertEquals(2 * estimate, budget.getReserved());
+    }
+    finally {
+      pool.dispose();
+      registry.dispose();
+    }
+    assertEquals(0L, budget.getReserved());
+  }
+
+  @Test
+  public void testIdleJvmsAreDestroyedForLeastRecentlyUsedConfigurationFirst() throws Exception {
+    assumeTrue(isUnix());
+
+    final List<String> other = Arrays.asList("sleep", "31");
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    final WarmJvmPool pool = new WarmJvmPool(new SystemStreamLog(), 1, registry, null, 0);
+    final List<WarmJvmPool.WarmJvm> acquired = new ArrayList<WarmJvmPool.WarmJvm>();
+    try {
+      acquired.add(pool.acquire(ARGUMENTS, null, 1000L));
+      acquired.add(pool.acquire(other, null, 1000L));
+      waitForIdle(pool, ARGUMENTS, 1);
+      acquired.add(pool.acquire(ARGUMENTS, null, 1000L));
+      waitForIdle(pool, ARGUMENTS, 1);
+      waitForIdle(pool, other, 1);
+      assertEquals(1, pool.countIdle(ARGUMENTS, null));
+      assertEquals(1, pool.countIdle(other, null));
+
+      assertTrue(pool.destroyLeastRecentlyUsed());
+      assertEquals(1, pool.countIdle(ARGUMENTS, null));
+      assertEquals(0, pool.countIdle(other, null));
+
+      assertTrue(pool.destroyLeastRecentlyUsed());
+      assertEquals(0, pool.countIdle(ARGUMENTS, null));
+      assertFalse(pool.destroyLeastRecentlyUsed());
+    }
+    finally {
+      for (final WarmJvmPool.WarmJvm jvm : acquired) {
+        jvm.destroy();
+      }
+      pool.dispose();
+      registry.dispose();
+    }
+  }
+
+  @Test
+  public void testOutputIsWrittenIntoConsoleOfTest() throws Exception {
+    assumeTrue(isUnix());
+
+    final List<String> echo = Arrays.asList("sh", "-c", "echo started; read line; echo got $line; echo error >&2");
+    final ProcessRegistry registry = new ProcessRegistry(new SystemStreamLog());
+    final WarmJvmPool pool = new WarmJvmPool(new SystemStreamLog(), 1, registry, null, 1024);
+    final ConsoleBuffer out = new ConsoleBuffer(1024, null, false);
+    final ConsoleBuffer err = new ConsoleBuffer(1024, null, false);
+    try {
+      final WarmJvmPool.WarmJvm jvm = pool.acquire(echo, null, 0L);
+      try {
+        jvm.run("Runner", Collections.singletonList("some.Test#test"), null, out, err);
+        assertEquals(0, jvm.waitFor(10000L));
+      }
+      finally {
+        jvm.release();
+      }
+      assertEquals("started\ngot Runner some.Test#test\n", out.getText());
+      assertEquals("error\n", err.getText());
+    }
+    finally {
+      pool.dispose();
+      registry.dispose();
+    }
+  }
+}
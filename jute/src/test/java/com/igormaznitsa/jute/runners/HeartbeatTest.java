@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jute.runners;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HeartbeatTest {
+
+  /**
+   * Started in a separate JVM, prints number of active threads.
+   */
+  public static final class CountMain {
+
+    private static void startSleeping(final ThreadGroup group, final boolean daemon) {
+      final Thread thread = new Thread(group, new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(60000L);
+          }
+          catch (InterruptedException ex) {
+            // stopped
+          }
+        }
+      });
+      thread.setDaemon(daemon);
+      thread.start();
+    }
+
+    public static void main(final String... args) throws Exception {
+      ThreadGroup system = Thread.currentThread().getThreadGroup();
+      while (system.getParent() != null) {
+        system = system.getParent();
+      }
+      // JDK 9+ starts Common-Cleaner and other service threads in subgroups of the system group
+      startSleeping(new ThreadGroup(system, "jdk-service"), true);
+      try {
+        Class.forName("java.lang.ref.Cleaner").getMethod("create").invoke(null);
+      }
+      catch (ClassNotFoundException ex) {
+        // JDK 8
+      }
+      if (args.length > 0 && "busy".equals(args[0])) {
+        startSleeping(Thread.currentThread().getThreadGroup(), false);
+        startSleeping(Thread.currentThread().getThreadGroup(), true);
+      }
+      Thread.sleep(300L);
+      System.out.print(Heartbeat.countActiveThreads(Thread.currentThread()));
+      System.out.flush();
+      System.exit(0);
+    }
+  }
+
+  private static String countInNewJvm(final String mode) throws Exception {
+    final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    final Process process = new ProcessBuilder(Arrays.asList(java, "-cp", System.getProperty("java.class.path"), CountMain.class.getName(), mode)).redirectErrorStream(true).start();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final InputStream in = process.getInputStream();
+    final byte[] buffer = new byte[1024];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+    assertEquals(0, process.waitFor());
+    return out.toString("UTF-8").trim();
+  }
+
+  @Test(timeout = 30000L)
+  public void testIdleJvmHasNoActiveThreads() throws Exception {
+    assertEquals("0", countInNewJvm("idle"));
+  }
+
+  @Test(timeout = 30000L)
+  public void testThreadsOfApplicationAreActive() throws Exception {
+    assertEquals("2", countInNewJvm("busy"));
+  }
+}